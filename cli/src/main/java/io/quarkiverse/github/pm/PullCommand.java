@@ -1,9 +1,15 @@
 package io.quarkiverse.github.pm;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import jakarta.inject.Inject;
 
-import io.quarkiverse.github.index.PruneService;
-import io.quarkiverse.github.index.PullService;
+import io.quarkiverse.github.api.Github;
+import io.quarkiverse.github.index.PullCacheService;
+import io.quarkiverse.github.index.RenderService;
+import io.quarkiverse.github.index.SummaryService;
+import io.quarkiverse.github.index.SyncService;
 import io.quarkiverse.github.index.model.Earlier;
 import io.quarkiverse.github.pm.util.BaseCommand;
 import io.quarkiverse.github.util.AppLogger;
@@ -12,8 +18,11 @@ import picocli.CommandLine.Option;
 
 @Command(name = "pull", description = "Pull issues and discussionsfrom Github")
 public class PullCommand extends BaseCommand implements Runnable {
-    @Option(names = "--repo", required = true, description = "Github repo.  i.e. quarkusio/quarkus")
-    private String repo;
+    @Option(names = "--repo", split = ",", description = "Github repo, repeat or separate with commas for several.  i.e. quarkusio/quarkus")
+    private List<String> repos = new ArrayList<>();
+
+    @Option(names = "--all", required = false, description = "Pull every repo that was pulled before")
+    private boolean all = false;
 
     @Option(names = "--since", required = false, description = "Pull discussions and issues since month, quarter, or year")
     private Earlier since = null;
@@ -21,20 +30,44 @@ public class PullCommand extends BaseCommand implements Runnable {
     @Option(names = "--prune", required = false, description = "Prune discussions and issues older than the given date range")
     private boolean prune = false;
 
+    @Option(names = "--stats", required = false, description = "Show the hits, misses and evictions of the in-memory caches, and the Github rate limit, once pulled")
+    private boolean stats = false;
+
     @Inject
-    PruneService pruneService;
+    SyncService syncService;
 
     @Inject
-    PullService pullService;
+    Github github;
+
+    @Inject
+    PullCacheService pullCacheService;
+
+    @Inject
+    SummaryService summaryService;
+
+    @Inject
+    RenderService renderService;
 
     static AppLogger log = AppLogger.getLogger(PullCommand.class);
 
     @Override
     public void run() {
         try {
-            pullService.pull(repo, since);
-            if (prune) {
-                pruneService.prune(repo, since);
+            List<String> toPull = new ArrayList<>(repos);
+            if (all) {
+                pullCacheService.repos().stream().filter(repo -> !toPull.contains(repo)).sorted().forEach(toPull::add);
+            }
+            if (toPull.isEmpty()) {
+                log.error("Give a --repo to pull, or --all");
+                return;
+            }
+            // repos are pulled in parallel, and one failing is logged without stopping the others
+            syncService.pullAll(toPull, since, prune);
+            if (stats) {
+                output.info("Pull cache: " + pullCacheService.cacheStats());
+                output.info("Summary cache: " + summaryService.cacheStats());
+                output.info("Render cache: " + renderService.cacheStats());
+                output.info("Github rate limit: " + github.rateLimit());
             }
         } catch (Exception e) {
             log.error("Error pulling discussions", e);
@@ -21,7 +21,7 @@ public class ShowLabelsCommand extends BaseCommand implements Runnable {
     @Override
     public void run() {
         try {
-            Map<String, Label> labels = github.repository(repo).labels();
+            Map<String, Label> labels = github.labels(repo);
             for (Label label : labels.values()) {
                 output.info("[" + label.name() + "]: " + label.description());
             }
@@ -1,5 +1,15 @@
 package io.quarkiverse.github.api;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
@@ -11,27 +21,55 @@ import jakarta.ws.rs.core.Link;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.quarkiverse.github.api.GithubAPI.Repository;
+import io.quarkiverse.github.api.Labels.Label;
+import io.quarkiverse.github.api.Labels.LabelConnection;
 import io.quarkiverse.graphql.client.GraphQLClient;
+import io.quarkiverse.graphql.client.RateLimiter;
 import io.quarkus.runtime.Startup;
 
 @ApplicationScoped
 public class Github {
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>;\\s*rel=\"next\"");
+
     @Inject
     @ConfigProperty(name = "product.manager.github.token")
     String githubToken;
 
+    @ConfigProperty(name = "product.manager.github.max-concurrency", defaultValue = "8")
+    int maxConcurrency;
+
+    @ConfigProperty(name = "product.manager.github.rate-limit-reserve", defaultValue = "50")
+    int rateLimitReserve;
+
+    @ConfigProperty(name = "product.manager.github.max-retries", defaultValue = "5")
+    int maxRetries;
+
+    @ConfigProperty(name = "product.manager.github.batch-size", defaultValue = "20")
+    int batchSize;
+
+    @ConfigProperty(name = "product.manager.cache.dir")
+    String cacheDirectory;
+
     @Inject
     ObjectMapper objectMapper;
 
     Client client;
     WebTarget githubApi;
+    volatile GithubAPI api;
+    volatile RateLimiter rateLimiter;
+    volatile GraphQLClient.QueryBuilder.Batch<GithubAPI> batch;
+    HttpCache httpCache;
 
     @Startup
     public void startup() {
         client = ClientBuilder.newClient();
+        githubApi = client.target("https://api.github.com");
+        httpCache = new HttpCache(Path.of(cacheDirectory, ".http-cache"), githubToken, objectMapper);
     }
 
     public Repository repository(String repo) {
@@ -43,8 +81,106 @@ public class Github {
     @Produces
     @ApplicationScoped
     public GithubAPI api() {
-        return new GraphQLClient(objectMapper).query().endpoint("https://api.github.com/graphql").bearer(githubToken)
-                .target(GithubAPI.class);
+        // the proxy is stateless, so build it (and its query mappings) once rather than on every repository() call
+        GithubAPI result = api;
+        if (result == null) {
+            synchronized (this) {
+                result = api;
+                if (result == null) {
+                    rateLimiter = new RateLimiter(maxConcurrency, rateLimitReserve, maxRetries,
+                            RateLimiter.DEFAULT_BACKOFF_MILLIS);
+                    GraphQLClient.QueryBuilder builder = new GraphQLClient(objectMapper, rateLimiter).query()
+                            .endpoint("https://api.github.com/graphql")
+                            .bearer(githubToken);
+                    batch = builder.batch(GithubAPI.class, batchSize);
+                    result = builder.target(GithubAPI.class);
+                    api = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Labels of several repositories. Each page is fetched for all of them at once with an aliased query rather than
+     * with one query per repository. Repositories that cannot be queried (i.e. unknown ones) are left out.
+     */
+    public Map<String, Map<String, Label>> labels(Collection<String> repos) {
+        api();
+        Map<String, Map<String, Label>> labels = new HashMap<>();
+        Map<String, String> cursors = new LinkedHashMap<>();
+        for (String repo : repos) {
+            cursors.put(repo, null);
+        }
+        while (!cursors.isEmpty()) {
+            List<String> pending = new ArrayList<>(cursors.keySet());
+            List<LabelConnection> pages = batch.query(pending,
+                    (graph, repo) -> graph.repository(repo.split("/")[0], repo.split("/")[1])
+                            .labels(100, cursors.get(repo)));
+            cursors.clear();
+            for (int i = 0; i < pending.size(); i++) {
+                LabelConnection page = pages.get(i);
+                if (page == null) {
+                    continue;
+                }
+                String repo = pending.get(i);
+                Map<String, Label> repoLabels = labels.computeIfAbsent(repo, r -> new HashMap<>());
+                for (Label label : page.nodes()) {
+                    repoLabels.put(label.name(), label);
+                }
+                if (page.pageInfo().hasNextPage()) {
+                    cursors.put(repo, page.pageInfo().endCursor());
+                }
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * Labels of a repository, read through the REST API and the {@link HttpCache}. An unchanged label set is answered
+     * with 304 Not Modified, which does not count against the rate limit, so re-syncing one repository is nearly free.
+     */
+    public Map<String, Label> labels(String repo) {
+        Map<String, Label> labels = new HashMap<>();
+        WebTarget target = githubApi.path("repos").path(repo).path("labels").queryParam("per_page", 100);
+        while (target != null) {
+            HttpCache.CachedResponse response = getCached(target);
+            try {
+                for (JsonNode node : objectMapper.readTree(response.body())) {
+                    String name = node.get("name").asText();
+                    String description = node.hasNonNull("description") ? node.get("description").asText() : null;
+                    labels.put(name, new Label(name, description));
+                }
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Failed to parse labels of " + repo, e);
+            }
+            String next = nextLink(response.link());
+            target = next == null ? null : client.target(next);
+        }
+        return labels;
+    }
+
+    /**
+     * GETs a REST resource, revalidating a previously cached response rather than downloading it again.
+     */
+    public HttpCache.CachedResponse getCached(WebTarget target) {
+        return httpCache.get(target, this::addGithubHeaders);
+    }
+
+    private static String nextLink(String link) {
+        if (link == null) {
+            return null;
+        }
+        Matcher matcher = NEXT_LINK.matcher(link);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * The GraphQL budget as last reported by Github, along with the current request concurrency.
+     */
+    public RateLimiter.Budget rateLimit() {
+        api();
+        return rateLimiter.budget();
     }
 
     public WebTarget githubApi() {
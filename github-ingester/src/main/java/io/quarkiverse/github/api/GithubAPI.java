@@ -2,6 +2,7 @@ package io.quarkiverse.github.api;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 import jakarta.annotation.Nullable;
 
@@ -9,11 +10,13 @@ import io.quarkiverse.github.api.Discussions.DiscussionCategoryConnection;
 import io.quarkiverse.github.api.Discussions.DiscussionConnection;
 import io.quarkiverse.github.api.Discussions.DiscussionConnectionForBasicReport;
 import io.quarkiverse.github.api.GithubConnection.IterableConnection;
+import io.quarkiverse.github.api.GithubConnection.PrefetchingConnection;
 import io.quarkiverse.github.api.Issues.IssueConnection;
 import io.quarkiverse.github.api.Issues.IssueConnectionForBasicReport;
 import io.quarkiverse.github.api.Labels.LabelConnection;
 import io.quarkiverse.graphql.client.ArgsOnly;
 import io.quarkiverse.graphql.client.DefaultVariables;
+import io.quarkiverse.graphql.client.GraphField;
 import io.quarkiverse.graphql.client.Query;
 
 public interface GithubAPI {
@@ -47,6 +50,34 @@ public interface GithubAPI {
             return discussionCategories;
         }
 
+        @Query
+        @GraphField("labels")
+        CompletionStage<LabelConnection> labelsAsync(int first, @Nullable String after);
+
+        default CompletionStage<Map<String, Labels.Label>> labelsAsync() {
+            return GithubConnection.collectAsync((after) -> labelsAsync(100, after)).thenApply(nodes -> {
+                Map<String, Labels.Label> labels = new HashMap<>();
+                for (Labels.Label label : nodes) {
+                    labels.put(label.name(), label);
+                }
+                return labels;
+            });
+        }
+
+        @Query
+        @GraphField("discussionCategories")
+        CompletionStage<DiscussionCategoryConnection> discussionCategoriesAsync(int first, @Nullable String after);
+
+        default CompletionStage<Map<String, Discussions.DiscussionCategory>> discussionCategoriesAsync() {
+            return GithubConnection.collectAsync((after) -> discussionCategoriesAsync(100, after)).thenApply(nodes -> {
+                Map<String, Discussions.DiscussionCategory> discussionCategories = new HashMap<>();
+                for (Discussions.DiscussionCategory discussionCategory : nodes) {
+                    discussionCategories.put(discussionCategory.name(), discussionCategory);
+                }
+                return discussionCategories;
+            });
+        }
+
         interface TailoredDiscussions {
             @Query
             @ArgsOnly
@@ -61,6 +92,10 @@ public interface GithubAPI {
                 return new IterableConnection<Discussions.Discussion>((after) -> full(pageSize, after));
             }
 
+            default PrefetchingConnection<Discussions.Discussion> prefetch(int pageSize, int readAhead) {
+                return new PrefetchingConnection<Discussions.Discussion>((after) -> full(pageSize, after), readAhead);
+            }
+
             @Query
             @ArgsOnly
             @DefaultVariables(".nodes.labels.first: 100")
@@ -96,6 +131,12 @@ public interface GithubAPI {
                         (after) -> full(pageSize, null, after));
             }
 
+            default PrefetchingConnection<Issues.Issue> prefetch(int pageSize, String since, int readAhead) {
+                Issues.Since filterBy = since != null ? new Issues.Since(since) : null;
+                return new PrefetchingConnection<Issues.Issue>(
+                        (after) -> full(pageSize, filterBy, after), readAhead);
+            }
+
             @Query
             @ArgsOnly
             @DefaultVariables(".nodes.labels.first: 100")
@@ -1,8 +1,16 @@
 package io.quarkiverse.github.api;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
 
 public interface GithubConnection<T> {
     PageInfo pageInfo();
@@ -13,6 +21,29 @@ public interface GithubConnection<T> {
         GithubConnection<T> query(String cursor);
     }
 
+    interface AsyncPaginateQuery<T> {
+        CompletionStage<? extends GithubConnection<T>> query(String cursor);
+    }
+
+    /**
+     * Collects every page of a connection without blocking: each page request is chained onto the completion of the
+     * previous one.
+     */
+    static <T> CompletionStage<List<T>> collectAsync(AsyncPaginateQuery<T> paginateQuery) {
+        return collectAsync(paginateQuery, null, new ArrayList<>());
+    }
+
+    private static <T> CompletionStage<List<T>> collectAsync(AsyncPaginateQuery<T> paginateQuery, String cursor,
+            List<T> nodes) {
+        return paginateQuery.query(cursor).thenCompose(connection -> {
+            nodes.addAll(connection.nodes());
+            if (connection.pageInfo().hasNextPage()) {
+                return collectAsync(paginateQuery, connection.pageInfo().endCursor(), nodes);
+            }
+            return CompletableFuture.completedStage(nodes);
+        });
+    }
+
     public class IterableConnection<T> implements Iterable<T> {
         private final PaginateQuery<T> paginateQuery;
 
@@ -54,4 +85,125 @@ public interface GithubConnection<T> {
             return new ConnectionIterator();
         }
     }
+
+    /**
+     * Pages through a connection like {@link IterableConnection}, but fetches the following pages on a virtual thread
+     * while the caller is still working through the current one. At most {@code readAhead} pages are ahead of the
+     * caller, counting the one being fetched.
+     *
+     * If the caller stops iterating before the last page (i.e. a {@code break} out of the loop), the fetcher stays
+     * parked waiting for room. Use in a try-with-resources block so that {@link #close()} stops any outstanding
+     * fetchers.
+     */
+    public class PrefetchingConnection<T> implements Iterable<T>, AutoCloseable {
+        private final PaginateQuery<T> paginateQuery;
+        private final int readAhead;
+        private final List<PrefetchIterator> iterators = new CopyOnWriteArrayList<>();
+
+        public PrefetchingConnection(PaginateQuery<T> paginateQuery, int readAhead) {
+            if (readAhead < 1) {
+                throw new IllegalArgumentException("readAhead must be at least 1: " + readAhead);
+            }
+            this.paginateQuery = paginateQuery;
+            this.readAhead = readAhead;
+        }
+
+        record Page<T>(List<T> nodes, boolean last, RuntimeException error) {
+        }
+
+        class PrefetchIterator implements Iterator<T>, AutoCloseable {
+            private final BlockingQueue<Page<T>> pages = new ArrayBlockingQueue<>(readAhead);
+            // taken before a page is fetched rather than when it is queued, so the fetch in flight counts as well
+            private final Semaphore slots = new Semaphore(readAhead);
+            private final Thread fetcher;
+            private Iterator<T> currentIterator = Collections.emptyIterator();
+            private boolean finished = false;
+
+            PrefetchIterator() {
+                fetcher = Thread.ofVirtual().name("github-prefetch").start(this::fetch);
+            }
+
+            private void fetch() {
+                String cursor = null;
+                try {
+                    while (true) {
+                        slots.acquire();
+                        Page<T> page;
+                        try {
+                            GithubConnection<T> connection = paginateQuery.query(cursor);
+                            boolean last = !connection.pageInfo().hasNextPage();
+                            page = new Page<>(connection.nodes(), last, null);
+                            cursor = connection.pageInfo().endCursor();
+                        } catch (RuntimeException e) {
+                            page = new Page<>(List.of(), true, e);
+                        }
+                        pages.put(page);
+                        if (page.last()) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // closed by the consumer
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (!currentIterator.hasNext()) {
+                    if (finished) {
+                        return false;
+                    }
+                    Page<T> page;
+                    try {
+                        page = pages.take();
+                        slots.release();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        close();
+                        throw new RuntimeException("Interrupted while waiting for next page", e);
+                    }
+                    if (page.last()) {
+                        finished = true;
+                        iterators.remove(this);
+                    }
+                    if (page.error() != null) {
+                        throw page.error();
+                    }
+                    currentIterator = page.nodes().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return currentIterator.next();
+            }
+
+            @Override
+            public void close() {
+                finished = true;
+                currentIterator = Collections.emptyIterator();
+                fetcher.interrupt();
+                pages.clear();
+                iterators.remove(this);
+            }
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            PrefetchIterator iterator = new PrefetchIterator();
+            iterators.add(iterator);
+            return iterator;
+        }
+
+        @Override
+        public void close() {
+            for (PrefetchIterator iterator : iterators) {
+                iterator.close();
+            }
+        }
+    }
 }
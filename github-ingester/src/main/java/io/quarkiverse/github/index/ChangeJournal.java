@@ -0,0 +1,189 @@
+package io.quarkiverse.github.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.github.index.model.ChangeSet;
+import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.AtomicFiles;
+
+/**
+ * Write-ahead journal of the change sets applied to the caches derived from the pull cache, i.e. summaries and
+ * embeddings. Those caches are only written when evicted or on shutdown, so a change set is appended here, and forced
+ * to disk, before it is applied to them. Each derived cache saves the sequence number of the last entry it applied,
+ * and on startup {@link PruneService} replays the entries a cache had not saved yet instead of rebuilding it. The
+ * caches report what they read and saved through {@link #saved}, and an entry is dropped once all of them saved it.
+ *
+ * The journal is one JSON entry per line. A line that cannot be read, i.e. one cut short by a crash, is dropped.
+ */
+@ApplicationScoped
+public class ChangeJournal {
+    static AppLogger log = AppLogger.getLogger(ChangeJournal.class);
+
+    public static final String PULL = "pull";
+    public static final String PRUNE = "prune";
+    // first line after a rewrite, keeps the sequence going when every entry was dropped
+    static final String CHECKPOINT = "checkpoint";
+    public static final String SUMMARIES = "summaries";
+    public static final String EMBEDDINGS = "embeddings";
+    // the caches an entry must be saved by before it is dropped
+    static final Set<String> CACHES = Set.of(SUMMARIES, EMBEDDINGS);
+
+    @ConfigProperty(name = "product.manager.cache.dir")
+    String baseDirectory;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    /**
+     * @param op {@link #PULL} for items that were pulled again, {@link #PRUNE} for items that were removed
+     */
+    public record Entry(long seq, String op, String repo, Set<Integer> discussions, Set<Integer> issues) {
+        public ChangeSet changeSet() {
+            return new ChangeSet(discussions, issues);
+        }
+    }
+
+    private List<Entry> entries;
+    private long lastSeq;
+    // per repository, the last entry each cache has on disk
+    private final Map<String, Map<String, Long>> saved = new HashMap<>();
+
+    public synchronized Entry append(String op, String repoName, ChangeSet changeSet) {
+        load();
+        Entry entry = new Entry(lastSeq + 1, op, repoName, Set.copyOf(changeSet.discussions()),
+                Set.copyOf(changeSet.issues()));
+        try {
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.createDirectories(path().getParent());
+            try (FileChannel channel = FileChannel.open(path(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write change journal", e);
+        }
+        lastSeq = entry.seq();
+        entries.add(entry);
+        return entry;
+    }
+
+    public synchronized long lastSeq() {
+        load();
+        return lastSeq;
+    }
+
+    public synchronized List<Entry> entries() {
+        load();
+        return List.copyOf(entries);
+    }
+
+    /**
+     * Rewrites the journal with only the entries that are still needed.
+     */
+    public synchronized void retain(Predicate<Entry> needed) {
+        load();
+        if (entries.stream().allMatch(needed)) {
+            return;
+        }
+        entries.removeIf(needed.negate());
+        rewrite();
+    }
+
+    /**
+     * Records that {@code cache} has the repository's entries up to {@code seq} on disk, read or just saved, and drops
+     * the entries every cache has.
+     */
+    public synchronized void saved(String cache, String repoName, long seq) {
+        Map<String, Long> caches = saved.computeIfAbsent(repoName, name -> new HashMap<>());
+        caches.merge(cache, seq, Math::max);
+        if (caches.keySet().containsAll(CACHES)) {
+            long everywhere = Collections.min(caches.values());
+            retain(entry -> !entry.repo().equals(repoName) || entry.seq() > everywhere);
+        }
+    }
+
+    public synchronized void forget(String repoName) {
+        saved.remove(repoName);
+        retain(entry -> !entry.repo().equals(repoName));
+    }
+
+    private Path path() {
+        return Path.of(baseDirectory, "changes.journal");
+    }
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+        entries = new ArrayList<>();
+        Path path = path();
+        if (!Files.exists(path)) {
+            return;
+        }
+        boolean torn = false;
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = objectMapper.readValue(line, Entry.class);
+                } catch (IOException e) {
+                    torn = true;
+                    continue;
+                }
+                lastSeq = Math.max(lastSeq, entry.seq());
+                if (!CHECKPOINT.equals(entry.op())) {
+                    entries.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            log.errorv("Failed to read change journal: {0}", e.getMessage());
+            torn = true;
+        }
+        if (torn) {
+            log.warn("Dropping unreadable entries of the change journal");
+            // a later append must not land on the same line as the torn one
+            rewrite();
+        }
+    }
+
+    private void rewrite() {
+        try {
+            AtomicFiles.write(path(), out -> {
+                out.write((objectMapper.writeValueAsString(new Entry(lastSeq, CHECKPOINT, null, Set.of(), Set.of()))
+                        + "\n").getBytes(StandardCharsets.UTF_8));
+                for (Entry entry : entries) {
+                    out.write((objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write change journal", e);
+        }
+    }
+}
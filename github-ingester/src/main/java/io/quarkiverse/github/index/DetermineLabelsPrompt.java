@@ -1,6 +1,7 @@
 package io.quarkiverse.github.index;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import jakarta.enterprise.context.InvocationScoped;
@@ -103,4 +104,50 @@ public interface DetermineLabelsPrompt {
             {/for}
             """)
     Set<String> labelIssue(Collection<Label> labels, Issue issue);
+
+    @SystemMessage("""
+            Act as an expert classifier of Github discussions and issues. Your task is to analyze each of the provided items and assign it to the most relevant categories from the list below based on the provided descriptions.
+
+            ### Categories
+            {#each labels}
+            {it_index + 1}. **{it.name}**: {it.description}
+            {/each}
+
+            ### Instructions
+            - Each item starts with a line `=== Item <id>`.
+            - Read each item carefully and classify it on its own.
+            - Compare the content against the category name and descriptions.
+            - Choose as many categories as are relevant.
+            - Output ONLY the item ids and category names.
+
+            ### Output Format
+            For every item, output a line with `### ` followed by the item id, then the category names of that item delimited by a new line.
+            Output the heading even if no category fits. For example:
+            ### D12
+            category1
+            category2
+            ### I7
+            ### I9
+            category3
+                        """)
+    @UserMessage("""
+            {#for item in items}
+            === Item {item.id}
+            # Title: {item.title}
+            ## Type: {item.kind}
+            ## Author: {item.author}
+
+            {item.body}
+
+            # Comments:
+
+            {#for comment in item.comments}
+            ## Author: {comment.author}
+
+            {comment.body}
+            {/for}
+
+            {/for}
+            """)
+    String labelBatch(Collection<Label> labels, List<LabelBatch.Item> items);
 }
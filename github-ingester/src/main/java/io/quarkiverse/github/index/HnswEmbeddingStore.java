@@ -0,0 +1,1031 @@
+package io.quarkiverse.github.index;
+
+import static io.quarkiverse.github.index.ModelCodec.readString;
+import static io.quarkiverse.github.index.ModelCodec.readVarInt;
+import static io.quarkiverse.github.index.ModelCodec.writeString;
+import static io.quarkiverse.github.index.ModelCodec.writeVarInt;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.AtomicFiles;
+import io.quarkiverse.github.util.HnswGraph;
+import io.quarkiverse.github.util.HnswGraph.Neighbor;
+import io.quarkiverse.github.util.MappedVectors;
+import io.quarkiverse.github.util.MappedVectors.Encoding;
+import io.quarkiverse.github.util.Vectors;
+
+/**
+ * Embedding store that finds the nearest segments through an {@link HnswGraph} instead of comparing the query with
+ * every stored vector. A search filter is applied while walking the graph, so the matches are the nearest segments the
+ * filter lets through rather than the nearest segments with the rejected ones dropped afterwards. When the store, or
+ * the part of it the filter lets through, holds no more than {@link Options#exactSearchLimit()} segments it is
+ * compared exactly, since the graph does not pay off there and exact search never misses a match.
+ *
+ * The vectors are kept in memory mapped files, {@code embeddings-<generation>.f32} with the full vectors and, if
+ * {@link Options#quantization()} is not {@link Encoding#FLOAT32}, {@code embeddings-<generation>.i8} or {@code .f16}
+ * with the quantized ones the graph is walked with. The nodes a search finds that way are ranked again by their full
+ * vectors, so quantizing costs a little recall but does not change the scores. The full vectors are only read for
+ * those, so the operating system keeps little more than the quantized ones in memory.
+ *
+ * The graph and the segments are kept in a checkpoint, {@code embeddings.hnsw} say, and the segments added or removed
+ * since in a log, {@code embeddings-<number>.log}, so that {@link #save()} appends what changed instead of writing the
+ * whole store. Opening the store replays the log onto the checkpoint: an add is logged with the layers its node went
+ * on, so adding the vector again, already in the vector files, rebuilds the same graph. A record cut short by a crash
+ * fails its checksum and is dropped along with the rest of the log.
+ *
+ * {@link #compact()}, meant to run in the background, writes a new checkpoint and starts a new log once the log holds
+ * enough records to slow down opening the store. Once enough of the graph is removed segments, which stay in it,
+ * skipped, it rebuilds the graph from the live ones instead, into vector files of the next generation, and drops the
+ * files of the previous one once the checkpoint points to the new. Searches go on while it runs.
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+    static AppLogger log = AppLogger.getLogger(HnswEmbeddingStore.class);
+
+    static final int MAGIC = 0x48455331;
+    // version 1 kept the vectors in the graph, version 2 had no log
+    static final int VERSION = 3;
+    static final int LOG_MAGIC = 0x48454c47;
+    static final int LOG_VERSION = 1;
+    static final int LOG_HEADER_BYTES = 4 + 4;
+    // payload length, checksum
+    static final int RECORD_HEADER_BYTES = 4 + 4;
+    static final byte ADD = 0;
+    static final byte REMOVE = 1;
+    // the graph is rebuilt without removed segments once they are this share of it
+    static final double COMPACT_RATIO = 0.2;
+    // a checkpoint is written once the log holds more records than this, or than a tenth of the nodes
+    static final int LOG_MIN_RECORDS = 1000;
+    static final String LOG_EXTENSION = "log";
+    private static final long SEED = 42;
+
+    /**
+     * @param m links per node in the graph, more gives better recall for more memory and slower adds
+     * @param efConstruction how many candidates an add looks at to pick the links of a node
+     * @param efSearch how many candidates a search keeps, more gives better recall for slower searches
+     * @param exactSearchLimit up to how many segments a search compares them all instead of using the graph
+     * @param quantization how the vectors the graph is walked with are stored, applied to an existing store the next
+     *        time it is rebuilt
+     */
+    public record Options(int m, int efConstruction, int efSearch, int exactSearchLimit, Encoding quantization) {
+    }
+
+    private final Path path;
+    private final Options options;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // held while the files are written, so saves and compactions take turns
+    private final Object files = new Object();
+    // created with the dimension of the first embedding added
+    private HnswGraph graph;
+    // full precision vectors, also the ones the graph is walked with when those are not quantized
+    private MappedVectors full;
+    private long generation;
+    // generations are numbered before a rebuild knows whether it will be kept
+    private final AtomicLong lastGeneration = new AtomicLong();
+    // per node, null once removed
+    private String[] ids = new String[16];
+    private TextSegment[] segments = new TextSegment[16];
+    private final Map<String, Integer> nodes = new HashMap<>();
+    // log records of the changes since the last save
+    private List<byte[]> pending = new ArrayList<>();
+    // set by changes the log cannot record, which the next save writes a checkpoint for
+    private boolean checkpointNeeded;
+    // counts every change, so a rebuild can tell whether the store changed while it ran
+    private long modifications;
+    private long logNumber;
+    private FileChannel logChannel;
+    private volatile int loggedRecords;
+    private boolean closed;
+    // runs between building a graph and swapping it in, where tests change the store under a rebuild
+    Runnable afterBuild = () -> {
+    };
+
+    private HnswEmbeddingStore(Path path, Options options) {
+        this.path = path;
+        this.options = options;
+    }
+
+    /**
+     * Opens the store kept in {@code path}, or an empty one if there is no such file.
+     */
+    public static HnswEmbeddingStore open(Path path, Options options) throws IOException {
+        HnswEmbeddingStore store = new HnswEmbeddingStore(path, options);
+        try {
+            if (Files.exists(path)) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+                    store.read(new DataInputStream(in));
+                }
+            }
+            synchronized (store.files) {
+                if (store.checkpointNeeded) {
+                    store.checkpoint();
+                }
+                // left by a rebuild or a checkpoint that did not get to replace or clean up after the current one
+                store.deleteFiles(number -> store.graph == null || number != store.generation,
+                        number -> number != store.logNumber);
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the files of the store kept in {@code path}, which must not be open.
+     */
+    public static void delete(Path path) throws IOException {
+        new HnswEmbeddingStore(path, null).deleteFiles(number -> true, number -> true);
+        Files.deleteIfExists(path);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        addAll(ids, embeddings, segments);
+        return ids;
+    }
+
+    /**
+     * Adds the embeddings, replacing those already stored under the same ids.
+     *
+     * @param segments null to store the embeddings without segments
+     */
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (ids.size() != embeddings.size() || (segments != null && segments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings and segments must be of the same size");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                if (graph == null) {
+                    createGraph(vector.length);
+                }
+                removeNode(ids.get(i));
+                if (graph.vectors() != full) {
+                    full.truncate(graph.size());
+                    full.add(vector);
+                }
+                int node = graph.add(vector);
+                String id = ids.get(i);
+                TextSegment segment = segments == null ? null : segments.get(i);
+                put(node, id, segment);
+                int level = graph.level(node);
+                pending.add(encode(out -> {
+                    out.writeByte(ADD);
+                    out.writeInt(node);
+                    out.writeByte(level);
+                    writeString(out, id);
+                    writeSegment(out, segment);
+                }));
+                modifications++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create the vector files of " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // callers hold the write lock
+    private void createGraph(int dimension) throws IOException {
+        generation = lastGeneration.incrementAndGet();
+        full = openVectors(generation, Encoding.FLOAT32, dimension, 0);
+        Vectors quantized = options.quantization() == Encoding.FLOAT32 ? full
+                : openVectors(generation, options.quantization(), dimension, 0);
+        graph = new HnswGraph(quantized, options.m(), options.efConstruction(), SEED);
+        // the log only holds changes to the graph the checkpoint has
+        checkpointNeeded = true;
+        pending.clear();
+    }
+
+    private void put(int node, String id, TextSegment segment) {
+        ensureCapacity(node + 1);
+        ids[node] = id;
+        segments[node] = segment;
+        nodes.put(id, node);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::removeNode);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the segments whose metadata the filter matches. Embeddings stored without a segment are kept.
+     */
+    @Override
+    public void removeAll(Filter filter) {
+        lock.writeLock().lock();
+        try {
+            for (int node = 0; graph != null && node < graph.size(); node++) {
+                if (ids[node] != null && segments[node] != null && filter.test(segments[node].metadata())) {
+                    removeNode(ids[node]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            // the files go with the next checkpoint
+            closeVectors();
+            graph = null;
+            full = null;
+            ids = new String[16];
+            segments = new TextSegment[16];
+            nodes.clear();
+            pending.clear();
+            checkpointNeeded = true;
+            modifications++;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close the vector files of " + path, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // callers hold the write lock
+    private void removeNode(String id) {
+        Integer node = nodes.remove(id);
+        if (node != null) {
+            graph.delete(node);
+            ids[node] = null;
+            segments[node] = null;
+            pending.add(encode(out -> {
+                out.writeByte(REMOVE);
+                out.writeInt(node);
+            }));
+            modifications++;
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        lock.readLock().lock();
+        try {
+            if (graph == null) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            float[] query = request.queryEmbedding().vector();
+            int k = request.maxResults();
+            Filter filter = request.filter();
+            IntPredicate accept = filter == null ? null : node -> {
+                TextSegment segment = segments[node];
+                return segment == null || filter.test(segment.metadata());
+            };
+            List<Neighbor> found;
+            int[] few = fewNodes(accept);
+            int ef = Math.max(options.efSearch(), k);
+            if (few != null) {
+                found = graph.exact(query, k, few, full);
+            } else if (graph.vectors() == full) {
+                found = graph.search(query, k, ef, accept);
+            } else {
+                // all the nodes the graph search kept, ranked again by their full vectors
+                int[] candidates = graph.search(query, ef, ef, accept).stream().mapToInt(Neighbor::node).toArray();
+                found = graph.exact(query, k, candidates, full);
+            }
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(found.size());
+            for (Neighbor neighbor : found) {
+                double score = RelevanceScore.fromCosineSimilarity(neighbor.similarity());
+                if (score >= request.minScore()) {
+                    int node = neighbor.node();
+                    matches.add(new EmbeddingMatch<>(score, ids[node], Embedding.from(full.vector(node)),
+                            segments[node]));
+                }
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The live nodes {@code accept} lets through if there are no more than the exact search limit of them, otherwise
+     * null. Stops looking as soon as there are too many, so a broad filter costs little.
+     */
+    private int[] fewNodes(IntPredicate accept) {
+        int limit = options.exactSearchLimit();
+        if (accept == null) {
+            return graph.liveCount() <= limit ? nodes.values().stream().mapToInt(Integer::intValue).toArray() : null;
+        }
+        int[] few = new int[Math.min(limit, graph.liveCount())];
+        int count = 0;
+        for (int node = 0; node < graph.size(); node++) {
+            if (ids[node] != null && accept.test(node)) {
+                if (count == few.length) {
+                    return null;
+                }
+                few[count++] = node;
+            }
+        }
+        return Arrays.copyOf(few, count);
+    }
+
+    /**
+     * Passes each segment whose metadata the filter matches to {@code consumer}, with its embedding.
+     */
+    public void forEach(Filter filter, BiConsumer<TextSegment, Embedding> consumer) {
+        lock.readLock().lock();
+        try {
+            for (int node = 0; graph != null && node < graph.size(); node++) {
+                if (ids[node] != null && segments[node] != null && filter.test(segments[node].metadata())) {
+                    consumer.accept(segments[node], Embedding.from(full.vector(node)));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, grown);
+        segments = Arrays.copyOf(segments, grown);
+    }
+
+    /**
+     * Makes the changes since the last save durable: the vectors added are forced to disk, then the records of the
+     * changes are appended to the log. Writes a checkpoint instead after changes the log cannot hold, such as
+     * {@link #removeAll()}.
+     */
+    public void save() throws IOException {
+        synchronized (files) {
+            List<byte[]> records;
+            lock.readLock().lock();
+            try {
+                if (checkpointNeeded || logChannel == null) {
+                    if (!checkpointNeeded && pending.isEmpty()) {
+                        return;
+                    }
+                    records = null;
+                } else {
+                    forceVectors();
+                    records = pending;
+                    pending = new ArrayList<>();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (records == null) {
+                checkpoint();
+                return;
+            }
+            try {
+                appendLog(records);
+            } catch (IOException e) {
+                // the records may be in part in the log, which a checkpoint replaces
+                lock.writeLock().lock();
+                try {
+                    checkpointNeeded = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Whether {@link #compact()} has anything to do.
+     */
+    public boolean needsCompaction() {
+        lock.readLock().lock();
+        try {
+            return rebuildNeeded() || loggedRecords > Math.max(LOG_MIN_RECORDS, nodes.size() / 10);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the graph without the removed segments if there are enough of them, or with other vectors if the
+     * quantization changed, and otherwise writes a checkpoint if the log is long. Searches can run meanwhile, while
+     * changes and saves wait for it to be done. Does nothing once the store is closed.
+     */
+    public void compact() throws IOException {
+        synchronized (files) {
+            if (closed) {
+                return;
+            }
+            boolean rebuild;
+            boolean fold;
+            lock.readLock().lock();
+            try {
+                rebuild = rebuildNeeded();
+                fold = loggedRecords > Math.max(LOG_MIN_RECORDS, nodes.size() / 10);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (rebuild) {
+                rebuild();
+            } else if (fold) {
+                checkpoint();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (files) {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+                closeVectors();
+                if (logChannel != null) {
+                    logChannel.close();
+                    logChannel = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // callers hold a lock
+    private boolean rebuildNeeded() {
+        return graph != null
+                && (graph.deletedCount() > graph.size() * COMPACT_RATIO || encoding() != options.quantization());
+    }
+
+    /**
+     * Writes the whole store to the checkpoint file, then starts a new log and deletes the files the checkpoint no
+     * longer needs.
+     */
+    // callers hold the files lock
+    private void checkpoint() throws IOException {
+        long nextLog = logNumber + 1;
+        long keptGeneration;
+        lock.readLock().lock();
+        try {
+            forceVectors();
+            AtomicFiles.write(path, out -> writeCheckpoint(new DataOutputStream(out), nextLog));
+            pending = new ArrayList<>();
+            checkpointNeeded = false;
+            keptGeneration = graph == null ? generation + 1 : generation;
+        } finally {
+            lock.readLock().unlock();
+        }
+        startLog(nextLog);
+        // generations after the kept one belong to a graph created since, or to a rebuild under way
+        deleteFiles(number -> number < keptGeneration, number -> number < nextLog);
+    }
+
+    /**
+     * Builds the graph again from the live nodes, with their vectors in the files of a new generation, and swaps it in
+     * unless the store changed meanwhile.
+     */
+    // callers hold the files lock
+    private void rebuild() throws IOException {
+        Rebuilt rebuilt;
+        long seen;
+        lock.readLock().lock();
+        try {
+            seen = modifications;
+            rebuilt = build();
+        } finally {
+            lock.readLock().unlock();
+        }
+        afterBuild.run();
+        lock.writeLock().lock();
+        try {
+            if (modifications != seen) {
+                log.debugv("Embeddings {0} changed while their graph was rebuilt, trying again later", path);
+                rebuilt.close();
+                return;
+            }
+            swap(rebuilt);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        checkpoint();
+    }
+
+    private record Rebuilt(long generation, HnswGraph graph, MappedVectors full, String[] ids,
+            TextSegment[] segments, Map<String, Integer> nodes) {
+        void close() throws IOException {
+            full.close();
+            if (graph.vectors() != full) {
+                ((MappedVectors) graph.vectors()).close();
+                Files.deleteIfExists(((MappedVectors) graph.vectors()).path());
+            }
+            Files.deleteIfExists(full.path());
+        }
+    }
+
+    // callers hold a lock
+    private Rebuilt build() throws IOException {
+        long next = lastGeneration.incrementAndGet();
+        int dimension = graph.dimension();
+        Encoding quantization = options.quantization();
+        MappedVectors nextFull = openVectors(next, Encoding.FLOAT32, dimension, 0);
+        Vectors nextQuantized = quantization == Encoding.FLOAT32 ? nextFull
+                : openVectors(next, quantization, dimension, 0);
+        // full is null when the vectors were read onto the heap
+        Vectors source = full != null ? full : graph.vectors();
+        int[] renumbered = new int[graph.size()];
+        HnswGraph compacted = graph.compact(renumbered, source, nextQuantized);
+        String[] compactedIds = new String[Math.max(16, compacted.size())];
+        TextSegment[] compactedSegments = new TextSegment[compactedIds.length];
+        Map<String, Integer> compactedNodes = new HashMap<>();
+        for (int node = 0; node < renumbered.length; node++) {
+            int to = renumbered[node];
+            if (to >= 0) {
+                if (nextQuantized != nextFull) {
+                    nextFull.add(source.vector(node));
+                }
+                compactedIds[to] = ids[node];
+                compactedSegments[to] = segments[node];
+                compactedNodes.put(ids[node], to);
+            }
+        }
+        return new Rebuilt(next, compacted, nextFull, compactedIds, compactedSegments, compactedNodes);
+    }
+
+    // callers hold the write lock
+    private void swap(Rebuilt rebuilt) throws IOException {
+        closeVectors();
+        generation = rebuilt.generation();
+        graph = rebuilt.graph();
+        full = rebuilt.full();
+        ids = rebuilt.ids();
+        segments = rebuilt.segments();
+        nodes.clear();
+        nodes.putAll(rebuilt.nodes());
+        // logged with the old numbering, and in the rebuilt graph already
+        pending.clear();
+        checkpointNeeded = true;
+    }
+
+    private void writeCheckpoint(DataOutput out, long logNumber) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(logNumber);
+        out.writeBoolean(graph != null);
+        if (graph == null) {
+            return;
+        }
+        out.writeLong(generation);
+        out.writeInt(encoding().ordinal());
+        out.writeInt(graph.dimension());
+        out.writeInt(graph.size());
+        graph.write(out);
+        for (int node = 0; node < graph.size(); node++) {
+            writeString(out, ids[node]);
+            if (ids[node] != null) {
+                writeSegment(out, segments[node]);
+            }
+        }
+    }
+
+    private void read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an HNSW embedding store: " + path);
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown HNSW embedding store version " + version + " of " + path);
+        }
+        // older versions have no log, and are written again as a checkpoint of this one
+        checkpointNeeded = version < VERSION;
+        logNumber = version < VERSION ? 0 : in.readLong();
+        if (!in.readBoolean()) {
+            return;
+        }
+        if (version == 1) {
+            // the vectors are read onto the heap, and moved to files by rebuilding the graph
+            graph = HnswGraph.read(in, null, SEED);
+            readSegments(in);
+            swap(build());
+            return;
+        }
+        generation = in.readLong();
+        lastGeneration.set(generation);
+        Encoding encoding = Encoding.values()[in.readInt()];
+        int dimension = in.readInt();
+        int size = in.readInt();
+        List<byte[]> records = version < VERSION ? List.of() : readLog();
+        int added = 0;
+        for (byte[] record : records) {
+            if (record[0] == ADD) {
+                added++;
+            }
+        }
+        // vectors are forced to disk before the checkpoint or log records that refer to them are written
+        full = openVectors(generation, Encoding.FLOAT32, dimension, size + added);
+        Vectors quantized = encoding == Encoding.FLOAT32 ? full
+                : openVectors(generation, encoding, dimension, size + added);
+        // the graph keeps the m and efConstruction it was built with
+        graph = HnswGraph.read(in, quantized, SEED);
+        readSegments(in);
+        replay(records);
+    }
+
+    private void readSegments(DataInput in) throws IOException {
+        ensureCapacity(graph.size());
+        for (int node = 0; node < graph.size(); node++) {
+            String id = readString(in);
+            if (id != null) {
+                put(node, id, readSegment(in));
+            }
+        }
+    }
+
+    /**
+     * The payloads of the complete records in the current log. The rest of the log is cut off, and the log is left
+     * open for the records of the next saves.
+     */
+    private List<byte[]> readLog() throws IOException {
+        Path logPath = logPath(logNumber);
+        List<byte[]> records = new ArrayList<>();
+        if (!Files.exists(logPath)) {
+            // the checkpoint was written, but not the start of its log
+            startLog(logNumber);
+            return records;
+        }
+        FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            if (size < LOG_HEADER_BYTES) {
+                channel.truncate(0);
+                channel.write(logHeader(), 0);
+                size = LOG_HEADER_BYTES;
+            }
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != LOG_MAGIC || header.getInt() != LOG_VERSION) {
+                throw new IOException("Not an HNSW embedding store log: " + logPath);
+            }
+            long offset = LOG_HEADER_BYTES;
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            while (offset + RECORD_HEADER_BYTES <= size) {
+                recordHeader.clear();
+                readFully(channel, recordHeader, offset);
+                recordHeader.flip();
+                int length = recordHeader.getInt();
+                int checksum = recordHeader.getInt();
+                if (length < 1 || offset + RECORD_HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, offset + RECORD_HEADER_BYTES);
+                if (checksum != checksum(payload.array())) {
+                    break;
+                }
+                records.add(payload.array());
+                offset += RECORD_HEADER_BYTES + length;
+            }
+            if (offset < size) {
+                log.warnv("Dropping the incomplete end of embeddings log {0}", logPath);
+                channel.truncate(offset);
+            }
+            channel.position(offset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        logChannel = channel;
+        loggedRecords = records.size();
+        return records;
+    }
+
+    private void replay(List<byte[]> records) throws IOException {
+        for (byte[] record : records) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            byte operation = in.readByte();
+            int node = in.readInt();
+            if (operation == ADD) {
+                if (node != graph.size()) {
+                    throw new IOException("Embeddings log " + logPath(logNumber) + " adds node " + node + " to "
+                            + graph.size() + " nodes");
+                }
+                graph.addStored(in.readByte());
+                String id = readString(in);
+                put(node, id, readSegment(in));
+            } else if (operation == REMOVE) {
+                String id = node < graph.size() ? ids[node] : null;
+                if (id != null) {
+                    nodes.remove(id);
+                    graph.delete(node);
+                    ids[node] = null;
+                    segments[node] = null;
+                }
+            } else {
+                throw new IOException("Unknown record " + operation + " in embeddings log " + logPath(logNumber));
+            }
+        }
+        full.truncate(graph.size());
+    }
+
+    // callers hold the files lock
+    private void appendLog(List<byte[]> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        int bytes = 0;
+        for (byte[] record : records) {
+            bytes += RECORD_HEADER_BYTES + record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        for (byte[] record : records) {
+            buffer.putInt(record.length).putInt(checksum(record)).put(record);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            logChannel.write(buffer);
+        }
+        logChannel.force(false);
+        loggedRecords += records.size();
+    }
+
+    // callers hold the files lock
+    private void startLog(long number) throws IOException {
+        Path logPath = logPath(number);
+        FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            channel.write(logHeader());
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (logChannel != null) {
+            logChannel.close();
+        }
+        logChannel = channel;
+        logNumber = number;
+        loggedRecords = 0;
+    }
+
+    private static ByteBuffer logHeader() {
+        return ByteBuffer.allocate(LOG_HEADER_BYTES).putInt(LOG_MAGIC).putInt(LOG_VERSION).flip();
+    }
+
+    private interface Encoder {
+        void encode(DataOutput out) throws IOException;
+    }
+
+    private static byte[] encode(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            encoder.encode(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    // callers hold a lock
+    private void forceVectors() throws IOException {
+        if (graph != null) {
+            full.force();
+            if (graph.vectors() != full) {
+                ((MappedVectors) graph.vectors()).force();
+            }
+        }
+    }
+
+    private Encoding encoding() {
+        return graph.vectors() instanceof MappedVectors vectors ? vectors.encoding() : null;
+    }
+
+    private MappedVectors openVectors(long generation, Encoding encoding, int dimension, int size)
+            throws IOException {
+        Path vectorsPath = filePath(generation, encoding.extension());
+        if (size == 0) {
+            // anything there was left by a rebuild that never got written
+            Files.deleteIfExists(vectorsPath);
+        }
+        return MappedVectors.open(vectorsPath, encoding, dimension, size);
+    }
+
+    private void closeVectors() throws IOException {
+        if (graph != null && graph.vectors() instanceof MappedVectors vectors && vectors != full) {
+            vectors.close();
+        }
+        if (full != null) {
+            full.close();
+        }
+    }
+
+    private Path logPath(long number) {
+        return filePath(number, LOG_EXTENSION);
+    }
+
+    private Path filePath(long number, String extension) {
+        return path.resolveSibling(baseName() + "-" + number + "." + extension);
+    }
+
+    private String baseName() {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    /**
+     * Deletes the vector files of the generations and the logs whose numbers the predicates accept.
+     */
+    private void deleteFiles(LongPredicate generations, LongPredicate logs) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        String prefix = baseName() + "-";
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                if (!name.startsWith(prefix) || dot <= prefix.length()) {
+                    continue;
+                }
+                String number = name.substring(prefix.length(), dot);
+                if (!number.chars().allMatch(Character::isDigit)) {
+                    continue;
+                }
+                String extension = name.substring(dot + 1);
+                boolean delete;
+                if (extension.equals(LOG_EXTENSION)) {
+                    delete = logs.test(Long.parseLong(number));
+                } else if (Stream.of(Encoding.values()).anyMatch(encoding -> encoding.extension().equals(extension))) {
+                    delete = generations.test(Long.parseLong(number));
+                } else {
+                    delete = false;
+                }
+                if (delete) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static void writeSegment(DataOutput out, TextSegment segment) throws IOException {
+        out.writeBoolean(segment != null);
+        if (segment == null) {
+            return;
+        }
+        writeString(out, segment.text());
+        Map<String, Object> metadata = segment.metadata().toMap();
+        writeVarInt(out, metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Integer i) {
+                out.writeByte('i');
+                out.writeInt(i);
+            } else if (value instanceof Long l) {
+                out.writeByte('l');
+                out.writeLong(l);
+            } else if (value instanceof Float f) {
+                out.writeByte('f');
+                out.writeFloat(f);
+            } else if (value instanceof Double d) {
+                out.writeByte('d');
+                out.writeDouble(d);
+            } else if (value instanceof Boolean b) {
+                out.writeByte('b');
+                out.writeBoolean(b);
+            } else if (value instanceof UUID uuid) {
+                out.writeByte('u');
+                writeString(out, uuid.toString());
+            } else {
+                out.writeByte('s');
+                writeString(out, String.valueOf(value));
+            }
+        }
+    }
+
+    private static TextSegment readSegment(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        String text = readString(in);
+        int size = readVarInt(in);
+        Map<String, Object> metadata = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            Object value = switch (type) {
+                case 'i' -> in.readInt();
+                case 'l' -> in.readLong();
+                case 'f' -> in.readFloat();
+                case 'd' -> in.readDouble();
+                case 'b' -> in.readBoolean();
+                case 'u' -> UUID.fromString(readString(in));
+                case 's' -> readString(in);
+                default -> throw new IOException("Unknown metadata type " + (char) type + " of " + key);
+            };
+            metadata.put(key, value);
+        }
+        return TextSegment.from(text, Metadata.from(metadata));
+    }
+}
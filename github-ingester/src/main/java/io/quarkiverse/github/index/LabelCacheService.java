@@ -0,0 +1,257 @@
+package io.quarkiverse.github.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import io.quarkiverse.github.api.Discussions.Discussion;
+import io.quarkiverse.github.api.Issues.Issue;
+import io.quarkiverse.github.api.Labels.Label;
+import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.AtomicFiles;
+
+/**
+ * Remembers the labels the LLM inferred for unlabelled discussions and issues, so an item whose title and body have not
+ * changed is not sent to the LLM again when it is pulled because of a new comment.
+ *
+ * Entries are keyed by a hash of the title, the body and the version of the label set they were inferred from. The
+ * version is a hash of the label names and descriptions, and when it changes the whole cache of that repository is
+ * dropped.
+ */
+@ApplicationScoped
+public class LabelCacheService {
+    static AppLogger log = AppLogger.getLogger(LabelCacheService.class);
+
+    @Inject
+    PromptWrapper promptWrapper;
+
+    @ConfigProperty(name = "product.manager.cache.dir")
+    String baseDirectory;
+
+    @ConfigProperty(name = "product.manager.pull.label-batch-size", defaultValue = "10")
+    int batchSize;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    static class LabelCache {
+        public String labelSetVersion;
+
+        @JsonDeserialize(as = ConcurrentHashMap.class)
+        public Map<String, Set<String>> inferred = new ConcurrentHashMap<>();
+
+        @JsonIgnore
+        boolean dirty = false;
+
+        /**
+         * Makes the entries share one instance of each label, instead of the copy Jackson reads for every entry.
+         */
+        void intern() {
+            Map<String, String> labels = new HashMap<>();
+            inferred.replaceAll((key, inferredLabels) -> {
+                List<String> interned = new ArrayList<>(inferredLabels.size());
+                for (String label : inferredLabels) {
+                    interned.add(labels.computeIfAbsent(label, Function.identity()));
+                }
+                return Set.copyOf(interned);
+            });
+        }
+    }
+
+    private Map<String, LabelCache> labelCacheMap = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void preDestroy() {
+        for (String repoName : labelCacheMap.keySet()) {
+            save(repoName);
+        }
+    }
+
+    public void clear(String repoName) {
+        labelCacheMap.remove(repoName);
+        Path path = Path.of(baseDirectory, repoName, "labels.json");
+        try {
+            if (Files.exists(path)) {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to clear label cache", e);
+        }
+    }
+
+    private LabelCache load(String repoName) {
+        return labelCacheMap.computeIfAbsent(repoName, name -> {
+            Path path = Path.of(baseDirectory, name, "labels.json");
+            if (Files.exists(path)) {
+                try {
+                    LabelCache labelCache = objectMapper.readValue(path.toFile(), LabelCache.class);
+                    labelCache.intern();
+                    return labelCache;
+                } catch (IOException e) {
+                    log.errorv("Failed to load label cache for repo {0}: {1}", name, e.getMessage());
+                    try {
+                        Files.delete(path);
+                    } catch (IOException e2) {
+                    }
+                }
+            }
+            return new LabelCache();
+        });
+    }
+
+    private void save(String repoName) {
+        LabelCache labelCache = labelCacheMap.get(repoName);
+        if (labelCache == null) {
+            return;
+        }
+        if (!labelCache.dirty) {
+            return;
+        }
+        labelCache.dirty = false;
+        Path path = Path.of(baseDirectory, repoName, "labels.json");
+        try {
+            AtomicFiles.writeJson(objectMapper, path, labelCache);
+        } catch (IOException e) {
+            log.error("Failed to save label cache", e);
+        }
+    }
+
+    /**
+     * How many unlabelled items go into one labeling prompt.
+     */
+    public int batchSize() {
+        return Math.max(batchSize, 1);
+    }
+
+    /**
+     * Labels several discussions, sending the ones that are not cached to the LLM together in one prompt.
+     *
+     * @return the labels by discussion number
+     */
+    public Map<Integer, Set<String>> labelDiscussions(String repoName, Collection<Label> labels,
+            List<Discussion> discussions) {
+        return label(repoName, labels, discussions, Discussion::number, LabelBatch::item,
+                discussion -> promptWrapper.labelDiscussion(labels, discussion));
+    }
+
+    /**
+     * Labels several issues, sending the ones that are not cached to the LLM together in one prompt.
+     *
+     * @return the labels by issue number
+     */
+    public Map<Integer, Set<String>> labelIssues(String repoName, Collection<Label> labels, List<Issue> issues) {
+        return label(repoName, labels, issues, Issue::number, LabelBatch::item,
+                issue -> promptWrapper.labelIssue(labels, issue));
+    }
+
+    private record Uncached<T>(T value, LabelBatch.Item item, String key) {
+    }
+
+    private <T> Map<Integer, Set<String>> label(String repoName, Collection<Label> labels, List<T> values,
+            ToIntFunction<T> number, Function<T, LabelBatch.Item> toItem, Function<T, Set<String>> prompt) {
+        LabelCache labelCache = load(repoName);
+        String version = labelSetVersion(labels);
+        synchronized (labelCache) {
+            if (!version.equals(labelCache.labelSetVersion)) {
+                if (labelCache.labelSetVersion != null) {
+                    log.thinking("Label set changed, dropping " + labelCache.inferred.size() + " cached labelings");
+                }
+                labelCache.inferred.clear();
+                labelCache.labelSetVersion = version;
+                labelCache.dirty = true;
+            }
+        }
+        Map<Integer, Set<String>> result = new HashMap<>();
+        List<Uncached<T>> uncached = new ArrayList<>();
+        for (T value : values) {
+            LabelBatch.Item item = toItem.apply(value);
+            String key = sha256(version + "\n" + item.kind() + "\n" + item.title() + "\n"
+                    + (item.body() == null ? "" : item.body()));
+            Set<String> cached = labelCache.inferred.get(key);
+            if (cached != null) {
+                log.thinking("\treusing labels inferred earlier for " + item.kind() + " " + item.id());
+                result.put(number.applyAsInt(value), cached);
+            } else {
+                uncached.add(new Uncached<>(value, item, key));
+            }
+        }
+        Map<String, Set<String>> batched = new HashMap<>();
+        for (int i = 0; i < uncached.size() && batchSize > 1; i += batchSize) {
+            List<Uncached<T>> chunk = uncached.subList(i, Math.min(i + batchSize, uncached.size()));
+            if (chunk.size() > 1) {
+                batched.putAll(labelBatch(labels, chunk.stream().map(Uncached::item).toList()));
+            }
+        }
+        for (Uncached<T> entry : uncached) {
+            Set<String> inferred = batched.get(entry.item().id());
+            if (inferred == null) {
+                inferred = prompt.apply(entry.value());
+            }
+            labelCache.inferred.put(entry.key(), inferred);
+            labelCache.dirty = true;
+            result.put(number.applyAsInt(entry.value()), inferred);
+        }
+        return result;
+    }
+
+    /**
+     * One prompt for all items, which saves sending the category list once per item. Items missing from the answer
+     * are left out of the result so the caller labels them one at a time.
+     */
+    private Map<String, Set<String>> labelBatch(Collection<Label> labels, List<LabelBatch.Item> items) {
+        log.thinking("\tlabeling " + items.size() + " items in one prompt");
+        Map<String, Set<String>> parsed;
+        try {
+            parsed = LabelBatch.parse(promptWrapper.labelBatch(labels, items),
+                    items.stream().map(LabelBatch.Item::id).toList(), labels.stream().map(Label::name).toList());
+        } catch (RuntimeException e) {
+            log.warnv("Batch labeling failed, labeling one at a time: {0}", e.getMessage());
+            return Map.of();
+        }
+        if (parsed.size() < items.size()) {
+            log.thinking("\t" + (items.size() - parsed.size())
+                    + " items missing from the answer, labeling them one at a time");
+        }
+        return parsed;
+    }
+
+    static String labelSetVersion(Collection<Label> labels) {
+        StringBuilder builder = new StringBuilder();
+        labels.stream().sorted(Comparator.comparing(Label::name)).forEach(label -> builder.append(label.name())
+                .append('\t').append(label.description() == null ? "" : label.description()).append('\n'));
+        return sha256(builder.toString());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.quarkiverse.github.index;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.quarkiverse.github.index.model.ItemMetadata;
+import io.quarkiverse.github.util.IntBitmap;
+
+/**
+ * Inverted index from label to the numbers of the items that have it, kept by {@link PullStore} along with the
+ * metadata, so finding the items with a set of labels is an AND of bitmaps and counting them does not look at any item.
+ */
+public class LabelIndex {
+    private final Map<String, IntBitmap> byLabel = new HashMap<>();
+    private final IntBitmap all = new IntBitmap();
+
+    synchronized void add(ItemMetadata item) {
+        all.add(item.number());
+        for (String label : item.labels()) {
+            byLabel.computeIfAbsent(label, k -> new IntBitmap()).add(item.number());
+        }
+    }
+
+    synchronized void remove(ItemMetadata item) {
+        all.remove(item.number());
+        for (String label : item.labels()) {
+            IntBitmap numbers = byLabel.get(label);
+            if (numbers != null && numbers.remove(item.number()) && numbers.isEmpty()) {
+                byLabel.remove(label);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        byLabel.clear();
+        all.clear();
+    }
+
+    /**
+     * Numbers, in ascending order, of the items that have all of {@code labels}. Every item has none.
+     */
+    public synchronized int[] withAll(Collection<String> labels) {
+        IntBitmap result = all;
+        for (String label : labels) {
+            IntBitmap numbers = byLabel.get(label);
+            if (numbers == null) {
+                return new int[0];
+            }
+            result = result.and(numbers);
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * The number of items with each label.
+     */
+    public synchronized Map<String, Integer> counts() {
+        Map<String, Integer> counts = new HashMap<>();
+        byLabel.forEach((label, numbers) -> counts.put(label, numbers.cardinality()));
+        return counts;
+    }
+
+    public synchronized int size() {
+        return all.cardinality();
+    }
+}
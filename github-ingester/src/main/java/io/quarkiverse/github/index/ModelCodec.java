@@ -0,0 +1,218 @@
+package io.quarkiverse.github.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import io.quarkiverse.github.index.model.CommentModel;
+import io.quarkiverse.github.index.model.DiscussionCommentModel;
+import io.quarkiverse.github.index.model.DiscussionModel;
+import io.quarkiverse.github.index.model.IssueModel;
+
+/**
+ * Compact binary encoding of the pulled items. Numbers and lengths are varints, text is length prefixed UTF-8, and the
+ * repository name, authors, labels, categories and issue types are ids into a {@link SymbolTable}.
+ */
+abstract class ModelCodec<V> {
+
+    static final ModelCodec<DiscussionModel> DISCUSSIONS = new ModelCodec<>() {
+        @Override
+        void write(DataOutput out, DiscussionModel discussion, SymbolTable symbols) throws IOException {
+            writeSymbol(out, discussion.repo(), symbols);
+            writeVarInt(out, discussion.number());
+            writeString(out, discussion.title());
+            writeSymbol(out, discussion.author(), symbols);
+            writeString(out, discussion.body());
+            out.writeLong(discussion.createdAt());
+            out.writeLong(discussion.updatedAt());
+            writeSymbol(out, discussion.category(), symbols);
+            writeSymbols(out, discussion.labels(), symbols);
+            writeVarInt(out, discussion.comments() == null ? 0 : discussion.comments().size());
+            if (discussion.comments() != null) {
+                for (DiscussionCommentModel comment : discussion.comments()) {
+                    writeSymbol(out, comment.author(), symbols);
+                    writeString(out, comment.body());
+                    writeComments(out, comment.replies(), symbols);
+                }
+            }
+        }
+
+        @Override
+        DiscussionModel read(DataInput in, SymbolTable symbols) throws IOException {
+            String repo = readSymbol(in, symbols);
+            int number = readVarInt(in);
+            String title = readString(in);
+            String author = readSymbol(in, symbols);
+            String body = readString(in);
+            long createdAt = in.readLong();
+            long updatedAt = in.readLong();
+            String category = readSymbol(in, symbols);
+            Set<String> labels = readSymbols(in, symbols);
+            int count = readVarInt(in);
+            List<DiscussionCommentModel> comments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                comments.add(new DiscussionCommentModel(readSymbol(in, symbols), readString(in),
+                        readComments(in, symbols)));
+            }
+            return new DiscussionModel(repo, number, title, author, body, createdAt, updatedAt, category, labels,
+                    comments);
+        }
+    };
+
+    static final ModelCodec<IssueModel> ISSUES = new ModelCodec<>() {
+        @Override
+        void write(DataOutput out, IssueModel issue, SymbolTable symbols) throws IOException {
+            writeSymbol(out, issue.repo(), symbols);
+            writeVarInt(out, issue.number());
+            writeString(out, issue.title());
+            writeSymbol(out, issue.author(), symbols);
+            writeString(out, issue.body());
+            out.writeLong(issue.createdAt());
+            out.writeLong(issue.updatedAt());
+            writeSymbol(out, issue.issueType(), symbols);
+            writeSymbols(out, issue.labels(), symbols);
+            writeComments(out, issue.comments(), symbols);
+        }
+
+        @Override
+        IssueModel read(DataInput in, SymbolTable symbols) throws IOException {
+            String repo = readSymbol(in, symbols);
+            int number = readVarInt(in);
+            String title = readString(in);
+            String author = readSymbol(in, symbols);
+            String body = readString(in);
+            long createdAt = in.readLong();
+            long updatedAt = in.readLong();
+            String issueType = readSymbol(in, symbols);
+            Set<String> labels = readSymbols(in, symbols);
+            return new IssueModel(repo, number, title, author, body, createdAt, updatedAt, issueType, labels,
+                    readComments(in, symbols));
+        }
+    };
+
+    abstract void write(DataOutput out, V value, SymbolTable symbols) throws IOException;
+
+    abstract V read(DataInput in, SymbolTable symbols) throws IOException;
+
+    /**
+     * Encodes {@code value}, adding the symbols it uses to the table.
+     */
+    byte[] encode(V value, SymbolTable symbols) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            write(new DataOutputStream(bytes), value, symbols);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    V decode(byte[] bytes, int offset, int length, SymbolTable symbols) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes, offset, length)), symbols);
+    }
+
+    static void writeComments(DataOutput out, List<CommentModel> comments, SymbolTable symbols) throws IOException {
+        writeVarInt(out, comments == null ? 0 : comments.size());
+        if (comments != null) {
+            for (CommentModel comment : comments) {
+                writeSymbol(out, comment.author(), symbols);
+                writeString(out, comment.body());
+            }
+        }
+    }
+
+    static List<CommentModel> readComments(DataInput in, SymbolTable symbols) throws IOException {
+        int count = readVarInt(in);
+        List<CommentModel> comments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            comments.add(new CommentModel(readSymbol(in, symbols), readString(in)));
+        }
+        return comments;
+    }
+
+    static void writeSymbols(DataOutput out, Set<String> values, SymbolTable symbols) throws IOException {
+        writeVarInt(out, values == null ? 0 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                writeSymbol(out, value, symbols);
+            }
+        }
+    }
+
+    /**
+     * A {@link SymbolSet}, so decoded items share their label strings and keep them as ids. A null value is dropped.
+     */
+    static Set<String> readSymbols(DataInput in, SymbolTable symbols) throws IOException {
+        int count = readVarInt(in);
+        int[] ids = new int[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int id = readVarInt(in);
+            if (id != 0) {
+                ids[found++] = id - 1;
+            }
+        }
+        return SymbolSet.ofIds(found == count ? ids : Arrays.copyOf(ids, found), symbols);
+    }
+
+    // id + 1, so that 0 can stand for null
+    static void writeSymbol(DataOutput out, String value, SymbolTable symbols) throws IOException {
+        writeVarInt(out, value == null ? 0 : symbols.id(value) + 1);
+    }
+
+    static String readSymbol(DataInput in, SymbolTable symbols) throws IOException {
+        int id = readVarInt(in);
+        return id == 0 ? null : symbols.symbol(id - 1);
+    }
+
+    // byte length + 1, so that 0 can stand for null
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -1,6 +1,7 @@
 package io.quarkiverse.github.index;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import jakarta.enterprise.context.ApplicationScoped;
@@ -29,6 +30,10 @@ public class PromptWrapper {
         return determineLabelsPrompt.labelIssue(labels, issue);
     }
 
+    public String labelBatch(Collection<Label> labels, List<LabelBatch.Item> items) {
+        return determineLabelsPrompt.labelBatch(labels, items);
+    }
+
     public String summarize(String issue) {
         return summaryPrompt.summarize(issue);
     }
@@ -1,13 +1,20 @@
 package io.quarkiverse.github.index;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
 import io.quarkiverse.github.index.model.ChangeSet;
 import io.quarkiverse.github.index.model.Earlier;
+import io.quarkiverse.github.util.AppLogger;
+import io.quarkus.runtime.Startup;
 
 @ApplicationScoped
 public class PruneService {
+    static AppLogger log = AppLogger.getLogger(PruneService.class);
+
     @Inject
     PullCacheService pullCacheService;
 
@@ -20,24 +27,86 @@ public class PruneService {
     @Inject
     RenderService renderService;
 
+    @Inject
+    LabelCacheService labelCacheService;
+
+    @Inject
+    ChangeJournal journal;
+
+    @Inject
+    RepositoryLocks locks;
+
     public void prune(String repoName, Earlier dateRange) {
-        ChangeSet changeSet = pullCacheService.prune(repoName, dateRange);
-        summaryService.prune(repoName, changeSet);
-        ragIndexer.prune(repoName, changeSet);
-        renderService.prune(repoName, changeSet);
+        locks.run(repoName, () -> {
+            ChangeSet changeSet = pullCacheService.prune(repoName, dateRange);
+            apply(ChangeJournal.PRUNE, repoName, changeSet);
+        });
     }
 
     public void newPull(String repoName, ChangeSet changeSet) {
+        apply(ChangeJournal.PULL, repoName, changeSet);
+    }
+
+    /**
+     * Journals the change set before applying it, so that a crash before the caches are saved is replayed on startup.
+     */
+    private void apply(String op, String repoName, ChangeSet changeSet) {
+        if (changeSet.discussions().isEmpty() && changeSet.issues().isEmpty()) {
+            return;
+        }
+        ChangeJournal.Entry entry = journal.append(op, repoName, changeSet);
         summaryService.prune(repoName, changeSet);
+        summaryService.applied(repoName, entry.seq());
         renderService.prune(repoName, changeSet);
-        ragIndexer.newPull(repoName, changeSet);
+        applyToEmbeddings(entry);
+    }
+
+    private void applyToEmbeddings(ChangeJournal.Entry entry) {
+        if (ChangeJournal.PRUNE.equals(entry.op())) {
+            ragIndexer.prune(entry.repo(), entry.changeSet());
+        } else {
+            ragIndexer.newPull(entry.repo(), entry.changeSet());
+        }
+        ragIndexer.applied(entry.repo(), entry.seq());
+    }
+
+    /**
+     * Applies the change journal entries that the summary and embedding caches had not saved when the last run
+     * stopped. Loading a repository's caches drops the entries both have.
+     */
+    @Startup
+    public void replayJournal() {
+        Set<String> failed = new HashSet<>();
+        for (ChangeJournal.Entry entry : journal.entries()) {
+            if (failed.contains(entry.repo())) {
+                continue;
+            }
+            try {
+                if (entry.seq() > summaryService.journalSeq(entry.repo())) {
+                    summaryService.prune(entry.repo(), entry.changeSet());
+                    summaryService.applied(entry.repo(), entry.seq());
+                }
+                if (entry.seq() > ragIndexer.journalSeq(entry.repo())) {
+                    log.infov("Replaying {0} of {1} from the change journal", entry.op(), entry.repo());
+                    applyToEmbeddings(entry);
+                }
+            } catch (RuntimeException e) {
+                // left in the journal for the next start, along with the later entries of the same repository
+                log.warnv("Failed to replay change journal entry {0}: {1}", entry.seq(), e.getMessage());
+                failed.add(entry.repo());
+            }
+        }
     }
 
     public void clear(String repoName) {
-        pullCacheService.clear(repoName);
-        summaryService.clear(repoName);
-        ragIndexer.clear(repoName);
-        renderService.clear(repoName);
+        locks.run(repoName, () -> {
+            pullCacheService.clear(repoName);
+            summaryService.clear(repoName);
+            ragIndexer.clear(repoName);
+            renderService.clear(repoName);
+            labelCacheService.clear(repoName);
+            journal.forget(repoName);
+        });
     }
 
 }
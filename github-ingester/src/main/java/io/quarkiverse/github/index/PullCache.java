@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import io.quarkiverse.github.index.model.DiscussionModel;
 import io.quarkiverse.github.index.model.IssueModel;
+import io.quarkiverse.github.index.model.ItemMetadata;
 
 public class PullCache {
     public PullCache() {
@@ -17,14 +18,46 @@ public class PullCache {
         this.repo = repo;
     }
 
+    PullCache(String repo, PullStore store) {
+        this.repo = repo;
+        this.store = store;
+        this.lastPulled = store.lastPulled();
+        this.discussions = store.discussions();
+        this.issues = store.issues();
+        this.discussionMetadata = store.discussionMetadata();
+        this.issueMetadata = store.issueMetadata();
+        this.discussionLabels = store.discussionLabels();
+        this.issueLabels = store.issueLabels();
+        this.discussionTimes = store.discussionTimes();
+        this.issueTimes = store.issueTimes();
+    }
+
     public String repo;
     public long lastPulled = 0;
 
+    // views of the store's records, or plain maps when read from a pull.json written by an older version
     @JsonDeserialize(as = ConcurrentHashMap.class)
     public Map<Integer, DiscussionModel> discussions = new ConcurrentHashMap<>();
     @JsonDeserialize(as = ConcurrentHashMap.class)
     public Map<Integer, IssueModel> issues = new ConcurrentHashMap<>();
 
+    // read only, for going over the items without decoding them
+    @JsonIgnore
+    public Map<Integer, ItemMetadata> discussionMetadata = Map.of();
+    @JsonIgnore
+    public Map<Integer, ItemMetadata> issueMetadata = Map.of();
+    @JsonIgnore
+    public LabelIndex discussionLabels = new LabelIndex();
+    @JsonIgnore
+    public LabelIndex issueLabels = new LabelIndex();
+    @JsonIgnore
+    public TimeIndex discussionTimes = new TimeIndex();
+    @JsonIgnore
+    public TimeIndex issueTimes = new TimeIndex();
+
     @JsonIgnore
     public boolean dirty = false;
+
+    @JsonIgnore
+    PullStore store;
 }
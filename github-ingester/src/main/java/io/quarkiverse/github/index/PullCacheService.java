@@ -5,13 +5,19 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -23,8 +29,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.quarkiverse.github.api.Discussions.Discussion;
 import io.quarkiverse.github.api.Github;
 import io.quarkiverse.github.api.GithubAPI.Repository;
+import io.quarkiverse.github.api.GithubConnection.PrefetchingConnection;
 import io.quarkiverse.github.api.Issues.Issue;
 import io.quarkiverse.github.api.Labels.Label;
+import io.quarkiverse.github.api.Labels.LabelConnectionNameOnly;
 import io.quarkiverse.github.api.Labels.LabelNameOnly;
 import io.quarkiverse.github.index.model.ChangeSet;
 import io.quarkiverse.github.index.model.CommentModel;
@@ -34,6 +42,10 @@ import io.quarkiverse.github.index.model.Earlier;
 import io.quarkiverse.github.index.model.IssueModel;
 import io.quarkiverse.github.index.model.RecordSet;
 import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.OrderedPipeline;
+import io.quarkiverse.github.util.WeightedLruCache;
+import io.quarkiverse.graphql.client.RateLimiter;
+import io.quarkus.runtime.configuration.MemorySize;
 
 @ApplicationScoped
 public class PullCacheService {
@@ -42,6 +54,15 @@ public class PullCacheService {
     @ConfigProperty(name = "product.manager.cache.dir")
     String baseDirectory;
 
+    @ConfigProperty(name = "product.manager.pull.read-ahead", defaultValue = "2")
+    int readAhead;
+
+    @ConfigProperty(name = "product.manager.pull.label-concurrency", defaultValue = "4")
+    int labelConcurrency;
+
+    @ConfigProperty(name = "product.manager.cache.pull-max-size", defaultValue = "64M")
+    MemorySize maxSize;
+
     @Inject
     Github github;
 
@@ -52,32 +73,53 @@ public class PullCacheService {
     RepositoryConfigService configService;
 
     @Inject
-    PromptWrapper promptWrapper;
+    LabelCacheService labelCache;
 
     @Inject
     PruneService pruneService;
 
-    Map<String, PullCache> pullCacheMap = new ConcurrentHashMap<>();
+    // what a loaded repository keeps on heap per item: its index entry and metadata
+    static final long ESTIMATED_ITEM_BYTES = 256;
+
+    WeightedLruCache<String, PullCache> pullCacheMap;
+
+    @PostConstruct
+    public void postConstruct() {
+        pullCacheMap = new WeightedLruCache<>(maxSize.asLongValue(),
+                pullCache -> (pullCache.discussionMetadata.size() + pullCache.issueMetadata.size())
+                        * ESTIMATED_ITEM_BYTES,
+                (repoName, pullCache) -> {
+                    save(repoName, pullCache);
+                    pullCache.store.close();
+                });
+    }
 
     @PreDestroy
     public void preDestroy() {
-        for (String repoName : pullCacheMap.keySet()) {
-            save(repoName);
+        for (Map.Entry<String, PullCache> entry : pullCacheMap.snapshot().entrySet()) {
+            save(entry.getKey(), entry.getValue());
+            entry.getValue().store.close();
         }
+        log.debugv("Pull cache: {0}", pullCacheMap.stats());
+    }
+
+    public WeightedLruCache.Stats cacheStats() {
+        return pullCacheMap.stats();
     }
 
     public Set<String> repos() {
-        Set<String> repos = new HashSet<>(pullCacheMap.keySet());
+        Set<String> repos = new HashSet<>(pullCacheMap.keys());
         Path cacheDir = Path.of(baseDirectory);
         if (!Files.exists(cacheDir) || !Files.isDirectory(cacheDir)) {
             return repos;
         }
         try {
             Files.walk(cacheDir)
-                    .filter(p -> Files.isRegularFile(p) && "pull.json".equals(p.getFileName().toString()))
-                    .forEach(pullJsonPath -> {
-                        Path relative = cacheDir.relativize(pullJsonPath);
-                        Path parent = relative.getParent();
+                    .filter(p -> Files.isRegularFile(p) && ("pull.json".equals(p.getFileName().toString())
+                            || isPullSegment(p)))
+                    .forEach(pullPath -> {
+                        Path relative = cacheDir.relativize(pullPath);
+                        Path parent = isPullSegment(pullPath) ? relative.getParent().getParent() : relative.getParent();
                         if (parent != null && parent.getNameCount() > 0) {
                             String repoName = parent.toString().replace(java.io.File.separatorChar, '/');
                             repos.add(repoName);
@@ -89,58 +131,78 @@ public class PullCacheService {
         return repos;
     }
 
-    public PullCache load(String repoName) {
-        PullCache pullCache = pullCacheMap.get(repoName);
-        if (pullCache != null) {
-            return pullCache;
-        }
-        Path indexPath = pullIndexPath(repoName);
-        if (pullIndexExists(repoName)) {
-            try {
-                pullCache = objectMapper.readValue(indexPath.toFile(), PullCache.class);
-            } catch (IOException e) {
-                log.warnv("Failed to load pull index for repo {0}: {1}", repoName, e.getMessage());
-                try {
-                    Files.delete(indexPath);
-                } catch (IOException e2) {
-                }
-            }
-        }
-        if (pullCache == null) {
-            pullCache = new PullCache(repoName);
+    private static boolean isPullSegment(Path path) {
+        return path.getFileName().toString().endsWith(PullStore.SEGMENT_SUFFIX) && path.getParent() != null
+                && "pull".equals(path.getParent().getFileName().toString());
+    }
+
+    /**
+     * The repository's pull cache, which is neither evicted nor has its store closed until it is {@link #release
+     * released}, as many times as it was acquired.
+     */
+    public PullCache acquire(String repoName) {
+        return pullCacheMap.acquire(repoName, this::open);
+    }
+
+    public void release(PullCache pullCache) {
+        pullCacheMap.release(pullCache.repo, pullCache);
+    }
+
+    private PullCache open(String repoName) {
+        PullCache pullCache;
+        try {
+            pullCache = new PullCache(repoName, PullStore.open(pullStorePath(repoName), objectMapper));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open pull store for repo " + repoName, e);
         }
-        pullCacheMap.put(repoName, pullCache);
+        migrateLegacyIndex(pullCache);
         return pullCache;
     }
 
-    private void save(String repoName) {
-        PullCache pullCache = pullCacheMap.get(repoName);
-        if (pullCache == null) {
+    /**
+     * Moves the items of a pull.json written by an older version into the store.
+     */
+    private void migrateLegacyIndex(PullCache pullCache) {
+        Path legacyPath = legacyPullIndexPath(pullCache.repo);
+        if (!Files.exists(legacyPath)) {
             return;
         }
+        try {
+            PullCache legacy = objectMapper.readValue(legacyPath.toFile(), PullCache.class);
+            log.infov("Moving {0} discussions and {1} issues of {2} from pull.json to the pull store",
+                    legacy.discussions.size(), legacy.issues.size(), pullCache.repo);
+            pullCache.discussions.putAll(legacy.discussions);
+            pullCache.issues.putAll(legacy.issues);
+            pullCache.lastPulled = Math.max(pullCache.lastPulled, legacy.lastPulled);
+            pullCache.store.save(pullCache.lastPulled);
+        } catch (IOException e) {
+            log.warnv("Failed to load pull index for repo {0}: {1}", pullCache.repo, e.getMessage());
+        }
+        try {
+            Files.delete(legacyPath);
+        } catch (IOException e2) {
+        }
+    }
+
+    private void save(String repoName, PullCache pullCache) {
         if (!pullCache.dirty) {
             return;
         }
         pullCache.dirty = false;
         try {
-            objectMapper.writeValue(pullIndexPath(repoName).toFile(), pullCache);
+            pullCache.store.save(pullCache.lastPulled);
         } catch (IOException e) {
+            // the items are already in the segments, opening the store scans for the ones the index misses
             log.errorv("Failed to save pull index for repo {0}: {1}", repoName, e.getMessage());
-            try {
-                Files.delete(pullIndexPath(repoName));
-            } catch (IOException e2) {
-            }
         }
     }
 
     public void clear(String repoName) {
-        pullCacheMap.remove(repoName);
-        Path path = Path.of(baseDirectory, repoName);
-        Path indexPath = path.resolve("pull.json");
+        // the files are only deleted once whoever still reads them is done
+        pullCacheMap.remove(repoName, pullCache -> pullCache.store.close()).join();
         try {
-            if (Files.exists(indexPath)) {
-                Files.delete(indexPath);
-            }
+            PullStore.delete(pullStorePath(repoName));
+            Files.deleteIfExists(legacyPullIndexPath(repoName));
         } catch (IOException e) {
             throw new RuntimeException("Failed to clear pull index", e);
         }
@@ -152,23 +214,62 @@ public class PullCacheService {
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
+    public CompletableFuture<Map<String, Label>> getLabelsAsync(Repository repository, RepositoryConfig repoIndex) {
+        return repository.labelsAsync().thenApply(labels -> labels.entrySet().stream()
+                .filter(entry -> !repoIndex.ignoreLabel(entry.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))).toCompletableFuture();
+    }
+
+    /**
+     * Reads the labels through Github's conditional request cache, so asking again for an unchanged label set does not
+     * use up rate limit.
+     */
     public Map<String, Label> getLabels(String repoName) {
-        Repository repository = github.repository(repoName);
         RepositoryConfig repoIndex = configService.load(repoName);
-        return getLabels(repository, repoIndex);
+        return github.labels(repoName).entrySet().stream()
+                .filter(entry -> !repoIndex.ignoreLabel(entry.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
-    private Path pullIndexPath(String repoName) {
-        Path path = Path.of(baseDirectory, repoName);
-        return path.resolve("pull.json");
+    /**
+     * Labels of several repositories, less the ones each repository's config ignores, fetched with batched queries.
+     */
+    public Map<String, Map<String, Label>> getLabels(Collection<String> repoNames) {
+        Map<String, Map<String, Label>> labels = new HashMap<>();
+        for (Map.Entry<String, Map<String, Label>> entry : github.labels(repoNames).entrySet()) {
+            RepositoryConfig repoIndex = configService.load(entry.getKey());
+            labels.put(entry.getKey(), entry.getValue().entrySet().stream()
+                    .filter(label -> !repoIndex.ignoreLabel(label.getKey()))
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        }
+        return labels;
+    }
+
+    private Path pullStorePath(String repoName) {
+        return Path.of(baseDirectory, repoName, "pull");
+    }
+
+    private Path legacyPullIndexPath(String repoName) {
+        return Path.of(baseDirectory, repoName, "pull.json");
     }
 
     public ChangeSet pull(String repoName, Earlier range) {
+        return pull(repoName, range, null);
+    }
+
+    /**
+     * @param preloaded the repository's labels if already fetched, i.e. by {@link #getLabels(Collection)} for
+     *        several repositories at once, null to fetch them
+     */
+    public ChangeSet pull(String repoName, Earlier range, Map<String, Label> preloaded) {
+        PullCache pullCache = acquire(repoName);
         try {
             Repository repository = github.repository(repoName);
             RepositoryConfig config = configService.load(repoName);
-            Map<String, Label> labels = getLabels(repository, config);
-            PullCache pullCache = load(repoName);
+            // only needed to label unlabelled items, so let it run alongside the discussion and issue queries
+            CompletableFuture<Map<String, Label>> labels = preloaded != null
+                    ? CompletableFuture.completedFuture(preloaded)
+                    : getLabelsAsync(repository, config);
 
             long since;
 
@@ -182,128 +283,265 @@ public class PullCacheService {
             }
             pullCache.lastPulled = System.currentTimeMillis();
             log.thinking("Pulling since: " + Instant.ofEpochMilli(since).toString());
-            log.thinking("Pulling discussions...");
             Set<Integer> discussionChanges = new HashSet<>();
-            Iterable<Discussion> discussions = github.repository(repoName).discussions().full(20);
-            for (Discussion discussion : discussions) {
-                if (config.ignoredCategories.contains(discussion.category().name())) {
-                    continue;
-                }
-                String updatedAt = discussion.updatedAt();
-                Instant instant = Instant.parse(updatedAt);
-                // log.thinking(instant.toString());
-                if (instant.toEpochMilli() < since) {
-                    break;
+            Set<Integer> issueChanges = new HashSet<>();
+            String sinceDate = Instant.ofEpochMilli(since).toString();
+            // labeling is an LLM call per item, so it runs on a worker pool while fetching carries on. Items are still
+            // added to the cache in the order they were fetched.
+            try (PrefetchingConnection<Discussion> discussions = repository.discussions().prefetch(20, readAhead);
+                    PrefetchingConnection<Issue> issues = repository.issues().prefetch(20, sinceDate, readAhead);
+                    OrderedPipeline labeling = new OrderedPipeline(labelConcurrency)) {
+                // start paging issues now so their first pages are ready once the discussions are done
+                Iterator<Issue> issueIterator = issues.iterator();
+                log.thinking("Pulling discussions...");
+                List<Discussion> discussionGroup = new ArrayList<>();
+                for (Discussion discussion : discussions) {
+                    if (config.ignoredCategories.contains(discussion.category().name())) {
+                        continue;
+                    }
+                    String updatedAt = discussion.updatedAt();
+                    Instant instant = Instant.parse(updatedAt);
+                    // log.thinking(instant.toString());
+                    if (instant.toEpochMilli() < since) {
+                        break;
+                    }
+                    if (unlabelled(discussion)) {
+                        log.thinking("Labeling unlabelled discussion: " + discussion.title());
+                    }
+                    // unlabelled discussions are labeled in batches, and the labelled ones in between wait with them
+                    discussionGroup.add(discussion);
+                    long unlabelledCount = discussionGroup.stream().filter(PullCacheService::unlabelled).count();
+                    if (unlabelledCount == 0 || unlabelledCount >= labelCache.batchSize()) {
+                        submitDiscussions(labeling, repoName, labels, discussionGroup, pullCache, discussionChanges);
+                        discussionGroup = new ArrayList<>();
+                    }
                 }
-                Set<String> discussionLabels = discussion.labels().nodes().stream().map(LabelNameOnly::name)
-                        .collect(Collectors.toSet());
-                if (discussionLabels.isEmpty()) {
-                    log.thinking("Labeling unlabelled discussion: " + discussion.title());
-                    discussionLabels = promptWrapper.labelDiscussion(labels.values(), discussion);
+                if (!discussionGroup.isEmpty()) {
+                    submitDiscussions(labeling, repoName, labels, discussionGroup, pullCache, discussionChanges);
                 }
-                List<DiscussionCommentModel> comments = discussion.comments().nodes().stream()
-                        .map(comment -> new DiscussionCommentModel(
-                                comment.author() == null ? "unknown" : comment.author().login(), comment.body(),
-                                comment.replies().nodes().stream()
-                                        .map(reply -> new CommentModel(
-                                                reply.author() == null ? "unknown" : reply.author().login(), reply.body()))
-                                        .collect(Collectors.toList())))
-                        .collect(Collectors.toList());
-                DiscussionModel discussionModel = new DiscussionModel(repoName, discussion.number(), discussion.title(),
-                        discussion.author() == null ? "unknown" : discussion.author().login(), discussion.body(),
-                        Instant.parse(discussion.createdAt()).toEpochMilli(),
-                        Instant.parse(discussion.updatedAt()).toEpochMilli(), discussion.category().name(),
-                        discussionLabels,
-                        comments);
-                discussionChanges.add(discussion.number());
-                pullCache.discussions.put(discussion.number(), discussionModel);
-            }
-            if (discussionChanges.size() > 0) {
-                pullCache.dirty = true;
-            }
 
-            log.thinking("Pulling issues...");
-            Iterable<Issue> issues = github.repository(repoName).issues().full(20,
-                    Instant.ofEpochMilli(since).toString());
-            Set<Integer> issueChanges = new HashSet<>();
-            for (Issue issue : issues) {
-                Set<String> issueLabels = issue.labels().nodes().stream().map(LabelNameOnly::name)
-                        .collect(Collectors.toSet());
-                if (issueLabels.isEmpty()) {
-                    log.thinking("Labeling unlabelled issue: " + issue.title());
-                    issueLabels = promptWrapper.labelIssue(labels.values(), issue);
+                log.thinking("Pulling issues...");
+                List<Issue> issueGroup = new ArrayList<>();
+                while (issueIterator.hasNext()) {
+                    Issue issue = issueIterator.next();
+                    if (unlabelled(issue)) {
+                        log.thinking("Labeling unlabelled issue: " + issue.title());
+                    }
+                    issueGroup.add(issue);
+                    long unlabelledCount = issueGroup.stream().filter(PullCacheService::unlabelled).count();
+                    if (unlabelledCount == 0 || unlabelledCount >= labelCache.batchSize()) {
+                        submitIssues(labeling, repoName, labels, issueGroup, pullCache, issueChanges);
+                        issueGroup = new ArrayList<>();
+                    }
+                }
+                if (!issueGroup.isEmpty()) {
+                    submitIssues(labeling, repoName, labels, issueGroup, pullCache, issueChanges);
+                }
+                labeling.finish();
+                if (discussionChanges.size() > 0 || issueChanges.size() > 0) {
+                    pullCache.dirty = true;
                 }
-                List<CommentModel> comments = issue.comments().nodes().stream()
-                        .map(comment -> new CommentModel(comment.author() == null ? "unknown" : comment.author().login(),
-                                comment.body()))
-                        .collect(Collectors.toList());
-                IssueModel issueModel = new IssueModel(repoName, issue.number(), issue.title(),
-                        issue.author() == null ? "unknown" : issue.author().login(),
-                        issue.body(),
-                        Instant.parse(issue.createdAt()).toEpochMilli(),
-                        Instant.parse(issue.updatedAt()).toEpochMilli(),
-                        issue.issueType() == null ? null : issue.issueType().name(), issueLabels, comments);
-                issueChanges.add(issue.number());
-                pullCache.issues.put(issue.number(), issueModel);
-            }
-            if (issueChanges.size() > 0) {
-                pullCache.dirty = true;
             }
+            logRateLimit();
             ChangeSet changeSet = new ChangeSet(discussionChanges, issueChanges);
             pruneService.newPull(repoName, changeSet);
             return changeSet;
         } catch (RuntimeException e) {
-            pullCacheMap.remove(repoName);
+            // opened again from what made it to disk, once released below
+            pullCacheMap.remove(repoName, failed -> failed.store.close());
             throw e;
+        } finally {
+            release(pullCache);
         }
     }
 
-    public boolean pullIndexExists(String repoName) {
-        Path indexPath = pullIndexPath(repoName);
-        return Files.exists(indexPath);
+    private void logRateLimit() {
+        RateLimiter.Budget budget = github.rateLimit();
+        if (budget.limit() >= 0) {
+            log.thinking("Github rate limit: " + budget);
+        }
     }
 
-    public ChangeSet prune(String repoName, Earlier since) {
-        PullCache pullCache = load(repoName);
-        Set<Integer> discussions = new HashSet<>();
-        Set<Integer> issues = new HashSet<>();
-        long sinceMillis = since.fromMillis();
-        for (DiscussionModel discussion : pullCache.discussions.values()) {
-            if (discussion.updatedAt() < sinceMillis) {
-                discussions.add(discussion.number());
-            }
-        }
-        for (IssueModel issue : pullCache.issues.values()) {
-            if (issue.updatedAt() < sinceMillis) {
-                issues.add(issue.number());
+    /**
+     * Waits for an asynchronous query, rethrowing its failure as is rather than wrapped in a
+     * {@link CompletionException}.
+     */
+    private static <T> T await(CompletableFuture<T> request) {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
+            throw e;
         }
-        if (discussions.size() > 0 || issues.size() > 0) {
-            pullCache.dirty = true;
+    }
+
+    private static boolean unlabelled(Discussion discussion) {
+        return discussion.labels().nodes().isEmpty();
+    }
+
+    private static boolean unlabelled(Issue issue) {
+        return issue.labels().nodes().isEmpty();
+    }
+
+    private static Set<String> labelNames(LabelConnectionNameOnly labels) {
+        return labels.nodes().stream().map(LabelNameOnly::name).collect(Collectors.toSet());
+    }
+
+    /**
+     * Queues a run of discussions on the labeling pipeline. The unlabelled ones are labeled with one prompt, the
+     * others keep their labels.
+     */
+    private void submitDiscussions(OrderedPipeline labeling, String repoName,
+            CompletableFuture<Map<String, Label>> labels, List<Discussion> group, PullCache pullCache,
+            Set<Integer> discussionChanges) {
+        List<Discussion> unlabelled = group.stream().filter(PullCacheService::unlabelled).toList();
+        Function<Map<Integer, Set<String>>, Runnable> commit = inferred -> {
+            List<DiscussionModel> models = group.stream()
+                    .map(discussion -> toDiscussionModel(repoName, discussion, unlabelled(discussion)
+                            ? inferred.get(discussion.number())
+                            : labelNames(discussion.labels())))
+                    .toList();
+            return () -> {
+                for (DiscussionModel discussionModel : models) {
+                    discussionChanges.add(discussionModel.number());
+                    pullCache.discussions.put(discussionModel.number(), discussionModel);
+                }
+            };
+        };
+        if (unlabelled.isEmpty()) {
+            labeling.submitCompleted(commit.apply(Map.of()));
+        } else {
+            labeling.submit(
+                    () -> commit.apply(labelCache.labelDiscussions(repoName, await(labels).values(), unlabelled)));
         }
-        for (Integer discussion : discussions) {
-            pullCache.discussions.remove(discussion);
+    }
+
+    /**
+     * Queues a run of issues on the labeling pipeline. The unlabelled ones are labeled with one prompt, the others
+     * keep their labels.
+     */
+    private void submitIssues(OrderedPipeline labeling, String repoName,
+            CompletableFuture<Map<String, Label>> labels, List<Issue> group, PullCache pullCache,
+            Set<Integer> issueChanges) {
+        List<Issue> unlabelled = group.stream().filter(PullCacheService::unlabelled).toList();
+        Function<Map<Integer, Set<String>>, Runnable> commit = inferred -> {
+            List<IssueModel> models = group.stream()
+                    .map(issue -> toIssueModel(repoName, issue, unlabelled(issue)
+                            ? inferred.get(issue.number())
+                            : labelNames(issue.labels())))
+                    .toList();
+            return () -> {
+                for (IssueModel issueModel : models) {
+                    issueChanges.add(issueModel.number());
+                    pullCache.issues.put(issueModel.number(), issueModel);
+                }
+            };
+        };
+        if (unlabelled.isEmpty()) {
+            labeling.submitCompleted(commit.apply(Map.of()));
+        } else {
+            labeling.submit(() -> commit.apply(labelCache.labelIssues(repoName, await(labels).values(), unlabelled)));
         }
-        for (Integer issue : issues) {
-            pullCache.issues.remove(issue);
+    }
+
+    private DiscussionModel toDiscussionModel(String repoName, Discussion discussion, Set<String> discussionLabels) {
+        List<DiscussionCommentModel> comments = discussion.comments().nodes().stream()
+                .map(comment -> new DiscussionCommentModel(
+                        comment.author() == null ? "unknown" : comment.author().login(), comment.body(),
+                        comment.replies().nodes().stream()
+                                .map(reply -> new CommentModel(
+                                        reply.author() == null ? "unknown" : reply.author().login(), reply.body()))
+                                .collect(Collectors.toList())))
+                .collect(Collectors.toList());
+        return new DiscussionModel(repoName, discussion.number(), discussion.title(),
+                discussion.author() == null ? "unknown" : discussion.author().login(), discussion.body(),
+                Instant.parse(discussion.createdAt()).toEpochMilli(),
+                Instant.parse(discussion.updatedAt()).toEpochMilli(), discussion.category().name(),
+                discussionLabels,
+                comments);
+    }
+
+    private IssueModel toIssueModel(String repoName, Issue issue, Set<String> issueLabels) {
+        List<CommentModel> comments = issue.comments().nodes().stream()
+                .map(comment -> new CommentModel(comment.author() == null ? "unknown" : comment.author().login(),
+                        comment.body()))
+                .collect(Collectors.toList());
+        return new IssueModel(repoName, issue.number(), issue.title(),
+                issue.author() == null ? "unknown" : issue.author().login(),
+                issue.body(),
+                Instant.parse(issue.createdAt()).toEpochMilli(),
+                Instant.parse(issue.updatedAt()).toEpochMilli(),
+                issue.issueType() == null ? null : issue.issueType().name(), issueLabels, comments);
+    }
+
+    public boolean pullIndexExists(String repoName) {
+        return PullStore.exists(pullStorePath(repoName)) || Files.exists(legacyPullIndexPath(repoName));
+    }
+
+    public ChangeSet prune(String repoName, Earlier since) {
+        PullCache pullCache = acquire(repoName);
+        try {
+            Set<Integer> discussions = new HashSet<>();
+            Set<Integer> issues = new HashSet<>();
+            long sinceMillis = since.fromMillis();
+            for (int number : pullCache.discussionTimes.updatedBetween(Long.MIN_VALUE, sinceMillis)) {
+                discussions.add(number);
+            }
+            for (int number : pullCache.issueTimes.updatedBetween(Long.MIN_VALUE, sinceMillis)) {
+                issues.add(number);
+            }
+            if (discussions.size() > 0 || issues.size() > 0) {
+                pullCache.dirty = true;
+            }
+            for (Integer discussion : discussions) {
+                pullCache.discussions.remove(discussion);
+            }
+            for (Integer issue : issues) {
+                pullCache.issues.remove(issue);
+            }
+            return new ChangeSet(discussions, issues);
+        } finally {
+            release(pullCache);
         }
-        return new ChangeSet(discussions, issues);
     }
 
     public RecordSet findByLabel(String repoName, Set<String> labels) {
-        PullCache pullCache = load(repoName);
-        List<DiscussionModel> discussions = new ArrayList<>();
-        List<IssueModel> issues = new ArrayList<>();
-        for (DiscussionModel discussion : pullCache.discussions.values()) {
-            if (discussion.labels().containsAll(labels)) {
-                discussions.add(discussion);
+        PullCache pullCache = acquire(repoName);
+        try {
+            List<DiscussionModel> discussions = new ArrayList<>();
+            List<IssueModel> issues = new ArrayList<>();
+            // only the matching items are decoded
+            for (int number : pullCache.discussionLabels.withAll(labels)) {
+                discussions.add(pullCache.discussions.get(number));
             }
+            for (int number : pullCache.issueLabels.withAll(labels)) {
+                issues.add(pullCache.issues.get(number));
+            }
+            return new RecordSet(discussions, issues);
+        } finally {
+            release(pullCache);
         }
-        for (IssueModel issue : pullCache.issues.values()) {
-            if (issue.labels().containsAll(labels)) {
-                issues.add(issue);
+    }
+
+    /**
+     * Items updated since {@code since}, least recently updated first.
+     */
+    public RecordSet findUpdatedSince(String repoName, Earlier since) {
+        PullCache pullCache = acquire(repoName);
+        try {
+            List<DiscussionModel> discussions = new ArrayList<>();
+            List<IssueModel> issues = new ArrayList<>();
+            for (int number : pullCache.discussionTimes.updatedBetween(since.fromMillis(), Long.MAX_VALUE)) {
+                discussions.add(pullCache.discussions.get(number));
+            }
+            for (int number : pullCache.issueTimes.updatedBetween(since.fromMillis(), Long.MAX_VALUE)) {
+                issues.add(pullCache.issues.get(number));
             }
+            return new RecordSet(discussions, issues);
+        } finally {
+            release(pullCache);
         }
-        return new RecordSet(discussions, issues);
     }
 }
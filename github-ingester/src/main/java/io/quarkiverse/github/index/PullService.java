@@ -1,8 +1,11 @@
 package io.quarkiverse.github.index;
 
+import java.util.Map;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
+import io.quarkiverse.github.api.Labels.Label;
 import io.quarkiverse.github.index.model.ChangeSet;
 import io.quarkiverse.github.index.model.Earlier;
 
@@ -20,10 +23,22 @@ public class PullService {
     @Inject
     RenderService renderService;
 
+    @Inject
+    RepositoryLocks locks;
+
     public void pull(String repoName, Earlier dateRange) {
-        ChangeSet changeSet = pullCacheService.pull(repoName, dateRange);
-        summaryService.prune(repoName, changeSet);
-        ragIndexer.index(repoName, changeSet);
+        pull(repoName, dateRange, null);
+    }
+
+    /**
+     * @param labels the repository's labels if already fetched, null to fetch them
+     */
+    public void pull(String repoName, Earlier dateRange, Map<String, Label> labels) {
+        locks.run(repoName, () -> {
+            ChangeSet changeSet = pullCacheService.pull(repoName, dateRange, labels);
+            summaryService.prune(repoName, changeSet);
+            ragIndexer.index(repoName, changeSet);
+        });
     }
 
 }
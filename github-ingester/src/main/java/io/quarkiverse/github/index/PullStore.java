@@ -0,0 +1,849 @@
+package io.quarkiverse.github.index;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.github.index.model.DiscussionModel;
+import io.quarkiverse.github.index.model.IssueModel;
+import io.quarkiverse.github.index.model.ItemMetadata;
+import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.AtomicFiles;
+
+/**
+ * Log structured storage for the discussions and issues pulled from one repository.
+ *
+ * Every put or remove appends one record to the newest segment file, and an in-memory index points each item at the
+ * record holding its latest version. The index also keeps the {@link ItemMetadata} of every item, with a
+ * {@link LabelIndex} and a {@link TimeIndex} over it, so reports, label lookups and pruning do not touch the records.
+ * Segments are memory mapped and a record is only decoded when its item is asked for.
+ * {@link #save(long)} writes the index so that opening the store reads the index instead of every record, and compacts
+ * the segments once most of their bytes belong to replaced or removed items.
+ *
+ * Records appended after the index was last saved, i.e. when the process died before saving, are found again by
+ * scanning the segments from where the index ends. A record cut short by a crash fails its checksum and is dropped.
+ *
+ * Items are stored with {@link ModelCodec}. The strings they share go in a {@link SymbolTable}, which is logged too:
+ * new symbols are appended as a record ahead of the first item using them, every segment starts with all the symbols
+ * known so far, and the index holds a copy. Segments written by the first version, without a header and with JSON
+ * records, are still read and are rewritten by the next save.
+ */
+public class PullStore implements Closeable {
+    static AppLogger log = AppLogger.getLogger(PullStore.class);
+
+    static final String INDEX = "pull.idx";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final int INDEX_MAGIC = 0x50494458;
+    static final int INDEX_VERSION = 3;
+    static final int SEGMENT_MAGIC = 0x50534547;
+    static final int SEGMENT_VERSION = 2;
+    // segments of version 1 have no header and hold JSON records
+    static final int JSON_SEGMENT_VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 4 + 4;
+    // payload length, checksum, kind, operation, item number
+    static final int HEADER_BYTES = 4 + 4 + 1 + 1 + 4;
+    static final long MAX_SEGMENT_BYTES = 32L * 1024 * 1024;
+    // below this there is not enough to gain from compacting
+    static final long COMPACT_MIN_BYTES = 4L * 1024 * 1024;
+
+    static final byte DISCUSSION = 1;
+    static final byte ISSUE = 2;
+    // the item number of a symbols record is the id of its first symbol
+    static final byte SYMBOLS = 3;
+    static final byte PUT = 0;
+    static final byte REMOVE = 1;
+
+    record Location(int segment, long offset, int length) {
+    }
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final Records<DiscussionModel> discussions = new Records<>(DISCUSSION, DiscussionModel.class,
+            ModelCodec.DISCUSSIONS, ItemMetadata::of);
+    private final Records<IssueModel> issues = new Records<>(ISSUE, IssueModel.class, ModelCodec.ISSUES,
+            ItemMetadata::of);
+    private final SymbolTable symbols = new SymbolTable();
+    // symbols already in the active segment
+    private int loggedSymbols;
+    private final Map<Integer, MappedByteBuffer> mappings = new HashMap<>();
+    private final Map<Integer, Integer> segmentVersions = new HashMap<>();
+    private FileChannel writer;
+    private int activeSegment = 1;
+    private long totalBytes;
+    private long lastPulled;
+    // where the saved index stopped in the active segment, records after it are scanned
+    private long indexEnd;
+
+    private PullStore(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Opens the store in {@code directory}. Nothing is written until the first item is put.
+     */
+    public static PullStore open(Path directory, ObjectMapper objectMapper) throws IOException {
+        PullStore store = new PullStore(directory, objectMapper);
+        store.recover();
+        return store;
+    }
+
+    public static boolean exists(Path directory) {
+        return Files.exists(directory.resolve(INDEX)) || !segments(directory).isEmpty();
+    }
+
+    public static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public Map<Integer, DiscussionModel> discussions() {
+        return discussions;
+    }
+
+    public Map<Integer, IssueModel> issues() {
+        return issues;
+    }
+
+    public Map<Integer, ItemMetadata> discussionMetadata() {
+        return discussions.metadata();
+    }
+
+    public Map<Integer, ItemMetadata> issueMetadata() {
+        return issues.metadata();
+    }
+
+    public LabelIndex discussionLabels() {
+        return discussions.labels;
+    }
+
+    public LabelIndex issueLabels() {
+        return issues.labels;
+    }
+
+    public TimeIndex discussionTimes() {
+        return discussions.times;
+    }
+
+    public TimeIndex issueTimes() {
+        return issues.times;
+    }
+
+    public long lastPulled() {
+        return lastPulled;
+    }
+
+    /**
+     * Makes the appended records durable, compacts the segments if worthwhile and writes the index.
+     */
+    public synchronized void save(long lastPulled) throws IOException {
+        this.lastPulled = lastPulled;
+        if (writer != null) {
+            writer.force(false);
+        }
+        long liveBytes = discussions.liveBytes() + issues.liveBytes();
+        if ((totalBytes > COMPACT_MIN_BYTES && totalBytes - liveBytes > liveBytes)
+                || segmentVersions.containsValue(JSON_SEGMENT_VERSION)) {
+            compact();
+        } else {
+            writeIndex();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeQuietly(writer);
+        writer = null;
+        // unmapped once collected
+        mappings.clear();
+    }
+
+    private void recover() throws IOException {
+        List<Integer> segments = segments(directory);
+        for (int segment : segments) {
+            segmentVersions.put(segment, readSegmentVersion(segment));
+        }
+        int scanSegment = 0;
+        long scanOffset = 0;
+        if (readIndex()) {
+            scanSegment = activeSegment;
+            Path indexed = segmentPath(activeSegment);
+            scanOffset = Files.exists(indexed) ? Math.min(indexEnd, Files.size(indexed)) : 0;
+            if (scanOffset < indexEnd) {
+                log.warnv("Pull index of {0} is ahead of its segments, rebuilding it", directory);
+                discussions.reset();
+                issues.reset();
+                symbols.clear();
+                scanSegment = 0;
+                scanOffset = 0;
+            }
+        }
+        for (int segment : segments) {
+            if (segment < scanSegment) {
+                continue;
+            }
+            long end = scan(segment, segment == scanSegment ? scanOffset : 0);
+            if (end < Files.size(segmentPath(segment))) {
+                log.warnv("Dropping the incomplete end of pull segment {0}", segmentPath(segment));
+                try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.WRITE)) {
+                    channel.truncate(end);
+                }
+            }
+        }
+        if (!segments.isEmpty()) {
+            activeSegment = Math.max(activeSegment, segments.get(segments.size() - 1));
+        }
+        // segments left behind by a compaction that did not get to delete them hold no live records. Only the oldest
+        // ones go, as a removal recorded in a later segment must outlive the record it removes.
+        for (int segment : segments) {
+            if (segment >= activeSegment || discussions.references(segment) || issues.references(segment)) {
+                break;
+            }
+            Files.delete(segmentPath(segment));
+            segmentVersions.remove(segment);
+        }
+        totalBytes = 0;
+        for (int segment : segments(directory)) {
+            totalBytes += Files.size(segmentPath(segment));
+        }
+        loggedSymbols = symbols.size();
+        // indexes written before metadata was kept, and records found by the scan
+        discussions.fillMetadata();
+        issues.fillMetadata();
+    }
+
+    private int readSegmentVersion(int segment) throws IOException {
+        Path path = segmentPath(segment);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < SEGMENT_HEADER_BYTES) {
+                // too short for a header or a record, so cut short by a crash. The header is written again.
+                channel.truncate(0);
+                return SEGMENT_VERSION;
+            }
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            // no header means the first version, whose records start with a length far below the magic number
+            if (header.getInt() != SEGMENT_MAGIC) {
+                return JSON_SEGMENT_VERSION;
+            }
+            int version = header.getInt();
+            if (version != SEGMENT_VERSION) {
+                throw new IOException("Unknown pull segment version " + version + " in " + path);
+            }
+            return version;
+        }
+    }
+
+    private boolean readIndex() {
+        Path path = directory.resolve(INDEX);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int version = in.readInt() == INDEX_MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > INDEX_VERSION) {
+                log.warnv("Unknown pull index format in {0}, rebuilding it", path);
+                return false;
+            }
+            lastPulled = in.readLong();
+            activeSegment = in.readInt();
+            indexEnd = in.readLong();
+            if (version >= 2) {
+                int count = in.readInt();
+                List<String> values = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    values.add(ModelCodec.readString(in));
+                }
+                symbols.load(0, values);
+            }
+            discussions.readIndex(in, version);
+            issues.readIndex(in, version);
+            return true;
+        } catch (IOException e) {
+            log.warnv("Failed to read pull index {0}, rebuilding it: {1}", path, e.getMessage());
+            discussions.reset();
+            issues.reset();
+            symbols.clear();
+            activeSegment = 1;
+            lastPulled = 0;
+            return false;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        long end = activeEnd();
+        List<String> knownSymbols = symbols.since(0);
+        AtomicFiles.write(directory.resolve(INDEX), stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(lastPulled);
+            out.writeInt(activeSegment);
+            out.writeLong(end);
+            out.writeInt(knownSymbols.size());
+            for (String symbol : knownSymbols) {
+                ModelCodec.writeString(out, symbol);
+            }
+            discussions.writeIndex(out);
+            issues.writeIndex(out);
+            out.flush();
+        });
+    }
+
+    private long activeEnd() throws IOException {
+        if (writer != null) {
+            return writer.size();
+        }
+        Path active = segmentPath(activeSegment);
+        return Files.exists(active) ? Files.size(active) : 0;
+    }
+
+    /**
+     * Applies the records of a segment to the index, starting at {@code offset}.
+     *
+     * @return the end of the last complete record
+     */
+    private long scan(int segment, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (segmentVersions.get(segment) == SEGMENT_VERSION) {
+                offset = Math.max(offset, Math.min(SEGMENT_HEADER_BYTES, size));
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (offset + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(channel, header, offset);
+                header.flip();
+                int payloadLength = header.getInt();
+                int checksum = header.getInt();
+                byte kind = header.get();
+                byte operation = header.get();
+                int number = header.getInt();
+                if (payloadLength < 0 || offset + HEADER_BYTES + payloadLength > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+                readFully(channel, payload, offset + HEADER_BYTES);
+                if (checksum != checksum(kind, operation, number, payload.array())) {
+                    break;
+                }
+                if (kind == SYMBOLS) {
+                    if (!symbols.load(number, decodeSymbols(payload.array()))) {
+                        log.warnv("Pull segment {0} refers to symbols it does not have", segmentPath(segment));
+                        break;
+                    }
+                    offset += HEADER_BYTES + payloadLength;
+                    continue;
+                }
+                Records<?> records = records(kind);
+                if (records == null) {
+                    break;
+                }
+                if (operation == PUT) {
+                    records.index.put(number, new Location(segment, offset, HEADER_BYTES + payloadLength));
+                    // read from the record once the scan is done
+                    records.removeMetadata(number);
+                } else {
+                    records.index.remove(number);
+                    records.removeMetadata(number);
+                }
+                offset += HEADER_BYTES + payloadLength;
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Copies the live records into new segments and deletes the old ones.
+     */
+    private void compact() throws IOException {
+        List<Integer> old = segments(directory);
+        long before = totalBytes;
+        closeQuietly(writer);
+        writer = null;
+        activeSegment = old.isEmpty() ? activeSegment : old.get(old.size() - 1) + 1;
+        totalBytes = 0;
+        copyLive(discussions);
+        copyLive(issues);
+        if (writer != null) {
+            writer.force(false);
+        }
+        writeIndex();
+        for (int segment : old) {
+            mappings.remove(segment);
+            Files.delete(segmentPath(segment));
+            segmentVersions.remove(segment);
+        }
+        log.debugv("Compacted pull store {0} from {1} to {2} bytes", directory, before, totalBytes);
+    }
+
+    private <V> void copyLive(Records<V> records) throws IOException {
+        for (Map.Entry<Integer, Location> entry : records.index.entrySet()) {
+            Location location = entry.getValue();
+            if (segmentVersions.get(location.segment()) == SEGMENT_VERSION) {
+                entry.setValue(appendRaw(readRaw(location)));
+            } else {
+                V value = decode(records, entry.getKey());
+                entry.setValue(appendItem(records.kind, entry.getKey(), records.codec.encode(value, symbols)));
+            }
+        }
+    }
+
+    /**
+     * Appends an item record, preceded by the symbols its encoding added to the table.
+     */
+    private synchronized Location appendItem(byte kind, int number, byte[] payload) {
+        int known = symbols.size();
+        if (known > loggedSymbols) {
+            append(SYMBOLS, PUT, loggedSymbols, encodeSymbols(symbols.since(loggedSymbols)));
+            loggedSymbols = Math.max(loggedSymbols, known);
+        }
+        return append(kind, PUT, number, payload);
+    }
+
+    private synchronized Location append(byte kind, byte operation, int number, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(kind, operation, number, payload));
+        record.put(kind);
+        record.put(operation);
+        record.putInt(number);
+        record.put(payload);
+        try {
+            return appendRaw(record.array());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to pull store " + directory, e);
+        }
+    }
+
+    private Location appendRaw(byte[] record) throws IOException {
+        if (writer != null && writer.size() + record.length > MAX_SEGMENT_BYTES
+                && writer.size() > SEGMENT_HEADER_BYTES) {
+            writer.close();
+            writer = null;
+            activeSegment++;
+        }
+        if (writer == null) {
+            Files.createDirectories(directory);
+            if (segmentVersions.getOrDefault(activeSegment, SEGMENT_VERSION) != SEGMENT_VERSION) {
+                // do not mix formats in one segment
+                activeSegment++;
+            }
+            writer = FileChannel.open(segmentPath(activeSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            segmentVersions.put(activeSegment, SEGMENT_VERSION);
+            if (writer.size() == 0) {
+                startSegment();
+            } else {
+                writer.position(writer.size());
+            }
+        }
+        long offset = writer.position();
+        writeFully(ByteBuffer.wrap(record));
+        totalBytes += record.length;
+        return new Location(activeSegment, offset, record.length);
+    }
+
+    /**
+     * Writes the header of a new segment and all the symbols known so far, so the segment can be read without the
+     * ones before it.
+     */
+    private void startSegment() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES).putInt(SEGMENT_MAGIC).putInt(SEGMENT_VERSION);
+        writeFully(header.flip());
+        totalBytes += SEGMENT_HEADER_BYTES;
+        int known = symbols.size();
+        if (known > 0) {
+            byte[] payload = encodeSymbols(symbols.since(0));
+            ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+            record.putInt(payload.length);
+            record.putInt(checksum(SYMBOLS, PUT, 0, payload));
+            record.put(SYMBOLS);
+            record.put(PUT);
+            record.putInt(0);
+            record.put(payload);
+            writeFully(record.flip());
+            totalBytes += record.capacity();
+        }
+        loggedSymbols = known;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            writer.write(buffer);
+        }
+    }
+
+    private synchronized byte[] readRaw(Location location) throws IOException {
+        long end = location.offset() + location.length();
+        MappedByteBuffer mapping = mappings.get(location.segment());
+        if (mapping == null || mapping.capacity() < end) {
+            // the active segment grows, so it is mapped again once a record lies past the end of its mapping
+            try (FileChannel channel = FileChannel.open(segmentPath(location.segment()), StandardOpenOption.READ)) {
+                if (channel.size() < end) {
+                    throw new EOFException("Record past the end of " + segmentPath(location.segment()));
+                }
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mappings.put(location.segment(), mapping);
+        }
+        byte[] record = new byte[location.length()];
+        mapping.get((int) location.offset(), record);
+        return record;
+    }
+
+    private <V> V decode(Records<V> records, Object key) {
+        try {
+            byte[] record;
+            int version;
+            // under the lock, so a compaction cannot move the record in between
+            synchronized (this) {
+                Location location = records.index.get(key);
+                if (location == null) {
+                    return null;
+                }
+                record = readRaw(location);
+                version = segmentVersions.get(location.segment());
+            }
+            if (version == JSON_SEGMENT_VERSION) {
+                return objectMapper.readValue(record, HEADER_BYTES, record.length - HEADER_BYTES, records.type);
+            }
+            return records.codec.decode(record, HEADER_BYTES, record.length - HEADER_BYTES, symbols);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException(
+                    "Failed to read " + records.type.getSimpleName() + " from pull store " + directory, e);
+        }
+    }
+
+    private static byte[] encodeSymbols(List<String> values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            ModelCodec.writeVarInt(out, values.size());
+            for (String value : values) {
+                ModelCodec.writeString(out, value);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> decodeSymbols(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = ModelCodec.readVarInt(in);
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(ModelCodec.readString(in));
+        }
+        return values;
+    }
+
+    private Records<?> records(byte kind) {
+        return switch (kind) {
+            case DISCUSSION -> discussions;
+            case ISSUE -> issues;
+            default -> null;
+        };
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%08d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private static List<Integer> segments(Path directory) {
+        List<Integer> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("\\d+\\" + SEGMENT_SUFFIX))
+                    .forEach(name -> segments.add(
+                            Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list pull store " + directory, e);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int checksum(byte kind, byte operation, int number, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(6).put(kind).put(operation).putInt(number).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Map view of one kind of item. {@code put} and {@code remove} append a record right away, and do not read back
+     * the value they replace, so they always return {@code null}.
+     */
+    class Records<V> extends AbstractMap<Integer, V> {
+        final byte kind;
+        final Class<V> type;
+        final ModelCodec<V> codec;
+        final Function<V, ItemMetadata> metadataOf;
+        final Map<Integer, Location> index = new ConcurrentHashMap<>();
+        // changed together with the index, under the store's lock
+        final Map<Integer, ItemMetadata> metadata = new ConcurrentHashMap<>();
+        final LabelIndex labels = new LabelIndex();
+        final TimeIndex times = new TimeIndex();
+
+        Records(byte kind, Class<V> type, ModelCodec<V> codec, Function<V, ItemMetadata> metadataOf) {
+            this.kind = kind;
+            this.type = type;
+            this.codec = codec;
+            this.metadataOf = metadataOf;
+        }
+
+        /**
+         * Metadata of every item, read without decoding any record.
+         */
+        Map<Integer, ItemMetadata> metadata() {
+            return Collections.unmodifiableMap(metadata);
+        }
+
+        @Override
+        public int size() {
+            return index.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return index.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return decode(this, key);
+        }
+
+        @Override
+        public V put(Integer key, V value) {
+            // encoded under the lock, so the symbols it adds are logged before any item that uses them
+            synchronized (PullStore.this) {
+                index.put(key, appendItem(kind, key, codec.encode(value, symbols)));
+                putMetadata(key, metadataOf.apply(value));
+            }
+            return null;
+        }
+
+        @Override
+        public V remove(Object key) {
+            if (!(key instanceof Integer number)) {
+                return null;
+            }
+            synchronized (PullStore.this) {
+                if (index.containsKey(number)) {
+                    append(kind, REMOVE, number, new byte[0]);
+                    index.remove(number);
+                    removeMetadata(number);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Set<Integer> keySet() {
+            return Collections.unmodifiableSet(index.keySet());
+        }
+
+        @Override
+        public Set<Entry<Integer, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return index.size();
+                }
+
+                @Override
+                public Iterator<Entry<Integer, V>> iterator() {
+                    Iterator<Integer> keys = index.keySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return keys.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Integer, V> next() {
+                            Integer key = keys.next();
+                            // decoded when asked for, so iterating over the keys stays cheap
+                            return new Entry<>() {
+                                @Override
+                                public Integer getKey() {
+                                    return key;
+                                }
+
+                                @Override
+                                public V getValue() {
+                                    return get(key);
+                                }
+
+                                @Override
+                                public V setValue(V value) {
+                                    return put(key, value);
+                                }
+                            };
+                        }
+                    };
+                }
+            };
+        }
+
+        long liveBytes() {
+            long bytes = 0;
+            for (Location location : index.values()) {
+                bytes += location.length();
+            }
+            return bytes;
+        }
+
+        boolean references(int segment) {
+            for (Location location : index.values()) {
+                if (location.segment() == segment) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void reset() {
+            index.clear();
+            metadata.clear();
+            labels.clear();
+            times.clear();
+        }
+
+        void fillMetadata() {
+            for (Integer number : index.keySet()) {
+                if (!metadata.containsKey(number)) {
+                    putMetadata(number, metadataOf.apply(decode(this, number)));
+                }
+            }
+        }
+
+        /**
+         * Also adds the type and labels to the symbol table, where the index refers to them, and keeps the table's
+         * strings instead of the item's, so the metadata of every item shares them.
+         */
+        private void putMetadata(int number, ItemMetadata item) {
+            if (item.type() != null) {
+                item = new ItemMetadata(item.number(), item.createdAt(), item.updatedAt(),
+                        symbols.symbol(symbols.id(item.type())), item.labels());
+            }
+            if (!(item.labels() instanceof SymbolSet)) {
+                item = new ItemMetadata(item.number(), item.createdAt(), item.updatedAt(), item.type(),
+                        SymbolSet.of(item.labels(), symbols));
+            }
+            ItemMetadata old = metadata.put(number, item);
+            if (old != null) {
+                labels.remove(old);
+                times.remove(old);
+            }
+            labels.add(item);
+            times.add(item);
+        }
+
+        private void removeMetadata(int number) {
+            ItemMetadata old = metadata.remove(number);
+            if (old != null) {
+                labels.remove(old);
+                times.remove(old);
+            }
+        }
+
+        void readIndex(DataInputStream in, int version) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int number = in.readInt();
+                index.put(number, new Location(in.readInt(), in.readLong(), in.readInt()));
+                if (version >= 3) {
+                    long createdAt = in.readLong();
+                    long updatedAt = in.readLong();
+                    int typeId = in.readInt();
+                    int[] labelIds = new int[in.readInt()];
+                    for (int l = 0; l < labelIds.length; l++) {
+                        labelIds[l] = in.readInt();
+                        // fails here, not on first use, if the index refers to a symbol it does not have
+                        symbols.symbol(labelIds[l]);
+                    }
+                    putMetadata(number, new ItemMetadata(number, createdAt, updatedAt,
+                            typeId < 0 ? null : symbols.symbol(typeId), SymbolSet.ofIds(labelIds, symbols)));
+                }
+            }
+        }
+
+        void writeIndex(DataOutputStream out) throws IOException {
+            // the two maps only change under the lock, which the caller holds
+            out.writeInt(index.size());
+            for (Map.Entry<Integer, Location> entry : index.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().segment());
+                out.writeLong(entry.getValue().offset());
+                out.writeInt(entry.getValue().length());
+                ItemMetadata item = metadata.get(entry.getKey());
+                out.writeLong(item.createdAt());
+                out.writeLong(item.updatedAt());
+                out.writeInt(item.type() == null ? -1 : symbols.id(item.type()));
+                out.writeInt(item.labels().size());
+                for (String label : item.labels()) {
+                    out.writeInt(symbols.id(label));
+                }
+            }
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package io.quarkiverse.github.index;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -16,68 +24,416 @@ import jakarta.inject.Inject;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.filter.Filter;
 import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Or;
 import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import io.quarkiverse.github.index.model.ChangeSet;
 import io.quarkiverse.github.index.model.DiscussionModel;
 import io.quarkiverse.github.index.model.IssueModel;
 import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.AtomicFiles;
+import io.quarkiverse.github.util.EmbeddingBatcher;
+import io.quarkiverse.github.util.MappedVectors.Encoding;
 
+/**
+ * Embeddings of the pulled items, one {@link HnswEmbeddingStore} per repository in {@code <repo>/embeddings.hnsw}. A
+ * repository's store is loaded the first time it is indexed or searched and saved on its own, so the cost of both
+ * follows the repository rather than everything that was indexed. {@link #search(EmbeddingSearchRequest)} only goes to
+ * the stores of the repositories its filter names.
+ *
+ * Indexing embeds the items' segments through an {@link EmbeddingBatcher}, which reuses the vectors of the segments
+ * being replaced whose text did not change, so indexing a repository again only pays for what was edited.
+ *
+ * Saving a store appends the changes since the last save to its log, and compacting the log, and the graph once it
+ * holds many removed segments, is left to a background thread, so a save costs what changed rather than the store.
+ *
+ * The {@code product.manager.embeddings.*} settings trade recall for speed and memory, see
+ * {@link HnswEmbeddingStore.Options}.
+ */
 @ApplicationScoped
 public class RagIndexer {
     static AppLogger log = AppLogger.getLogger(RagIndexer.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     @ConfigProperty(name = "product.manager.cache.dir")
     String baseDirectory;
 
-    static class EmbeddingStoreHolder {
-        public EmbeddingStoreHolder(InMemoryEmbeddingStore<TextSegment> store) {
+    @ConfigProperty(name = "product.manager.embeddings.hnsw.m", defaultValue = "16")
+    int hnswM;
+
+    @ConfigProperty(name = "product.manager.embeddings.hnsw.ef-construction", defaultValue = "200")
+    int hnswEfConstruction;
+
+    @ConfigProperty(name = "product.manager.embeddings.hnsw.ef-search", defaultValue = "100")
+    int hnswEfSearch;
+
+    @ConfigProperty(name = "product.manager.embeddings.exact-search-limit", defaultValue = "2000")
+    int exactSearchLimit;
+
+    // float32, float16 or int8
+    @ConfigProperty(name = "product.manager.embeddings.quantization", defaultValue = "int8")
+    Encoding quantization;
+
+    // the provider's limits per request, tokens being estimated from the length of the text
+    @ConfigProperty(name = "product.manager.embeddings.batch.max-tokens", defaultValue = "100000")
+    int batchMaxTokens;
+
+    @ConfigProperty(name = "product.manager.embeddings.batch.max-segments", defaultValue = "256")
+    int batchMaxSegments;
+
+    // embedding requests in flight at once, over all the repositories being indexed
+    @ConfigProperty(name = "product.manager.embeddings.concurrency", defaultValue = "4")
+    int embeddingConcurrency;
+
+    static class Shard {
+        Shard(String repoName, Path embeddingsPath, Path journalSeqPath, HnswEmbeddingStore store, long journalSeq) {
+            this.repoName = repoName;
+            this.embeddingsPath = embeddingsPath;
+            this.journalSeqPath = journalSeqPath;
             this.store = store;
+            this.journalSeq = journalSeq;
+            this.savedJournalSeq = journalSeq;
         }
 
-        InMemoryEmbeddingStore<TextSegment> store;
-        boolean dirty = false;
+        final String repoName;
+        final Path embeddingsPath;
+        // last change journal entry applied to the store, kept next to it
+        final Path journalSeqPath;
+        final HnswEmbeddingStore store;
+        // repositories are indexed in parallel, and the store itself is thread safe
+        volatile boolean dirty = false;
+        // a compaction of the store is queued or running
+        final AtomicBoolean compacting = new AtomicBoolean();
+        long journalSeq;
+        long savedJournalSeq;
     }
 
-    Path embeddingsPath;
-    EmbeddingStoreHolder embeddingsStore;
+    final Map<String, Shard> shards = new ConcurrentHashMap<>();
+    // one at a time, as compactions are mostly disk bound
+    private final ExecutorService compactor = Executors
+            .newSingleThreadExecutor(Thread.ofVirtual().name("embeddings-compactor").factory());
+    // the single store of older versions, split into shards before the first one is loaded
+    private volatile boolean legacySplit = false;
 
-    @PostConstruct
-    public void postConstruct() {
-        embeddingsPath = Path.of(baseDirectory, "embeddings.json");
+    @Inject
+    ChangeJournal journal;
+
+    public HnswEmbeddingStore load(String repoName) {
+        return shard(repoName).store;
+    }
+
+    private Shard shard(String repoName) {
+        splitLegacyStore();
+        return shards.computeIfAbsent(repoName, this::read);
+    }
+
+    private Shard read(String repoName) {
+        Path embeddingsPath = Path.of(baseDirectory, repoName, "embeddings.hnsw");
+        Path journalSeqPath = Path.of(baseDirectory, repoName, "embeddings.seq");
+        Path jsonPath = Path.of(baseDirectory, repoName, "embeddings.json");
+        HnswEmbeddingStore store;
+        try {
+            if (!Files.exists(embeddingsPath) && Files.exists(jsonPath)) {
+                store = convert(repoName, jsonPath, embeddingsPath);
+            } else {
+                store = HnswEmbeddingStore.open(embeddingsPath, options());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read embeddings from " + embeddingsPath, e);
+        }
+        long journalSeq = 0;
+        if (store.isEmpty()) {
+            // nothing in the journal can be stale in an empty store
+            journalSeq = journal.lastSeq();
+        } else if (Files.exists(journalSeqPath)) {
+            try {
+                journalSeq = Long.parseLong(Files.readString(journalSeqPath).strip());
+            } catch (IOException | NumberFormatException e) {
+                log.warnv("Failed to read {0}, replaying the whole change journal: {1}", journalSeqPath,
+                        e.getMessage());
+            }
+        }
+        journal.saved(ChangeJournal.EMBEDDINGS, repoName, journalSeq);
+        return new Shard(repoName, embeddingsPath, journalSeqPath, store, journalSeq);
+    }
+
+    private HnswEmbeddingStore.Options options() {
+        return new HnswEmbeddingStore.Options(hnswM, hnswEfConstruction, hnswEfSearch, exactSearchLimit,
+                quantization);
+    }
+
+    /**
+     * Moves the embeddings of the embeddings.json store older versions kept for a repository into a graph.
+     */
+    private HnswEmbeddingStore convert(String repoName, Path jsonPath, Path embeddingsPath) throws IOException {
+        log.infov("Building the embeddings graph of {0} from {1}", repoName, jsonPath);
+        List<EmbeddingMatch<TextSegment>> matches = entries(Files.readString(jsonPath, StandardCharsets.UTF_8));
+        HnswEmbeddingStore store = HnswEmbeddingStore.open(embeddingsPath, options());
+        if (!matches.isEmpty()) {
+            store.addAll(matches.stream().map(EmbeddingMatch::embeddingId).toList(),
+                    matches.stream().map(EmbeddingMatch::embedding).toList(),
+                    matches.stream().map(EmbeddingMatch::embedded).toList());
+        }
+        store.save();
+        Files.delete(jsonPath);
+        return store;
     }
 
-    public InMemoryEmbeddingStore<TextSegment> load(String repoName) {
-        if (embeddingsStore != null) {
-            return embeddingsStore.store;
+    /**
+     * Every entry of a serialized in memory store, which only hands them out through a search, here for a query every
+     * vector scores against. The query has the length of the stored vectors, which need not be the current model's.
+     */
+    private static List<EmbeddingMatch<TextSegment>> entries(String json) throws IOException {
+        int dimension = dimension(json);
+        if (dimension == 0) {
+            return List.of();
         }
-        InMemoryEmbeddingStore<TextSegment> store;
-        Path path = Path.of(baseDirectory, repoName, "rag.json");
-        if (Files.exists(path)) {
-            store = InMemoryEmbeddingStore.fromFile(path);
-        } else {
-            store = new InMemoryEmbeddingStore<>();
+        float[] query = new float[dimension];
+        query[0] = 1;
+        EmbeddingSearchRequest everything = EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(query))
+                .maxResults(Integer.MAX_VALUE)
+                .minScore(0.0)
+                .build();
+        return InMemoryEmbeddingStore.fromJson(json).search(everything).matches();
+    }
+
+    /**
+     * The length of the first vector of a serialized in memory store, 0 if it has none. Reads no further than that
+     * vector.
+     */
+    static int dimension(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token == JsonToken.FIELD_NAME && "vector".equals(parser.currentName())
+                        && parser.nextToken() == JsonToken.START_ARRAY) {
+                    int dimension = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        dimension++;
+                    }
+                    return dimension;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Moves each repository's embeddings out of the embeddings.json older versions kept in the cache directory.
+     */
+    private void splitLegacyStore() {
+        if (legacySplit) {
+            return;
+        }
+        synchronized (this) {
+            if (legacySplit) {
+                return;
+            }
+            Path legacyPath = Path.of(baseDirectory, "embeddings.json");
+            Path legacySeqPath = Path.of(baseDirectory, "embeddings.seq");
+            try {
+                if (Files.exists(legacyPath)) {
+                    String seq = Files.exists(legacySeqPath) ? Files.readString(legacySeqPath) : null;
+                    // read once and partitioned, as the store holds the embeddings of every repository
+                    Map<String, List<EmbeddingMatch<TextSegment>>> byRepo = new HashMap<>();
+                    for (EmbeddingMatch<TextSegment> match : entries(
+                            Files.readString(legacyPath, StandardCharsets.UTF_8))) {
+                        String repoName = match.embedded() == null ? null
+                                : match.embedded().metadata().getString("repo");
+                        if (repoName != null) {
+                            byRepo.computeIfAbsent(repoName, k -> new ArrayList<>()).add(match);
+                        }
+                    }
+                    // every repository found, pulled or not, as the store is deleted once they are all written
+                    for (Map.Entry<String, List<EmbeddingMatch<TextSegment>>> entry : byRepo.entrySet()) {
+                        String repoName = entry.getKey();
+                        List<EmbeddingMatch<TextSegment>> matches = entry.getValue();
+                        Path embeddingsPath = Path.of(baseDirectory, repoName, "embeddings.json");
+                        // moved by an earlier split that failed before it could delete the store
+                        if (Files.exists(embeddingsPath)
+                                || Files.exists(Path.of(baseDirectory, repoName, "embeddings.hnsw"))) {
+                            continue;
+                        }
+                        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+                        store.addAll(matches.stream().map(EmbeddingMatch::embeddingId).toList(),
+                                matches.stream().map(EmbeddingMatch::embedding).toList(),
+                                matches.stream().map(EmbeddingMatch::embedded).toList());
+                        log.infov("Moving the embeddings of {0} to their own store", repoName);
+                        String repoJson = store.serializeToJson();
+                        AtomicFiles.write(embeddingsPath,
+                                out -> out.write(repoJson.getBytes(StandardCharsets.UTF_8)));
+                        if (seq != null) {
+                            AtomicFiles.write(Path.of(baseDirectory, repoName, "embeddings.seq"),
+                                    out -> out.write(seq.getBytes(StandardCharsets.UTF_8)));
+                        }
+                    }
+                    Files.delete(legacyPath);
+                }
+                Files.deleteIfExists(legacySeqPath);
+            } catch (IOException e) {
+                // tried again when the next store is loaded
+                throw new RuntimeException("Failed to split " + legacyPath + " into one store per repository", e);
+            }
+            legacySplit = true;
         }
-        embeddingsStore = new EmbeddingStoreHolder(store);
-        return embeddingsStore.store;
+    }
+
+    @PostConstruct
+    void init() {
+        embeddingBatcher = new EmbeddingBatcher(embeddingModel, batchMaxTokens, batchMaxSegments,
+                embeddingConcurrency);
     }
 
     @PreDestroy
     public void preDestroy() {
         save();
+        // a compaction cut short leaves the last checkpoint and log in place
+        compactor.shutdown();
     }
 
     public void save() {
-        if (embeddingsStore.dirty) {
-            embeddingsStore.store.serializeToFile(embeddingsPath);
-            embeddingsStore.dirty = false;
+        shards.values().forEach(this::save);
+    }
+
+    private void save(Shard shard) {
+        synchronized (shard) {
+            try {
+                if (shard.dirty) {
+                    shard.dirty = false;
+                    shard.store.save();
+                }
+                // written after the store, so a crash in between only replays entries that are already in it
+                if (shard.journalSeq != shard.savedJournalSeq) {
+                    long seq = shard.journalSeq;
+                    AtomicFiles.write(shard.journalSeqPath,
+                            out -> out.write(Long.toString(seq).getBytes(StandardCharsets.UTF_8)));
+                    shard.savedJournalSeq = seq;
+                    journal.saved(ChangeJournal.EMBEDDINGS, shard.repoName, seq);
+                }
+            } catch (IOException e) {
+                // the previous embeddings are left as they were, and the journal entries they miss are replayed on
+                // startup
+                shard.dirty = true;
+                log.errorv(e, "Failed to save embeddings to {0}", shard.embeddingsPath);
+                return;
+            }
+        }
+        compactLater(shard);
+    }
+
+    private void compactLater(Shard shard) {
+        if (!shard.store.needsCompaction() || !shard.compacting.compareAndSet(false, true)) {
+            return;
         }
+        try {
+            compactor.execute(() -> {
+                try {
+                    shard.store.compact();
+                } catch (IOException | RuntimeException e) {
+                    // the store keeps working from its log, and the next save tries again
+                    log.errorv(e, "Failed to compact embeddings {0}", shard.embeddingsPath);
+                } finally {
+                    shard.compacting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            shard.compacting.set(false);
+        }
+    }
+
+    /**
+     * Records that the change journal entry {@code seq} was applied to the repository's store.
+     */
+    public void applied(String repoName, long seq) {
+        Shard shard = shard(repoName);
+        synchronized (shard) {
+            shard.journalSeq = Math.max(shard.journalSeq, seq);
+        }
+    }
+
+    /**
+     * The last change journal entry applied to the repository's store.
+     */
+    public long journalSeq(String repoName) {
+        Shard shard = shard(repoName);
+        synchronized (shard) {
+            return shard.journalSeq;
+        }
+    }
+
+    /**
+     * Searches the stores of the repositories that the request's filter limits it to with {@code repo}, or all of
+     * them when it does not, and keeps the best matches.
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        Set<String> repos = reposIn(request.filter());
+        if (repos == null) {
+            repos = new HashSet<>(pullCacheService.repos());
+            repos.addAll(shards.keySet());
+        }
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (String repoName : repos) {
+            matches.addAll(load(repoName).search(request).matches());
+        }
+        matches.sort(Comparator.comparing(EmbeddingMatch<TextSegment>::score, Comparator.reverseOrder()));
+        if (matches.size() > request.maxResults()) {
+            matches = new ArrayList<>(matches.subList(0, request.maxResults()));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * The repositories a filter is limited to, null if it matches items of any repository.
+     */
+    static Set<String> reposIn(Filter filter) {
+        if (filter instanceof IsEqualTo equalTo && "repo".equals(equalTo.key())) {
+            return Set.of(String.valueOf(equalTo.comparisonValue()));
+        }
+        if (filter instanceof IsIn in && "repo".equals(in.key())) {
+            Set<String> repos = new HashSet<>();
+            for (Object value : in.comparisonValues()) {
+                repos.add(String.valueOf(value));
+            }
+            return repos;
+        }
+        if (filter instanceof And and) {
+            Set<String> left = reposIn(and.left());
+            Set<String> right = reposIn(and.right());
+            if (left == null || right == null) {
+                return left == null ? right : left;
+            }
+            Set<String> both = new HashSet<>(left);
+            both.retainAll(right);
+            return both;
+        }
+        if (filter instanceof Or or) {
+            Set<String> left = reposIn(or.left());
+            Set<String> right = reposIn(or.right());
+            if (left == null || right == null) {
+                return null;
+            }
+            Set<String> either = new HashSet<>(left);
+            either.addAll(right);
+            return either;
+        }
+        return null;
     }
 
     @Inject
@@ -86,59 +442,77 @@ public class RagIndexer {
     @Inject
     EmbeddingModel embeddingModel;
 
+    EmbeddingBatcher embeddingBatcher;
+
     @Inject
     RenderService renderService;
 
+    @Inject
+    SyncService syncService;
+
     public void indexAll() {
-        Set<String> repos = pullCacheService.repos();
-        for (String repoName : repos) {
-            index(repoName);
-        }
+        syncService.indexAll(pullCacheService.repos());
     }
 
     public void index(String repoName) {
-        PullCache pullCache = pullCacheService.load(repoName);
-        if (pullCache.discussions.isEmpty() && pullCache.issues.isEmpty()) {
-            return;
+        PullCache pullCache = pullCacheService.acquire(repoName);
+        try {
+            if (pullCache.discussions.isEmpty() && pullCache.issues.isEmpty()) {
+                return;
+            }
+            ChangeSet changeSet = new ChangeSet(pullCache.discussions.keySet(), pullCache.issues.keySet());
+            index(repoName, changeSet);
+        } finally {
+            pullCacheService.release(pullCache);
         }
-        ChangeSet changeSet = new ChangeSet(pullCache.discussions.keySet(), pullCache.issues.keySet());
-        index(repoName, changeSet);
     }
 
     public void index(String repoName, ChangeSet changeSet) {
         if (changeSet.discussions().isEmpty() && changeSet.issues().isEmpty()) {
             return;
         }
+        Shard shard = shard(repoName);
+        // the items are indexed again from scratch, but the text of most of their segments has not changed
+        Map<String, Embedding> known = new HashMap<>();
+        for (Filter filter : filters(repoName, changeSet)) {
+            shard.store.forEach(filter,
+                    (segment, embedding) -> known.put(EmbeddingBatcher.hash(segment.text()), embedding));
+        }
+        prune(repoName, changeSet);
         try {
-            prune(repoName, changeSet);
-
-            InMemoryEmbeddingStore<TextSegment> store = load(repoName);
-            PullCache pullCache = pullCacheService.load(repoName);
-            EmbeddingStoreIngestor ingester = EmbeddingStoreIngestor.builder()
-                    .embeddingModel(embeddingModel)
-                    .embeddingStore(store)
-                    .build();
-
-            List<Document> docs = new ArrayList<>();
-            log.thinking("Indexing " + changeSet.discussions().size() + " discussions");
-            for (Integer discussionNumber : changeSet.discussions()) {
-                DiscussionModel discussion = pullCache.discussions.get(discussionNumber);
-                Document doc = createDoc(discussion);
-                docs.add(doc);
-            }
-            ingester.ingest(docs);
-            docs.clear();
-            log.thinking("Indexing " + changeSet.issues().size() + " issues");
-            for (Integer issueNumber : changeSet.issues()) {
-                IssueModel issue = pullCache.issues.get(issueNumber);
-                Document doc = createDoc(issue);
-                docs.add(doc);
+            List<TextSegment> segments = new ArrayList<>();
+            PullCache pullCache = pullCacheService.acquire(repoName);
+            try {
+                log.thinking("Indexing " + changeSet.discussions().size() + " discussions of " + repoName);
+                for (Integer discussionNumber : changeSet.discussions()) {
+                    DiscussionModel discussion = pullCache.discussions.get(discussionNumber);
+                    if (discussion == null) {
+                        // pruned since, i.e. when replaying the change journal
+                        continue;
+                    }
+                    segments.add(createDoc(discussion).toTextSegment());
+                }
+                log.thinking("Indexing " + changeSet.issues().size() + " issues of " + repoName);
+                for (Integer issueNumber : changeSet.issues()) {
+                    IssueModel issue = pullCache.issues.get(issueNumber);
+                    if (issue == null) {
+                        continue;
+                    }
+                    segments.add(createDoc(issue).toTextSegment());
+                }
+            } finally {
+                pullCacheService.release(pullCache);
             }
-            ingester.ingest(docs);
-            embeddingsStore.dirty = true;
+            shard.store.addAll(embeddingBatcher.embedAll(segments, known), segments);
         } catch (RuntimeException e) {
-            embeddingsStore = null;
+            // only this change set is taken out again, so the store does not keep half of it. Indexing the repository
+            // again puts it back.
+            log.warnv("Failed to index {0}, leaving out its {1} changed items", repoName,
+                    changeSet.discussions().size() + changeSet.issues().size());
+            prune(repoName, changeSet);
             throw e;
+        } finally {
+            shard.dirty = true;
         }
     }
 
@@ -171,50 +545,68 @@ public class RagIndexer {
     }
 
     public void prune(String repoName, ChangeSet changeSet) {
+        Shard shard = shard(repoName);
         try {
-            InMemoryEmbeddingStore<TextSegment> store = load(repoName);
-            Filter repo = new MetadataFilterBuilder("repo").isEqualTo(repoName);
-            for (Integer discussionNumber : changeSet.discussions()) {
-                Filter type = new MetadataFilterBuilder("type").isEqualTo("discussion");
-                Filter number = new MetadataFilterBuilder("number").isEqualTo(discussionNumber);
-                store.removeAll(Filter.and(repo, Filter.and(type, number)));
-            }
-            for (Integer issueNumber : changeSet.issues()) {
-                Filter type = new MetadataFilterBuilder("type").isEqualTo("issue");
-                Filter number = new MetadataFilterBuilder("number").isEqualTo(issueNumber);
-                store.removeAll(Filter.and(repo, Filter.and(type, number)));
+            for (Filter filter : filters(repoName, changeSet)) {
+                shard.store.removeAll(filter);
             }
-            embeddingsStore.dirty = true;
-        } catch (RuntimeException e) {
-            embeddingsStore = null;
-            throw e;
+        } finally {
+            // removing is idempotent, so whatever got removed before a failure can be saved
+            shard.dirty = true;
         }
     }
 
+    /**
+     * Filters for the segments of the items in the change set, one per type so that each is one pass over the store
+     * rather than one per item.
+     */
+    private static List<Filter> filters(String repoName, ChangeSet changeSet) {
+        Filter repo = new MetadataFilterBuilder("repo").isEqualTo(repoName);
+        List<Filter> filters = new ArrayList<>(2);
+        if (!changeSet.discussions().isEmpty()) {
+            Filter type = new MetadataFilterBuilder("type").isEqualTo("discussion");
+            Filter number = new MetadataFilterBuilder("number").isIn(changeSet.discussions());
+            filters.add(Filter.and(repo, Filter.and(type, number)));
+        }
+        if (!changeSet.issues().isEmpty()) {
+            Filter type = new MetadataFilterBuilder("type").isEqualTo("issue");
+            Filter number = new MetadataFilterBuilder("number").isIn(changeSet.issues());
+            filters.add(Filter.and(repo, Filter.and(type, number)));
+        }
+        return filters;
+    }
+
     public void newPull(String repoName, ChangeSet changeSet) {
-        InMemoryEmbeddingStore<TextSegment> store = load(repoName);
-        if (store.isEmpty()) {
+        if (load(repoName).isEmpty()) {
             return;
         }
         index(repoName, changeSet);
     }
 
     public void clear(String repoName) {
-        if (embeddingsStore != null) {
-            Filter repo = new MetadataFilterBuilder("repo").isEqualTo(repoName);
-            embeddingsStore.store.removeAll(repo);
-            embeddingsStore.dirty = true;
+        Shard shard = shards.remove(repoName);
+        try {
+            if (shard != null) {
+                synchronized (shard) {
+                    // a save that was already waiting on the shard finds nothing to write
+                    shard.dirty = false;
+                    shard.savedJournalSeq = shard.journalSeq;
+                    shard.store.close();
+                }
+            }
+            HnswEmbeddingStore.delete(Path.of(baseDirectory, repoName, "embeddings.hnsw"));
+            Files.deleteIfExists(Path.of(baseDirectory, repoName, "embeddings.json"));
+            Files.deleteIfExists(Path.of(baseDirectory, repoName, "embeddings.seq"));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to clear embeddings", e);
         }
     }
 
     public void destroy() {
-        embeddingsStore = null;
-        if (Files.exists(embeddingsPath)) {
-            try {
-                Files.delete(embeddingsPath);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to destroy embeddings", e);
-            }
+        Set<String> repos = new HashSet<>(pullCacheService.repos());
+        repos.addAll(shards.keySet());
+        for (String repoName : repos) {
+            clear(repoName);
         }
     }
 }
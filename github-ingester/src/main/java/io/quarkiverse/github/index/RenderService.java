@@ -1,11 +1,24 @@
 package io.quarkiverse.github.index;
 
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 import dev.langchain4j.model.TokenCountEstimator;
 import dev.langchain4j.model.openai.OpenAiChatModelName;
 import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
@@ -13,16 +26,21 @@ import io.quarkiverse.github.index.model.ChangeSet;
 import io.quarkiverse.github.index.model.DiscussionModel;
 import io.quarkiverse.github.index.model.IssueModel;
 import io.quarkiverse.github.index.model.RenderResult;
+import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.AtomicFiles;
+import io.quarkiverse.github.util.WeightedLruCache;
 import io.quarkus.qute.CheckedTemplate;
 import io.quarkus.qute.TemplateContents;
 import io.quarkus.qute.TemplateInstance;
+import io.quarkus.runtime.configuration.MemorySize;
 
 @ApplicationScoped
 public class RenderService {
+    static AppLogger log = AppLogger.getLogger(RenderService.class);
 
     @CheckedTemplate
     public static class Templates {
-        @TemplateContents("""
+        static final String DISCUSSION = """
                 # Title: {discussion.title}
                 ## Author: {discussion.author}
                 {#if discussion.category != null}
@@ -53,10 +71,9 @@ public class RenderService {
                 {/for}
                 {/if}
                 {/for}
-                    """)
-        public static native TemplateInstance discussion(DiscussionModel discussion);
+                    """;
 
-        @TemplateContents("""
+        static final String ISSUE = """
                 # Title: {issue.title}
                 ## Author: {issue.author}
                 {#if issue.labels.size() > 0}
@@ -76,29 +93,140 @@ public class RenderService {
                 ## Author: {comment.author}
                 {comment.body}
                 {/for}
-                    """)
+                    """;
+
+        @TemplateContents(DISCUSSION)
+        public static native TemplateInstance discussion(DiscussionModel discussion);
+
+        @TemplateContents(ISSUE)
         public static native TemplateInstance issue(IssueModel issue);
     }
 
+    static final OpenAiChatModelName TOKENIZER_MODEL = OpenAiChatModelName.GPT_5_1;
+
+    /**
+     * Changes whenever the templates or the tokenizer do, so renders saved by an older version are not used.
+     */
+    static final int TEMPLATE_VERSION = (Templates.DISCUSSION + "\0" + Templates.ISSUE + "\0" + TOKENIZER_MODEL)
+            .hashCode();
+
     record RenderEntry(String text, int tokenCount, long updatedAt) {
 
     }
 
+    /**
+     * Saved to render.bin: a magic number, the format and template versions, then per kind the count and the entries as
+     * varint number, updated at, length prefixed text and token count. A file from other templates is dropped.
+     */
     static class RenderCache {
+        static final int MAGIC = 0x524e4443;
+        static final int VERSION = 1;
+
         public Map<Integer, RenderEntry> discussions = new ConcurrentHashMap<>();
         public Map<Integer, RenderEntry> issues = new ConcurrentHashMap<>();
+
+        volatile boolean dirty = false;
+
+        long weight() {
+            long weight = 0;
+            for (RenderEntry entry : discussions.values()) {
+                weight += 64 + entry.text().length();
+            }
+            for (RenderEntry entry : issues.values()) {
+                weight += 64 + entry.text().length();
+            }
+            return weight;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(TEMPLATE_VERSION);
+            write(out, discussions);
+            write(out, issues);
+        }
+
+        /**
+         * @return null if the file was rendered with other templates
+         */
+        static RenderCache read(DataInput in) throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a render cache");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown render cache version " + version);
+            }
+            if (in.readInt() != TEMPLATE_VERSION) {
+                return null;
+            }
+            RenderCache renderCache = new RenderCache();
+            read(in, renderCache.discussions);
+            read(in, renderCache.issues);
+            return renderCache;
+        }
+
+        private static void write(DataOutput out, Map<Integer, RenderEntry> entries) throws IOException {
+            // a snapshot, the map may still be written to
+            List<Map.Entry<Integer, RenderEntry>> snapshot = List.copyOf(entries.entrySet());
+            ModelCodec.writeVarInt(out, snapshot.size());
+            for (Map.Entry<Integer, RenderEntry> entry : snapshot) {
+                ModelCodec.writeVarInt(out, entry.getKey());
+                out.writeLong(entry.getValue().updatedAt());
+                ModelCodec.writeString(out, entry.getValue().text());
+                ModelCodec.writeVarInt(out, entry.getValue().tokenCount());
+            }
+        }
+
+        private static void read(DataInput in, Map<Integer, RenderEntry> entries) throws IOException {
+            int count = ModelCodec.readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                int number = ModelCodec.readVarInt(in);
+                long updatedAt = in.readLong();
+                String text = ModelCodec.readString(in);
+                entries.put(number, new RenderEntry(text, ModelCodec.readVarInt(in), updatedAt));
+            }
+        }
     }
 
-    Map<String, RenderCache> renderCacheMap = new ConcurrentHashMap<>();
+    @ConfigProperty(name = "product.manager.cache.render-max-size", defaultValue = "64M")
+    MemorySize maxSize;
+
+    @ConfigProperty(name = "product.manager.cache.dir")
+    String baseDirectory;
+
+    WeightedLruCache<String, RenderCache> renderCacheMap;
+
+    @PostConstruct
+    public void postConstruct() {
+        renderCacheMap = new WeightedLruCache<>(maxSize.asLongValue(), RenderCache::weight, this::save);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        save();
+        log.debugv("Render cache: {0}", renderCacheMap.stats());
+    }
+
+    /**
+     * Writes the renders made since a repository's were last saved. Besides this, they are only written when the
+     * repository is evicted, so a crash loses the ones made since, which are rendered again when next used.
+     */
+    public void save() {
+        renderCacheMap.snapshot().forEach(this::save);
+    }
+
+    public WeightedLruCache.Stats cacheStats() {
+        return renderCacheMap.stats();
+    }
 
     public RenderResult discussion(DiscussionModel discussion) {
-        RenderCache renderCache = renderCacheMap.computeIfAbsent(discussion.repo(), k -> new RenderCache());
-        RenderEntry renderResult = renderCache.discussions.computeIfAbsent(discussion.number(), k -> {
-            return buildEntry(discussion);
-        });
-        if (renderResult.updatedAt() != discussion.updatedAt()) {
+        RenderCache renderCache = load(discussion.repo());
+        RenderEntry renderResult = renderCache.discussions.get(discussion.number());
+        if (renderResult == null || renderResult.updatedAt() != discussion.updatedAt()) {
             renderResult = buildEntry(discussion);
             renderCache.discussions.put(discussion.number(), renderResult);
+            renderCache.dirty = true;
         }
         return new RenderResult(renderResult.text(), renderResult.tokenCount());
     }
@@ -116,34 +244,87 @@ public class RenderService {
     }
 
     public RenderResult issue(IssueModel issue) {
-        RenderCache renderCache = renderCacheMap.computeIfAbsent(issue.repo(), k -> new RenderCache());
-        RenderEntry renderResult = renderCache.issues.computeIfAbsent(issue.number(), k -> {
-            return buildEntry(issue);
-        });
-        if (renderResult.updatedAt() != issue.updatedAt()) {
+        RenderCache renderCache = load(issue.repo());
+        RenderEntry renderResult = renderCache.issues.get(issue.number());
+        if (renderResult == null || renderResult.updatedAt() != issue.updatedAt()) {
             renderResult = buildEntry(issue);
             renderCache.issues.put(issue.number(), renderResult);
+            renderCache.dirty = true;
         }
         return new RenderResult(renderResult.text(), renderResult.tokenCount());
     }
 
     public void prune(String repoName, ChangeSet changeSet) {
+        // renders are checked against updatedAt when used, so a cache that is not loaded has nothing stale to prune
         RenderCache renderCache = renderCacheMap.get(repoName);
         if (renderCache != null) {
-            renderCache.discussions.keySet().removeAll(changeSet.discussions());
-            renderCache.issues.keySet().removeAll(changeSet.issues());
+            if (renderCache.discussions.keySet().removeAll(changeSet.discussions())
+                    | renderCache.issues.keySet().removeAll(changeSet.issues())) {
+                renderCache.dirty = true;
+            }
         }
     }
 
     public void clear(String repoName) {
         renderCacheMap.remove(repoName);
+        try {
+            Files.deleteIfExists(renderPath(repoName));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to clear render cache", e);
+        }
     }
 
+    /**
+     * Drops the renders held in memory, the ones on disk are loaded again when needed. Renders not saved yet are saved
+     * first, as the cache does not dispose of what it clears.
+     */
     public void clearAll() {
+        save();
         renderCacheMap.clear();
     }
 
-    OpenAiTokenCountEstimator estimator = new OpenAiTokenCountEstimator(OpenAiChatModelName.GPT_5_1);
+    private RenderCache load(String repoName) {
+        return renderCacheMap.computeIfAbsent(repoName, this::read);
+    }
+
+    private RenderCache read(String repoName) {
+        RenderCache renderCache = null;
+        Path path = renderPath(repoName);
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                renderCache = RenderCache.read(in);
+                if (renderCache == null) {
+                    log.infov("Templates changed, rendering {0} again", repoName);
+                }
+            } catch (IOException e) {
+                log.errorv("Failed to load render cache for repo {0}: {1}", repoName, e.getMessage());
+            }
+        }
+        return renderCache == null ? new RenderCache() : renderCache;
+    }
+
+    private void save(String repoName, RenderCache renderCache) {
+        if (!renderCache.dirty) {
+            return;
+        }
+        renderCache.dirty = false;
+        try {
+            AtomicFiles.write(renderPath(repoName), out -> {
+                DataOutputStream data = new DataOutputStream(out);
+                renderCache.write(data);
+                data.flush();
+            });
+        } catch (IOException e) {
+            // renders are only a cache, the ones that were not saved are made again
+            log.error("Failed to save render cache", e);
+        }
+    }
+
+    private Path renderPath(String repoName) {
+        return Path.of(baseDirectory, repoName, "render.bin");
+    }
+
+    OpenAiTokenCountEstimator estimator = new OpenAiTokenCountEstimator(TOKENIZER_MODEL);
 
     @Produces
     public TokenCountEstimator tokenCountEstimator() {
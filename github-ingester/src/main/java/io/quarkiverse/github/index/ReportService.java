@@ -16,8 +16,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.quarkiverse.github.api.GithubAPI.Repository;
 import io.quarkiverse.github.api.Labels.Label;
-import io.quarkiverse.github.index.model.DiscussionModel;
-import io.quarkiverse.github.index.model.IssueModel;
 import io.quarkiverse.github.util.AppLogger;
 
 @ApplicationScoped
@@ -48,79 +46,63 @@ public class ReportService {
     ObjectMapper objectMapper;
 
     public BasicReport basicReport(String repoName) {
-        PullCache pullCache = pullCacheService.load(repoName);
-        long newest = 0;
-        long oldest = 0;
-
-        for (DiscussionModel discussion : pullCache.discussions.values()) {
-            if (discussion.updatedAt() > newest) {
-                newest = discussion.updatedAt();
-            }
-            if (oldest == 0 || discussion.updatedAt() < oldest) {
-                oldest = discussion.updatedAt();
+        PullCache pullCache = pullCacheService.acquire(repoName);
+        try {
+            long newest = Math.max(pullCache.discussionTimes.lastUpdated(), pullCache.issueTimes.lastUpdated());
+            long oldest = pullCache.discussionTimes.firstUpdated();
+            long oldestIssue = pullCache.issueTimes.firstUpdated();
+            if (oldest == 0 || (oldestIssue != 0 && oldestIssue < oldest)) {
+                oldest = oldestIssue;
             }
-        }
-        for (IssueModel issue : pullCache.issues.values()) {
-            if (issue.updatedAt() > newest) {
-                newest = issue.updatedAt();
+            String start = Instant.ofEpochMilli(oldest).toString();
+            String end = Instant.ofEpochMilli(newest).toString();
+            Tally discussions = tallyDiscussions(repoName);
+            Tally issues = tallyIssues(repoName);
+            Map<String, AtomicInteger> labelCounts = new HashMap<>();
+            for (LabelReport labelReport : discussions.labelCounts()) {
+                labelCounts.computeIfAbsent(labelReport.name(), k -> new AtomicInteger())
+                        .addAndGet(labelReport.count());
             }
-            if (oldest == 0 || issue.updatedAt() < oldest) {
-                oldest = issue.updatedAt();
+            for (LabelReport labelReport : issues.labelCounts()) {
+                labelCounts.computeIfAbsent(labelReport.name(), k -> new AtomicInteger())
+                        .addAndGet(labelReport.count());
             }
+            List<LabelReport> labelReports = labelCounts.entrySet().stream()
+                    .map(entry -> new LabelReport(entry.getKey(), entry.getValue().get()))
+                    .collect(Collectors.toList());
+            labelReports.sort(Comparator.comparingInt(LabelReport::count).reversed());
+            return new BasicReport(start, end, labelReports, discussions, issues);
+        } finally {
+            pullCacheService.release(pullCache);
         }
-        String start = Instant.ofEpochMilli(oldest).toString();
-        String end = Instant.ofEpochMilli(newest).toString();
-        Tally discussions = tallyDiscussions(repoName);
-        Tally issues = tallyIssues(repoName);
-        Map<String, AtomicInteger> labelCounts = new HashMap<>();
-        for (LabelReport labelReport : discussions.labelCounts()) {
-            labelCounts.computeIfAbsent(labelReport.name(), k -> new AtomicInteger()).addAndGet(labelReport.count());
-        }
-        for (LabelReport labelReport : issues.labelCounts()) {
-            labelCounts.computeIfAbsent(labelReport.name(), k -> new AtomicInteger()).addAndGet(labelReport.count());
-        }
-        List<LabelReport> labelReports = labelCounts.entrySet().stream()
-                .map(entry -> new LabelReport(entry.getKey(), entry.getValue().get()))
-                .collect(Collectors.toList());
-        labelReports.sort(Comparator.comparingInt(LabelReport::count).reversed());
-        return new BasicReport(start, end, labelReports, discussions, issues);
-
     }
 
     public Tally tallyDiscussions(String repoName) {
         log.thinking("Tallying discussions...");
-        PullCache pullCache = pullCacheService.load(repoName);
-        Map<String, AtomicInteger> labelCounts = new HashMap<>();
-        int numDiscussions = 0;
-        for (DiscussionModel discussion : pullCache.discussions.values()) {
-            numDiscussions++;
-            for (String label : discussion.labels()) {
-                labelCounts.computeIfAbsent(label, k -> new AtomicInteger()).incrementAndGet();
-            }
+        PullCache pullCache = pullCacheService.acquire(repoName);
+        try {
+            return tally(pullCache.discussionLabels);
+        } finally {
+            pullCacheService.release(pullCache);
         }
-        List<LabelReport> labelReports = labelCounts.entrySet().stream()
-                .map(entry -> new LabelReport(entry.getKey(), entry.getValue().get()))
-                .collect(Collectors.toList());
-        labelReports.sort(Comparator.comparingInt(LabelReport::count).reversed());
-        return new Tally(numDiscussions, labelReports);
     }
 
     public Tally tallyIssues(String repoName) {
         log.thinking("Tallying issues...");
-        PullCache pullCache = pullCacheService.load(repoName);
-        Map<String, AtomicInteger> labelCounts = new HashMap<>();
-        int numIssues = 0;
-        for (IssueModel issue : pullCache.issues.values()) {
-            numIssues++;
-            for (String label : issue.labels()) {
-                labelCounts.computeIfAbsent(label, k -> new AtomicInteger()).incrementAndGet();
-            }
+        PullCache pullCache = pullCacheService.acquire(repoName);
+        try {
+            return tally(pullCache.issueLabels);
+        } finally {
+            pullCacheService.release(pullCache);
         }
-        List<LabelReport> labelReports = labelCounts.entrySet().stream()
-                .map(entry -> new LabelReport(entry.getKey(), entry.getValue().get()))
+    }
+
+    private Tally tally(LabelIndex labels) {
+        List<LabelReport> labelReports = labels.counts().entrySet().stream()
+                .map(entry -> new LabelReport(entry.getKey(), entry.getValue()))
                 .collect(Collectors.toList());
         labelReports.sort(Comparator.comparingInt(LabelReport::count).reversed());
-        return new Tally(numIssues, labelReports);
+        return new Tally(labels.size(), labelReports);
     }
 
     @Inject
@@ -130,17 +112,17 @@ public class ReportService {
     PromptWrapper summaryPrompt;
 
     public String summarizeLabled(String repoName, List<String> labels) {
-        PullCache pullCache = pullCacheService.load(repoName);
         List<String> summaries = new ArrayList<>();
-        for (IssueModel issue : pullCache.issues.values()) {
-            if (issue.labels().containsAll(labels)) {
-                summaries.add(summaryService.summarize(repoName, issue).text());
+        PullCache pullCache = pullCacheService.acquire(repoName);
+        try {
+            for (int number : pullCache.issueLabels.withAll(labels)) {
+                summaries.add(summaryService.summarize(repoName, pullCache.issues.get(number)).text());
             }
-        }
-        for (DiscussionModel discussion : pullCache.discussions.values()) {
-            if (discussion.labels().containsAll(labels)) {
-                summaries.add(summaryService.summarize(repoName, discussion).text());
+            for (int number : pullCache.discussionLabels.withAll(labels)) {
+                summaries.add(summaryService.summarize(repoName, pullCache.discussions.get(number)).text());
             }
+        } finally {
+            pullCacheService.release(pullCache);
         }
         if (summaries.isEmpty()) {
             return "Nothing to summarize";
@@ -0,0 +1,27 @@
+package io.quarkiverse.github.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * One lock per repository, held while it is pulled or pruned, so that the chat, the CLI and {@link SyncService} can
+ * work on different repositories at the same time but never on the same one. Locks are reentrant, so a pull and the
+ * prune that follows it can run under one lock.
+ */
+@ApplicationScoped
+public class RepositoryLocks {
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public void run(String repoName, Runnable work) {
+        ReentrantLock lock = locks.computeIfAbsent(repoName, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            work.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package io.quarkiverse.github.index;
 
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -22,6 +29,9 @@ import io.quarkiverse.github.index.model.DiscussionModel;
 import io.quarkiverse.github.index.model.IssueModel;
 import io.quarkiverse.github.index.model.RenderResult;
 import io.quarkiverse.github.util.AppLogger;
+import io.quarkiverse.github.util.AtomicFiles;
+import io.quarkiverse.github.util.WeightedLruCache;
+import io.quarkus.runtime.configuration.MemorySize;
 
 @ApplicationScoped
 public class SummaryService {
@@ -42,7 +52,17 @@ public class SummaryService {
     @Inject
     ObjectMapper objectMapper;
 
+    @Inject
+    ChangeJournal journal;
+
+    /**
+     * Saved to summary.bin: a magic number and format version, the journal sequence number, then per kind the count
+     * and the entries as varint number, length prefixed text and token count. Caches in the summary.json of older
+     * versions are read with Jackson and saved in the new format.
+     */
     static class SummaryCache {
+        static final int MAGIC = 0x53554d43;
+        static final int VERSION = 1;
 
         @JsonDeserialize(as = ConcurrentHashMap.class)
         public Map<Integer, RenderResult> discussions = new ConcurrentHashMap<>();
@@ -50,40 +70,110 @@ public class SummaryService {
         @JsonDeserialize(as = ConcurrentHashMap.class)
         public Map<Integer, RenderResult> issues = new ConcurrentHashMap<>();
 
+        // last change journal entry pruned from this cache
+        public long journalSeq;
+
         @JsonIgnore
         boolean dirty = false;
+
+        /**
+         * Rough heap size, the text plus a fixed overhead per entry.
+         */
+        long weight() {
+            long weight = 0;
+            for (RenderResult result : discussions.values()) {
+                weight += 64 + (result.text() == null ? 0 : result.text().length());
+            }
+            for (RenderResult result : issues.values()) {
+                weight += 64 + (result.text() == null ? 0 : result.text().length());
+            }
+            return weight;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSeq);
+            write(out, discussions);
+            write(out, issues);
+        }
+
+        static SummaryCache read(DataInput in) throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a summary cache");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown summary cache version " + version);
+            }
+            SummaryCache summaryCache = new SummaryCache();
+            summaryCache.journalSeq = in.readLong();
+            read(in, summaryCache.discussions);
+            read(in, summaryCache.issues);
+            return summaryCache;
+        }
+
+        private static void write(DataOutput out, Map<Integer, RenderResult> results) throws IOException {
+            // a snapshot, the map may still be written to
+            List<Map.Entry<Integer, RenderResult>> entries = List.copyOf(results.entrySet());
+            ModelCodec.writeVarInt(out, entries.size());
+            for (Map.Entry<Integer, RenderResult> entry : entries) {
+                ModelCodec.writeVarInt(out, entry.getKey());
+                ModelCodec.writeString(out, entry.getValue().text());
+                ModelCodec.writeVarInt(out, entry.getValue().tokenCount());
+            }
+        }
+
+        private static void read(DataInput in, Map<Integer, RenderResult> results) throws IOException {
+            int count = ModelCodec.readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                int number = ModelCodec.readVarInt(in);
+                results.put(number, new RenderResult(ModelCodec.readString(in), ModelCodec.readVarInt(in)));
+            }
+        }
     }
 
-    private Map<String, SummaryCache> summaryCacheMap = new ConcurrentHashMap<>();
+    @ConfigProperty(name = "product.manager.cache.summary-max-size", defaultValue = "32M")
+    MemorySize maxSize;
+
+    private WeightedLruCache<String, SummaryCache> summaryCacheMap;
+
+    @PostConstruct
+    public void postConstruct() {
+        summaryCacheMap = new WeightedLruCache<>(maxSize.asLongValue(), SummaryCache::weight, this::save);
+    }
 
     @PreDestroy
     public void preDestroy() {
-        for (String repoName : summaryCacheMap.keySet()) {
-            save(repoName);
-        }
+        summaryCacheMap.snapshot().forEach(this::save);
+        log.debugv("Summary cache: {0}", summaryCacheMap.stats());
+    }
+
+    public WeightedLruCache.Stats cacheStats() {
+        return summaryCacheMap.stats();
     }
 
     public void clear(String repoName) {
         summaryCacheMap.remove(repoName);
-        Path path = Path.of(baseDirectory, repoName, "summary.json");
         try {
-            if (Files.exists(path)) {
-                Files.delete(path);
-            }
+            Files.deleteIfExists(summaryPath(repoName));
+            Files.deleteIfExists(legacySummaryPath(repoName));
         } catch (IOException e) {
             throw new RuntimeException("Failed to clear summary cache", e);
         }
     }
 
     private SummaryCache load(String repoName) {
-        SummaryCache summaryCache = summaryCacheMap.get(repoName);
-        if (summaryCache != null) {
-            return summaryCache;
-        }
-        Path path = Path.of(baseDirectory, repoName, "summary.json");
+        return summaryCacheMap.computeIfAbsent(repoName, this::read);
+    }
+
+    private SummaryCache read(String repoName) {
+        SummaryCache summaryCache = null;
+        Path path = summaryPath(repoName);
+        Path legacyPath = legacySummaryPath(repoName);
         if (Files.exists(path)) {
-            try {
-                summaryCache = objectMapper.readValue(path.toFile(), SummaryCache.class);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                summaryCache = SummaryCache.read(in);
             } catch (IOException e) {
                 log.errorv("Failed to load summary cache for repo {0}: {1}", repoName, e.getMessage());
                 try {
@@ -92,33 +182,59 @@ public class SummaryService {
                 }
 
             }
+        } else if (Files.exists(legacyPath)) {
+            try {
+                summaryCache = objectMapper.readValue(legacyPath.toFile(), SummaryCache.class);
+                // rewritten as summary.bin on save
+                summaryCache.dirty = true;
+            } catch (IOException e) {
+                log.errorv("Failed to load summary cache for repo {0}: {1}", repoName, e.getMessage());
+                try {
+                    Files.delete(legacyPath);
+                } catch (IOException e2) {
+                }
+            }
         }
         if (summaryCache == null) {
             summaryCache = new SummaryCache();
         }
-        summaryCacheMap.put(repoName, summaryCache);
+        if (summaryCache.discussions.isEmpty() && summaryCache.issues.isEmpty()) {
+            // nothing in the journal can be stale in an empty cache
+            summaryCache.journalSeq = Math.max(summaryCache.journalSeq, journal.lastSeq());
+        }
+        journal.saved(ChangeJournal.SUMMARIES, repoName, summaryCache.journalSeq);
         return summaryCache;
     }
 
-    private void save(String repoName) {
-        SummaryCache summaryCache = summaryCacheMap.get(repoName);
-        if (summaryCache == null) {
-            return;
-        }
+    private void save(String repoName, SummaryCache summaryCache) {
         if (!summaryCache.dirty) {
             return;
         }
         summaryCache.dirty = false;
-        Path path = Path.of(baseDirectory, repoName, "summary.json");
+        // the file holds this one at least, as the sequence only grows
+        long seq = summaryCache.journalSeq;
         try {
-            objectMapper.writeValue(path.toFile(), summaryCache);
+            AtomicFiles.write(summaryPath(repoName), out -> {
+                DataOutputStream data = new DataOutputStream(out);
+                summaryCache.write(data);
+                data.flush();
+            });
+            Files.deleteIfExists(legacySummaryPath(repoName));
         } catch (IOException e) {
+            // the previous file is left as it was, and the journal entries it misses are replayed on startup
+            summaryCache.dirty = true;
             log.error("Failed to save summary cache", e);
-            try {
-                Files.delete(path);
-            } catch (IOException e2) {
-            }
+            return;
         }
+        journal.saved(ChangeJournal.SUMMARIES, repoName, seq);
+    }
+
+    private Path summaryPath(String repoName) {
+        return Path.of(baseDirectory, repoName, "summary.bin");
+    }
+
+    private Path legacySummaryPath(String repoName) {
+        return Path.of(baseDirectory, repoName, "summary.json");
     }
 
     @Inject
@@ -168,4 +284,29 @@ public class SummaryService {
             }
         }
     }
+
+    /**
+     * Records that the change journal entry {@code seq} was pruned from the cache.
+     */
+    public void applied(String repoName, long seq) {
+        SummaryCache summaryCache = load(repoName);
+        if (seq <= summaryCache.journalSeq) {
+            return;
+        }
+        summaryCache.journalSeq = seq;
+        // an empty cache has nothing a replay could prune, so it is not worth a write
+        if (!summaryCache.discussions.isEmpty() || !summaryCache.issues.isEmpty()) {
+            summaryCache.dirty = true;
+        } else if (!summaryCache.dirty) {
+            // read back empty, it needs none of the journal
+            journal.saved(ChangeJournal.SUMMARIES, repoName, seq);
+        }
+    }
+
+    /**
+     * The last change journal entry pruned from the cache.
+     */
+    public long journalSeq(String repoName) {
+        return load(repoName).journalSeq;
+    }
 }
@@ -0,0 +1,94 @@
+package io.quarkiverse.github.index;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read only set of strings stored as ids into a {@link SymbolTable}, so the labels of an item take an int each and every
+ * item with a label shares the same {@code String}. Sets are small, so lookups just go over the ids.
+ */
+final class SymbolSet extends AbstractSet<String> {
+    private static final int[] NO_IDS = new int[0];
+
+    private final SymbolTable symbols;
+    private final int[] ids;
+
+    private SymbolSet(SymbolTable symbols, int[] ids) {
+        this.symbols = symbols;
+        this.ids = ids;
+    }
+
+    /**
+     * Adds the values to the table if they are new.
+     */
+    static SymbolSet of(Collection<String> values, SymbolTable symbols) {
+        if (values == null || values.isEmpty()) {
+            return new SymbolSet(symbols, NO_IDS);
+        }
+        int[] ids = new int[values.size()];
+        int count = 0;
+        for (String value : values) {
+            ids[count++] = symbols.id(value);
+        }
+        return ofIds(ids, symbols);
+    }
+
+    /**
+     * Takes ownership of {@code ids}.
+     */
+    static SymbolSet ofIds(int[] ids, SymbolTable symbols) {
+        if (ids.length == 0) {
+            return new SymbolSet(symbols, NO_IDS);
+        }
+        Arrays.sort(ids);
+        int count = 1;
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] != ids[count - 1]) {
+                ids[count++] = ids[i];
+            }
+        }
+        return new SymbolSet(symbols, count == ids.length ? ids : Arrays.copyOf(ids, count));
+    }
+
+    int[] ids() {
+        return ids.clone();
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        for (int id : ids) {
+            if (symbols.symbol(id).equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public String next() {
+                if (next >= ids.length) {
+                    throw new NoSuchElementException();
+                }
+                return symbols.symbol(ids[next++]);
+            }
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package io.quarkiverse.github.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only table of the strings that repeat across items, i.e. the repository name, authors, labels, categories
+ * and issue types, so that an encoded item stores a small id instead of the string. An id never changes once it is
+ * given out.
+ *
+ * Adding is synchronized, looking up an id is not, so decoding does not contend with a pull that is adding items.
+ */
+class SymbolTable {
+    private final Map<String, Integer> ids = new HashMap<>();
+    // replaced (or re-published) on every add, after the new symbol is stored
+    private volatile String[] symbols = new String[64];
+    private int size;
+
+    /**
+     * The id of {@code symbol}, added to the table if it is new.
+     */
+    synchronized int id(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        append(symbol);
+        return size - 1;
+    }
+
+    String symbol(int id) {
+        String[] current = symbols;
+        String symbol = id >= 0 && id < current.length ? current[id] : null;
+        if (symbol == null) {
+            throw new IllegalArgumentException("Unknown symbol " + id);
+        }
+        return symbol;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * The symbols from id {@code from} on.
+     */
+    synchronized List<String> since(int from) {
+        return List.of(Arrays.copyOfRange(symbols, from, size));
+    }
+
+    /**
+     * Adds symbols read back from storage, starting at id {@code first}. Ones the table already has are skipped.
+     *
+     * @return false if {@code first} is past the end of the table, i.e. the symbols in between are missing
+     */
+    synchronized boolean load(int first, List<String> values) {
+        if (first > size) {
+            return false;
+        }
+        for (int i = size - first; i < values.size(); i++) {
+            append(values.get(i));
+        }
+        return true;
+    }
+
+    synchronized void clear() {
+        ids.clear();
+        symbols = new String[64];
+        size = 0;
+    }
+
+    private void append(String symbol) {
+        String[] current = symbols;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = symbol;
+        ids.put(symbol, size);
+        size++;
+        symbols = current;
+    }
+}
@@ -0,0 +1,151 @@
+package io.quarkiverse.github.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkiverse.github.api.Labels.Label;
+import io.quarkiverse.github.index.model.Earlier;
+import io.quarkiverse.github.util.AppLogger;
+
+/**
+ * Pulls or indexes many repositories at once, at most {@code product.manager.sync.concurrency} at a time. Each
+ * repository runs under its {@link RepositoryLocks} lock, and one that fails is reported and skipped without stopping
+ * the others, whose work is kept.
+ */
+@ApplicationScoped
+public class SyncService {
+    static AppLogger log = AppLogger.getLogger(SyncService.class);
+
+    @ConfigProperty(name = "product.manager.sync.concurrency", defaultValue = "4")
+    int concurrency;
+
+    @Inject
+    PullService pullService;
+
+    @Inject
+    PullCacheService pullCacheService;
+
+    @Inject
+    PruneService pruneService;
+
+    @Inject
+    RagIndexer ragIndexer;
+
+    @Inject
+    RepositoryLocks locks;
+
+    /**
+     * @param error the message of the failure, null if the repository succeeded
+     */
+    public record RepoResult(String repo, long millis, String error) {
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Pulls each repository and, if {@code prune} is set, prunes what is older than {@code since}.
+     */
+    public List<RepoResult> pullAll(Collection<String> repos, Earlier since, boolean prune) {
+        Map<String, Map<String, Label>> labels = prefetchLabels(repos);
+        return forEachRepo("Pulled", repos, repoName -> {
+            pullService.pull(repoName, since, labels.get(repoName));
+            if (prune) {
+                pruneService.prune(repoName, since);
+            }
+        });
+    }
+
+    /**
+     * Labels of all the repositories, a page of each per query, instead of one query per repository and page. A
+     * repository missing from the result, or all of them if this fails, fetches its own labels as it is pulled.
+     */
+    Map<String, Map<String, Label>> prefetchLabels(Collection<String> repos) {
+        if (repos.size() < 2) {
+            return Map.of();
+        }
+        try {
+            return pullCacheService.getLabels(repos);
+        } catch (RuntimeException e) {
+            log.warnv("Failed to fetch the labels of {0} repositories at once, fetching them one by one: {1}",
+                    repos.size(), e.getMessage());
+            return Map.of();
+        }
+    }
+
+    public List<RepoResult> indexAll(Collection<String> repos) {
+        return forEachRepo("Indexed", repos, ragIndexer::index);
+    }
+
+    private List<RepoResult> forEachRepo(String done, Collection<String> repos, Consumer<String> work) {
+        List<String> names = List.copyOf(repos);
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        AtomicInteger finished = new AtomicInteger();
+        List<Future<RepoResult>> futures = new ArrayList<>(names.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String repoName : names) {
+                futures.add(executor.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    String error = null;
+                    try {
+                        // a repository locked elsewhere waits without a permit, so the others can use it meanwhile
+                        locks.run(repoName, () -> {
+                            try {
+                                permits.acquire();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new RuntimeException("Interrupted while waiting to sync " + repoName, e);
+                            }
+                            try {
+                                work.accept(repoName);
+                            } finally {
+                                permits.release();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                        log.errorv(e, "Failed to sync {0}: {1}", repoName, error);
+                    }
+                    long millis = System.currentTimeMillis() - start;
+                    log.thinking(done + " " + finished.incrementAndGet() + " of " + names.size() + ": " + repoName
+                            + (error == null ? "" : " (failed)") + " in " + millis / 1000 + "s");
+                    return new RepoResult(repoName, millis, error);
+                }));
+            }
+        }
+        List<RepoResult> results = new ArrayList<>(names.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while syncing repositories", e);
+            } catch (ExecutionException e) {
+                // only an Error of the work gets here
+                results.add(new RepoResult(names.get(i), 0, String.valueOf(e.getCause())));
+            }
+        }
+        List<String> failed = results.stream().filter(result -> !result.succeeded()).map(RepoResult::repo).toList();
+        if (failed.isEmpty()) {
+            log.thinking(done + " all " + results.size() + " repositories");
+        } else {
+            log.thinking(done + " " + (results.size() - failed.size()) + " of " + results.size()
+                    + " repositories, failed: " + String.join(", ", failed));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,81 @@
+package io.quarkiverse.github.index;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import io.quarkiverse.github.index.model.ItemMetadata;
+
+/**
+ * Items ordered by when they were updated and when they were created, kept by {@link PullStore} along with the
+ * metadata, so pruning and date ranges are a range lookup instead of going over every item.
+ */
+public class TimeIndex {
+    // ordered by time, then number, since many items can share a timestamp
+    private record Stamp(long time, int number) implements Comparable<Stamp> {
+        @Override
+        public int compareTo(Stamp other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Integer.compare(number, other.number);
+        }
+    }
+
+    private final TreeSet<Stamp> byUpdated = new TreeSet<>();
+    private final TreeSet<Stamp> byCreated = new TreeSet<>();
+
+    synchronized void add(ItemMetadata item) {
+        byUpdated.add(new Stamp(item.updatedAt(), item.number()));
+        byCreated.add(new Stamp(item.createdAt(), item.number()));
+    }
+
+    synchronized void remove(ItemMetadata item) {
+        byUpdated.remove(new Stamp(item.updatedAt(), item.number()));
+        byCreated.remove(new Stamp(item.createdAt(), item.number()));
+    }
+
+    synchronized void clear() {
+        byUpdated.clear();
+        byCreated.clear();
+    }
+
+    /**
+     * Numbers of the items updated at or after {@code from} and before {@code to}, oldest first.
+     */
+    public synchronized int[] updatedBetween(long from, long to) {
+        return numbers(byUpdated, from, to);
+    }
+
+    /**
+     * Numbers of the items created at or after {@code from} and before {@code to}, oldest first.
+     */
+    public synchronized int[] createdBetween(long from, long to) {
+        return numbers(byCreated, from, to);
+    }
+
+    /**
+     * When the least recently updated item was, 0 if there are none.
+     */
+    public synchronized long firstUpdated() {
+        return byUpdated.isEmpty() ? 0 : byUpdated.first().time();
+    }
+
+    /**
+     * When the most recently updated item was, 0 if there are none.
+     */
+    public synchronized long lastUpdated() {
+        return byUpdated.isEmpty() ? 0 : byUpdated.last().time();
+    }
+
+    private static int[] numbers(TreeSet<Stamp> stamps, long from, long to) {
+        if (from >= to) {
+            return new int[0];
+        }
+        NavigableSet<Stamp> range = stamps.subSet(new Stamp(from, Integer.MIN_VALUE), true,
+                new Stamp(to, Integer.MIN_VALUE), false);
+        int[] numbers = new int[range.size()];
+        int i = 0;
+        for (Stamp stamp : range) {
+            numbers[i++] = stamp.number();
+        }
+        return numbers;
+    }
+}
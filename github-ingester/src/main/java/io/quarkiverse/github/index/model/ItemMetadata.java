@@ -0,0 +1,22 @@
+package io.quarkiverse.github.index.model;
+
+import java.util.Set;
+
+/**
+ * The part of a discussion or issue that reports, label lookups and pruning need, kept in memory while the rest of the
+ * item stays on disk.
+ *
+ * @param type the category of a discussion, the issue type of an issue
+ */
+public record ItemMetadata(int number, long createdAt, long updatedAt, String type, Set<String> labels) {
+
+    public static ItemMetadata of(DiscussionModel discussion) {
+        return new ItemMetadata(discussion.number(), discussion.createdAt(), discussion.updatedAt(),
+                discussion.category(), discussion.labels() == null ? Set.of() : Set.copyOf(discussion.labels()));
+    }
+
+    public static ItemMetadata of(IssueModel issue) {
+        return new ItemMetadata(issue.number(), issue.createdAt(), issue.updatedAt(), issue.issueType(),
+                issue.labels() == null ? Set.of() : Set.copyOf(issue.labels()));
+    }
+}
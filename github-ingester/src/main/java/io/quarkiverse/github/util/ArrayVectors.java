@@ -0,0 +1,59 @@
+package io.quarkiverse.github.util;
+
+import java.util.Arrays;
+
+class ArrayVectors implements Vectors {
+    private final int dimension;
+    private float[][] vectors = new float[16][];
+    private float[] norms = new float[16];
+    private int size;
+
+    ArrayVectors(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int add(float[] vector) {
+        if (size == vectors.length) {
+            vectors = Arrays.copyOf(vectors, size * 2);
+            norms = Arrays.copyOf(norms, size * 2);
+        }
+        vectors[size] = vector;
+        norms[size] = Vectors.norm(vector);
+        return size++;
+    }
+
+    @Override
+    public float[] vector(int index) {
+        return vectors[index];
+    }
+
+    @Override
+    public float similarity(float[] query, float queryNorm, int index) {
+        float[] vector = vectors[index];
+        float dot = 0;
+        for (int i = 0; i < vector.length; i++) {
+            dot += query[i] * vector[i];
+        }
+        float norms = queryNorm * this.norms[index];
+        return norms == 0 ? 0 : dot / norms;
+    }
+
+    @Override
+    public void truncate(int size) {
+        if (size < this.size) {
+            Arrays.fill(vectors, size, this.size, null);
+            this.size = size;
+        }
+    }
+}
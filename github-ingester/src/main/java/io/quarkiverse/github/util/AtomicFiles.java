@@ -0,0 +1,68 @@
+package io.quarkiverse.github.util;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replaces files so that a crash or a failed write leaves either the old content or the new one, never a truncated
+ * file. The content goes to a temporary file of its own next to the target, is forced to disk and is then renamed
+ * over the target, so concurrent writers of the same file each replace it whole.
+ */
+public class AtomicFiles {
+
+    public interface Content {
+        void write(OutputStream out) throws IOException;
+    }
+
+    public static void write(Path path, Content content) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        // one per write, as two threads saving the same file would otherwise write into, and move, each other's
+        Path temp = Files.createTempFile(parent, path.getFileName().toString() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                // writers such as Jackson close the stream they are given, which would close the channel before force
+                content.write(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                });
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            // gone already once moved
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public static void writeJson(ObjectMapper objectMapper, Path path, Object value) throws IOException {
+        write(path, out -> objectMapper.writeValue(out, value));
+    }
+}
@@ -0,0 +1,172 @@
+package io.quarkiverse.github.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+/**
+ * Embeds segments with as few calls to the embedding model as its limits allow, and several of those calls at once.
+ * Segments are packed into batches of at most {@code maxSegments} segments and about {@code maxTokens} tokens,
+ * estimated from the length of the text, as a request over the provider's limits is rejected. A segment whose text
+ * was embedded before, as given by the caller, or whose text is repeated, is not sent at all.
+ *
+ * At most {@code concurrency} calls run at a time over all callers, so indexing many repositories in parallel does not
+ * multiply the load on the provider.
+ */
+public class EmbeddingBatcher {
+    static AppLogger log = AppLogger.getLogger(EmbeddingBatcher.class);
+
+    // tokens are about 4 characters of English text, less for code and other languages
+    static final int CHARS_PER_TOKEN = 3;
+
+    private final EmbeddingModel model;
+    private final int maxTokens;
+    private final int maxSegments;
+    private final Semaphore calls;
+
+    public EmbeddingBatcher(EmbeddingModel model, int maxTokens, int maxSegments, int concurrency) {
+        if (maxTokens < 1 || maxSegments < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("Batch limits and concurrency must be at least 1");
+        }
+        this.model = model;
+        this.maxTokens = maxTokens;
+        this.maxSegments = maxSegments;
+        this.calls = new Semaphore(concurrency);
+    }
+
+    /**
+     * Hash of a segment's text, the key of {@code known} in {@link #embedAll(List, Map)}.
+     */
+    public static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static int estimateTokens(String text) {
+        return text.length() / CHARS_PER_TOKEN + 1;
+    }
+
+    /**
+     * Embeds the segments, in the order given.
+     *
+     * @param known embeddings by {@link #hash(String)} of the text they were made from, i.e. those of the segments
+     *        about to be replaced, which are used instead of calling the model again
+     */
+    public List<Embedding> embedAll(List<TextSegment> segments, Map<String, Embedding> known) {
+        String[] hashes = new String[segments.size()];
+        // the texts to embed, one per hash
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            hashes[i] = hash(segments.get(i).text());
+            if (!known.containsKey(hashes[i])) {
+                missing.putIfAbsent(hashes[i], segments.get(i).text());
+            }
+        }
+        Map<String, Embedding> embedded = embed(missing);
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (String hash : hashes) {
+            Embedding embedding = embedded.get(hash);
+            embeddings.add(embedding != null ? embedding : known.get(hash));
+        }
+        return embeddings;
+    }
+
+    /**
+     * Splits the texts, in order, into the batches they are sent in.
+     */
+    public List<List<String>> batches(List<String> texts) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        int tokens = 0;
+        for (String text : texts) {
+            int textTokens = estimateTokens(text);
+            // a text over the limit on its own still goes, alone, and the provider decides
+            if (!batch.isEmpty() && (batch.size() == maxSegments || tokens + textTokens > maxTokens)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                tokens = 0;
+            }
+            batch.add(text);
+            tokens += textTokens;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private Map<String, Embedding> embed(Map<String, String> texts) {
+        Map<String, Embedding> embedded = new LinkedHashMap<>();
+        if (texts.isEmpty()) {
+            return embedded;
+        }
+        List<String> hashes = List.copyOf(texts.keySet());
+        List<List<String>> batches = batches(List.copyOf(texts.values()));
+        List<Future<List<Embedding>>> futures = new ArrayList<>(batches.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<String> batch : batches) {
+                futures.add(executor.submit(() -> {
+                    calls.acquire();
+                    try {
+                        return model.embedAll(batch.stream().map(TextSegment::from).toList()).content();
+                    } finally {
+                        calls.release();
+                    }
+                }));
+            }
+            // cancelled here, as closing the executor waits for whatever still runs
+            try {
+                int next = 0;
+                for (int i = 0; i < futures.size(); i++) {
+                    List<Embedding> embeddings = futures.get(i).get();
+                    if (embeddings.size() != batches.get(i).size()) {
+                        throw new IllegalStateException("Expected " + batches.get(i).size() + " embeddings, got "
+                                + embeddings.size());
+                    }
+                    for (Embedding embedding : embeddings) {
+                        embedded.put(hashes.get(next++), embedding);
+                    }
+                }
+            } catch (ExecutionException e) {
+                cancel(futures);
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new RuntimeException("Failed to embed segments", e.getCause());
+            } catch (InterruptedException e) {
+                cancel(futures);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while embedding segments", e);
+            } catch (RuntimeException e) {
+                cancel(futures);
+                throw e;
+            }
+        }
+        log.debugv("Embedded {0} segments in {1} batches", texts.size(), batches.size());
+        return embedded;
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
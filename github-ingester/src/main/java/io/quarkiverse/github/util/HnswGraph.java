@@ -0,0 +1,448 @@
+package io.quarkiverse.github.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph over vectors compared by cosine similarity, for approximate nearest
+ * neighbour search in about logarithmic time.
+ *
+ * Every vector is a node on layer 0, and on each layer above with a probability that falls by a factor of {@code m} per
+ * layer. A node links to its {@code m} most similar nodes on each of its layers, {@code 2 * m} on layer 0. A search
+ * walks greedily down from the single node on the top layer, then explores layer 0 keeping the {@code ef} best nodes
+ * seen. Higher {@code ef} finds more of the true nearest neighbours at the cost of more comparisons.
+ *
+ * Deleting only marks a node, which is still walked through but never returned. {@link #compact(int[], Vectors)}
+ * builds a graph without the deleted nodes.
+ *
+ * The vectors are kept by a {@link Vectors}, and the graph itself only keeps the links between them, so that they can
+ * be kept off the heap and quantized.
+ *
+ * Not thread safe: searches may run together, but not alongside an add or delete.
+ */
+public class HnswGraph {
+    static final int MAGIC = 0x484e5357;
+    // version 1 kept the vectors along with the links
+    static final int VERSION = 2;
+    private static final int MAX_LEVEL = 16;
+    private static final int[] NO_NEIGHBORS = new int[0];
+    private static final Comparator<Neighbor> BY_SIMILARITY = Comparator.comparingDouble(Neighbor::similarity);
+
+    public record Neighbor(int node, float similarity) {
+    }
+
+    private final Vectors vectors;
+    private final int m;
+    private final int efConstruction;
+    private final double levelFactor;
+    private final SplittableRandom random;
+
+    // per node and layer, the nodes it links to
+    private int[][][] neighbors = new int[16][][];
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswGraph(int dimension, int m, int efConstruction, long seed) {
+        this(Vectors.inMemory(dimension), m, efConstruction, seed);
+    }
+
+    /**
+     * A graph over {@code vectors}, which must be empty. Vectors are added to it through {@link #add(float[])}.
+     */
+    public HnswGraph(Vectors vectors, int m, int efConstruction, long seed) {
+        if (vectors.dimension() < 1 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid graph parameters: dimension " + vectors.dimension() + ", m " + m + ", efConstruction "
+                            + efConstruction);
+        }
+        this.vectors = vectors;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int dimension() {
+        return vectors.dimension();
+    }
+
+    public Vectors vectors() {
+        return vectors;
+    }
+
+    /**
+     * Nodes ever added, deleted ones included. Nodes are numbered from 0 in the order they were added.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int liveCount() {
+        return size - deletedCount;
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    public float[] vector(int node) {
+        return vectors.vector(node);
+    }
+
+    /**
+     * Adds {@code vector} to the graph's {@link Vectors}.
+     *
+     * @return the new node
+     */
+    public int add(float[] vector) {
+        if (vector.length != vectors.dimension()) {
+            throw new IllegalArgumentException(
+                    "Expected a vector of " + vectors.dimension() + " dimensions, got " + vector.length);
+        }
+        // vectors left over from nodes that were not kept, i.e. by a crash, are overwritten
+        vectors.truncate(size);
+        vectors.add(vector);
+        return addStored(randomLevel());
+    }
+
+    /**
+     * Adds the next node for a vector that is already in the graph's {@link Vectors}, on the layers up to
+     * {@code level}. Adding the same vectors at the same levels, with the same deletes in between, builds the same
+     * graph, so an add can be replayed from a log of the {@link #level(int)} of each node.
+     *
+     * @return the new node
+     */
+    public int addStored(int level) {
+        int node = size;
+        if (vectors.size() <= node) {
+            throw new IllegalStateException("No vector for node " + node);
+        }
+        ensureCapacity(node + 1);
+        neighbors[node] = new int[level + 1][];
+        Arrays.fill(neighbors[node], NO_NEIGHBORS);
+        size++;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+        // compared as stored, like the nodes it is linked to
+        float[] vector = vectors.vector(node);
+        float norm = Vectors.norm(vector);
+        int closest = entryPoint;
+        for (int layer = maxLevel; layer > level; layer--) {
+            closest = greedy(vector, norm, closest, layer);
+        }
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<Neighbor> candidates = searchLayer(vector, norm, closest, efConstruction, layer, null);
+            int[] selected = new int[Math.min(m, candidates.size())];
+            int count = 0;
+            for (Neighbor candidate : candidates) {
+                if (count == selected.length) {
+                    break;
+                }
+                // deleted nodes are still walked through, but new ones should not come to depend on them
+                if (candidate.node() != node && !deleted.get(candidate.node())) {
+                    selected[count++] = candidate.node();
+                }
+            }
+            neighbors[node][layer] = count == selected.length ? selected : Arrays.copyOf(selected, count);
+            int max = layer == 0 ? 2 * m : m;
+            for (int i = 0; i < count; i++) {
+                link(selected[i], node, layer, max);
+            }
+            closest = candidates.get(0).node();
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * The top layer {@code node} is on.
+     */
+    public int level(int node) {
+        return neighbors[node].length - 1;
+    }
+
+    public void delete(int node) {
+        if (node < size && !deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    /**
+     * The {@code k} live nodes most similar to {@code query} that {@code accept} lets through, most similar first.
+     * Nodes that are not accepted are still walked through, so a filter that rejects most nodes makes the search look
+     * at most of the graph.
+     *
+     * @param accept null to accept every node
+     */
+    public List<Neighbor> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || k < 1) {
+            return List.of();
+        }
+        float norm = Vectors.norm(query);
+        int closest = entryPoint;
+        for (int layer = maxLevel; layer > 0; layer--) {
+            closest = greedy(query, norm, closest, layer);
+        }
+        IntPredicate live = accept == null ? node -> !deleted.get(node)
+                : node -> !deleted.get(node) && accept.test(node);
+        List<Neighbor> found = searchLayer(query, norm, closest, Math.max(ef, k), 0, live);
+        return found.size() > k ? found.subList(0, k) : found;
+    }
+
+    /**
+     * Compares {@code query} with every one of {@code nodes} that is live, for when there are too few for the graph to
+     * pay off.
+     */
+    public List<Neighbor> exact(float[] query, int k, int[] nodes) {
+        return exact(query, k, nodes, vectors);
+    }
+
+    /**
+     * Like {@link #exact(float[], int, int[])}, but compares with the vectors in {@code precise} rather than the
+     * graph's own, i.e. to rank the nodes a search over quantized vectors found by their full precision vectors.
+     */
+    public List<Neighbor> exact(float[] query, int k, int[] nodes, Vectors precise) {
+        float norm = Vectors.norm(query);
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(BY_SIMILARITY);
+        for (int node : nodes) {
+            if (deleted.get(node)) {
+                continue;
+            }
+            best.add(new Neighbor(node, precise.similarity(query, norm, node)));
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+        return sorted(best);
+    }
+
+    /**
+     * A graph of the live nodes only, added again in the same order to {@code into}, which must be empty.
+     *
+     * @param renumbered filled with the new number of each node, or -1 for the deleted ones
+     * @param source where to read the vector of each node from, the graph's own {@link #vectors()} or more precise
+     *        copies of them when those are quantized
+     */
+    public HnswGraph compact(int[] renumbered, Vectors source, Vectors into) {
+        HnswGraph graph = new HnswGraph(into, m, efConstruction, random.nextLong());
+        for (int node = 0; node < size; node++) {
+            renumbered[node] = deleted.get(node) ? -1 : graph.add(source.vector(node));
+        }
+        return graph;
+    }
+
+    /**
+     * Writes the links between the nodes, the vectors are kept by the graph's {@link Vectors}.
+     */
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(vectors.dimension());
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeBoolean(deleted.get(node));
+            out.writeByte(neighbors[node].length);
+            for (int[] links : neighbors[node]) {
+                out.writeShort(links.length);
+                for (int link : links) {
+                    out.writeInt(link);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a graph over {@code vectors}, which must hold at least the vectors of its nodes. A graph of the older
+     * version that kept the vectors along with the links adds them to {@code vectors}, which must then be empty.
+     *
+     * @param vectors null to read the vectors of an older graph into a {@link Vectors#inMemory(int)}
+     */
+    public static HnswGraph read(DataInput in, Vectors vectors, long seed) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an HNSW graph");
+        }
+        int version = in.readInt();
+        if (version != VERSION && version != 1) {
+            throw new IOException("Unknown HNSW graph version " + version);
+        }
+        int dimension = in.readInt();
+        if (vectors == null) {
+            vectors = Vectors.inMemory(dimension);
+        }
+        if (vectors.dimension() != dimension) {
+            throw new IOException("Expected a graph of " + vectors.dimension() + " dimensions, got " + dimension);
+        }
+        HnswGraph graph = new HnswGraph(vectors, in.readInt(), in.readInt(), seed);
+        int size = in.readInt();
+        if (version != 1 && vectors.size() < size) {
+            throw new IOException("Missing the vectors of " + (size - vectors.size()) + " of the graph's nodes");
+        }
+        graph.ensureCapacity(size);
+        graph.entryPoint = in.readInt();
+        graph.maxLevel = in.readInt();
+        for (int node = 0; node < size; node++) {
+            if (in.readBoolean()) {
+                graph.deleted.set(node);
+                graph.deletedCount++;
+            }
+            if (version == 1) {
+                float[] vector = new float[dimension];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = in.readFloat();
+                }
+                vectors.add(vector);
+            }
+            int[][] layers = new int[in.readByte()][];
+            for (int layer = 0; layer < layers.length; layer++) {
+                int[] links = new int[in.readShort()];
+                for (int i = 0; i < links.length; i++) {
+                    links[i] = in.readInt();
+                }
+                layers[layer] = links;
+            }
+            graph.neighbors[node] = layers;
+        }
+        // vectors past the nodes are left for addStored, and otherwise overwritten by add
+        graph.size = size;
+        return graph;
+    }
+
+    private int greedy(float[] query, float norm, int start, int layer) {
+        int closest = start;
+        float best = similarity(query, norm, closest);
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            for (int next : neighbors[closest][layer]) {
+                float similarity = similarity(query, norm, next);
+                if (similarity > best) {
+                    best = similarity;
+                    closest = next;
+                    moved = true;
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Best first search of one layer from {@code start}, keeping the {@code ef} most similar accepted nodes.
+     */
+    private List<Neighbor> searchLayer(float[] query, float norm, int start, int ef, int layer, IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Neighbor> results = new PriorityQueue<>(BY_SIMILARITY);
+        Neighbor first = new Neighbor(start, similarity(query, norm, start));
+        visited.set(start);
+        candidates.add(first);
+        if (accept == null || accept.test(start)) {
+            results.add(first);
+        }
+        while (!candidates.isEmpty()) {
+            Neighbor current = candidates.poll();
+            if (results.size() >= ef && current.similarity() < results.peek().similarity()) {
+                break;
+            }
+            for (int next : neighbors[current.node()][layer]) {
+                if (visited.get(next)) {
+                    continue;
+                }
+                visited.set(next);
+                float similarity = similarity(query, norm, next);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Neighbor neighbor = new Neighbor(next, similarity);
+                    candidates.add(neighbor);
+                    if (accept == null || accept.test(next)) {
+                        results.add(neighbor);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        if (results.isEmpty() && accept == null) {
+            results.add(first);
+        }
+        return sorted(results);
+    }
+
+    /**
+     * Links {@code from} to {@code to}, dropping the least similar link of {@code from} when it has more than
+     * {@code max}.
+     */
+    private void link(int from, int to, int layer, int max) {
+        int[] links = neighbors[from][layer];
+        if (links.length < max) {
+            int[] grown = Arrays.copyOf(links, links.length + 1);
+            grown[links.length] = to;
+            neighbors[from][layer] = grown;
+            return;
+        }
+        float[] vector = vectors.vector(from);
+        float norm = Vectors.norm(vector);
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(BY_SIMILARITY);
+        for (int link : links) {
+            best.add(new Neighbor(link, similarity(vector, norm, link)));
+        }
+        best.add(new Neighbor(to, similarity(vector, norm, to)));
+        best.poll();
+        int[] kept = new int[best.size()];
+        int i = 0;
+        for (Neighbor neighbor : best) {
+            kept[i++] = neighbor.node();
+        }
+        neighbors[from][layer] = kept;
+    }
+
+    private float similarity(float[] query, float queryNorm, int node) {
+        return vectors.similarity(query, queryNorm, node);
+    }
+
+    private int randomLevel() {
+        double uniform = 1 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(uniform) * levelFactor));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= neighbors.length) {
+            return;
+        }
+        int grown = Math.max(capacity, neighbors.length * 2);
+        neighbors = Arrays.copyOf(neighbors, grown);
+    }
+
+    private static List<Neighbor> sorted(PriorityQueue<Neighbor> queue) {
+        List<Neighbor> list = new ArrayList<>(queue);
+        list.sort(BY_SIMILARITY.reversed());
+        return list;
+    }
+}
@@ -0,0 +1,243 @@
+package io.quarkiverse.github.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, laid out like a Roaring bitmap: the values are split by their high 16 bits into
+ * containers, and a container is a sorted array of the low 16 bits until it holds more than {@value #ARRAY_MAX} values,
+ * then a bitmap of 65536 bits. Sparse sets, i.e. a label on a handful of items, take a few bytes per item, dense ones a
+ * bit per possible item.
+ *
+ * Not thread safe.
+ */
+public class IntBitmap {
+    static final int ARRAY_MAX = 4096;
+
+    private final TreeMap<Integer, Container> containers = new TreeMap<>();
+    private int cardinality;
+
+    public boolean add(int value) {
+        Container container = containers.computeIfAbsent(value >>> 16, k -> new Container());
+        if (!container.add((char) value)) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    public boolean remove(int value) {
+        Container container = containers.get(value >>> 16);
+        if (container == null || !container.remove((char) value)) {
+            return false;
+        }
+        if (container.cardinality == 0) {
+            containers.remove(value >>> 16);
+        }
+        cardinality--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        Container container = containers.get(value >>> 16);
+        return container != null && container.contains((char) value);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * The values in both bitmaps, as a new bitmap.
+     */
+    public IntBitmap and(IntBitmap other) {
+        IntBitmap result = new IntBitmap();
+        IntBitmap smaller = containers.size() <= other.containers.size() ? this : other;
+        IntBitmap larger = smaller == this ? other : this;
+        for (Map.Entry<Integer, Container> entry : smaller.containers.entrySet()) {
+            Container container = larger.containers.get(entry.getKey());
+            if (container == null) {
+                continue;
+            }
+            Container both = entry.getValue().and(container);
+            if (both.cardinality > 0) {
+                result.containers.put(entry.getKey(), both);
+                result.cardinality += both.cardinality;
+            }
+        }
+        return result;
+    }
+
+    public IntBitmap copy() {
+        IntBitmap result = new IntBitmap();
+        containers.forEach((high, container) -> result.containers.put(high, container.copy()));
+        result.cardinality = cardinality;
+        return result;
+    }
+
+    public void clear() {
+        containers.clear();
+        cardinality = 0;
+    }
+
+    /**
+     * Calls {@code action} with each value, in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        containers.forEach((high, container) -> container.forEach(high << 16, action));
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int[] i = { 0 };
+        forEach(value -> values[i[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Low 16 bits of the values sharing the same high 16 bits. Exactly one of {@code array} and {@code bits} is set.
+     */
+    private static final class Container {
+        char[] array = new char[4];
+        long[] bits;
+        int cardinality;
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bits != null) {
+                long word = bits[low >>> 6];
+                bits[low >>> 6] = word | (1L << low);
+                if (word == bits[low >>> 6]) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+            int at = Arrays.binarySearch(array, 0, cardinality, low);
+            if (at >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBits();
+                return add(low);
+            }
+            at = -at - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(array, at, array, at + 1, cardinality - at);
+            array[at] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long word = bits[low >>> 6];
+                bits[low >>> 6] = word & ~(1L << low);
+                if (word == bits[low >>> 6]) {
+                    return false;
+                }
+                cardinality--;
+                if (cardinality == ARRAY_MAX) {
+                    toArray();
+                }
+                return true;
+            }
+            int at = Arrays.binarySearch(array, 0, cardinality, low);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(array, at + 1, array, at, cardinality - at - 1);
+            cardinality--;
+            return true;
+        }
+
+        Container and(Container other) {
+            Container result = new Container();
+            if (bits != null && other.bits != null) {
+                long[] words = new long[1024];
+                int count = 0;
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = bits[i] & other.bits[i];
+                    count += Long.bitCount(words[i]);
+                }
+                result.array = null;
+                result.bits = words;
+                result.cardinality = count;
+                if (count <= ARRAY_MAX) {
+                    result.toArray();
+                }
+                return result;
+            }
+            // at least one side is an array, so the result fits in one
+            Container sparse = bits == null ? this : other;
+            Container dense = sparse == this ? other : this;
+            result.array = new char[Math.max(4, sparse.cardinality)];
+            for (int i = 0; i < sparse.cardinality; i++) {
+                if (dense.contains(sparse.array[i])) {
+                    result.array[result.cardinality++] = sparse.array[i];
+                }
+            }
+            return result;
+        }
+
+        Container copy() {
+            Container result = new Container();
+            result.array = array == null ? null : array.clone();
+            result.bits = bits == null ? null : bits.clone();
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        void forEach(int base, IntConsumer action) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    action.accept(base | array[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < bits.length; i++) {
+                long word = bits[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private void toBits() {
+            bits = new long[1024];
+            for (int i = 0; i < cardinality; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[Math.max(4, cardinality)];
+            int count = 0;
+            for (int i = 0; i < bits.length; i++) {
+                long word = bits[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            array = values;
+            bits = null;
+        }
+    }
+}
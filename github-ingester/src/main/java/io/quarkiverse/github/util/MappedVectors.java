@@ -0,0 +1,283 @@
+package io.quarkiverse.github.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vectors in a memory mapped file rather than on the heap, so opening the file reads nothing and only the pages that
+ * searches touch are loaded, by the operating system, which can also drop them again. Each vector is stored with its
+ * norm as 4 byte floats, or quantized to 2 byte floats or to bytes scaled by the vector's largest value, which takes
+ * a half or a quarter of the space for a similarity that is off by a little.
+ *
+ * The file only holds the vectors, so the number of them is kept by the caller and given to {@link #open}. Vectors
+ * added are in the file once {@link #force()} returns.
+ *
+ * Not thread safe: reads may run together, but not alongside an add.
+ */
+public class MappedVectors implements Vectors {
+    static final int MAGIC = 0x56454353;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    // vectors are mapped in chunks of about this size, as a single mapping is limited to 2 GB
+    static final int CHUNK_SIZE = 1 << 24;
+    // the last chunk is mapped, and the file grown, by doubling from about this size
+    static final int MIN_MAPPING = 1 << 16;
+
+    public enum Encoding {
+        FLOAT32("f32"),
+        FLOAT16("f16"),
+        INT8("i8");
+
+        private final String extension;
+
+        Encoding(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * The file extension of vectors stored this way.
+         */
+        public String extension() {
+            return extension;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Encoding encoding;
+    private final int dimension;
+    private final int recordSize;
+    private final int chunkRecords;
+    // all but the last are of chunkRecords records
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private int mappedRecords;
+    private int size;
+
+    private MappedVectors(Path path, FileChannel channel, Encoding encoding, int dimension) {
+        this.path = path;
+        this.channel = channel;
+        this.encoding = encoding;
+        this.dimension = dimension;
+        this.recordSize = switch (encoding) {
+            case FLOAT32 -> 4 + 4 * dimension;
+            case FLOAT16 -> 4 + 2 * dimension;
+            // norm and scale
+            case INT8 -> 8 + dimension;
+        };
+        this.chunkRecords = Math.max(1, CHUNK_SIZE / recordSize);
+    }
+
+    /**
+     * Opens the vectors in {@code path}, creating the file if there is none.
+     *
+     * @param size how many of the vectors in the file to use, those after them are overwritten by the next ones added
+     */
+    public static MappedVectors open(Path path, Encoding encoding, int dimension, int size) throws IOException {
+        // an empty file is one whose header was never written
+        boolean exists = Files.exists(path) && Files.size(path) > 0;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (exists) {
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a vectors file: " + path);
+                }
+                if (header.getInt(4) != VERSION) {
+                    throw new IOException("Unknown vectors file version " + header.getInt(4) + " of " + path);
+                }
+                if (header.getInt(8) != encoding.ordinal() || header.getInt(12) != dimension) {
+                    throw new IOException("Expected " + encoding + " vectors of " + dimension + " dimensions in "
+                            + path);
+                }
+            } else {
+                header.putInt(MAGIC).putInt(VERSION).putInt(encoding.ordinal()).putInt(dimension).flip();
+                channel.write(header, 0);
+            }
+            MappedVectors vectors = new MappedVectors(path, channel, encoding, dimension);
+            vectors.map(size);
+            vectors.size = size;
+            return vectors;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Expected a vector of " + dimension + " dimensions, got " + vector.length);
+        }
+        try {
+            map(size + 1);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to grow " + path, e);
+        }
+        ByteBuffer chunk = chunk(size);
+        int at = offset(size);
+        float norm = Vectors.norm(vector);
+        chunk.putFloat(at, norm);
+        switch (encoding) {
+            case FLOAT32 -> {
+                for (int i = 0; i < dimension; i++) {
+                    chunk.putFloat(at + 4 + 4 * i, vector[i]);
+                }
+            }
+            case FLOAT16 -> {
+                for (int i = 0; i < dimension; i++) {
+                    chunk.putShort(at + 4 + 2 * i, Float.floatToFloat16(vector[i]));
+                }
+            }
+            case INT8 -> {
+                float max = 0;
+                for (float value : vector) {
+                    max = Math.max(max, Math.abs(value));
+                }
+                float scale = max == 0 ? 1 : max / 127;
+                chunk.putFloat(at + 4, scale);
+                for (int i = 0; i < dimension; i++) {
+                    chunk.put(at + 8 + i, (byte) Math.round(vector[i] / scale));
+                }
+            }
+        }
+        return size++;
+    }
+
+    @Override
+    public float[] vector(int index) {
+        ByteBuffer chunk = chunk(index);
+        int at = offset(index);
+        float[] vector = new float[dimension];
+        switch (encoding) {
+            case FLOAT32 -> {
+                for (int i = 0; i < dimension; i++) {
+                    vector[i] = chunk.getFloat(at + 4 + 4 * i);
+                }
+            }
+            case FLOAT16 -> {
+                for (int i = 0; i < dimension; i++) {
+                    vector[i] = Float.float16ToFloat(chunk.getShort(at + 4 + 2 * i));
+                }
+            }
+            case INT8 -> {
+                float scale = chunk.getFloat(at + 4);
+                for (int i = 0; i < dimension; i++) {
+                    vector[i] = chunk.get(at + 8 + i) * scale;
+                }
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public float similarity(float[] query, float queryNorm, int index) {
+        ByteBuffer chunk = chunk(index);
+        int at = offset(index);
+        float dot = 0;
+        switch (encoding) {
+            case FLOAT32 -> {
+                for (int i = 0; i < dimension; i++) {
+                    dot += query[i] * chunk.getFloat(at + 4 + 4 * i);
+                }
+            }
+            case FLOAT16 -> {
+                for (int i = 0; i < dimension; i++) {
+                    dot += query[i] * Float.float16ToFloat(chunk.getShort(at + 4 + 2 * i));
+                }
+            }
+            case INT8 -> {
+                for (int i = 0; i < dimension; i++) {
+                    dot += query[i] * chunk.get(at + 8 + i);
+                }
+                dot *= chunk.getFloat(at + 4);
+            }
+        }
+        float norms = queryNorm * chunk.getFloat(at);
+        return norms == 0 ? 0 : dot / norms;
+    }
+
+    @Override
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    /**
+     * Writes the vectors added so far to disk.
+     */
+    public void force() throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Closes the file. The mappings stay valid until they are garbage collected, so searches that are still running
+     * are not cut short.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map(int size) throws IOException {
+        while (mappedRecords < size) {
+            int last = chunks.size() - 1;
+            int lastRecords = last < 0 ? chunkRecords : chunks.get(last).capacity() / recordSize;
+            if (lastRecords == chunkRecords) {
+                last++;
+                lastRecords = 0;
+            }
+            int records = Math.max(Math.max(lastRecords * 2, MIN_MAPPING / recordSize), size - last * chunkRecords);
+            records = Math.min(records, chunkRecords);
+            long position = HEADER_SIZE + (long) last * chunkRecords * recordSize;
+            // mapping past the end of the file grows it
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) records * recordSize);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            if (last < chunks.size()) {
+                chunks.set(last, chunk);
+            } else {
+                chunks.add(chunk);
+            }
+            mappedRecords = last * chunkRecords + records;
+        }
+    }
+
+    private ByteBuffer chunk(int index) {
+        return chunks.get(index / chunkRecords);
+    }
+
+    private int offset(int index) {
+        return (index % chunkRecords) * recordSize;
+    }
+}
@@ -0,0 +1,44 @@
+package io.quarkiverse.github.util;
+
+/**
+ * Vectors of one dimension, numbered from 0 in the order they were added and compared by cosine similarity. Kept on
+ * the heap by {@link #inMemory(int)}, or in a memory mapped file, possibly quantized, by {@link MappedVectors}.
+ */
+public interface Vectors {
+
+    static Vectors inMemory(int dimension) {
+        return new ArrayVectors(dimension);
+    }
+
+    int dimension();
+
+    int size();
+
+    /**
+     * @return the number of the new vector
+     */
+    int add(float[] vector);
+
+    /**
+     * The vector at {@code index}, as stored, i.e. only close to the one added if it was quantized.
+     */
+    float[] vector(int index);
+
+    /**
+     * Cosine similarity of {@code query}, whose norm is {@code queryNorm}, with the vector at {@code index}.
+     */
+    float similarity(float[] query, float queryNorm, int index);
+
+    /**
+     * Forgets the vectors from {@code size} on, which are overwritten by the next ones added.
+     */
+    void truncate(int size);
+
+    static float norm(float[] vector) {
+        float sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+}
@@ -0,0 +1,353 @@
+package io.quarkiverse.github.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per repository cache that keeps the total estimated size of its values under a limit by evicting the least recently
+ * used repositories. Values grow after they are loaded, so they are weighed again each time a new one comes in.
+ *
+ * Values are loaded, and evicted ones written back by the eviction callback, outside of the cache's lock, so a slow
+ * repository does not hold up the others. Loading a key waits for its previous value to be written back, so that it
+ * is not read from the files still being written. A key being loaded by one thread is waited for by the others.
+ *
+ * A value {@link #acquire acquired} is in use until it is {@link #release released}: it is neither evicted nor, when
+ * removed, disposed of before that. Neither is the most recently used value evicted, nor are values the
+ * {@code evictable} predicate holds back.
+ */
+public class WeightedLruCache<K, V> {
+    static AppLogger log = AppLogger.getLogger(WeightedLruCache.class);
+
+    public record Stats(long hits, long misses, long evictions, int size, long weight, long maxWeight) {
+        @Override
+        public String toString() {
+            return hits + " hits, " + misses + " misses, " + evictions + " evictions, " + size + " entries of about "
+                    + weight / 1024 + " of " + maxWeight / 1024 + " KB";
+        }
+    }
+
+    private static class Entry<V> {
+        final CompletableFuture<V> value = new CompletableFuture<>();
+        // acquired and not yet released
+        int pins;
+        // set once it left the cache while still in use, completed when it is written back or disposed of
+        CompletableFuture<Void> gone;
+        Consumer<V> dispose;
+
+        V loaded() {
+            return value.isDone() && !value.isCompletedExceptionally() ? value.join() : null;
+        }
+    }
+
+    private record Victim<K, V>(K key, Entry<V> entry) {
+    }
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    // out of the map, but still being written back or in use
+    private final Map<K, Entry<V>> leaving = new HashMap<>();
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Predicate<V> evictable;
+    private final BiConsumer<K, V> onEvict;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher, Predicate<V> evictable,
+            BiConsumer<K, V> onEvict) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.evictable = evictable;
+        this.onEvict = onEvict;
+    }
+
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher, BiConsumer<K, V> onEvict) {
+        this(maxWeight, weigher, value -> true, onEvict);
+    }
+
+    /**
+     * The value if it is loaded, without loading it or waiting for it to be.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        V value = entry == null ? null : entry.loaded();
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    public V computeIfAbsent(K key, Function<K, V> loader) {
+        return load(key, loader, false);
+    }
+
+    /**
+     * Like {@link #computeIfAbsent}, but the value stays in use, and in the cache, until {@link #release} is called
+     * for it as many times as it was acquired.
+     */
+    public V acquire(K key, Function<K, V> loader) {
+        return load(key, loader, true);
+    }
+
+    public void release(K key, V value) {
+        Entry<V> disposed = null;
+        synchronized (this) {
+            Entry<V> entry = map.get(key);
+            if (entry == null || entry.loaded() != value) {
+                entry = leaving.get(key);
+            }
+            if (entry == null || entry.loaded() != value) {
+                // dropped by clear()
+                return;
+            }
+            entry.pins--;
+            if (entry.pins == 0 && entry.dispose != null) {
+                leaving.remove(key);
+                disposed = entry;
+            }
+        }
+        if (disposed != null) {
+            dispose(key, disposed);
+        } else {
+            trimAndEvict();
+        }
+    }
+
+    private V load(K key, Function<K, V> loader, boolean pin) {
+        while (true) {
+            Entry<V> entry;
+            CompletableFuture<Void> gone = null;
+            boolean loading = false;
+            synchronized (this) {
+                entry = map.get(key);
+                if (entry != null) {
+                    hits++;
+                } else if (leaving.containsKey(key)) {
+                    gone = leaving.get(key).gone;
+                } else {
+                    entry = new Entry<>();
+                    map.put(key, entry);
+                    misses++;
+                    loading = true;
+                }
+                if (entry != null && pin) {
+                    entry.pins++;
+                }
+            }
+            if (gone != null) {
+                gone.join();
+                continue;
+            }
+            if (loading) {
+                V value;
+                try {
+                    value = loader.apply(key);
+                } catch (RuntimeException | Error e) {
+                    synchronized (this) {
+                        map.remove(key, entry);
+                    }
+                    entry.value.completeExceptionally(e);
+                    throw e;
+                }
+                entry.value.complete(value);
+                trimAndEvict();
+                return value;
+            }
+            try {
+                return entry.value.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<>();
+        entry.value.complete(value);
+        synchronized (this) {
+            map.put(key, entry);
+        }
+        trimAndEvict();
+    }
+
+    /**
+     * Removes the value without calling the eviction callback.
+     */
+    public V remove(K key) {
+        V value;
+        synchronized (this) {
+            Entry<V> entry = map.get(key);
+            value = entry == null ? null : entry.loaded();
+        }
+        remove(key, removed -> {
+        });
+        return value;
+    }
+
+    /**
+     * Removes the value without calling the eviction callback, and disposes of it once it is no longer in use: right
+     * away, or when the last holder releases it. Until then the key is not loaded again. The returned future
+     * completes once it is disposed of, so it must not be waited for by a holder of the value.
+     */
+    public CompletableFuture<Void> remove(K key, Consumer<V> dispose) {
+        Entry<V> entry;
+        while (true) {
+            CompletableFuture<V> loading;
+            synchronized (this) {
+                entry = map.get(key);
+                if (entry == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                loading = entry.value;
+                if (loading.isDone()) {
+                    map.remove(key);
+                    if (entry.loaded() == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    entry.gone = new CompletableFuture<>();
+                    if (entry.pins > 0) {
+                        entry.dispose = dispose;
+                        leaving.put(key, entry);
+                        return entry.gone;
+                    }
+                    break;
+                }
+            }
+            // disposed of once loaded, rather than left open by the loader
+            loading.exceptionally(e -> null).join();
+        }
+        entry.dispose = dispose;
+        dispose(key, entry);
+        return entry.gone;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized Set<K> keys() {
+        return Set.copyOf(map.keySet());
+    }
+
+    /**
+     * A copy of the loaded entries, from the least to the most recently used, that does not count as using them.
+     */
+    public synchronized Map<K, V> snapshot() {
+        Map<K, V> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<K, Entry<V>> entry : map.entrySet()) {
+            V value = entry.getValue().loaded();
+            if (value != null) {
+                snapshot.put(entry.getKey(), value);
+            }
+        }
+        return snapshot;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, map.size(), weight, maxWeight);
+    }
+
+    private void dispose(K key, Entry<V> entry) {
+        try {
+            entry.dispose.accept(entry.loaded());
+        } catch (RuntimeException e) {
+            log.warnv("Failed to dispose of {0}: {1}", key, e.getMessage());
+        } finally {
+            entry.gone.complete(null);
+        }
+    }
+
+    private void trimAndEvict() {
+        Set<K> failed = new HashSet<>();
+        List<Victim<K, V>> victims = trim(failed);
+        while (!victims.isEmpty()) {
+            evict(victims, failed);
+            // the ones that could not be written back are kept, so others go in their place
+            victims = failed.isEmpty() ? List.of() : trim(failed);
+        }
+    }
+
+    /**
+     * Takes the values to evict out of the map. They are written back by {@link #evict}, once the lock is released.
+     */
+    private synchronized List<Victim<K, V>> trim(Set<K> skipped) {
+        weight = 0;
+        for (Entry<V> entry : map.values()) {
+            V value = entry.loaded();
+            if (value != null) {
+                weight += weigher.applyAsLong(value);
+            }
+        }
+        if (weight <= maxWeight) {
+            return List.of();
+        }
+        List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<>(map.entrySet());
+        // the last one is the most recently used
+        candidates.remove(candidates.size() - 1);
+        List<Victim<K, V>> victims = new ArrayList<>();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = candidates.iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> candidate = iterator.next();
+            Entry<V> entry = candidate.getValue();
+            V value = entry.loaded();
+            if (value == null || entry.pins > 0 || skipped.contains(candidate.getKey())
+                    || !evictable.test(value)) {
+                continue;
+            }
+            map.remove(candidate.getKey());
+            entry.gone = new CompletableFuture<>();
+            leaving.put(candidate.getKey(), entry);
+            weight -= weigher.applyAsLong(value);
+            victims.add(new Victim<>(candidate.getKey(), entry));
+        }
+        return victims;
+    }
+
+    private void evict(List<Victim<K, V>> victims, Set<K> failed) {
+        for (Victim<K, V> victim : victims) {
+            V value = victim.entry().loaded();
+            CompletableFuture<Void> gone = victim.entry().gone;
+            boolean evicted = false;
+            try {
+                onEvict.accept(victim.key(), value);
+                evicted = true;
+            } catch (RuntimeException e) {
+                // kept, so whatever could not be written back is not lost
+                log.warnv("Failed to evict {0}: {1}", victim.key(), e.getMessage());
+                failed.add(victim.key());
+            } finally {
+                synchronized (this) {
+                    leaving.remove(victim.key());
+                    if (evicted) {
+                        evictions++;
+                    } else {
+                        victim.entry().gone = null;
+                        map.putIfAbsent(victim.key(), victim.entry());
+                        weight += weigher.applyAsLong(value);
+                    }
+                }
+                gone.complete(null);
+            }
+        }
+    }
+}
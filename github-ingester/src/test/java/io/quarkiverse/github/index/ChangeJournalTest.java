@@ -0,0 +1,200 @@
+package io.quarkiverse.github.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.github.index.model.ChangeSet;
+
+public class ChangeJournalTest {
+
+    // the tests sit in this package to set the package-private injected fields, as there is no container
+    static ChangeJournal journal(Path directory) {
+        ChangeJournal journal = new ChangeJournal();
+        journal.baseDirectory = directory.toString();
+        journal.objectMapper = new ObjectMapper();
+        return journal;
+    }
+
+    static ChangeSet issues(Integer... numbers) {
+        return new ChangeSet(Set.of(), Set.of(numbers));
+    }
+
+    static List<Long> seqs(ChangeJournal journal) {
+        return journal.entries().stream().map(ChangeJournal.Entry::seq).toList();
+    }
+
+    @Test
+    public void testDropsTheTornLineAndKeepsTheSequence(@TempDir Path directory) throws IOException {
+        ChangeJournal journal = journal(directory);
+        journal.append(ChangeJournal.PULL, "o/a", issues(1));
+        journal.append(ChangeJournal.PRUNE, "o/a", issues(2));
+        journal.append(ChangeJournal.PULL, "o/b", issues(3));
+        // cut short by a crash
+        Files.writeString(directory.resolve("changes.journal"), "{\"seq\":4,\"op\":\"pu",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal = journal(directory);
+        assertEquals(List.of(1L, 2L, 3L), seqs(journal));
+        assertEquals(3, journal.lastSeq());
+        ChangeJournal.Entry entry = journal.append(ChangeJournal.PULL, "o/a", issues(4));
+        assertEquals(4, entry.seq());
+
+        journal = journal(directory);
+        assertEquals(List.of(1L, 2L, 3L, 4L), seqs(journal));
+        assertEquals(ChangeJournal.PRUNE, journal.entries().get(1).op());
+        assertEquals(issues(2), journal.entries().get(1).changeSet());
+
+        // the checkpoint line carries the sequence once every entry is dropped
+        journal.retain(dropped -> false);
+        journal = journal(directory);
+        assertTrue(journal.entries().isEmpty());
+        assertEquals(4, journal.lastSeq());
+        assertEquals(5, journal.append(ChangeJournal.PULL, "o/a", issues(5)).seq());
+    }
+
+    @Test
+    public void testRetainsTheEntriesStillNeeded(@TempDir Path directory) {
+        ChangeJournal journal = journal(directory);
+        for (int i = 1; i <= 4; i++) {
+            journal.append(ChangeJournal.PULL, i % 2 == 0 ? "o/b" : "o/a", issues(i));
+        }
+        journal.retain(entry -> entry.seq() != 2);
+        assertEquals(List.of(1L, 3L, 4L), seqs(journal));
+        assertEquals(List.of(1L, 3L, 4L), seqs(journal(directory)));
+
+        journal.forget("o/a");
+        assertEquals(List.of(4L), seqs(journal));
+        assertEquals(List.of(4L), seqs(journal(directory)));
+    }
+
+    @Test
+    public void testDropsEntriesOnceEveryCacheSavedThem(@TempDir Path directory) {
+        ChangeJournal journal = journal(directory);
+        for (int i = 1; i <= 4; i++) {
+            journal.append(ChangeJournal.PULL, i == 3 ? "o/b" : "o/a", issues(i));
+        }
+        journal.saved(ChangeJournal.SUMMARIES, "o/a", 2);
+        assertEquals(List.of(1L, 2L, 3L, 4L), seqs(journal));
+
+        journal.saved(ChangeJournal.EMBEDDINGS, "o/a", 1);
+        assertEquals(List.of(2L, 3L, 4L), seqs(journal));
+
+        journal.saved(ChangeJournal.EMBEDDINGS, "o/a", 4);
+        assertEquals(List.of(3L, 4L), seqs(journal));
+        assertEquals(List.of(3L, 4L), seqs(journal(directory)));
+
+        journal.saved(ChangeJournal.SUMMARIES, "o/a", 4);
+        assertEquals(List.of(3L), seqs(journal));
+
+        // what the caches of a cleared repository saved before does not count
+        journal.saved(ChangeJournal.SUMMARIES, "o/b", 3);
+        journal.forget("o/b");
+        journal.append(ChangeJournal.PULL, "o/b", issues(5));
+        journal.saved(ChangeJournal.EMBEDDINGS, "o/b", 5);
+        assertEquals(List.of(5L), seqs(journal));
+        journal.saved(ChangeJournal.SUMMARIES, "o/b", 5);
+        assertTrue(journal.entries().isEmpty());
+    }
+
+    /**
+     * Records what is replayed onto it, and has the entries up to the ones it is given.
+     */
+    static class FakeSummaries extends SummaryService {
+        final Map<String, Long> seqs = new HashMap<>();
+        final List<String> pruned = new ArrayList<>();
+
+        @Override
+        public long journalSeq(String repoName) {
+            return seqs.getOrDefault(repoName, 0L);
+        }
+
+        @Override
+        public void prune(String repoName, ChangeSet changeSet) {
+            pruned.add(repoName + " " + changeSet.issues());
+        }
+
+        @Override
+        public void applied(String repoName, long seq) {
+            seqs.put(repoName, seq);
+        }
+    }
+
+    static class FakeEmbeddings extends RagIndexer {
+        final Map<String, Long> seqs = new HashMap<>();
+        final List<String> replayed = new ArrayList<>();
+        String failing;
+
+        @Override
+        public long journalSeq(String repoName) {
+            return seqs.getOrDefault(repoName, 0L);
+        }
+
+        @Override
+        public void prune(String repoName, ChangeSet changeSet) {
+            replay("prune", repoName, changeSet);
+        }
+
+        @Override
+        public void newPull(String repoName, ChangeSet changeSet) {
+            replay("pull", repoName, changeSet);
+        }
+
+        void replay(String op, String repoName, ChangeSet changeSet) {
+            if (repoName.equals(failing)) {
+                throw new IllegalStateException("no embedding model");
+            }
+            replayed.add(op + " " + repoName + " " + changeSet.issues());
+        }
+
+        @Override
+        public void applied(String repoName, long seq) {
+            seqs.put(repoName, seq);
+        }
+    }
+
+    @Test
+    public void testReplaySkipsAppliedEntries(@TempDir Path directory) {
+        ChangeJournal journal = journal(directory);
+        journal.append(ChangeJournal.PULL, "o/a", issues(1));
+        journal.append(ChangeJournal.PRUNE, "o/a", issues(2));
+        journal.append(ChangeJournal.PULL, "o/b", issues(3));
+        journal.append(ChangeJournal.PULL, "o/a", issues(4));
+        journal.append(ChangeJournal.PULL, "o/c", issues(5));
+        journal.append(ChangeJournal.PULL, "o/c", issues(6));
+
+        FakeSummaries summaries = new FakeSummaries();
+        summaries.seqs.put("o/a", 2L);
+        summaries.seqs.put("o/b", 3L);
+        FakeEmbeddings embeddings = new FakeEmbeddings();
+        embeddings.seqs.put("o/a", 1L);
+        embeddings.seqs.put("o/b", 3L);
+        embeddings.failing = "o/c";
+        PruneService pruneService = new PruneService();
+        pruneService.journal = journal;
+        pruneService.summaryService = summaries;
+        pruneService.ragIndexer = embeddings;
+
+        pruneService.replayJournal();
+        assertEquals(List.of("o/a [4]", "o/c [5]"), summaries.pruned);
+        assertEquals(Map.of("o/a", 4L, "o/b", 3L, "o/c", 5L), summaries.seqs);
+        assertEquals(List.of("prune o/a [2]", "pull o/a [4]"), embeddings.replayed);
+        // the entry that failed stops the later ones of the same repository
+        assertEquals(Map.of("o/a", 4L, "o/b", 3L), embeddings.seqs);
+    }
+}
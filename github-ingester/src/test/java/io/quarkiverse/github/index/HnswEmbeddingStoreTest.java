@@ -0,0 +1,260 @@
+package io.quarkiverse.github.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import io.quarkiverse.github.index.HnswEmbeddingStore.Options;
+import io.quarkiverse.github.util.MappedVectors.Encoding;
+
+public class HnswEmbeddingStoreTest {
+
+    static final int DIMENSION = 8;
+
+    final Random random = new Random(1);
+    // by id, to search for what was added
+    final Map<String, float[]> vectors = new HashMap<>();
+
+    // a small exact search limit, so searches go through the graph
+    static Options options(Encoding quantization) {
+        return new Options(8, 50, 50, 4, quantization);
+    }
+
+    static HnswEmbeddingStore open(Path directory, Encoding quantization) throws IOException {
+        return HnswEmbeddingStore.open(directory.resolve("embeddings.hnsw"), options(quantization));
+    }
+
+    void add(HnswEmbeddingStore store, String prefix, int count) {
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = prefix + i;
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            vectors.put(id, vector);
+            ids.add(id);
+            embeddings.add(Embedding.from(vector));
+            segments.add(TextSegment.from("text of " + id, Metadata.from(Map.of("repo", "o/r", "number", i))));
+        }
+        store.addAll(ids, embeddings, segments);
+    }
+
+    /**
+     * The id of the nearest segment, which is the one searched for if it is stored.
+     */
+    static String nearest(HnswEmbeddingStore store, float[] vector) {
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(vector))
+                .maxResults(1)
+                .build()).matches();
+        return matches.isEmpty() ? null : matches.get(0).embeddingId();
+    }
+
+    void assertFinds(HnswEmbeddingStore store, String... ids) {
+        for (String id : ids) {
+            assertEquals(id, nearest(store, vectors.get(id)));
+        }
+    }
+
+    static Path log(Path directory, long number) {
+        return directory.resolve("embeddings-" + number + ".log");
+    }
+
+    static List<String> files(Path directory, String extension) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(extension))
+                    .sorted().toList();
+        }
+    }
+
+    @Test
+    public void testAddRemoveSaveAndReopen(@TempDir Path directory) throws IOException {
+        try (HnswEmbeddingStore store = open(directory, Encoding.INT8)) {
+            add(store, "a", 20);
+            store.save();
+            add(store, "b", 10);
+            store.removeAll(List.of("a3", "b4"));
+            store.save();
+            // lost, as it is not saved
+            add(store, "c", 1);
+        }
+        assertEquals(List.of("embeddings-1.log"), files(directory, ".log"));
+        try (HnswEmbeddingStore store = open(directory, Encoding.INT8)) {
+            assertEquals(28, store.size());
+            assertFinds(store, "a0", "a19", "b0", "b9");
+            assertFalse("a3".equals(nearest(store, vectors.get("a3"))));
+            assertFalse("c0".equals(nearest(store, vectors.get("c0"))));
+
+            // replaces the one of the same id
+            store.addAll(List.of("a0"), List.of(Embedding.from(vectors.get("b0"))), null);
+            store.save();
+        }
+        try (HnswEmbeddingStore store = open(directory, Encoding.INT8)) {
+            assertEquals(28, store.size());
+            assertEquals(2, store.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(vectors.get("b0")))
+                    .maxResults(2)
+                    .minScore(0.999)
+                    .build()).matches().size());
+
+            store.removeAll();
+            store.save();
+        }
+        try (HnswEmbeddingStore store = open(directory, Encoding.INT8)) {
+            assertTrue(store.isEmpty());
+            assertEquals(List.of(), files(directory, ".f32"));
+        }
+    }
+
+    @Test
+    public void testDropsTheTornEndOfTheLog(@TempDir Path directory) throws IOException {
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            add(store, "a", 10);
+            store.save();
+            add(store, "b", 1);
+            store.save();
+            add(store, "c", 1);
+            store.save();
+        }
+        // the last record cut short by a crash
+        long size = Files.size(log(directory, 1));
+        try (FileChannel channel = FileChannel.open(log(directory, 1), StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            assertEquals(11, store.size());
+            assertFinds(store, "a0", "b0");
+            assertFalse("c0".equals(nearest(store, vectors.get("c0"))));
+
+            // appended where the complete records end
+            add(store, "d", 1);
+            store.save();
+        }
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            assertEquals(12, store.size());
+            assertFinds(store, "b0", "d0");
+        }
+    }
+
+    @Test
+    public void testOpensACheckpointWhoseLogWasNotStarted(@TempDir Path directory) throws IOException {
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            add(store, "a", 10);
+            store.save();
+            add(store, "b", 5);
+            store.save();
+        }
+        Path kept = directory.resolve("kept.log");
+        Files.copy(log(directory, 1), kept);
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            // one record per segment, enough for compact() to fold the log into a checkpoint
+            add(store, "c", HnswEmbeddingStore.LOG_MIN_RECORDS);
+            store.save();
+            assertTrue(store.needsCompaction());
+            store.compact();
+            assertFalse(store.needsCompaction());
+        }
+        // as if the crash came after the checkpoint was written, before its log was started and the old one deleted
+        Files.delete(log(directory, 2));
+        Files.move(kept, log(directory, 1), StandardCopyOption.REPLACE_EXISTING);
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            // the old log is in the checkpoint already, and not replayed onto it
+            assertEquals(1015, store.size());
+            assertFinds(store, "a0", "b4", "c999");
+            assertEquals(List.of("embeddings-2.log"), files(directory, ".log"));
+
+            add(store, "d", 1);
+            store.save();
+        }
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            assertEquals(1016, store.size());
+            assertFinds(store, "b4", "d0");
+        }
+    }
+
+    @Test
+    public void testDiscardsARebuildTheStoreChangedUnder(@TempDir Path directory) throws IOException {
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            add(store, "a", 30);
+            List<String> removed = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                removed.add("a" + i);
+            }
+            store.removeAll(removed);
+            store.save();
+            assertTrue(store.needsCompaction());
+            List<String> generations = files(directory, ".f32");
+
+            // a change while the graph is rebuilt, through the package-private hook run before the swap
+            store.afterBuild = () -> add(store, "late", 1);
+            store.compact();
+            store.afterBuild = () -> {
+            };
+            // nothing of the discarded graph is left behind
+            assertTrue(store.needsCompaction());
+            assertEquals(generations, files(directory, ".f32"));
+            assertEquals(21, store.size());
+            assertFinds(store, "a10", "late0");
+
+            store.save();
+            store.compact();
+            assertFalse(store.needsCompaction());
+            assertEquals(21, store.size());
+            assertFinds(store, "a10", "a29", "late0");
+            assertFalse(generations.equals(files(directory, ".f32")));
+        }
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            assertEquals(21, store.size());
+            assertFinds(store, "a10", "late0");
+        }
+    }
+
+    @Test
+    public void testRebuildsWithTheNewQuantization(@TempDir Path directory) throws IOException {
+        try (HnswEmbeddingStore store = open(directory, Encoding.FLOAT32)) {
+            add(store, "a", 30);
+            store.save();
+            assertFalse(store.needsCompaction());
+        }
+        assertEquals(List.of(), files(directory, ".i8"));
+        try (HnswEmbeddingStore store = open(directory, Encoding.INT8)) {
+            // applied the next time it is rebuilt, and searched as it was until then
+            assertTrue(store.needsCompaction());
+            assertFinds(store, "a0", "a29");
+
+            store.compact();
+            assertFalse(store.needsCompaction());
+            assertEquals(1, files(directory, ".i8").size());
+            assertFinds(store, "a0", "a29");
+        }
+        try (HnswEmbeddingStore store = open(directory, Encoding.INT8)) {
+            assertFalse(store.needsCompaction());
+            assertEquals(30, store.size());
+            assertFinds(store, "a0", "a15", "a29");
+        }
+    }
+}
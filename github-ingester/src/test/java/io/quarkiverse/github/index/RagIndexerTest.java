@@ -0,0 +1,137 @@
+package io.quarkiverse.github.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.quarkiverse.github.util.MappedVectors.Encoding;
+
+public class RagIndexerTest {
+
+    static Filter repo(String repoName) {
+        return new MetadataFilterBuilder("repo").isEqualTo(repoName);
+    }
+
+    static Filter repos(String... repoNames) {
+        return new MetadataFilterBuilder("repo").isIn(List.of(repoNames));
+    }
+
+    static Filter type(String type) {
+        return new MetadataFilterBuilder("type").isEqualTo(type);
+    }
+
+    @Test
+    public void testReposOfAFilter() {
+        assertNull(RagIndexer.reposIn(null));
+        assertNull(RagIndexer.reposIn(type("issue")));
+        assertNull(RagIndexer.reposIn(new MetadataFilterBuilder("repo").isNotEqualTo("o/a")));
+        assertEquals(Set.of("o/a"), RagIndexer.reposIn(repo("o/a")));
+        assertEquals(Set.of("o/a", "o/b"), RagIndexer.reposIn(repos("o/a", "o/b")));
+    }
+
+    @Test
+    public void testReposOfAnAnd() {
+        // limited by either side
+        assertEquals(Set.of("o/a"), RagIndexer.reposIn(Filter.and(repo("o/a"), type("issue"))));
+        assertEquals(Set.of("o/a"), RagIndexer.reposIn(Filter.and(type("issue"), repo("o/a"))));
+        assertEquals(Set.of("o/b"), RagIndexer.reposIn(Filter.and(repos("o/a", "o/b"), repos("o/b", "o/c"))));
+        assertEquals(Set.of(), RagIndexer.reposIn(Filter.and(repo("o/a"), repo("o/b"))));
+        assertNull(RagIndexer.reposIn(Filter.and(type("issue"), type("discussion"))));
+    }
+
+    @Test
+    public void testReposOfAnOr() {
+        assertEquals(Set.of("o/a", "o/b", "o/c"), RagIndexer.reposIn(Filter.or(repo("o/a"), repos("o/b", "o/c"))));
+        // a side of any repository makes the whole of any repository
+        assertNull(RagIndexer.reposIn(Filter.or(repo("o/a"), type("issue"))));
+        assertNull(RagIndexer.reposIn(Filter.or(type("issue"), repo("o/a"))));
+        assertEquals(Set.of("o/a", "o/b"), RagIndexer.reposIn(Filter.and(type("issue"),
+                Filter.or(repo("o/a"), Filter.and(repo("o/b"), type("issue"))))));
+    }
+
+    static RagIndexer indexer(Path directory) {
+        RagIndexer indexer = new RagIndexer();
+        indexer.baseDirectory = directory.toString();
+        indexer.hnswM = 8;
+        indexer.hnswEfConstruction = 50;
+        indexer.hnswEfSearch = 50;
+        indexer.exactSearchLimit = 100;
+        indexer.quantization = Encoding.FLOAT32;
+        // moving the embeddings of older versions does not need the model
+        indexer.embeddingModel = null;
+        indexer.journal = ChangeJournalTest.journal(directory);
+        return indexer;
+    }
+
+    static void writeLegacyStore(Path directory, String... owners) throws IOException {
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < owners.length; i++) {
+            ids.add("id" + i);
+            embeddings.add(Embedding.from(new float[] { 1, i, -i, 0.5f }));
+            segments.add(TextSegment.from("text " + i,
+                    owners[i] == null ? new Metadata() : Metadata.from(Map.of("repo", owners[i], "number", i))));
+        }
+        InMemoryEmbeddingStore<TextSegment> legacy = new InMemoryEmbeddingStore<>();
+        legacy.addAll(ids, embeddings, segments);
+        legacy.serializeToFile(directory.resolve("embeddings.json"));
+        Files.writeString(directory.resolve("embeddings.seq"), "7");
+    }
+
+    @Test
+    public void testSplitsTheStoreOfOlderVersions(@TempDir Path directory) throws IOException {
+        writeLegacyStore(directory, "o/a", "o/b", "o/a", "o/unpulled", null);
+        assertEquals(4, RagIndexer.dimension(Files.readString(directory.resolve("embeddings.json"))));
+
+        RagIndexer indexer = indexer(directory);
+        assertEquals(2, indexer.load("o/a").size());
+        assertFalse(Files.exists(directory.resolve("embeddings.json")));
+        assertFalse(Files.exists(directory.resolve("embeddings.seq")));
+        // moved, and made a graph the first time it is loaded
+        assertTrue(Files.exists(directory.resolve("o/b/embeddings.json")));
+        assertEquals("7", Files.readString(directory.resolve("o/b/embeddings.seq")));
+        assertEquals(1, indexer.load("o/b").size());
+        assertEquals(7, indexer.journalSeq("o/b"));
+        assertFalse(Files.exists(directory.resolve("o/b/embeddings.json")));
+        // kept whether it has a pull cache or not
+        assertEquals(1, indexer.load("o/unpulled").size());
+        assertTrue(indexer.load("o/empty").isEmpty());
+    }
+
+    @Test
+    public void testKeepsTheStoreUntilEveryRepositoryIsMoved(@TempDir Path directory) throws IOException {
+        writeLegacyStore(directory, "o/a", "o/b", "o/a");
+        // where the directory of o/b would go
+        Files.createDirectories(directory.resolve("o"));
+        Files.writeString(directory.resolve("o/b"), "in the way");
+
+        assertThrows(RuntimeException.class, () -> indexer(directory).load("o/a"));
+        assertTrue(Files.exists(directory.resolve("embeddings.json")));
+
+        Files.delete(directory.resolve("o/b"));
+        RagIndexer indexer = indexer(directory);
+        assertEquals(2, indexer.load("o/a").size());
+        assertEquals(1, indexer.load("o/b").size());
+        assertFalse(Files.exists(directory.resolve("embeddings.json")));
+    }
+}
@@ -0,0 +1,155 @@
+package io.quarkiverse.github.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.quarkiverse.github.index.RenderService.RenderCache;
+import io.quarkiverse.github.index.RenderService.RenderEntry;
+import io.quarkiverse.github.index.model.ChangeSet;
+import io.quarkiverse.github.index.model.IssueModel;
+import io.quarkus.runtime.configuration.MemorySize;
+
+public class RenderServiceTest {
+
+    static RenderCache renderCache(int... issues) {
+        RenderCache renderCache = new RenderCache();
+        for (int number : issues) {
+            renderCache.issues.put(number, new RenderEntry("# Title: issue " + number, 7 + number, 1000L + number));
+        }
+        renderCache.discussions.put(300, new RenderEntry("# Title: discussion 300", 9, 2000L));
+        return renderCache;
+    }
+
+    static byte[] bytes(RenderCache renderCache) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        renderCache.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static byte[] header(int magic, int version, int templateVersion) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeInt(templateVersion);
+        // no discussions, no issues
+        out.write(new byte[] { 0, 0 });
+        return bytes.toByteArray();
+    }
+
+    static RenderCache read(byte[] bytes) throws IOException {
+        return RenderCache.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    static IssueModel issue(String repoName, int number) {
+        return new IssueModel(repoName, number, "issue " + number, "author", "body", 0, 1000L + number, null, Set.of(),
+                List.of());
+    }
+
+    static RenderService renderService(Path directory, long maxSize) {
+        RenderService renderService = new RenderService();
+        renderService.baseDirectory = directory.toString();
+        renderService.maxSize = new MemorySize(BigInteger.valueOf(maxSize));
+        renderService.postConstruct();
+        return renderService;
+    }
+
+    static Path renderPath(Path directory, String repoName) {
+        return directory.resolve(repoName).resolve("render.bin");
+    }
+
+    // rendering needs the templates of a running application, so the saved renders are written here instead
+    static void write(Path directory, String repoName, RenderCache renderCache) throws IOException {
+        Files.createDirectories(renderPath(directory, repoName).getParent());
+        Files.write(renderPath(directory, repoName), bytes(renderCache));
+    }
+
+    static RenderCache readFile(Path directory, String repoName) throws IOException {
+        return read(Files.readAllBytes(renderPath(directory, repoName)));
+    }
+
+    @Test
+    public void testReadsWhatItWrote() throws IOException {
+        RenderCache renderCache = renderCache(1, 2, 100_000);
+        renderCache.issues.put(3, new RenderEntry("", 0, -1));
+        RenderCache read = read(bytes(renderCache));
+        assertEquals(Map.copyOf(renderCache.issues), Map.copyOf(read.issues));
+        assertEquals(Map.copyOf(renderCache.discussions), Map.copyOf(read.discussions));
+        assertFalse(read.dirty);
+    }
+
+    @Test
+    public void testDropsTheRendersOfOtherTemplates() throws IOException {
+        byte[] bytes = bytes(renderCache(1));
+        assertEquals(RenderCache.MAGIC, new DataInputStream(new ByteArrayInputStream(bytes)).readInt());
+        assertTrue(read(header(RenderCache.MAGIC, RenderCache.VERSION, RenderService.TEMPLATE_VERSION)).issues
+                .isEmpty());
+
+        assertNull(read(header(RenderCache.MAGIC, RenderCache.VERSION, RenderService.TEMPLATE_VERSION + 1)));
+        assertThrows(IOException.class,
+                () -> read(header(RenderCache.MAGIC, RenderCache.VERSION + 1, RenderService.TEMPLATE_VERSION)));
+        assertThrows(IOException.class,
+                () -> read(header(0x7b226973, RenderCache.VERSION, RenderService.TEMPLATE_VERSION)));
+    }
+
+    @Test
+    public void testUsesTheSavedRenders(@TempDir Path directory) throws IOException {
+        write(directory, "o/a", renderCache(1, 2));
+        RenderService renderService = renderService(directory, 1 << 20);
+        assertEquals("# Title: issue 1", renderService.issue(issue("o/a", 1)).text());
+        assertEquals(9, renderService.issue(issue("o/a", 2)).tokenCount());
+    }
+
+    @Test
+    public void testSavesBeforeClearingAll(@TempDir Path directory) throws IOException {
+        write(directory, "o/a", renderCache(1, 2));
+        RenderService renderService = renderService(directory, 1 << 20);
+        renderService.issue(issue("o/a", 1));
+        renderService.prune("o/a", new ChangeSet(Set.of(300), Set.of(2)));
+        // in memory only, until the renders leave it
+        assertEquals(Set.of(1, 2), readFile(directory, "o/a").issues.keySet());
+
+        renderService.clearAll();
+        RenderCache saved = readFile(directory, "o/a");
+        assertEquals(Set.of(1), saved.issues.keySet());
+        assertTrue(saved.discussions.isEmpty());
+        assertEquals("# Title: issue 1", renderService.issue(issue("o/a", 1)).text());
+    }
+
+    @Test
+    public void testSavesWhenEvictedAndOnShutdown(@TempDir Path directory) throws IOException {
+        write(directory, "o/a", renderCache(1, 2));
+        write(directory, "o/b", renderCache(1, 2));
+        // room for the renders of one repository
+        RenderService renderService = renderService(directory, renderCache(1, 2).weight() + 10);
+        renderService.issue(issue("o/a", 1));
+        renderService.prune("o/a", new ChangeSet(Set.of(), Set.of(1)));
+        renderService.issue(issue("o/b", 1));
+        assertEquals(Set.of(2), readFile(directory, "o/a").issues.keySet());
+
+        renderService.prune("o/b", new ChangeSet(Set.of(), Set.of(2)));
+        assertEquals(Set.of(1, 2), readFile(directory, "o/b").issues.keySet());
+        renderService.preDestroy();
+        assertEquals(Set.of(1), readFile(directory, "o/b").issues.keySet());
+    }
+}
@@ -0,0 +1,166 @@
+package io.quarkiverse.github.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkiverse.github.api.Labels.Label;
+import io.quarkiverse.github.index.SyncService.RepoResult;
+import io.quarkiverse.github.index.model.Earlier;
+
+public class SyncServiceTest {
+
+    /**
+     * Takes a while over each repository, fails {@code o/broken}, and records how many ran at once.
+     */
+    static class FakePulls extends PullService {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<String> pulled = new CopyOnWriteArrayList<>();
+        final Map<String, Map<String, Label>> labels = new ConcurrentHashMap<>();
+
+        @Override
+        public void pull(String repoName, Earlier dateRange, Map<String, Label> labels) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                if (repoName.equals("o/broken")) {
+                    throw new IllegalStateException("repository not found");
+                }
+                if (labels != null) {
+                    this.labels.put(repoName, labels);
+                }
+                pulled.add(repoName);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    static class FakePrunes extends PruneService {
+        final List<String> pruned = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void prune(String repoName, Earlier dateRange) {
+            pruned.add(repoName);
+        }
+    }
+
+    /**
+     * Has the labels of every repository but {@code o/unlisted}, or fails if there are none.
+     */
+    static class FakeLabels extends PullCacheService {
+        boolean failing;
+
+        @Override
+        public Map<String, Map<String, Label>> getLabels(Collection<String> repoNames) {
+            if (failing) {
+                throw new IllegalStateException("rate limited");
+            }
+            Map<String, Map<String, Label>> labels = new ConcurrentHashMap<>();
+            for (String repoName : repoNames) {
+                if (!repoName.equals("o/unlisted")) {
+                    labels.put(repoName, Map.of("bug", new Label("bug", repoName)));
+                }
+            }
+            return labels;
+        }
+    }
+
+    FakePulls pulls = new FakePulls();
+    FakePrunes prunes = new FakePrunes();
+    FakeLabels labels = new FakeLabels();
+
+    SyncService syncService(int concurrency) {
+        SyncService syncService = new SyncService();
+        syncService.concurrency = concurrency;
+        syncService.pullService = pulls;
+        syncService.pruneService = prunes;
+        syncService.pullCacheService = labels;
+        syncService.locks = new RepositoryLocks();
+        return syncService;
+    }
+
+    @Test
+    public void testPullsTheOthersWhenOneFails() {
+        List<String> repos = List.of("o/a", "o/b", "o/broken", "o/c", "o/d", "o/e", "o/f");
+        List<RepoResult> results = syncService(3).pullAll(repos, Earlier.month, true);
+
+        assertEquals(repos, results.stream().map(RepoResult::repo).toList());
+        for (RepoResult result : results) {
+            assertEquals(!result.repo().equals("o/broken"), result.succeeded(), result.repo());
+        }
+        assertEquals("repository not found", results.get(2).error());
+        assertEquals(Set.of("o/a", "o/b", "o/c", "o/d", "o/e", "o/f"), Set.copyOf(pulls.pulled));
+        // pruned after its pull, so not at all once that failed
+        assertEquals(Set.copyOf(pulls.pulled), Set.copyOf(prunes.pruned));
+        assertTrue(pulls.maxRunning.get() <= 3, "ran " + pulls.maxRunning.get() + " at once");
+        assertTrue(pulls.maxRunning.get() > 1, "ran one at a time");
+    }
+
+    @Test
+    public void testPassesTheLabelsFetchedForAll() {
+        syncService(2).pullAll(List.of("o/a", "o/unlisted", "o/b"), null, false);
+        assertEquals(Set.of("o/a", "o/b"), pulls.labels.keySet());
+        assertEquals("o/b", pulls.labels.get("o/b").get("bug").description());
+        assertTrue(prunes.pruned.isEmpty());
+
+        // each pull fetches its own
+        pulls.labels.clear();
+        labels.failing = true;
+        List<RepoResult> results = syncService(2).pullAll(List.of("o/a", "o/b"), null, false);
+        assertTrue(results.stream().allMatch(RepoResult::succeeded));
+        assertTrue(pulls.labels.isEmpty());
+
+        pulls.pulled.clear();
+        syncService(2).pullAll(List.of("o/a"), null, false);
+        assertEquals(List.of("o/a"), pulls.pulled);
+        assertNull(pulls.labels.get("o/a"));
+    }
+
+    @Test
+    public void testWaitsForTheLockOfABusyRepository() throws InterruptedException {
+        // one permit, which o/a must not take while it waits for its lock
+        SyncService syncService = syncService(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // the chat, say, working on o/a
+        Thread other = Thread.ofVirtual().start(() -> syncService.locks.run("o/a", () -> {
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        Thread sync = Thread.ofVirtual().start(() -> syncService.pullAll(List.of("o/a", "o/b"), null, false));
+        for (int i = 0; i < 500 && !pulls.pulled.contains("o/b"); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("o/b"), pulls.pulled);
+        assertFalse(pulls.pulled.contains("o/a"));
+
+        release.countDown();
+        sync.join(5000);
+        other.join(5000);
+        assertFalse(sync.isAlive());
+        assertEquals(List.of("o/b", "o/a"), pulls.pulled);
+    }
+}
@@ -0,0 +1,102 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.github.util.AtomicFiles;
+
+public class AtomicFilesTest {
+
+    @Test
+    public void testReplacesTheFile(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("repo/cache.bin");
+        AtomicFiles.write(path, out -> out.write("first".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("first", Files.readString(path));
+        AtomicFiles.write(path, out -> out.write("second, longer".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("second, longer", Files.readString(path));
+        try (Stream<Path> files = Files.list(path.getParent())) {
+            assertEquals(List.of(path), files.toList());
+        }
+    }
+
+    @Test
+    public void testFailedWriteLeavesTheOldFile(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("cache.bin");
+        AtomicFiles.write(path, out -> out.write("old".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class, () -> AtomicFiles.write(path, out -> {
+            out.write("half of the new".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("disk full");
+        }));
+        assertEquals("old", Files.readString(path));
+        assertEquals(List.of(path), files(directory));
+    }
+
+    @Test
+    public void testConcurrentWritersEachReplaceTheFileWhole(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("entry.json");
+        AtomicFiles.write(path, out -> out.write(content('a')));
+        List<String> torn = new CopyOnWriteArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            byte[] content = content((char) ('b' + i));
+            writers.add(Thread.ofPlatform().start(() -> {
+                for (int n = 0; n < 20; n++) {
+                    try {
+                        // in chunks, so the writes of the threads would interleave in a shared file
+                        AtomicFiles.write(path, out -> {
+                            for (int off = 0; off < content.length; off += 1024) {
+                                out.write(content, off, 1024);
+                                Thread.yield();
+                            }
+                        });
+                        String read = Files.readString(path);
+                        if (read.length() != content.length || read.chars().distinct().count() != 1) {
+                            torn.add(read.length() + " bytes of " + read.chars().distinct().count() + " writers");
+                        }
+                    } catch (IOException e) {
+                        torn.add(e.toString());
+                    }
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(List.of(), torn);
+        assertEquals(List.of(path), files(directory));
+    }
+
+    static byte[] content(char c) {
+        return String.valueOf(c).repeat(64 * 1024).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static List<Path> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    public void testWritesJsonThroughAStreamJacksonCloses(@TempDir Path directory) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path path = directory.resolve("summary.json");
+        AtomicFiles.writeJson(objectMapper, path, Map.of("journalSeq", 42, "issues", List.of(1, 2)));
+        assertEquals(Map.of("journalSeq", 42, "issues", List.of(1, 2)),
+                objectMapper.readValue(path.toFile(), Map.class));
+    }
+}
@@ -0,0 +1,98 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.quarkiverse.github.util.EmbeddingBatcher;
+
+public class EmbeddingBatcherTest {
+
+    /**
+     * Embeds a text as its length, and records the batches it was called with.
+     */
+    static class CountingModel implements EmbeddingModel {
+        final List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+            calls.add(segments.stream().map(TextSegment::text).toList());
+            if (segments.stream().anyMatch(segment -> segment.text().equals("fail"))) {
+                throw new IllegalStateException("rejected");
+            }
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[] { segment.text().length(), 1 }))
+                    .toList());
+        }
+    }
+
+    static List<TextSegment> segments(String... texts) {
+        return List.of(texts).stream().map(TextSegment::from).toList();
+    }
+
+    @Test
+    public void testPacksBatchesUpToTheLimits() {
+        EmbeddingBatcher batcher = new EmbeddingBatcher(new CountingModel(), 10, 3, 1);
+        // 9 characters estimate to 4 tokens
+        List<List<String>> batches = batcher.batches(List.of("a", "b", "c", "d", "123456789", "123456789",
+                "123456789", "x".repeat(100), "e"));
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("d", "123456789", "123456789"), List.of("123456789"),
+                List.of("x".repeat(100)), List.of("e")), batches);
+    }
+
+    @Test
+    public void testSkipsKnownAndRepeatedTexts() {
+        CountingModel model = new CountingModel();
+        EmbeddingBatcher batcher = new EmbeddingBatcher(model, 1000, 2, 2);
+        Embedding known = Embedding.from(new float[] { 42, 42 });
+        List<Embedding> embeddings = batcher.embedAll(segments("aa", "bbb", "aa", "cccc", "known", "d"),
+                Map.of(EmbeddingBatcher.hash("known"), known));
+        assertEquals(6, embeddings.size());
+        assertEquals(2f, embeddings.get(0).vector()[0]);
+        assertEquals(3f, embeddings.get(1).vector()[0]);
+        assertEquals(2f, embeddings.get(2).vector()[0]);
+        assertEquals(4f, embeddings.get(3).vector()[0]);
+        assertSame(known, embeddings.get(4));
+        assertEquals(1f, embeddings.get(5).vector()[0]);
+        assertEquals(2, model.calls.size());
+        assertEquals(4, model.calls.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    public void testLimitsConcurrentCalls() {
+        CountingModel model = new CountingModel();
+        EmbeddingBatcher batcher = new EmbeddingBatcher(model, 1000, 1, 3);
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            segments.add(TextSegment.from("text " + i));
+        }
+        assertEquals(20, batcher.embedAll(segments, Map.of()).size());
+        assertEquals(20, model.calls.size());
+        assertTrue(model.maxRunning.get() <= 3, "ran " + model.maxRunning.get() + " at once");
+        assertTrue(model.maxRunning.get() > 1, "ran one at a time");
+
+        assertThrows(IllegalStateException.class, () -> batcher.embedAll(segments("a", "fail", "b"), Map.of()));
+    }
+}
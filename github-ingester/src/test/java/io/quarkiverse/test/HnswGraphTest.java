@@ -0,0 +1,155 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.quarkiverse.github.util.HnswGraph;
+import io.quarkiverse.github.util.HnswGraph.Neighbor;
+import io.quarkiverse.github.util.MappedVectors;
+import io.quarkiverse.github.util.MappedVectors.Encoding;
+import io.quarkiverse.github.util.Vectors;
+
+public class HnswGraphTest {
+
+    static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    static Set<Integer> nodes(List<Neighbor> neighbors) {
+        return neighbors.stream().map(Neighbor::node).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testFindsMostOfTheExactNeighbours() {
+        Random random = new Random(1);
+        HnswGraph graph = new HnswGraph(32, 16, 100, 1);
+        for (int i = 0; i < 2000; i++) {
+            graph.add(randomVector(random, 32));
+        }
+        int[] all = IntStream.range(0, graph.size()).toArray();
+        int found = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomVector(random, 32);
+            Set<Integer> exact = nodes(graph.exact(query, 10, all));
+            Set<Integer> approximate = nodes(graph.search(query, 10, 64, null));
+            approximate.retainAll(exact);
+            found += approximate.size();
+        }
+        assertTrue(found >= 450, "recall " + found + " of 500");
+    }
+
+    @Test
+    public void testSkipsDeletedAndFilteredNodes() throws IOException {
+        Random random = new Random(2);
+        HnswGraph graph = new HnswGraph(8, 8, 50, 2);
+        for (int i = 0; i < 500; i++) {
+            graph.add(randomVector(random, 8));
+        }
+        float[] query = graph.vector(42);
+        assertEquals(42, graph.search(query, 1, 32, null).get(0).node());
+        graph.delete(42);
+        assertFalse(nodes(graph.search(query, 10, 32, null)).contains(42));
+        List<Neighbor> odd = graph.search(query, 10, 32, node -> node % 2 == 1);
+        assertEquals(10, odd.size());
+        assertTrue(odd.stream().allMatch(neighbor -> neighbor.node() % 2 == 1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.write(new DataOutputStream(bytes));
+        HnswGraph read = HnswGraph.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                graph.vectors(), 3);
+        assertEquals(499, read.liveCount());
+        assertEquals(nodes(graph.search(query, 10, 32, null)), nodes(read.search(query, 10, 32, null)));
+
+        int[] renumbered = new int[graph.size()];
+        HnswGraph compacted = graph.compact(renumbered, graph.vectors(), Vectors.inMemory(8));
+        assertEquals(499, compacted.size());
+        assertEquals(-1, renumbered[42]);
+        assertEquals(42, renumbered[43]);
+        assertEquals(renumbered[7], compacted.search(graph.vector(7), 1, 32, null).get(0).node());
+    }
+
+    @Test
+    public void testSearchesQuantizedVectorsFromAFile(@TempDir Path directory) throws IOException {
+        Random random = new Random(4);
+        Path path = directory.resolve("vectors.i8");
+        MappedVectors vectors = MappedVectors.open(path, Encoding.INT8, 32, 0);
+        HnswGraph graph = new HnswGraph(vectors, 16, 100, 4);
+        List<float[]> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            float[] vector = randomVector(random, 32);
+            added.add(vector);
+            graph.add(vector);
+        }
+        vectors.force();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.write(new DataOutputStream(bytes));
+        vectors.close();
+
+        MappedVectors reopened = MappedVectors.open(path, Encoding.INT8, 32, 1000);
+        HnswGraph read = HnswGraph.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), reopened,
+                5);
+        float[] exact = added.get(500);
+        float[] quantized = reopened.vector(500);
+        for (int i = 0; i < exact.length; i++) {
+            assertEquals(exact[i], quantized[i], 0.05);
+        }
+        int found = 0;
+        for (int node = 0; node < 100; node++) {
+            if (read.search(added.get(node), 1, 32, null).get(0).node() == node) {
+                found++;
+            }
+        }
+        assertTrue(found >= 95, "found " + found + " of 100");
+        reopened.close();
+    }
+
+    @Test
+    public void testReplaysAddsIntoTheSameGraph() throws IOException {
+        Random random = new Random(6);
+        HnswGraph graph = new HnswGraph(16, 8, 50, 6);
+        for (int i = 0; i < 300; i++) {
+            graph.add(randomVector(random, 16));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.write(new DataOutputStream(bytes));
+        List<Integer> levels = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            levels.add(graph.level(graph.add(randomVector(random, 16))));
+        }
+        graph.delete(310);
+
+        // the vectors of the later nodes are already stored, as they are in a file written before the log
+        HnswGraph replayed = HnswGraph.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                graph.vectors(), 7);
+        for (int level : levels) {
+            replayed.addStored(level);
+        }
+        replayed.delete(310);
+        assertEquals(graph.size(), replayed.size());
+        for (int q = 0; q < 20; q++) {
+            float[] query = randomVector(random, 16);
+            assertEquals(graph.search(query, 5, 32, null), replayed.search(query, 5, 32, null));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkiverse.github.util.IntBitmap;
+
+public class IntBitmapTest {
+
+    @Test
+    public void testAddAndRemoveAcrossContainerKinds() {
+        IntBitmap bitmap = new IntBitmap();
+        // more than an array container holds
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(bitmap.add(i * 2));
+        }
+        assertFalse(bitmap.add(42));
+        assertTrue(bitmap.add(70000));
+        assertEquals(10001, bitmap.cardinality());
+        assertTrue(bitmap.contains(19998));
+        assertFalse(bitmap.contains(19999));
+
+        for (int i = 0; i < 9000; i++) {
+            assertTrue(bitmap.remove(i * 2));
+        }
+        assertFalse(bitmap.remove(0));
+        assertEquals(1001, bitmap.cardinality());
+        int[] expected = IntStream.concat(IntStream.range(9000, 10000).map(i -> i * 2), IntStream.of(70000))
+                .toArray();
+        assertArrayEquals(expected, bitmap.toArray());
+    }
+
+    @Test
+    public void testAnd() {
+        IntBitmap evens = new IntBitmap();
+        IntBitmap threes = new IntBitmap();
+        IntBitmap few = new IntBitmap();
+        for (int i = 0; i < 30000; i++) {
+            evens.add(i * 2);
+            threes.add(i * 3);
+        }
+        few.add(6);
+        few.add(7);
+        few.add(59994);
+
+        IntBitmap sixes = evens.and(threes);
+        assertEquals(10000, sixes.cardinality());
+        assertArrayEquals(IntStream.range(0, 10000).map(i -> i * 6).toArray(), sixes.toArray());
+        assertArrayEquals(new int[] { 6, 59994 }, few.and(sixes).toArray());
+        assertEquals(30000, evens.cardinality());
+    }
+}
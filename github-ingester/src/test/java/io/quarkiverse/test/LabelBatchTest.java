@@ -0,0 +1,51 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkiverse.github.index.LabelBatch;
+
+public class LabelBatchTest {
+
+    static final List<String> LABELS = List.of("area/core", "area/docs", "kind/bug");
+
+    @Test
+    public void testParsesItemsByHeading() {
+        String answer = """
+                ### D12
+                area/core
+                - kind/bug
+                ### I7
+                ### I9
+                1. **area/docs**
+                """;
+        Map<String, Set<String>> labels = LabelBatch.parse(answer, List.of("D12", "I7", "I9"), LABELS);
+        assertEquals(Set.of("area/core", "kind/bug"), labels.get("D12"));
+        assertEquals(Set.of(), labels.get("I7"));
+        assertEquals(Set.of("area/docs"), labels.get("I9"));
+    }
+
+    @Test
+    public void testLeavesOutMissingAndUnknownItems() {
+        String answer = """
+                Here are the categories:
+                ### D12
+                area/core
+                not a category
+                ### D99
+                kind/bug
+                """;
+        Map<String, Set<String>> labels = LabelBatch.parse(answer, List.of("D12", "I7"), LABELS);
+        assertEquals(Set.of("area/core"), labels.get("D12"));
+        assertFalse(labels.containsKey("I7"));
+        assertFalse(labels.containsKey("D99"));
+        assertTrue(LabelBatch.parse(null, List.of("D12"), LABELS).isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkiverse.github.util.OrderedPipeline;
+
+public class OrderedPipelineTest {
+
+    @Test
+    public void testCommitsInSubmitOrder() {
+        List<Integer> committed = new ArrayList<>();
+        try (OrderedPipeline pipeline = new OrderedPipeline(4)) {
+            for (int i = 0; i < 20; i++) {
+                int item = i;
+                if (item % 3 == 0) {
+                    pipeline.submitCompleted(() -> committed.add(item));
+                } else {
+                    // later items finish first
+                    pipeline.submit(() -> {
+                        Thread.sleep(100 - item * 4);
+                        return () -> committed.add(item);
+                    });
+                }
+            }
+            pipeline.finish();
+        }
+        assertEquals(20, committed.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, committed.get(i));
+        }
+    }
+
+    @Test
+    public void testBoundsInFlightWork() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (OrderedPipeline pipeline = new OrderedPipeline(3)) {
+            for (int i = 0; i < 12; i++) {
+                pipeline.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    running.decrementAndGet();
+                    return () -> {
+                    };
+                });
+            }
+            pipeline.finish();
+        }
+        assertTrue(maxRunning.get() <= 3, "max running " + maxRunning.get());
+    }
+
+    @Test
+    public void testFailurePropagates() {
+        try (OrderedPipeline pipeline = new OrderedPipeline(2)) {
+            pipeline.submit(() -> {
+                throw new IllegalStateException("labeling failed");
+            });
+            IllegalStateException error = assertThrows(IllegalStateException.class, pipeline::finish);
+            assertEquals("labeling failed", error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkiverse.github.api.GithubConnection;
+import io.quarkiverse.github.api.GithubConnection.PrefetchingConnection;
+import io.quarkiverse.github.api.PageInfo;
+
+public class PrefetchingConnectionTest {
+
+    record IntConnection(PageInfo pageInfo, List<Integer> nodes) implements GithubConnection<Integer> {
+    }
+
+    static GithubConnection<Integer> page(String cursor, int pages, int pageSize) {
+        int index = cursor == null ? 0 : Integer.parseInt(cursor);
+        List<Integer> nodes = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            nodes.add(index * pageSize + i);
+        }
+        boolean hasNext = index + 1 < pages;
+        return new IntConnection(new PageInfo(hasNext, Integer.toString(index + 1)), nodes);
+    }
+
+    @Test
+    public void testIteratesAllPagesInOrder() {
+        List<Integer> values = new ArrayList<>();
+        try (PrefetchingConnection<Integer> connection = new PrefetchingConnection<>(cursor -> page(cursor, 5, 3), 2)) {
+            for (Integer value : connection) {
+                values.add(value);
+            }
+        }
+        assertEquals(15, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, values.get(i));
+        }
+    }
+
+    @Test
+    public void testCloseStopsFetcherAfterBreak() throws Exception {
+        AtomicInteger fetched = new AtomicInteger();
+        PrefetchingConnection<Integer> connection = new PrefetchingConnection<>(cursor -> {
+            fetched.incrementAndGet();
+            return page(cursor, 1000, 2);
+        }, 1);
+        try (connection) {
+            for (Integer value : connection) {
+                if (value == 3) {
+                    break;
+                }
+            }
+        }
+        Thread.sleep(100);
+        int afterClose = fetched.get();
+        Thread.sleep(100);
+        assertEquals(afterClose, fetched.get());
+        assertTrue(afterClose < 10);
+    }
+
+    @Test
+    public void testFetchesNoMoreThanReadAheadPages() throws Exception {
+        AtomicInteger fetched = new AtomicInteger();
+        try (PrefetchingConnection<Integer> connection = new PrefetchingConnection<>(cursor -> {
+            fetched.incrementAndGet();
+            return page(cursor, 1000, 2);
+        }, 2)) {
+            Iterator<Integer> iterator = connection.iterator();
+            Thread.sleep(100);
+            // the one being fetched counts
+            assertEquals(2, fetched.get());
+
+            // the caller working through the first page frees one
+            assertEquals(0, iterator.next());
+            Thread.sleep(100);
+            assertEquals(3, fetched.get());
+            assertEquals(1, iterator.next());
+            Thread.sleep(100);
+            assertEquals(3, fetched.get());
+        }
+    }
+
+    @Test
+    public void testErrorIsRethrownToConsumer() {
+        try (PrefetchingConnection<Integer> connection = new PrefetchingConnection<>(cursor -> {
+            if (cursor != null) {
+                throw new IllegalStateException("boom");
+            }
+            return page(cursor, 2, 2);
+        }, 2)) {
+            Iterator<Integer> iterator = connection.iterator();
+            assertEquals(0, iterator.next());
+            assertEquals(1, iterator.next());
+            assertThrows(IllegalStateException.class, iterator::hasNext);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.github.index.PullStore;
+import io.quarkiverse.github.index.model.CommentModel;
+import io.quarkiverse.github.index.model.DiscussionCommentModel;
+import io.quarkiverse.github.index.model.DiscussionModel;
+import io.quarkiverse.github.index.model.IssueModel;
+import io.quarkiverse.github.index.model.ItemMetadata;
+
+public class PullStoreTest {
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    static IssueModel issue(int number, String body) {
+        return new IssueModel("org/repo", number, "Issue " + number, "author", body, 1000L, 2000L + number, "Bug",
+                Set.of("kind/bug"), List.of(new CommentModel("commenter", "comment on " + number)));
+    }
+
+    static long storeSize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".seg"))
+                    .mapToLong(path -> path.toFile().length())
+                    .sum();
+        }
+    }
+
+    @Test
+    public void testReopenFromIndex(@TempDir Path directory) throws IOException {
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            for (int i = 1; i <= 10; i++) {
+                store.issues().put(i, issue(i, "body " + i));
+            }
+            store.issues().remove(3);
+            store.save(42L);
+        }
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertEquals(42L, store.lastPulled());
+            assertEquals(9, store.issues().size());
+            assertNull(store.issues().get(3));
+            assertEquals(issue(7, "body 7"), store.issues().get(7));
+        }
+    }
+
+    @Test
+    public void testRecoversRecordsAppendedAfterTheIndex(@TempDir Path directory) throws IOException {
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            store.issues().put(1, issue(1, "first"));
+            store.save(1L);
+            // not saved, as if the process died
+            store.issues().put(1, issue(1, "updated"));
+            store.issues().put(2, issue(2, "second"));
+        }
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertEquals(2, store.issues().size());
+            assertEquals("updated", store.issues().get(1).body());
+        }
+    }
+
+    @Test
+    public void testDropsTornRecord(@TempDir Path directory) throws IOException {
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            store.issues().put(1, issue(1, "first"));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[] { 0, 0, 1, 0, 42, 42 }, StandardOpenOption.APPEND);
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertEquals(1, store.issues().size());
+            store.issues().put(2, issue(2, "second"));
+        }
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertEquals(2, store.issues().size());
+            assertEquals("second", store.issues().get(2).body());
+        }
+    }
+
+    @Test
+    public void testCompactsReplacedRecords(@TempDir Path directory) throws IOException {
+        String body = "x".repeat(100 * 1024);
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            for (int i = 0; i < 60; i++) {
+                store.issues().put(1, issue(1, body + i));
+            }
+            store.issues().put(2, issue(2, "small"));
+            assertTrue(storeSize(directory) > 6 * body.length());
+            store.save(1L);
+            assertTrue(storeSize(directory) < 2 * body.length());
+        }
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertEquals(body + 59, store.issues().get(1).body());
+            assertEquals("small", store.issues().get(2).body());
+            assertFalse(store.discussions().containsKey(1));
+        }
+    }
+
+    @Test
+    public void testKeepsMetadataInIndex(@TempDir Path directory) throws IOException {
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            store.issues().put(1, issue(1, "first"));
+            store.issues().put(2, issue(2, "second"));
+            store.issues().remove(2);
+            assertEquals(ItemMetadata.of(issue(1, "first")), store.issueMetadata().get(1));
+            store.save(1L);
+        }
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertEquals(Set.of(1), store.issueMetadata().keySet());
+            ItemMetadata metadata = store.issueMetadata().get(1);
+            assertEquals(2001L, metadata.updatedAt());
+            assertEquals("Bug", metadata.type());
+            assertEquals(Set.of("kind/bug"), metadata.labels());
+        }
+    }
+
+    static IssueModel labeled(int number, String... labels) {
+        return new IssueModel("org/repo", number, "Issue " + number, "author", "body", 1000L, 2000L, null,
+                Set.of(labels), List.of());
+    }
+
+    @Test
+    public void testIndexesLabels(@TempDir Path directory) throws IOException {
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            store.issues().put(1, labeled(1, "kind/bug", "area/core"));
+            store.issues().put(2, labeled(2, "kind/bug"));
+            store.issues().put(3, labeled(3, "area/core"));
+            store.issues().put(4, labeled(4, "kind/bug", "area/core"));
+            // replaced and removed items leave the index
+            store.issues().put(4, labeled(4, "area/core"));
+            store.issues().remove(1);
+            assertArrayEquals(new int[] { 2 }, store.issueLabels().withAll(List.of("kind/bug")));
+            store.save(1L);
+        }
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertArrayEquals(new int[] { 3, 4 }, store.issueLabels().withAll(List.of("area/core")));
+            assertArrayEquals(new int[0], store.issueLabels().withAll(List.of("area/core", "kind/bug")));
+            assertArrayEquals(new int[] { 2, 3, 4 }, store.issueLabels().withAll(List.of()));
+            assertEquals(Map.of("kind/bug", 1, "area/core", 2), store.issueLabels().counts());
+            assertEquals(3, store.issueLabels().size());
+            // every item refers to the same string
+            String label = store.issues().get(3).labels().iterator().next();
+            assertTrue(label == store.issues().get(4).labels().iterator().next());
+            assertTrue(label == store.issueMetadata().get(4).labels().iterator().next());
+            assertEquals(Set.of("area/core"), store.issues().get(4).labels());
+        }
+    }
+
+    @Test
+    public void testIndexesUpdateTimes(@TempDir Path directory) throws IOException {
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            for (int i = 1; i <= 5; i++) {
+                store.issues().put(i, issue(i, "body " + i));
+            }
+            // updated again, so it moves to the end
+            store.issues().put(1, new IssueModel("org/repo", 1, "Issue 1", "author", "body", 1000L, 3000L, null,
+                    Set.of(), List.of()));
+            store.issues().remove(5);
+            store.save(1L);
+        }
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertArrayEquals(new int[] { 2, 3 }, store.issueTimes().updatedBetween(Long.MIN_VALUE, 2004L));
+            assertArrayEquals(new int[] { 4, 1 }, store.issueTimes().updatedBetween(2004L, Long.MAX_VALUE));
+            assertArrayEquals(new int[] { 1, 2, 3, 4 }, store.issueTimes().createdBetween(1000L, 1001L));
+            assertEquals(2002L, store.issueTimes().firstUpdated());
+            assertEquals(3000L, store.issueTimes().lastUpdated());
+            assertEquals(0L, store.discussionTimes().lastUpdated());
+        }
+    }
+
+    @Test
+    public void testRebuildsSymbolsWithoutIndex(@TempDir Path directory) throws IOException {
+        DiscussionModel discussion = new DiscussionModel("org/repo", 5, "Title", "author", null, 1000L, 2000L, "Q&A",
+                Set.of("kind/question", "area/core"), List.of(new DiscussionCommentModel("commenter", "comment",
+                        List.of(new CommentModel("author", "reply"), new CommentModel(null, "ghost")))));
+        IssueModel untyped = new IssueModel("org/repo", 6, "Untyped", "other", "body", 1000L, 2000L, null, Set.of(),
+                List.of());
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            store.discussions().put(5, discussion);
+            store.issues().put(1, issue(1, "first"));
+            store.issues().put(6, untyped);
+            store.save(1L);
+        }
+        Files.delete(directory.resolve("pull.idx"));
+        try (PullStore store = PullStore.open(directory, objectMapper)) {
+            assertEquals(discussion, store.discussions().get(5));
+            assertEquals(issue(1, "first"), store.issues().get(1));
+            assertEquals(untyped, store.issues().get(6));
+        }
+    }
+}
@@ -2,12 +2,14 @@ package io.quarkiverse.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.regex.Matcher;
 
 import org.junit.jupiter.api.Test;
@@ -17,6 +19,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.quarkiverse.github.api.Discussions.Discussion;
 import io.quarkiverse.graphql.client.ArgsOnly;
 import io.quarkiverse.graphql.client.DefaultVariables;
+import io.quarkiverse.graphql.client.GraphField;
 import io.quarkiverse.graphql.client.GraphQL;
 import io.quarkiverse.graphql.client.GraphQLClient;
 import io.quarkiverse.graphql.client.Namespace;
@@ -203,6 +206,29 @@ public class QueryBuildTest {
         printMapping(methodMapping);
     }
 
+    public interface AsyncAPI {
+        @Query
+        Testit.DiscussionConnection discussions(int first);
+
+        @Query
+        @GraphField("discussions")
+        CompletionStage<Testit.DiscussionConnection> discussionsAsync(int first);
+    }
+
+    @Test
+    public void testAsyncQueryMatchesBlocking() throws Exception {
+        Map<String, GraphQLClient.QueryBuilder.MethodMapping> methodMapping = GraphQLClient.QueryBuilder
+                .getMethodMapping(new ObjectMapper(), AsyncAPI.class);
+        GraphQLClient.QueryBuilder.MethodMapping blocking = methodMapping
+                .get(AsyncAPI.class.getMethod("discussions", int.class).toGenericString());
+        GraphQLClient.QueryBuilder.MethodMapping async = methodMapping
+                .get(AsyncAPI.class.getMethod("discussionsAsync", int.class).toGenericString());
+        assertEquals(blocking.query(), async.query());
+        assertEquals(Testit.DiscussionConnection.class, async.returnType());
+        assertEquals(CompletionStage.class, async.asyncType());
+        assertNull(blocking.asyncType());
+    }
+
     private void printMapping(Map<String, GraphQLClient.QueryBuilder.MethodMapping> methodMapping) {
         for (Map.Entry<String, GraphQLClient.QueryBuilder.MethodMapping> entry : methodMapping.entrySet()) {
             GraphQLClient.QueryBuilder.MethodMapping mapping = entry.getValue();
@@ -0,0 +1,200 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkiverse.github.util.WeightedLruCache;
+
+public class WeightedLruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        List<String> evicted = new ArrayList<>();
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(10, StringBuilder::length,
+                (key, value) -> evicted.add(key));
+        cache.computeIfAbsent("a", key -> new StringBuilder("aaaa"));
+        cache.computeIfAbsent("b", key -> new StringBuilder("bbbb"));
+        // a becomes the most recently used
+        cache.get("a");
+        cache.computeIfAbsent("c", key -> new StringBuilder("cccc"));
+        assertEquals(List.of("b"), evicted);
+        assertEquals(Set.of("a", "c"), cache.keys());
+
+        WeightedLruCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(1, stats.evictions());
+        assertEquals(8, stats.weight());
+    }
+
+    @Test
+    public void testWeighsValuesAgainAndSkipsPinned() {
+        List<String> evicted = new ArrayList<>();
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(10, StringBuilder::length,
+                value -> value.charAt(0) != 'p', (key, value) -> evicted.add(key));
+        cache.computeIfAbsent("pinned", key -> new StringBuilder("p"));
+        StringBuilder growing = cache.computeIfAbsent("growing", key -> new StringBuilder("g"));
+        growing.append("ggggggggg");
+        cache.computeIfAbsent("new", key -> new StringBuilder("nn"));
+        assertEquals(List.of("growing"), evicted);
+        assertEquals(Set.of("pinned", "new"), cache.keys());
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testLoadsOutsideTheLock() throws Exception {
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(100, StringBuilder::length,
+                (key, value) -> {
+                });
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<StringBuilder> slow = CompletableFuture.supplyAsync(() -> cache.computeIfAbsent("slow",
+                key -> {
+                    loads.incrementAndGet();
+                    loading.countDown();
+                    await(loaded);
+                    return new StringBuilder("s");
+                }));
+        await(loading);
+        // another key is not held up by the slow one
+        assertEquals("f", cache.computeIfAbsent("fast", key -> new StringBuilder("f")).toString());
+        // the same key waits for it, and is not loaded twice
+        CompletableFuture<StringBuilder> waiting = CompletableFuture.supplyAsync(
+                () -> cache.computeIfAbsent("slow", key -> new StringBuilder("again")));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+        loaded.countDown();
+        assertSame(slow.get(10, TimeUnit.SECONDS), waiting.get(10, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLoadWaitsForTheWriteBack() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(5, StringBuilder::length,
+                (key, value) -> {
+                    writing.countDown();
+                    await(written);
+                });
+        StringBuilder a = cache.computeIfAbsent("a", key -> new StringBuilder("aaaa"));
+        // evicts a, and writes it back without holding the lock
+        CompletableFuture<StringBuilder> b = CompletableFuture.supplyAsync(
+                () -> cache.computeIfAbsent("b", key -> new StringBuilder("bbbb")));
+        await(writing);
+        assertEquals(Set.of("b"), cache.keys());
+        CompletableFuture<StringBuilder> again = CompletableFuture.supplyAsync(
+                () -> cache.computeIfAbsent("a", key -> new StringBuilder("aaaa")));
+        Thread.sleep(50);
+        assertFalse(again.isDone());
+        written.countDown();
+        b.get(10, TimeUnit.SECONDS);
+        assertNotSame(a, again.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDisposesOfRemovedValueOnceReleased() throws Exception {
+        List<String> disposed = new ArrayList<>();
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(100, StringBuilder::length,
+                (key, value) -> {
+                });
+        StringBuilder a = cache.acquire("a", key -> new StringBuilder("a"));
+        assertSame(a, cache.acquire("a", key -> new StringBuilder("other")));
+        CompletableFuture<Void> removed = cache.remove("a", value -> disposed.add(value.toString()));
+        assertEquals(Set.of(), cache.keys());
+        cache.release("a", a);
+        assertEquals(List.of(), disposed);
+        assertFalse(removed.isDone());
+        // not loaded again until the last holder is done with it
+        CompletableFuture<StringBuilder> again = CompletableFuture.supplyAsync(
+                () -> cache.computeIfAbsent("a", key -> new StringBuilder("b")));
+        Thread.sleep(50);
+        assertFalse(again.isDone());
+        cache.release("a", a);
+        removed.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("a"), disposed);
+        assertEquals("b", again.get(10, TimeUnit.SECONDS).toString());
+    }
+
+    @Test
+    public void testKeepsAcquiredValuesUntilReleased() {
+        List<String> evicted = new ArrayList<>();
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(10, StringBuilder::length,
+                (key, value) -> evicted.add(key));
+        StringBuilder a = cache.acquire("a", key -> new StringBuilder("aaaa"));
+        cache.computeIfAbsent("b", key -> new StringBuilder("bbbb"));
+        cache.computeIfAbsent("c", key -> new StringBuilder("cccc"));
+        // a is the least recently used, but in use
+        assertEquals(List.of("b"), evicted);
+        assertEquals(Set.of("a", "c"), cache.keys());
+
+        cache.release("a", a);
+        cache.get("c");
+        cache.computeIfAbsent("d", key -> new StringBuilder("dddd"));
+        assertEquals(List.of("b", "a"), evicted);
+        assertEquals(Set.of("c", "d"), cache.keys());
+    }
+
+    @Test
+    public void testKeepsValueWhoseWriteBackFailed() {
+        List<String> evicted = new ArrayList<>();
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(10, StringBuilder::length,
+                (key, value) -> {
+                    if (key.equals("broken")) {
+                        throw new IllegalStateException("disk full");
+                    }
+                    evicted.add(key);
+                });
+        StringBuilder broken = cache.computeIfAbsent("broken", key -> new StringBuilder("xxxx"));
+        cache.computeIfAbsent("a", key -> new StringBuilder("aaaa"));
+        cache.computeIfAbsent("b", key -> new StringBuilder("bbbb"));
+        // broken could not be written back, so a went instead
+        assertEquals(List.of("a"), evicted);
+        assertEquals(Set.of("broken", "b"), cache.keys());
+        assertSame(broken, cache.get("broken"));
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    public void testWeighsValuesAgainAfterTheyGrow() {
+        List<String> evicted = new ArrayList<>();
+        WeightedLruCache<String, StringBuilder> cache = new WeightedLruCache<>(10, StringBuilder::length,
+                (key, value) -> evicted.add(key));
+        StringBuilder a = cache.computeIfAbsent("a", key -> new StringBuilder("a"));
+        cache.computeIfAbsent("b", key -> new StringBuilder("b"));
+        assertEquals(2, cache.stats().weight());
+        // grows in place, as a pulled repository does, without the cache knowing
+        a.append("aaaaaaaaa");
+        cache.computeIfAbsent("c", key -> new StringBuilder("c"));
+        assertEquals(List.of("a"), evicted);
+        assertEquals(2, cache.stats().weight());
+
+        // releasing weighs the values again too
+        StringBuilder b = cache.acquire("b", key -> new StringBuilder("other"));
+        b.append("bbbbbbbbbb");
+        cache.release("b", b);
+        assertEquals(List.of("a", "c"), evicted);
+        assertEquals(11, cache.stats().weight());
+    }
+}
@@ -0,0 +1,54 @@
+package io.quarkiverse.graphql.client;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Support for {@link Query} methods that return {@code CompletionStage<T>} or {@code Uni<T>} instead of {@code T}.
+ * The query is generated and decoded against {@code T}; only the way the result is handed back differs.
+ */
+public class AsyncResult {
+
+    public static boolean isAsync(Class<?> returnType) {
+        return CompletionStage.class.equals(returnType) || Uni.class.equals(returnType);
+    }
+
+    /**
+     * The type the response is decoded into: the method's return type, or its type argument for asynchronous methods.
+     */
+    public static Type resultType(Method method) {
+        if (!isAsync(method.getReturnType())) {
+            return method.getGenericReturnType();
+        }
+        if (method.getGenericReturnType() instanceof ParameterizedType parameterized) {
+            return parameterized.getActualTypeArguments()[0];
+        }
+        throw new RuntimeException("Asynchronous query must declare its result type: " + method.toGenericString());
+    }
+
+    public static Class<?> rawType(Type type) {
+        if (type instanceof Class<?> clazz) {
+            return clazz;
+        }
+        if (type instanceof ParameterizedType parameterized) {
+            return (Class<?>) parameterized.getRawType();
+        }
+        throw new RuntimeException("Unsupported query result type: " + type);
+    }
+
+    /**
+     * A {@code CompletionStage} is returned already in flight. A {@code Uni} is lazy and only sends the request once
+     * subscribed to, like any other Mutiny source.
+     */
+    public static Object wrap(Class<?> asyncType, Supplier<CompletionStage<Object>> request) {
+        if (Uni.class.equals(asyncType)) {
+            return Uni.createFrom().completionStage(request);
+        }
+        return request.get();
+    }
+}
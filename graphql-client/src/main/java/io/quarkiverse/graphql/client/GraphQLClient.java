@@ -1,15 +1,28 @@
 package io.quarkiverse.graphql.client;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
 
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
@@ -20,23 +33,51 @@ import jakarta.ws.rs.core.Response;
 
 import org.jboss.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class GraphQLClient {
     static final Logger LOG = Logger.getLogger(GraphQLClient.class);
+    private static final byte[] VARIABLES_FIELD = ",\"variables\":".getBytes(StandardCharsets.UTF_8);
+    private static final Pattern VARIABLE = Pattern.compile("\\$(\\w+)");
+    // async queries only block to wait for a rate limiter slot, which is cheap on a virtual thread
+    private static final Executor ACQUIRE_EXECUTOR = task -> Thread.ofVirtual().name("graphql-acquire").start(task);
+
     private ObjectMapper objectMapper;
     private Client client;
+    // invokers, with their encoded queries and result types, only depend on the interface and the object mapper, as
+    // each call's GraphTarget brings the headers and endpoint of its builder, so build them once per interface
+    private final Map<Class<?>, Map<String, QueryBuilder.MethodInvoker>> invokerCache = new ConcurrentHashMap<>();
+    private final RateLimiter rateLimiter;
 
-    public GraphQLClient(ObjectMapper objectMapper, Client client) {
+    public GraphQLClient(ObjectMapper objectMapper, Client client, RateLimiter rateLimiter) {
         this.objectMapper = objectMapper;
         this.client = client;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public GraphQLClient(ObjectMapper objectMapper, Client client) {
+        this(objectMapper, client, new RateLimiter());
+    }
+
+    public GraphQLClient(ObjectMapper objectMapper, RateLimiter rateLimiter) {
+        this(objectMapper, ClientBuilder.newClient(), rateLimiter);
     }
 
     public GraphQLClient(ObjectMapper objectMapper) {
         this(objectMapper, ClientBuilder.newClient());
     }
 
+    /**
+     * Every query sent through this client is scheduled by this limiter, including queries from different proxies.
+     */
+    public RateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
     public class QueryBuilder {
         private Map<String, String> headers = new HashMap<>();
         private String endpoint;
@@ -61,8 +102,28 @@ public class GraphQLClient {
         }
 
         public <T> T target(Class<T> type) {
-            Map<String, MethodMapping> methodMapping = getMethodMapping(objectMapper, type);
-            Map<String, MethodInvoker> methodInvokerMap = buildInvokerMap(methodMapping);
+            Map<String, MethodInvoker> methodInvokerMap = invokerMap(type);
+            GraphTarget target = new GraphTarget(client.target(endpoint(type)), headers);
+            return proxy(type, methodInvokerMap, target);
+        }
+
+        /**
+         * Batches calls to the {@link Query} methods of {@code type}'s proxies into aliased GraphQL documents of at
+         * most {@code maxAliases} queries each.
+         */
+        public <T> Batch<T> batch(Class<T> type, int maxAliases) {
+            if (maxAliases < 1) {
+                throw new IllegalArgumentException("maxAliases must be at least 1: " + maxAliases);
+            }
+            return new Batch<>(type, invokerMap(type), client.target(endpoint(type)), maxAliases);
+        }
+
+        Map<String, MethodInvoker> invokerMap(Class<?> type) {
+            return invokerCache.computeIfAbsent(type,
+                    t -> Map.copyOf(buildInvokerMap(getMethodMapping(objectMapper, t))));
+        }
+
+        private String endpoint(Class<?> type) {
             if (endpoint == null) {
                 GraphQLEndpoint annotation = type.getAnnotation(GraphQLEndpoint.class);
                 if (annotation == null) {
@@ -70,13 +131,110 @@ public class GraphQLClient {
                 }
                 endpoint = annotation.value();
             }
-            GraphTarget target = new GraphTarget(client.target(endpoint), headers);
+            return endpoint;
+        }
+
+        <T> T proxy(Class<T> type, Map<String, MethodInvoker> methodInvokerMap, GraphTarget target) {
             return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
                     new ClientInvoker(methodInvokerMap, target));
         }
 
-        public record GraphTarget(WebTarget target, Map<String, String> headers) {
+        /**
+         * When {@code recorder} is set, query methods are not sent but recorded there to be sent as a {@link Batch}.
+         */
+        public record GraphTarget(WebTarget target, Map<String, String> headers, List<BatchedCall> recorder) {
+            public GraphTarget(WebTarget target, Map<String, String> headers) {
+                this(target, headers, null);
+            }
+        }
+
+        public record BatchedCall(QueryInvoker invoker, Map<String, Object> variables) {
+        }
+
+        /**
+         * A batched GraphQL document, with the variables of all its queries and where each alias' result is found.
+         */
+        record Document(String query, Map<String, Object> variables, Map<String, ResponseReader.Alias> aliases) {
+            List<Object> results(ResponseReader.AliasedResult response) {
+                List<Object> results = new ArrayList<>(aliases.size());
+                for (String alias : aliases.keySet()) {
+                    results.add(response.data().get(alias));
+                }
+                return results;
+            }
+        }
+
+        interface ResponseHandler<R> {
+            R handle(Response response) throws IOException;
+        }
+
+        Builder request(GraphTarget target) {
+            Builder request = target.target.request();
+            for (Map.Entry<String, String> entry : target.headers().entrySet()) {
+                request = request.header(entry.getKey(), entry.getValue());
+            }
+            return request;
+        }
+
+        /**
+         * Posts a request body once the rate limiter allows it, retrying when a rate limit rejects it.
+         */
+        <R> R send(GraphTarget target, byte[] jsonRequest, ResponseHandler<R> handler)
+                throws IOException, InterruptedException {
+            for (int attempt = 0;; attempt++) {
+                rateLimiter.acquire();
+                Response post;
+                try {
+                    post = request(target).post(Entity.json(jsonRequest));
+                } catch (RuntimeException e) {
+                    rateLimiter.abort();
+                    throw e;
+                }
+                if (retryRejected(post, attempt)) {
+                    continue;
+                }
+                try {
+                    return handleResponse(post, handler);
+                } catch (QueryError qe) {
+                    if (!retryRateLimited(qe, attempt)) {
+                        throw qe;
+                    }
+                }
+            }
+        }
+
+        <R> R handleResponse(Response post, ResponseHandler<R> handler) throws IOException {
+            try {
+                if (post.getStatus() != 200) {
+                    throw new RuntimeException("Failed to execute query: " + post.getStatus());
+                }
+                return handler.handle(post);
+            } finally {
+                post.close();
+            }
+        }
+
+        /**
+         * Hands the response to the rate limiter. If a rate limit rejected the request and it may be retried, the
+         * response is discarded; the next {@link RateLimiter#acquire()} waits out the backoff.
+         */
+        boolean retryRejected(Response post, int attempt) {
+            long retryAfter = rateLimiter.complete(post, attempt);
+            if (retryAfter >= 0 && rateLimiter.canRetry(attempt)) {
+                LOG.debugv("Query rate limited, retrying in {0}ms", retryAfter);
+                post.close();
+                return true;
+            }
+            return false;
+        }
 
+        boolean retryRateLimited(QueryError error, int attempt) {
+            if (error.isRateLimited() && rateLimiter.canRetry(attempt)) {
+                long retryAfter = rateLimiter.rateLimited(attempt);
+                LOG.debugv("Query rate limited, retrying in {0}ms", retryAfter);
+                return true;
+            }
+            return false;
         }
 
         public interface MethodInvoker {
@@ -137,64 +295,305 @@ public class GraphQLClient {
             List<String> argMap;
             List<String> fieldPrefix;
             Type returnType;
+            // JSON request body up to, but not including, the closing brace: {"query":"..."
+            byte[] queryJson;
+            JavaType javaType;
+            // CompletionStage or Uni for asynchronous methods, null when the method blocks for the result
+            Class<?> asyncType;
 
             public QueryInvoker(String query, List<String> fieldPrefix, List<String> argMap, Type returnType) {
+                this(query, fieldPrefix, argMap, returnType, null);
+            }
+
+            public QueryInvoker(String query, List<String> fieldPrefix, List<String> argMap, Type returnType,
+                    Class<?> asyncType) {
                 this.query = query;
                 this.fieldPrefix = fieldPrefix;
                 this.returnType = returnType;
                 this.argMap = argMap;
+                this.asyncType = asyncType;
+                this.queryJson = encodeQuery(query);
+                this.javaType = objectMapper.constructType(returnType);
             }
 
-            @Override
-            public Object invoke(Object[] args, GraphTarget target, Map<String, Object> variables) {
+            private byte[] encodeQuery(String query) {
                 try {
-                    variables = new HashMap<>(variables);
-                    for (int i = 0; i < argMap.size(); i++) {
-                        String arg = argMap.get(i);
-                        variables.put(arg, args[i]);
-                    }
+                    byte[] json = objectMapper.writeValueAsBytes(Map.of("query", query));
+                    return Arrays.copyOf(json, json.length - 1);
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException("Failed to encode query: " + query, e);
+                }
+            }
 
-                    String jsonRequest = null;
-                    if (variables.isEmpty()) {
-                        jsonRequest = objectMapper.writeValueAsString(Map.of("query", query));
-                    } else {
-                        jsonRequest = objectMapper.writeValueAsString(Map.of("query", query, "variables", variables));
+            Object readResponse(Response post) throws IOException {
+                if (LOG.isDebugEnabled()) {
+                    String body = post.readEntity(String.class);
+                    LOG.debugv("Response body: {0}", body);
+                    try (JsonParser parser = objectMapper.createParser(body)) {
+                        return ResponseReader.read(objectMapper, parser, fieldPrefix, javaType);
                     }
+                }
+                try (InputStream body = post.readEntity(InputStream.class);
+                        JsonParser parser = objectMapper.createParser(body)) {
+                    return ResponseReader.read(objectMapper, parser, fieldPrefix, javaType);
+                }
+            }
+
+            byte[] jsonRequest(Map<String, Object> variables) throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(queryJson.length + 256);
+                out.write(queryJson);
+                if (!variables.isEmpty()) {
+                    out.write(VARIABLES_FIELD);
+                    out.write(objectMapper.writeValueAsBytes(variables));
+                }
+                out.write('}');
+                return out.toByteArray();
+            }
+
+            Object handleResponse(Response post) throws IOException {
+                return QueryBuilder.this.handleResponse(post, this::readResponse);
+            }
+
+            @Override
+            public Object invoke(Object[] args, GraphTarget target, Map<String, Object> variables) {
+                Map<String, Object> bound = new HashMap<>(variables);
+                for (int i = 0; i < argMap.size(); i++) {
+                    String arg = argMap.get(i);
+                    bound.put(arg, args[i]);
+                }
+                if (target.recorder() != null) {
+                    target.recorder().add(new BatchedCall(this, bound));
+                    return null;
+                }
+                if (asyncType != null) {
+                    return AsyncResult.wrap(asyncType, () -> invokeAsync(target, bound));
+                }
+                try {
+                    byte[] jsonRequest = jsonRequest(bound);
                     //System.out.println(query);
                     // System.out.println("---- JSON Request ----");
                     //System.out.println(jsonRequest);
                     // System.out.println("---- End JSON Request ----");
-                    Builder request = target.target.request();
-                    for (Map.Entry<String, String> entry : headers.entrySet()) {
-                        request = request.header(entry.getKey(), entry.getValue());
+                    return send(target, jsonRequest, this::readResponse);
+                } catch (QueryError qe) {
+                    throw qe;
+                } catch (Exception e) {
+                    LOG.error("Failed to execute query: ");
+                    LOG.error(query);
+                    throw new RuntimeException("Failed to execute query: ", e);
+                }
+            }
+
+            /**
+             * This query's selection with its top level field aliased and its variables prefixed by the alias, so that
+             * it can share a document with other queries. Variable declarations are appended to {@code params} and the
+             * selection to {@code selection}.
+             */
+            void appendAliased(String alias, StringBuilder params, StringBuilder selection) {
+                if (fieldPrefix.isEmpty()) {
+                    throw new RuntimeException("Only queries under a top level field can be batched: " + query);
+                }
+                int open = query.indexOf(" {\n");
+                int close = query.lastIndexOf("}\n");
+                if (query.charAt("query".length()) == '(') {
+                    if (params.length() > 0) {
+                        params.append(", ");
+                    }
+                    params.append(prefixVariables(alias, query.substring("query(".length(), open - 1)));
+                }
+                String body = prefixVariables(alias, query.substring(open + 3, close));
+                int indent = 0;
+                while (body.charAt(indent) == ' ') {
+                    indent++;
+                }
+                selection.append(body, 0, indent).append(alias).append(": ").append(body, indent, body.length());
+            }
+
+            private String prefixVariables(String alias, String text) {
+                return VARIABLE.matcher(text).replaceAll("\\$" + alias + "_$1");
+            }
+
+            /**
+             * Sends the request through the client's reactive invoker so no thread is held while waiting on GitHub.
+             * Only waiting for a rate limiter slot happens on a (virtual) thread. Failures complete the stage
+             * exceptionally with the same exceptions the blocking path throws.
+             */
+            CompletionStage<Object> invokeAsync(GraphTarget target, Map<String, Object> variables) {
+                byte[] jsonRequest;
+                try {
+                    jsonRequest = jsonRequest(variables);
+                } catch (IOException e) {
+                    return CompletableFuture.failedStage(new RuntimeException("Failed to execute query: ", e));
+                }
+                return sendAsync(target, jsonRequest, 0);
+            }
+
+            CompletionStage<Object> sendAsync(GraphTarget target, byte[] jsonRequest, int attempt) {
+                return CompletableFuture.runAsync(() -> {
+                    try {
+                        rateLimiter.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("Interrupted while waiting for rate limit", e);
+                    }
+                }, ACQUIRE_EXECUTOR).thenCompose(ignored -> postAsync(target, jsonRequest)).handle((post, failure) -> {
+                    if (failure != null) {
+                        return CompletableFuture.<Object> failedStage(failure);
                     }
-                    Response post = request.post(Entity.json(jsonRequest));
-                    if (post.getStatus() != 200) {
-                        throw new RuntimeException("Failed to execute query: " + post.getStatus());
+                    if (retryRejected(post, attempt)) {
+                        return sendAsync(target, jsonRequest, attempt + 1);
                     }
+                    try {
+                        return CompletableFuture.completedStage(handleResponse(post));
+                    } catch (QueryError qe) {
+                        if (retryRateLimited(qe, attempt)) {
+                            return sendAsync(target, jsonRequest, attempt + 1);
+                        }
+                        return CompletableFuture.<Object> failedStage(qe);
+                    } catch (Exception e) {
+                        LOG.error("Failed to execute query: ");
+                        LOG.error(query);
+                        return CompletableFuture.<Object> failedStage(
+                                new RuntimeException("Failed to execute query: ", e));
+                    }
+                }).thenCompose(stage -> stage);
+            }
 
-                    String body = post.readEntity(String.class);
-                    LOG.debugv("Response body: {0}", body);
+            CompletionStage<Response> postAsync(GraphTarget target, byte[] jsonRequest) {
+                CompletionStage<Response> post;
+                try {
+                    post = request(target).rx().post(Entity.json(jsonRequest));
+                } catch (RuntimeException e) {
+                    rateLimiter.abort();
+                    return CompletableFuture.failedStage(e);
+                }
+                return post.whenComplete((response, failure) -> {
+                    if (failure != null) {
+                        rateLimiter.abort();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Combines queries into one GraphQL document, each under its own alias ({@code b0: repository(...) {...}},
+         * {@code b1: ...}), and splits the response back up. Useful when the same query is needed for many
+         * repositories.
+         */
+        public class Batch<T> {
+            private final Class<T> type;
+            private final Map<String, MethodInvoker> methodInvokerMap;
+            private final WebTarget webTarget;
+            private final int maxAliases;
+
+            Batch(Class<T> type, Map<String, MethodInvoker> methodInvokerMap, WebTarget webTarget, int maxAliases) {
+                this.type = type;
+                this.methodInvokerMap = methodInvokerMap;
+                this.webTarget = webTarget;
+                this.maxAliases = maxAliases;
+            }
 
-                    JsonNode json = objectMapper.readTree(body);
-                    if (json.get("errors") != null) {
-                        throw new QueryError("Failed to execute query", json.get("errors"), objectMapper);
+            /**
+             * Calls {@code call} once per item against a recording proxy; it must invoke exactly one {@link Query}
+             * method, whose return value is ignored. The recorded queries are then sent in batches and the results
+             * returned in item order. An item whose query failed (for example an unknown repository) gets a null
+             * result, the others are unaffected.
+             */
+            public <I, R> List<R> query(Collection<I> items, BiFunction<T, I, R> call) {
+                List<BatchedCall> calls = record(items, call);
+                List<R> results = new ArrayList<>(calls.size());
+                for (int start = 0; start < calls.size(); start += maxAliases) {
+                    List<BatchedCall> chunk = calls.subList(start, Math.min(calls.size(), start + maxAliases));
+                    for (Object result : execute(chunk)) {
+                        results.add((R) result);
                     }
-                    JsonNode data = json.get("data");
-                    if (data == null) {
-                        throw new RuntimeException("Failed to execute query, no data returned");
+                }
+                return results;
+            }
+
+            <I, R> List<BatchedCall> record(Collection<I> items, BiFunction<T, I, R> call) {
+                List<BatchedCall> calls = new ArrayList<>();
+                T recorder = proxy(type, methodInvokerMap, new GraphTarget(webTarget, headers, calls));
+                for (I item : items) {
+                    int recorded = calls.size();
+                    call.apply(recorder, item);
+                    if (calls.size() != recorded + 1) {
+                        throw new RuntimeException("A batched call must invoke exactly one @Query method");
                     }
-                    for (String field : fieldPrefix) {
-                        data = data.get(field);
+                }
+                return calls;
+            }
+
+            /**
+             * One document for all of {@code calls}, the i-th of which is aliased {@code b<i>}.
+             */
+            Document document(List<BatchedCall> calls) {
+                StringBuilder params = new StringBuilder();
+                StringBuilder selection = new StringBuilder();
+                Map<String, Object> variables = new HashMap<>();
+                Map<String, ResponseReader.Alias> aliases = new LinkedHashMap<>();
+                for (int i = 0; i < calls.size(); i++) {
+                    BatchedCall call = calls.get(i);
+                    String alias = "b" + i;
+                    call.invoker().appendAliased(alias, params, selection);
+                    for (Map.Entry<String, Object> entry : call.variables().entrySet()) {
+                        variables.put(alias + "_" + entry.getKey(), entry.getValue());
                     }
-                    return objectMapper.treeToValue(data, objectMapper.constructType(returnType));
+                    List<String> fieldPrefix = call.invoker().fieldPrefix;
+                    aliases.put(alias, new ResponseReader.Alias(fieldPrefix.subList(1, fieldPrefix.size()),
+                            call.invoker().javaType));
+                }
+                String query = "query" + (params.isEmpty() ? "" : "(" + params + ")") + " {\n" + selection + "}\n";
+                return new Document(query, variables, aliases);
+            }
+
+            private List<Object> execute(List<BatchedCall> calls) {
+                Document document = document(calls);
+                ResponseReader.AliasedResult response;
+                try {
+                    Map<String, Object> request = new HashMap<>();
+                    request.put("query", document.query());
+                    request.put("variables", document.variables());
+                    response = send(new GraphTarget(webTarget, headers), objectMapper.writeValueAsBytes(request),
+                            post -> readAliases(post, document.aliases()));
                 } catch (QueryError qe) {
                     throw qe;
                 } catch (Exception e) {
-                    LOG.error("Failed to execute query: ");
-                    LOG.error(query);
-                    throw new RuntimeException("Failed to execute query: ", e);
+                    LOG.error("Failed to execute batched query: ");
+                    LOG.error(document.query());
+                    throw new RuntimeException("Failed to execute batched query: ", e);
+                }
+                return document.results(response);
+            }
+
+            private ResponseReader.AliasedResult readAliases(Response post, Map<String, ResponseReader.Alias> aliases)
+                    throws IOException {
+                try (InputStream body = post.readEntity(InputStream.class);
+                        JsonParser parser = objectMapper.createParser(body)) {
+                    return readAliases(parser, aliases);
+                }
+            }
+
+            ResponseReader.AliasedResult readAliases(JsonParser parser, Map<String, ResponseReader.Alias> aliases)
+                    throws IOException {
+                ResponseReader.AliasedResult result = ResponseReader.readAliases(objectMapper, parser, aliases);
+                if (result.errors() == null) {
+                    return result;
                 }
+                QueryError error = new QueryError("Failed to execute batched query", result.errors(), objectMapper);
+                if (error.isRateLimited()) {
+                    throw error;
+                }
+                // errors scoped to one alias only void that alias' result; anything else fails the whole batch
+                for (JsonNode node : result.errors()) {
+                    String alias = node.path("path").path(0).asText(null);
+                    if (alias == null || !aliases.containsKey(alias)) {
+                        throw error;
+                    }
+                    LOG.warnv("Batched query {0} failed: {1}", alias, node.path("message").asText());
+                    result.data().put(alias, null);
+                }
+                return result;
             }
         }
 
@@ -220,8 +619,12 @@ public class GraphQLClient {
             }
         }
 
+        /**
+         * For asynchronous queries {@code genericReturnType} and {@code returnType} describe the decoded result and
+         * {@code asyncType} holds the wrapper ({@code CompletionStage} or {@code Uni}). It is null otherwise.
+         */
         public record MethodMapping(String query, Type genericReturnType, Class<?> returnType, List<String> fieldPrefix,
-                List<String> argMap, Map<String, MethodMapping> methodMap) {
+                List<String> argMap, Map<String, MethodMapping> methodMap, Class<?> asyncType) {
 
         }
 
@@ -256,7 +659,7 @@ public class GraphQLClient {
                 if (mapping.query() != null) {
                     methodInvokerMap.put(entry.getKey(),
                             new QueryInvoker(mapping.query(), mapping.fieldPrefix(), mapping.argMap(),
-                                    mapping.returnType()));
+                                    mapping.genericReturnType(), mapping.asyncType()));
                 } else if (mapping.methodMap() != null) {
                     Map<String, MethodInvoker> proxyMap = buildInvokerMap(mapping.methodMap());
                     NamespaceMethod namespaceMethod = new NamespaceMethod(mapping.returnType, mapping.argMap(),
@@ -284,17 +687,24 @@ public class GraphQLClient {
                 List<String> argMap = fillBuilder(method, requestBuilder);
                 Map<String, MethodMapping> proxyMapping = null;
                 String query = null;
+                Type genericReturnType = method.getGenericReturnType();
+                Class<?> returnType = method.getReturnType();
+                Class<?> asyncType = null;
                 if (method.isAnnotationPresent(Query.class)) {
                     query = generateQuery(objectMapper, requestBuilder, method);
+                    if (AsyncResult.isAsync(returnType)) {
+                        asyncType = returnType;
+                        genericReturnType = AsyncResult.resultType(method);
+                        returnType = AsyncResult.rawType(genericReturnType);
+                    }
                 } else if (method.getReturnType().isInterface()) {
                     proxyMapping = getMethodMapping(objectMapper, method.getReturnType(), requestBuilder);
                 } else {
                     throw new RuntimeException(
                             "Method must be annotated with @Query or return an interface: " + method.toGenericString());
                 }
-                MethodMapping methodMapping = new MethodMapping(query, method.getGenericReturnType(),
-                        method.getReturnType(),
-                        requestBuilder.fields, argMap, proxyMapping);
+                MethodMapping methodMapping = new MethodMapping(query, genericReturnType, returnType,
+                        requestBuilder.fields, argMap, proxyMapping, asyncType);
                 methodMap.put(method.toGenericString(), methodMapping);
             }
             return methodMap;
@@ -435,7 +845,8 @@ public class GraphQLClient {
             }
             // System.out.println("generateQuery: " +
             // method.getGenericReturnType().toString());
-            generateQuery(objectMapper, query, builder, method.getReturnType(), method.getGenericReturnType(), indent,
+            Type resultType = AsyncResult.resultType(method);
+            generateQuery(objectMapper, query, builder, AsyncResult.rawType(resultType), resultType, indent,
                     ns,
                     true);
 
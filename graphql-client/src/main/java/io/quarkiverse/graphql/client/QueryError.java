@@ -22,6 +22,21 @@ public class QueryError extends RuntimeException {
         }
     }
 
+    /**
+     * GitHub reports an exhausted GraphQL budget as an error of type {@code RATE_LIMITED} rather than an HTTP status.
+     */
+    public boolean isRateLimited() {
+        if (errorNode == null || !errorNode.isArray()) {
+            return false;
+        }
+        for (JsonNode error : errorNode) {
+            if ("RATE_LIMITED".equals(error.path("type").asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public JsonNode errorNode() {
         return errorNode;
     }
@@ -0,0 +1,313 @@
+package io.quarkiverse.graphql.client;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import jakarta.ws.rs.core.Response;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Schedules requests against an API that reports its budget through {@code X-RateLimit-*} headers, as GitHub does for
+ * both its GraphQL and REST endpoints. One instance is shared by every query sent through a {@link GraphQLClient}.
+ * <ul>
+ * <li>Concurrency is additive-increase/multiplicative-decrease: halved when a rate limit rejects a request, and grown
+ * by one for every accepted response, up to {@code maxConcurrency}.</li>
+ * <li>Once less than a quarter of the primary budget is left, concurrency is scaled down with it. When only the
+ * {@code reserve} is left, requests are held until the window resets.</li>
+ * <li>A rejected request is retried after {@code Retry-After}, the window reset, or an exponential backoff with jitter,
+ * whichever applies, and at least a minute after a secondary rate limit that gives neither. All requests pause for that
+ * delay, not only the rejected one.</li>
+ * </ul>
+ */
+public class RateLimiter {
+    static final Logger LOG = Logger.getLogger(RateLimiter.class);
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 8;
+    public static final int DEFAULT_RESERVE = 50;
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final long DEFAULT_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    // Github's advice when a secondary rate limit says neither when to retry nor that the budget is spent
+    static final long SECONDARY_BACKOFF_MILLIS = 60_000;
+
+    /**
+     * Snapshot of the budget last reported by the server and of the scheduler's own state. The budget fields are -1
+     * until the first response carrying rate limit headers arrives.
+     */
+    public record Budget(int limit, int remaining, int used, Instant resetAt, int concurrency, int inFlight,
+            long throttled) {
+        @Override
+        public String toString() {
+            String budget = limit < 0 ? "no budget reported yet"
+                    : remaining + " of " + limit + " points left, resets at " + resetAt;
+            return budget + ", " + concurrency + " concurrent requests allowed, " + inFlight + " in flight, "
+                    + throttled + " throttled";
+        }
+    }
+
+    private final int maxConcurrency;
+    private final int reserve;
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final Clock clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int concurrency;
+    private int inFlight;
+    private int limit = -1;
+    private int remaining = -1;
+    private int used = -1;
+    private long resetAtMillis;
+    private long pausedUntil;
+    private long throttled;
+
+    public RateLimiter() {
+        this(DEFAULT_MAX_CONCURRENCY, DEFAULT_RESERVE, DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF_MILLIS);
+    }
+
+    public RateLimiter(int maxConcurrency, int reserve, int maxRetries, long backoffMillis) {
+        this(maxConcurrency, reserve, maxRetries, backoffMillis, Clock.systemUTC());
+    }
+
+    RateLimiter(int maxConcurrency, int reserve, int maxRetries, long backoffMillis, Clock clock) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.reserve = reserve;
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.clock = clock;
+        this.concurrency = maxConcurrency;
+    }
+
+    /**
+     * Blocks until a request may be sent. Every successful call must be paired with {@link #complete(Response, int)} or
+     * {@link #abort()}.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            boolean logged = false;
+            while (true) {
+                long now = clock.millis();
+                long waitUntil = holdUntil(now);
+                if (waitUntil > now) {
+                    if (!logged) {
+                        LOG.infov("Rate limited, holding requests until {0}", Instant.ofEpochMilli(waitUntil));
+                        logged = true;
+                    }
+                    changed.await(waitUntil - now, TimeUnit.MILLISECONDS);
+                } else if (inFlight < allowedConcurrency()) {
+                    inFlight++;
+                    return;
+                } else {
+                    changed.await(1, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot if a request may be sent right now, without waiting.
+     */
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            long now = clock.millis();
+            if (holdUntil(now) > now || inFlight >= allowedConcurrency()) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Until when requests are held back, by a rejection or because only the reserve is left.
+     */
+    private long holdUntil(long now) {
+        long waitUntil = pausedUntil;
+        if (remaining >= 0 && remaining <= reserve && resetAtMillis > now) {
+            waitUntil = Math.max(waitUntil, resetAtMillis);
+        }
+        return waitUntil;
+    }
+
+    /**
+     * Frees the slot of a request that failed without a response.
+     */
+    public void abort() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a request and records the budget its response reports.
+     *
+     * @return the delay in milliseconds before the request should be retried if a rate limit rejected it, -1 otherwise
+     */
+    public long complete(Response response, int attempt) {
+        return complete(response.getStatus(), response::getHeaderString, () -> body(response), attempt);
+    }
+
+    /**
+     * @param headers the value of a response header by name, null if it is missing
+     * @param body the response body, only read for a 403 the headers do not explain
+     */
+    long complete(int status, Function<String, String> headers, Supplier<String> body, int attempt) {
+        // read before locking, as the body may still be on its way
+        boolean rateLimited = isRateLimited(status, headers, body);
+        lock.lock();
+        try {
+            inFlight--;
+            update(headers);
+            long delay = -1;
+            if (rateLimited) {
+                long retryAfter = longHeader(headers, "Retry-After");
+                long minDelay = "0".equals(headers.apply("X-RateLimit-Remaining")) ? 0 : SECONDARY_BACKOFF_MILLIS;
+                delay = throttle(retryAfter < 0 ? -1 : retryAfter * 1000, minDelay, attempt);
+            } else if (concurrency < maxConcurrency) {
+                concurrency++;
+            }
+            changed.signalAll();
+            return delay;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a rejection reported in the body of an otherwise successful response, i.e. a GraphQL
+     * {@code RATE_LIMITED} error. The slot must already have been freed by {@link #complete(Response, int)}.
+     *
+     * @return the delay in milliseconds before the request should be retried
+     */
+    public long rateLimited(int attempt) {
+        lock.lock();
+        try {
+            long delay = throttle(-1, 0, attempt);
+            changed.signalAll();
+            return delay;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean canRetry(int attempt) {
+        return attempt < maxRetries;
+    }
+
+    public Budget budget() {
+        lock.lock();
+        try {
+            return new Budget(limit, remaining, used, resetAtMillis == 0 ? null : Instant.ofEpochMilli(resetAtMillis),
+                    allowedConcurrency(), inFlight, throttled);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int allowedConcurrency() {
+        int allowed = concurrency;
+        int quarter = limit / 4;
+        if (remaining >= 0 && quarter > 0 && remaining < quarter) {
+            allowed = Math.max(1, allowed * remaining / quarter);
+        }
+        return allowed;
+    }
+
+    private long throttle(long retryAfter, long minDelay, int attempt) {
+        throttled++;
+        concurrency = Math.max(1, concurrency / 2);
+        long now = clock.millis();
+        long delay;
+        if (retryAfter >= 0) {
+            delay = retryAfter;
+        } else if (remaining == 0 && resetAtMillis > now) {
+            delay = resetAtMillis - now;
+        } else {
+            // equal jitter: half the exponential delay is fixed, the other half random, so retries spread out
+            long exponential = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt, 16));
+            delay = Math.max(minDelay, exponential / 2 + ThreadLocalRandom.current().nextLong(exponential / 2 + 1));
+        }
+        pausedUntil = Math.max(pausedUntil, now + delay);
+        return delay;
+    }
+
+    private void update(Function<String, String> headers) {
+        int newRemaining = intHeader(headers, "X-RateLimit-Remaining");
+        long reset = longHeader(headers, "X-RateLimit-Reset");
+        if (newRemaining < 0 || reset < 0) {
+            return;
+        }
+        long newResetAt = reset * 1000;
+        // responses can arrive out of order, so within one window trust the lowest remaining count
+        if (newResetAt > resetAtMillis || newRemaining < remaining || remaining < 0) {
+            remaining = newRemaining;
+            used = intHeader(headers, "X-RateLimit-Used");
+            limit = intHeader(headers, "X-RateLimit-Limit");
+        }
+        resetAtMillis = Math.max(resetAtMillis, newResetAt);
+    }
+
+    private static boolean isRateLimited(int status, Function<String, String> headers, Supplier<String> body) {
+        if (status == 429) {
+            return true;
+        }
+        if (status != 403) {
+            return false;
+        }
+        // secondary rate limits come back as 403 with Retry-After, exhausted primary ones as 403 with nothing left, and
+        // some secondary ones only say so in the body
+        if (headers.apply("Retry-After") != null || "0".equals(headers.apply("X-RateLimit-Remaining"))) {
+            return true;
+        }
+        String message = body.get();
+        return message != null && message.toLowerCase(Locale.ROOT).contains("secondary rate limit");
+    }
+
+    private static String body(Response response) {
+        try {
+            // buffered, so whoever handles the response after can still read it
+            response.bufferEntity();
+            return response.readEntity(String.class);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static int intHeader(Function<String, String> headers, String name) {
+        return (int) longHeader(headers, name);
+    }
+
+    private static long longHeader(Function<String, String> headers, String name) {
+        String value = headers.apply(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.quarkiverse.graphql.client;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Decodes a GraphQL response body straight from the parser instead of building a {@link JsonNode} tree first.
+ * Only the value at {@code data.<fieldPrefix>} is bound; every other field is skipped without being materialized.
+ * An {@code errors} array is still detected wherever it appears in the document and raised as a {@link QueryError}.
+ */
+public class ResponseReader {
+
+    public static Object read(ObjectMapper objectMapper, JsonParser parser, List<String> fieldPrefix, JavaType type)
+            throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new RuntimeException("Failed to execute query, response is not a JSON object");
+        }
+        Object result = null;
+        boolean hasData = false;
+        JsonNode errors = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("errors".equals(name) && token != JsonToken.VALUE_NULL) {
+                errors = parser.readValueAsTree();
+            } else if ("data".equals(name) && token != JsonToken.VALUE_NULL) {
+                hasData = true;
+                result = readNested(objectMapper, parser, fieldPrefix, 0, type);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (errors != null) {
+            throw new QueryError("Failed to execute query", errors, objectMapper);
+        }
+        if (!hasData) {
+            throw new RuntimeException("Failed to execute query, no data returned");
+        }
+        return result;
+    }
+
+    /**
+     * Where to find an aliased query's result under its alias, and what to bind it to.
+     */
+    public record Alias(List<String> fieldPrefix, JavaType type) {
+    }
+
+    /**
+     * Results by alias, along with any {@code errors}. Unlike {@link #read}, errors do not fail the whole response,
+     * as they may concern only some of the aliases.
+     */
+    public record AliasedResult(Map<String, Object> data, JsonNode errors) {
+    }
+
+    public static AliasedResult readAliases(ObjectMapper objectMapper, JsonParser parser, Map<String, Alias> aliases)
+            throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new RuntimeException("Failed to execute query, response is not a JSON object");
+        }
+        Map<String, Object> data = new HashMap<>();
+        boolean hasData = false;
+        JsonNode errors = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("errors".equals(name) && token != JsonToken.VALUE_NULL) {
+                errors = parser.readValueAsTree();
+            } else if ("data".equals(name) && token == JsonToken.START_OBJECT) {
+                hasData = true;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String aliasName = parser.currentName();
+                    Alias alias = aliases.get(aliasName);
+                    parser.nextToken();
+                    if (alias == null) {
+                        parser.skipChildren();
+                    } else {
+                        data.put(aliasName, readNested(objectMapper, parser, alias.fieldPrefix(), 0, alias.type()));
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!hasData && errors != null) {
+            throw new QueryError("Failed to execute query", errors, objectMapper);
+        }
+        if (!hasData) {
+            throw new RuntimeException("Failed to execute query, no data returned");
+        }
+        return new AliasedResult(data, errors);
+    }
+
+    /**
+     * The parser is positioned on the first token of the value for {@code fieldPrefix[depth - 1]}. On return it is
+     * positioned on the last token of that value.
+     */
+    private static Object readNested(ObjectMapper objectMapper, JsonParser parser, List<String> fieldPrefix, int depth,
+            JavaType type) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (depth == fieldPrefix.size()) {
+            return objectMapper.readValue(parser, type);
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String field = fieldPrefix.get(depth);
+        Object result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (field.equals(name)) {
+                result = readNested(objectMapper, parser, fieldPrefix, depth + 1, type);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,142 @@
+package io.quarkiverse.graphql.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.ws.rs.client.Client;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.graphql.client.GraphQLClient.QueryBuilder.Batch;
+import io.quarkiverse.graphql.client.GraphQLClient.QueryBuilder.BatchedCall;
+import io.quarkiverse.graphql.client.GraphQLClient.QueryBuilder.Document;
+
+public class BatchTest {
+
+    public record Label(String name) {
+    }
+
+    public record LabelConnection(List<Label> nodes) {
+    }
+
+    public interface Api {
+        Repository repository(String owner, String name);
+
+        interface Repository {
+            @Query
+            LabelConnection labels(int first);
+        }
+    }
+
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    Batch<Api> batch() {
+        // nothing is sent, so the client is never asked for more than a target
+        Client client = (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[] { Client.class },
+                (proxy, method, args) -> null);
+        return new GraphQLClient(objectMapper, client).query().endpoint("http://localhost/graphql").batch(Api.class,
+                10);
+    }
+
+    Document document(Batch<Api> batch, List<String> repos) {
+        List<BatchedCall> calls = batch.record(repos,
+                (api, repo) -> api.repository(repo.split("/")[0], repo.split("/")[1]).labels(100));
+        return batch.document(calls);
+    }
+
+    Map<String, Object> read(Batch<Api> batch, Document document, String response) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(response)) {
+            return batch.readAliases(parser, document.aliases()).data();
+        }
+    }
+
+    @Test
+    public void testAliasesEachQuery() {
+        Document document = document(batch(), List.of("quarkusio/quarkus", "smallrye/smallrye-config"));
+        assertEquals("""
+                query($b0_owner: String!, $b0_name: String!, $b0__first: Int!, \
+                $b1_owner: String!, $b1_name: String!, $b1__first: Int!) {
+                   b0: repository(owner: $b0_owner, name: $b0_name) {
+                      labels(first: $b0__first) {
+                         nodes {
+                            name
+                         }
+                      }
+                   }
+                   b1: repository(owner: $b1_owner, name: $b1_name) {
+                      labels(first: $b1__first) {
+                         nodes {
+                            name
+                         }
+                      }
+                   }
+                }
+                """, document.query());
+        assertEquals(List.of("b0", "b1"), List.copyOf(document.aliases().keySet()));
+        assertEquals(List.of("labels"), document.aliases().get("b0").fieldPrefix());
+    }
+
+    @Test
+    public void testPrefixesVariablesWithTheAlias() {
+        Document document = document(batch(), List.of("quarkusio/quarkus", "smallrye/smallrye-config"));
+        assertEquals(Map.of("b0_owner", "quarkusio", "b0_name", "quarkus", "b0__first", 100,
+                "b1_owner", "smallrye", "b1_name", "smallrye-config", "b1__first", 100), document.variables());
+    }
+
+    @Test
+    public void testRejectsCallsThatAreNotOneQuery() {
+        Batch<Api> batch = batch();
+        assertThrows(RuntimeException.class,
+                () -> batch.record(List.of("quarkusio/quarkus"), (api, repo) -> api.repository("quarkusio", "quarkus")));
+    }
+
+    @Test
+    public void testSplitsTheResponseByAlias() throws IOException {
+        Batch<Api> batch = batch();
+        Document document = document(batch, List.of("quarkusio/quarkus", "smallrye/smallrye-config"));
+        Map<String, Object> data = read(batch, document, """
+                {"data": {
+                  "b1": {"labels": {"nodes": [{"name": "config"}]}},
+                  "b0": {"labels": {"nodes": [{"name": "bug"}, {"name": "docs"}]}}
+                }}
+                """);
+        List<Object> results = document.results(new ResponseReader.AliasedResult(data, null));
+        assertEquals(List.of(new LabelConnection(List.of(new Label("bug"), new Label("docs"))),
+                new LabelConnection(List.of(new Label("config")))), results);
+    }
+
+    @Test
+    public void testErrorScopedToAnAliasOnlyNullsThatAlias() throws IOException {
+        Batch<Api> batch = batch();
+        Document document = document(batch, List.of("quarkusio/quarkus", "nobody/nothing"));
+        Map<String, Object> data = read(batch, document, """
+                {"data": {
+                  "b0": {"labels": {"nodes": [{"name": "bug"}]}},
+                  "b1": null
+                },
+                "errors": [{"type": "NOT_FOUND", "path": ["b1"],
+                  "message": "Could not resolve to a Repository with the name 'nobody/nothing'."}]}
+                """);
+        assertEquals(new LabelConnection(List.of(new Label("bug"))), data.get("b0"));
+        assertNull(data.get("b1"));
+    }
+
+    @Test
+    public void testErrorOutsideTheAliasesFailsTheBatch() {
+        Batch<Api> batch = batch();
+        Document document = document(batch, List.of("quarkusio/quarkus"));
+        assertThrows(QueryError.class, () -> read(batch, document, """
+                {"data": {"b0": null},
+                "errors": [{"message": "Something went wrong while executing your query."}]}
+                """));
+    }
+}
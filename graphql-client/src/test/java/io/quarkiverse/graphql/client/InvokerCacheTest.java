@@ -0,0 +1,111 @@
+package io.quarkiverse.graphql.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.client.WebTarget;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.graphql.client.GraphQLClient.QueryBuilder.ClientInvoker;
+import io.quarkiverse.graphql.client.GraphQLClient.QueryBuilder.MethodInvoker;
+import io.quarkiverse.graphql.client.GraphQLClient.QueryBuilder.NamespaceInvoker;
+import io.quarkiverse.graphql.client.GraphQLClient.QueryBuilder.QueryInvoker;
+
+public class InvokerCacheTest {
+
+    public record Label(String name) {
+    }
+
+    public record LabelConnection(List<Label> nodes) {
+    }
+
+    public interface Api {
+        Repository repository(String owner, String name);
+
+        interface Repository {
+            @Query
+            LabelConnection labels(int first);
+        }
+    }
+
+    static final String LABELS = "public abstract io.quarkiverse.graphql.client.InvokerCacheTest$LabelConnection "
+            + "io.quarkiverse.graphql.client.InvokerCacheTest$Api$Repository.labels(int)";
+
+    // the headers of each request built, nothing is sent
+    final List<Map<String, Object>> requests = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    Client client() {
+        return proxy(Client.class, (client, clientMethod, clientArgs) -> proxy(WebTarget.class,
+                (target, targetMethod, targetArgs) -> {
+                    Map<String, Object> headers = new HashMap<>();
+                    requests.add(headers);
+                    return proxy(Invocation.Builder.class, (builder, method, args) -> {
+                        headers.put((String) args[0], args[1]);
+                        return builder;
+                    });
+                }));
+    }
+
+    static ClientInvoker handler(Object proxy) {
+        return (ClientInvoker) Proxy.getInvocationHandler(proxy);
+    }
+
+    static QueryInvoker labels(Object proxy) {
+        NamespaceInvoker repository = (NamespaceInvoker) handler(proxy).methodMap.values().iterator().next();
+        return (QueryInvoker) repository.namespaceMethod.methodMap().get(LABELS);
+    }
+
+    @Test
+    public void testSecondTargetReusesThePreparedInvokers() {
+        GraphQLClient graphQLClient = new GraphQLClient(new ObjectMapper(), client());
+        Api first = graphQLClient.query().endpoint("http://localhost/graphql").bearer("one").target(Api.class);
+        Api second = graphQLClient.query().endpoint("http://localhost/graphql").bearer("two").target(Api.class);
+
+        Map<String, MethodInvoker> invokers = handler(first).methodMap;
+        assertSame(invokers, handler(second).methodMap);
+        QueryInvoker labels = labels(first);
+        assertSame(labels, labels(second));
+        // encoded and resolved once
+        assertSame(labels.queryJson, labels(second).queryJson);
+        assertSame(labels.javaType, labels(second).javaType);
+        assertEquals(LabelConnection.class, labels.javaType.getRawClass());
+
+        // a client of its own, with its own object mapper, prepares its own
+        Api other = new GraphQLClient(new ObjectMapper(), client()).query().endpoint("http://localhost/graphql")
+                .target(Api.class);
+        assertNotSame(invokers, handler(other).methodMap);
+    }
+
+    @Test
+    public void testSharedInvokersSendTheHeadersOfTheirTarget() {
+        GraphQLClient graphQLClient = new GraphQLClient(new ObjectMapper(), client());
+        GraphQLClient.QueryBuilder one = graphQLClient.query().endpoint("http://localhost/graphql").bearer("one");
+        GraphQLClient.QueryBuilder two = graphQLClient.query().endpoint("http://localhost/graphql").bearer("two");
+        Api first = one.target(Api.class);
+        Api second = two.target(Api.class);
+
+        // built by the builder of the first target, used for the second one
+        one.request(handler(second).target);
+        two.request(handler(first).target);
+        assertEquals(List.of(Map.of("Authorization", "Bearer two"), Map.of("Authorization", "Bearer one")),
+                requests);
+    }
+}
@@ -0,0 +1,244 @@
+package io.quarkiverse.graphql.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTest {
+
+    static class FakeClock extends Clock {
+        long millis = 1_700_000_000_000L;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+
+    final FakeClock clock = new FakeClock();
+
+    RateLimiter limiter(int maxConcurrency) {
+        return new RateLimiter(maxConcurrency, 50, 5, 1000, clock);
+    }
+
+    /**
+     * Headers with the budget Github reports, resetting {@code resetIn} seconds from now.
+     */
+    Map<String, String> budget(int limit, int remaining, long resetIn) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-RateLimit-Limit", Integer.toString(limit));
+        headers.put("X-RateLimit-Remaining", Integer.toString(remaining));
+        headers.put("X-RateLimit-Used", Integer.toString(limit - remaining));
+        headers.put("X-RateLimit-Reset", Long.toString(clock.millis() / 1000 + resetIn));
+        return headers;
+    }
+
+    static long complete(RateLimiter limiter, int status, Map<String, String> headers) {
+        return complete(limiter, status, headers, "");
+    }
+
+    static long complete(RateLimiter limiter, int status, Map<String, String> headers, String body) {
+        return limiter.complete(status, headers::get, () -> body, 0);
+    }
+
+    static int acquireAll(RateLimiter limiter) {
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    @Test
+    public void testHalvesConcurrencyOnARejectionAndGrowsItBackByOne() {
+        RateLimiter limiter = limiter(8);
+        assertEquals(8, acquireAll(limiter));
+
+        assertEquals(2000, complete(limiter, 429, Map.of("Retry-After", "2")));
+        assertEquals(4, limiter.budget().concurrency());
+        assertEquals(7, limiter.budget().inFlight());
+        assertEquals(1, limiter.budget().throttled());
+        complete(limiter, 429, Map.of("Retry-After", "2"));
+        assertEquals(2, limiter.budget().concurrency());
+        // never below one
+        for (int i = 0; i < 3; i++) {
+            complete(limiter, 429, Map.of("Retry-After", "2"));
+        }
+        assertEquals(1, limiter.budget().concurrency());
+        assertEquals(3, limiter.budget().inFlight());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-1, complete(limiter, 200, Map.of()));
+        }
+        assertEquals(4, limiter.budget().concurrency());
+        clock.advance(2000);
+        assertEquals(4, acquireAll(limiter));
+        for (int i = 0; i < 4; i++) {
+            complete(limiter, 200, Map.of());
+        }
+        assertEquals(8, limiter.budget().concurrency());
+        assertEquals(8, acquireAll(limiter));
+        for (int i = 0; i < 8; i++) {
+            complete(limiter, 200, Map.of());
+        }
+        // up to the maximum only
+        assertEquals(8, limiter.budget().concurrency());
+    }
+
+    @Test
+    public void testScalesConcurrencyDownWithTheLastQuarterOfTheBudget() {
+        RateLimiter limiter = limiter(8);
+        assertTrue(limiter.tryAcquire());
+        complete(limiter, 200, budget(5000, 2000, 3600));
+        assertEquals(8, limiter.budget().concurrency());
+
+        assertTrue(limiter.tryAcquire());
+        complete(limiter, 200, budget(5000, 625, 3600));
+        assertEquals(4, limiter.budget().concurrency());
+        assertEquals(4, acquireAll(limiter));
+    }
+
+    @Test
+    public void testHoldsTheReserveBackUntilTheReset() {
+        RateLimiter limiter = limiter(8);
+        assertTrue(limiter.tryAcquire());
+        complete(limiter, 200, budget(5000, 50, 30));
+        assertFalse(limiter.tryAcquire());
+        assertEquals(50, limiter.budget().remaining());
+        assertEquals(Instant.ofEpochMilli((clock.millis() / 1000 + 30) * 1000), limiter.budget().resetAt());
+
+        clock.advance(29_000);
+        assertFalse(limiter.tryAcquire());
+        clock.advance(1_000);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testTrustsTheLowestRemainingOfAWindow() {
+        RateLimiter limiter = limiter(8);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        Map<String, String> early = budget(5000, 4000, 3600);
+        complete(limiter, 200, budget(5000, 3990, 3600));
+        // answered later, sent earlier
+        complete(limiter, 200, early);
+        assertEquals(3990, limiter.budget().remaining());
+        assertEquals(1010, limiter.budget().used());
+
+        // a new window starts over
+        clock.advance(3_600_000);
+        complete(limiter, 200, budget(5000, 4999, 3600));
+        assertEquals(4999, limiter.budget().remaining());
+    }
+
+    @Test
+    public void testWaitsForRetryAfter() {
+        RateLimiter limiter = limiter(8);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(7000, complete(limiter, 403, Map.of("Retry-After", "7")));
+        assertFalse(limiter.tryAcquire());
+        clock.advance(6_999);
+        assertFalse(limiter.tryAcquire());
+        clock.advance(1);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testWaitsForTheResetOnceTheBudgetIsSpent() {
+        RateLimiter limiter = limiter(8);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(120_000, complete(limiter, 403, budget(5000, 0, 120)));
+        clock.advance(119_000);
+        assertFalse(limiter.tryAcquire());
+        clock.advance(1_000);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testWaitsAMinuteForASecondaryLimitThatOnlySaysSoInTheBody() {
+        RateLimiter limiter = limiter(8);
+        assertTrue(limiter.tryAcquire());
+        long delay = complete(limiter, 403, budget(5000, 4000, 3600),
+                "{\"message\":\"You have exceeded a secondary rate limit. "
+                        + "Please wait a few minutes before you try again.\"}");
+        assertEquals(RateLimiter.SECONDARY_BACKOFF_MILLIS, delay);
+        assertEquals(4, limiter.budget().concurrency());
+        clock.advance(delay - 1);
+        assertFalse(limiter.tryAcquire());
+        clock.advance(1);
+        assertTrue(limiter.tryAcquire());
+
+        // a 429 without a header waits as long
+        assertTrue(complete(limiter, 429, Map.of(), "") >= RateLimiter.SECONDARY_BACKOFF_MILLIS);
+    }
+
+    @Test
+    public void testLeavesOtherFailuresAlone() {
+        RateLimiter limiter = limiter(8);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(-1, complete(limiter, 403, budget(5000, 4000, 3600), "{\"message\":\"Resource not accessible\"}"));
+        assertTrue(limiter.tryAcquire());
+        assertEquals(-1, complete(limiter, 500, Map.of()));
+        assertEquals(0, limiter.budget().throttled());
+        assertEquals(8, limiter.budget().concurrency());
+        // the body of anything else is not read
+        assertTrue(limiter.tryAcquire());
+        assertEquals(-1, limiter.complete(200, Map.<String, String> of()::get, () -> {
+            throw new AssertionError("read the body");
+        }, 0));
+    }
+
+    @Test
+    public void testBacksOffExponentiallyWithJitter() {
+        RateLimiter limiter = limiter(8);
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long delay = limiter.rateLimited(attempt);
+            long exponential = Math.min(60_000, 1000L << attempt);
+            assertTrue(delay >= exponential / 2 && delay <= exponential, attempt + ": " + delay);
+            clock.advance(delay);
+        }
+        assertTrue(limiter.canRetry(4));
+        assertFalse(limiter.canRetry(5));
+    }
+
+    @Test
+    public void testReportsNoBudgetUntilAResponseHasOne() {
+        RateLimiter limiter = limiter(8);
+        assertEquals(-1, limiter.budget().limit());
+        assertNull(limiter.budget().resetAt());
+        assertTrue(limiter.tryAcquire());
+        complete(limiter, 200, Map.of());
+        assertEquals(-1, limiter.budget().remaining());
+        assertEquals(8, acquireAll(limiter));
+    }
+}
@@ -0,0 +1,134 @@
+package io.quarkiverse.graphql.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ResponseReaderTest {
+
+    public record Label(String name, String color) {
+    }
+
+    public record LabelConnection(int totalCount, List<Label> nodes) {
+    }
+
+    // as the one Quarkus provides
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    static final List<String> LABELS = List.of("repository", "labels");
+
+    static final String NODES = "[{\"name\":\"bug\",\"color\":\"red\"},{\"name\":\"docs\",\"color\":\"blue\"}]";
+
+    static final String DATA = "\"data\":{\"repository\":{\"labels\":{\"totalCount\":2,\"nodes\":" + NODES + "}}}";
+
+    static final String ERRORS = "\"errors\":[{\"type\":\"NOT_FOUND\","
+            + "\"message\":\"Could not resolve to a Repository\"}]";
+
+    static Object read(String json, List<String> fieldPrefix, Class<?> type) throws IOException {
+        JavaType javaType = OBJECT_MAPPER.constructType(type);
+        try (JsonParser parser = OBJECT_MAPPER.createParser(json)) {
+            return ResponseReader.read(OBJECT_MAPPER, parser, fieldPrefix, javaType);
+        }
+    }
+
+    static LabelConnection labels(String json) throws IOException {
+        return (LabelConnection) read(json, LABELS, LabelConnection.class);
+    }
+
+    static final LabelConnection EXPECTED = new LabelConnection(2,
+            List.of(new Label("bug", "red"), new Label("docs", "blue")));
+
+    @Test
+    public void testReadsTheValueAtTheFieldPrefix() throws IOException {
+        assertEquals(EXPECTED, labels("{" + DATA + "}"));
+        assertEquals(2, read("{" + DATA + "}", List.of("repository", "labels", "totalCount"), Integer.class));
+        // the whole of data
+        assertEquals(Map.of("repository", Map.of("labels", Map.of("totalCount", 2))),
+                read("{\"data\":{\"repository\":{\"labels\":{\"totalCount\":2}}}}", List.of(), Map.class));
+    }
+
+    @Test
+    public void testRaisesErrorsBeforeData() {
+        QueryError error = assertThrows(QueryError.class, () -> labels("{" + ERRORS + "," + DATA + "}"));
+        assertEquals("NOT_FOUND", error.errorNode().get(0).get("type").asText());
+    }
+
+    @Test
+    public void testRaisesErrorsAfterData() {
+        QueryError error = assertThrows(QueryError.class, () -> labels("{" + DATA + "," + ERRORS + "}"));
+        assertEquals("NOT_FOUND", error.errorNode().get(0).get("type").asText());
+    }
+
+    @Test
+    public void testRaisesErrorsWithNullData() throws IOException {
+        assertThrows(QueryError.class, () -> labels("{\"data\":null," + ERRORS + "}"));
+        assertThrows(QueryError.class, () -> labels("{" + ERRORS + ",\"data\":null}"));
+        // null errors are none
+        assertEquals(EXPECTED, labels("{\"errors\":null," + DATA + "}"));
+    }
+
+    @Test
+    public void testFailsWithoutData() {
+        RuntimeException nullData = assertThrows(RuntimeException.class, () -> labels("{\"data\":null}"));
+        assertEquals("Failed to execute query, no data returned", nullData.getMessage());
+        RuntimeException noData = assertThrows(RuntimeException.class, () -> labels("{}"));
+        assertEquals("Failed to execute query, no data returned", noData.getMessage());
+        RuntimeException notAnObject = assertThrows(RuntimeException.class, () -> labels("[]"));
+        assertEquals("Failed to execute query, response is not a JSON object", notAnObject.getMessage());
+    }
+
+    @Test
+    public void testReadsNullForAMissingSelectionPath() throws IOException {
+        assertNull(labels("{\"data\":{}}"));
+        assertNull(labels("{\"data\":{\"repository\":null}}"));
+        assertNull(labels("{\"data\":{\"repository\":{}}}"));
+        assertNull(labels("{\"data\":{\"repository\":{\"labels\":null}}}"));
+        // not an object where one was selected
+        assertNull(labels("{\"data\":{\"repository\":[{\"labels\":{}}]}}"));
+        assertNull(labels("{\"data\":{\"repository\":\"o/a\"}}"));
+    }
+
+    @Test
+    public void testSkipsUnknownFields() throws IOException {
+        String json = "{\"extensions\":{\"cost\":{\"requested\":[1,2,{\"a\":null}]}},"
+                + "\"data\":{\"viewer\":{\"login\":\"labels\"},"
+                + "\"repository\":{\"issues\":{\"labels\":{\"totalCount\":9}},\"labels\":"
+                + "{\"totalCount\":2,\"nodes\":" + NODES + ",\"pageInfo\":{\"hasNextPage\":false}},"
+                + "\"name\":\"labels\",\"stars\":[[],{}]}},"
+                + "\"trailing\":[{\"errors\":[{\"type\":\"NOT_FOUND\"}]}]}";
+        assertEquals(EXPECTED, labels(json));
+    }
+
+    @Test
+    public void testLeavesTheErrorsOfAliasesToTheCaller() throws IOException {
+        JavaType javaType = OBJECT_MAPPER.constructType(LabelConnection.class);
+        String json = "{" + ERRORS + ",\"data\":{\"r0\":{\"labels\":{\"totalCount\":2,\"nodes\":[]}},\"r1\":null}}";
+        ResponseReader.AliasedResult result;
+        try (JsonParser parser = OBJECT_MAPPER.createParser(json)) {
+            result = ResponseReader.readAliases(OBJECT_MAPPER, parser,
+                    Map.of("r0", new ResponseReader.Alias(List.of("labels"), javaType),
+                            "r1", new ResponseReader.Alias(List.of("labels"), javaType)));
+        }
+        assertEquals(new LabelConnection(2, List.of()), result.data().get("r0"));
+        assertTrue(result.data().containsKey("r1"));
+        assertNull(result.data().get("r1"));
+        assertEquals("NOT_FOUND", result.errors().get(0).get("type").asText());
+
+        try (JsonParser parser = OBJECT_MAPPER.createParser("{" + ERRORS + ",\"data\":null}")) {
+            assertThrows(QueryError.class, () -> ResponseReader.readAliases(OBJECT_MAPPER, parser, Map.of()));
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package io.quarkiverse.ai.github.api;
 
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
@@ -11,27 +17,50 @@ import jakarta.ws.rs.core.Link;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.quarkiverse.ai.github.api.GithubAPI.Repository;
+import io.quarkiverse.ai.github.api.Labels.Label;
 import io.quarkiverse.graphql.client.GraphQLClient;
+import io.quarkiverse.graphql.client.RateLimiter;
 import io.quarkus.runtime.Startup;
 
 @ApplicationScoped
 public class Github {
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>;\\s*rel=\"next\"");
+
     @Inject
     @ConfigProperty(name = "ai.scanner.github.token")
     String githubToken;
 
+    @ConfigProperty(name = "ai.scanner.github.max-concurrency", defaultValue = "8")
+    int maxConcurrency;
+
+    @ConfigProperty(name = "ai.scanner.github.rate-limit-reserve", defaultValue = "50")
+    int rateLimitReserve;
+
+    @ConfigProperty(name = "ai.scanner.github.max-retries", defaultValue = "5")
+    int maxRetries;
+
+    @ConfigProperty(name = "ai.scanner.http-cache.dir")
+    String httpCacheDirectory;
+
     @Inject
     ObjectMapper objectMapper;
 
     Client client;
     WebTarget githubApi;
+    volatile GithubAPI api;
+    volatile RateLimiter rateLimiter;
+    HttpCache httpCache;
 
     @Startup
     public void startup() {
         client = ClientBuilder.newClient();
+        githubApi = client.target("https://api.github.com");
+        httpCache = new HttpCache(Path.of(httpCacheDirectory), githubToken, objectMapper);
     }
 
     public Repository repository(String repo) {
@@ -43,8 +72,70 @@ public class Github {
     @Produces
     @ApplicationScoped
     public GithubAPI api() {
-        return new GraphQLClient(objectMapper).query().endpoint("https://api.github.com/graphql").bearer(githubToken)
-                .target(GithubAPI.class);
+        // the proxy is stateless, so build it (and its query mappings) once rather than on every repository() call
+        GithubAPI result = api;
+        if (result == null) {
+            synchronized (this) {
+                result = api;
+                if (result == null) {
+                    rateLimiter = new RateLimiter(maxConcurrency, rateLimitReserve, maxRetries,
+                            RateLimiter.DEFAULT_BACKOFF_MILLIS);
+                    GraphQLClient.QueryBuilder builder = new GraphQLClient(objectMapper, rateLimiter).query()
+                            .endpoint("https://api.github.com/graphql")
+                            .bearer(githubToken);
+                    result = builder.target(GithubAPI.class);
+                    api = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Labels of a repository, read through the REST API and the {@link HttpCache}. An unchanged label set is answered
+     * with 304 Not Modified, which does not count against the rate limit, so re-syncing one repository is nearly free.
+     */
+    public Map<String, Label> labels(String repo) {
+        Map<String, Label> labels = new HashMap<>();
+        WebTarget target = githubApi.path("repos").path(repo).path("labels").queryParam("per_page", 100);
+        while (target != null) {
+            HttpCache.CachedResponse response = getCached(target);
+            try {
+                for (JsonNode node : objectMapper.readTree(response.body())) {
+                    String name = node.get("name").asText();
+                    String description = node.hasNonNull("description") ? node.get("description").asText() : null;
+                    labels.put(name, new Label(name, description));
+                }
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Failed to parse labels of " + repo, e);
+            }
+            String next = nextLink(response.link());
+            target = next == null ? null : client.target(next);
+        }
+        return labels;
+    }
+
+    /**
+     * GETs a REST resource, revalidating a previously cached response rather than downloading it again.
+     */
+    public HttpCache.CachedResponse getCached(WebTarget target) {
+        return httpCache.get(target, this::addGithubHeaders);
+    }
+
+    private static String nextLink(String link) {
+        if (link == null) {
+            return null;
+        }
+        Matcher matcher = NEXT_LINK.matcher(link);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * The GraphQL budget as last reported by Github, along with the current request concurrency.
+     */
+    public RateLimiter.Budget rateLimit() {
+        api();
+        return rateLimiter.budget();
     }
 
     public WebTarget githubApi() {
@@ -2,16 +2,19 @@ package io.quarkiverse.ai.github.api;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 import jakarta.annotation.Nullable;
 
 import io.quarkiverse.ai.github.api.Discussions.DiscussionCategoryConnection;
 import io.quarkiverse.ai.github.api.Discussions.DiscussionConnection;
 import io.quarkiverse.ai.github.api.GithubConnection.IterableConnection;
+import io.quarkiverse.ai.github.api.GithubConnection.PrefetchingConnection;
 import io.quarkiverse.ai.github.api.Issues.IssueConnection;
 import io.quarkiverse.ai.github.api.Labels.LabelConnection;
 import io.quarkiverse.graphql.client.ArgsOnly;
 import io.quarkiverse.graphql.client.DefaultVariables;
+import io.quarkiverse.graphql.client.GraphField;
 import io.quarkiverse.graphql.client.Query;
 
 public interface GithubAPI {
@@ -45,6 +48,34 @@ public interface GithubAPI {
             return discussionCategories;
         }
 
+        @Query
+        @GraphField("labels")
+        CompletionStage<LabelConnection> labelsAsync(int first, @Nullable String after);
+
+        default CompletionStage<Map<String, Labels.Label>> labelsAsync() {
+            return GithubConnection.collectAsync((after) -> labelsAsync(100, after)).thenApply(nodes -> {
+                Map<String, Labels.Label> labels = new HashMap<>();
+                for (Labels.Label label : nodes) {
+                    labels.put(label.name(), label);
+                }
+                return labels;
+            });
+        }
+
+        @Query
+        @GraphField("discussionCategories")
+        CompletionStage<DiscussionCategoryConnection> discussionCategoriesAsync(int first, @Nullable String after);
+
+        default CompletionStage<Map<String, Discussions.DiscussionCategory>> discussionCategoriesAsync() {
+            return GithubConnection.collectAsync((after) -> discussionCategoriesAsync(100, after)).thenApply(nodes -> {
+                Map<String, Discussions.DiscussionCategory> discussionCategories = new HashMap<>();
+                for (Discussions.DiscussionCategory discussionCategory : nodes) {
+                    discussionCategories.put(discussionCategory.name(), discussionCategory);
+                }
+                return discussionCategories;
+            });
+        }
+
         interface TailoredDiscussions {
             @Query
             @ArgsOnly
@@ -58,6 +89,10 @@ public interface GithubAPI {
             default Iterable<Discussions.Discussion> full(int pageSize) {
                 return new IterableConnection<Discussions.Discussion>((after) -> full(pageSize, after));
             }
+
+            default PrefetchingConnection<Discussions.Discussion> prefetch(int pageSize, int readAhead) {
+                return new PrefetchingConnection<Discussions.Discussion>((after) -> full(pageSize, after), readAhead);
+            }
         }
 
         @DefaultVariables("orderBy: {field: UPDATED_AT, direction: DESC}")
@@ -82,6 +117,12 @@ public interface GithubAPI {
                 return new IterableConnection<Issues.Issue>(
                         (after) -> full(pageSize, null, after));
             }
+
+            default PrefetchingConnection<Issues.Issue> prefetch(int pageSize, String since, int readAhead) {
+                Issues.Since filterBy = since != null ? new Issues.Since(since) : null;
+                return new PrefetchingConnection<Issues.Issue>(
+                        (after) -> full(pageSize, filterBy, after), readAhead);
+            }
         }
 
         @DefaultVariables("orderBy: {field: UPDATED_AT, direction: DESC}")
@@ -0,0 +1,115 @@
+package io.quarkiverse.ai.github.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.UnaryOperator;
+
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.Response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkiverse.ai.github.util.AppLogger;
+import io.quarkiverse.ai.github.util.AtomicFiles;
+
+/**
+ * On-disk cache for GET requests against Github's REST API. Responses are stored with their {@code ETag} and
+ * {@code Last-Modified} headers and revalidated with a conditional request. A {@code 304 Not Modified} answer is
+ * served from disk, and does not count against the primary rate limit.
+ *
+ * Entries are keyed by URL and by the credentials they were fetched with, so a token never sees another token's
+ * responses.
+ */
+public class HttpCache {
+    static AppLogger log = AppLogger.getLogger(HttpCache.class);
+
+    public record Entry(String url, String etag, String lastModified, String link, String body) {
+    }
+
+    /**
+     * @param link the {@code Link} header, for paginated resources
+     * @param notModified whether the body was served from the cache
+     */
+    public record CachedResponse(String body, String link, boolean notModified) {
+    }
+
+    private final Path directory;
+    private final String scope;
+    private final ObjectMapper objectMapper;
+
+    public HttpCache(Path directory, String credentials, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.scope = sha256(credentials == null ? "" : credentials);
+        this.objectMapper = objectMapper;
+    }
+
+    public CachedResponse get(WebTarget target, UnaryOperator<Invocation.Builder> headers) {
+        String url = target.getUri().toString();
+        Path path = directory.resolve(sha256(scope + " " + url) + ".json");
+        Entry entry = read(path);
+        Invocation.Builder request = headers.apply(target.request());
+        if (entry != null) {
+            if (entry.etag() != null) {
+                request = request.header("If-None-Match", entry.etag());
+            } else if (entry.lastModified() != null) {
+                request = request.header("If-Modified-Since", entry.lastModified());
+            }
+        }
+        try (Response response = request.get()) {
+            if (response.getStatus() == 304 && entry != null) {
+                return new CachedResponse(entry.body(), entry.link(), true);
+            }
+            if (response.getStatus() != 200) {
+                throw new RuntimeException("Failed to get " + url + ": " + response.getStatus());
+            }
+            String body = response.readEntity(String.class);
+            Entry updated = new Entry(url, response.getHeaderString("ETag"), response.getHeaderString("Last-Modified"),
+                    response.getHeaderString("Link"), body);
+            if (updated.etag() != null || updated.lastModified() != null) {
+                write(path, updated);
+            }
+            return new CachedResponse(body, updated.link(), false);
+        }
+    }
+
+    private Entry read(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(path.toFile(), Entry.class);
+        } catch (IOException e) {
+            log.warnv("Discarding unreadable http cache entry {0}: {1}", path, e.getMessage());
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    private void write(Path path, Entry entry) {
+        try {
+            // replaced whole, so a concurrent read or a crash never finds half an entry
+            AtomicFiles.writeJson(objectMapper, path, entry);
+        } catch (IOException e) {
+            // the response is still good, it just won't be revalidated next time
+            log.warnv("Failed to write http cache entry {0}: {1}", path, e.getMessage());
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
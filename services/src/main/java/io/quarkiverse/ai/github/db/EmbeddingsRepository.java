@@ -1,6 +1,7 @@
 package io.quarkiverse.ai.github.db;
 
 import java.sql.*;
+import java.util.HashMap;
 import java.util.Map;
 
 import jakarta.enterprise.context.ApplicationScoped;
@@ -9,12 +10,14 @@ import jakarta.inject.Inject;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import io.agroal.api.AgroalDataSource;
 import io.quarkiverse.ai.github.scanner.model.DiscussionModel;
 import io.quarkiverse.ai.github.scanner.model.GitType;
 import io.quarkiverse.ai.github.scanner.model.IssueModel;
+import io.quarkiverse.ai.github.util.EmbeddingBatcher;
 import io.quarkus.runtime.Startup;
 
 @ApplicationScoped
@@ -80,6 +83,42 @@ public class EmbeddingsRepository {
         }
     }
 
+    /**
+     * The embeddings of an item's segments, by {@link EmbeddingBatcher#hash(String)} of their text.
+     */
+    public Map<String, Embedding> embeddings(String repo, int number, String type) {
+        try (Connection conn = db.getConnection()) {
+            PreparedStatement stmt = conn.prepareStatement("SELECT text, embedding::text FROM embeddings WHERE " +
+                    "metadata->>'repo' = ?" +
+                    " AND (metadata->>'number')::int = ?" +
+                    " AND metadata->>'type' = ?");
+            stmt.setString(1, repo);
+            stmt.setInt(2, number);
+            stmt.setString(3, type);
+            ResultSet resultSet = stmt.executeQuery();
+            Map<String, Embedding> embeddings = new HashMap<>();
+            while (resultSet.next()) {
+                String text = resultSet.getString(1);
+                if (text != null) {
+                    embeddings.put(EmbeddingBatcher.hash(text), parseVector(resultSet.getString(2)));
+                }
+            }
+            return embeddings;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // pgvector's text form, [1.5,-2,...]
+    private static Embedding parseVector(String text) {
+        String[] values = text.substring(1, text.length() - 1).split(",");
+        float[] vector = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            vector[i] = Float.parseFloat(values[i]);
+        }
+        return Embedding.from(vector);
+    }
+
     public boolean updateMetadata(String repo, int number, String type, Map<String, Object> metadata) {
         try (Connection conn = db.getConnection()) {
             PreparedStatement stmt = conn.prepareStatement("UPDATE embeddings SET metadata = ? WHERE " +
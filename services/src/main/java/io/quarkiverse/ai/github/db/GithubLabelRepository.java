@@ -3,6 +3,8 @@ package io.quarkiverse.ai.github.db;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -18,17 +20,41 @@ public class GithubLabelRepository implements PanacheRepositoryBase<GithubLabel,
     @Inject
     Github github;
 
+    @Inject
+    InferredLabelsRepository inferredLabels;
+
+    /**
+     * Reads the labels through Github's conditional request cache, so syncing an unchanged repository again does not
+     * use up rate limit. Labels inferred for the repository's unlabelled items are dropped when the label set changed.
+     */
     @Transactional
     public void syncLabels(String repo) {
-        Map<String, Labels.Label> labels = github.repository(repo).labels();
+        sync(repo, github.labels(repo));
+    }
+
+    private void sync(String repo, Map<String, Labels.Label> labels) {
+        boolean changed = false;
+        Set<String> names = labels.values().stream().map(Labels.Label::name).collect(Collectors.toSet());
+        for (GithubLabel existing : findByRepository(repo)) {
+            // deleted upstream
+            if (!names.contains(existing.name)) {
+                delete(existing);
+                changed = true;
+            }
+        }
         for (Labels.Label label : labels.values()) {
             GithubLabel existing = findById(new GithubLabelKey(repo, label.name()));
             if (existing == null) {
                 persist(new GithubLabel(repo, label.name(), label.description()));
+                changed = true;
             } else if (!Objects.equals(existing.description, label.description())) {
                 existing.description = label.description();
+                changed = true;
             }
         }
+        if (changed) {
+            inferredLabels.invalidate(repo);
+        }
     }
 
     public List<GithubLabel> findByRepository(String repo) {
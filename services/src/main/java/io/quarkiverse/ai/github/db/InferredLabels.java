@@ -0,0 +1,39 @@
+package io.quarkiverse.ai.github.db;
+
+import java.util.Set;
+
+import jakarta.persistence.*;
+
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+
+/**
+ * Labels the LLM inferred for an unlabelled discussion or issue, keyed by a hash of its title, body and the label set
+ * they were inferred from.
+ */
+@Entity
+@Table(name = "inferred_labels")
+@IdClass(InferredLabelsKey.class)
+public class InferredLabels extends PanacheEntityBase {
+
+    @Id
+    public String repository;
+
+    @Id
+    public String contentHash;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(columnDefinition = "JSON")
+    public Set<String> labels;
+
+    public InferredLabels() {
+    }
+
+    public InferredLabels(String repository, String contentHash, Set<String> labels) {
+        this.repository = repository;
+        this.contentHash = contentHash;
+        this.labels = labels;
+    }
+}
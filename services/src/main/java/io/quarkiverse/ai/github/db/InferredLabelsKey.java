@@ -0,0 +1,31 @@
+package io.quarkiverse.ai.github.db;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+public class InferredLabelsKey implements Serializable {
+    public String repository;
+    public String contentHash;
+
+    public InferredLabelsKey() {
+    }
+
+    public InferredLabelsKey(String repository, String contentHash) {
+        this.repository = repository;
+        this.contentHash = contentHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof InferredLabelsKey that))
+            return false;
+        return Objects.equals(repository, that.repository) && Objects.equals(contentHash, that.contentHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(repository, contentHash);
+    }
+}
@@ -0,0 +1,33 @@
+package io.quarkiverse.ai.github.db;
+
+import java.util.Set;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepositoryBase;
+
+@ApplicationScoped
+public class InferredLabelsRepository implements PanacheRepositoryBase<InferredLabels, InferredLabelsKey> {
+
+    // labeling runs on worker threads, which have no request context to hold a session in
+    @Transactional
+    public Set<String> find(String repo, String contentHash) {
+        InferredLabels inferred = findById(new InferredLabelsKey(repo, contentHash));
+        return inferred == null ? null : inferred.labels;
+    }
+
+    @Transactional
+    public void store(String repo, String contentHash, Set<String> labels) {
+        // merge, as two workers may label identical items at the same time
+        getEntityManager().merge(new InferredLabels(repo, contentHash, labels));
+    }
+
+    /**
+     * Drops everything inferred for a repository, i.e. when its label set changed.
+     */
+    @Transactional
+    public long invalidate(String repo) {
+        return delete("repository", repo);
+    }
+}
@@ -0,0 +1,103 @@
+package io.quarkiverse.ai.github.scanner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.quarkiverse.ai.github.api.Actor;
+import io.quarkiverse.ai.github.api.Discussions.Discussion;
+import io.quarkiverse.ai.github.api.Discussions.DiscussionComment;
+import io.quarkiverse.ai.github.api.Discussions.Reply;
+import io.quarkiverse.ai.github.api.Issues.Issue;
+import io.quarkiverse.ai.github.api.Issues.IssueComment;
+import io.quarkiverse.ai.github.scanner.model.CommentModel;
+
+/**
+ * Items sent together in one {@link DetermineLabelsPrompt#labelBatch} prompt, and the parser for its answer.
+ */
+public class LabelBatch {
+
+    /**
+     * @param id stable id the answer refers to the item by, {@code D<number>} for discussions and {@code I<number>}
+     *        for issues
+     * @param kind {@code discussion} or {@code issue}
+     */
+    public record Item(String id, String kind, String title, String author, String body, List<CommentModel> comments) {
+    }
+
+    public static Item item(Discussion discussion) {
+        List<CommentModel> comments = new ArrayList<>();
+        for (DiscussionComment comment : discussion.comments().nodes()) {
+            comments.add(new CommentModel(login(comment.author()), comment.body()));
+            for (Reply reply : comment.replies().nodes()) {
+                comments.add(new CommentModel(login(reply.author()), reply.body()));
+            }
+        }
+        return new Item("D" + discussion.number(), "discussion", discussion.title(), login(discussion.author()),
+                discussion.body(), comments);
+    }
+
+    public static Item item(Issue issue) {
+        List<CommentModel> comments = new ArrayList<>();
+        for (IssueComment comment : issue.comments().nodes()) {
+            comments.add(new CommentModel(login(comment.author()), comment.body()));
+        }
+        return new Item("I" + issue.number(), "issue", issue.title(), login(issue.author()), issue.body(), comments);
+    }
+
+    private static String login(Actor author) {
+        return author == null ? "unknown" : author.login();
+    }
+
+    /**
+     * Parses an answer made of a {@code ### <id>} heading per item followed by its category names, one per line.
+     * Unknown ids, repeated headings and names that are not categories are ignored, so a missing entry in the result
+     * means the item has to be labeled again on its own.
+     */
+    public static Map<String, Set<String>> parse(String answer, Collection<String> ids, Collection<String> labelNames) {
+        Map<String, Set<String>> result = new HashMap<>();
+        if (answer == null) {
+            return result;
+        }
+        Set<String> current = null;
+        for (String line : answer.split("\\R")) {
+            String trimmed = line.strip();
+            if (trimmed.startsWith("###")) {
+                String id = trimmed.substring(3).replace("*", "").strip();
+                current = ids.contains(id) && !result.containsKey(id) ? new HashSet<>() : null;
+                if (current != null) {
+                    result.put(id, current);
+                }
+                continue;
+            }
+            if (current == null) {
+                continue;
+            }
+            String name = stripListMarker(trimmed);
+            if (labelNames.contains(name)) {
+                current.add(name);
+            }
+        }
+        return result;
+    }
+
+    private static String stripListMarker(String line) {
+        String name = line;
+        if (name.startsWith("- ") || name.startsWith("* ")) {
+            name = name.substring(2);
+        } else {
+            int dot = name.indexOf(". ");
+            if (dot > 0 && name.substring(0, dot).chars().allMatch(Character::isDigit)) {
+                name = name.substring(dot + 2);
+            }
+        }
+        if (name.length() > 4 && name.startsWith("**") && name.endsWith("**")) {
+            name = name.substring(2, name.length() - 2);
+        }
+        return name.strip();
+    }
+}
@@ -0,0 +1,150 @@
+package io.quarkiverse.ai.github.scanner;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkiverse.ai.github.api.Discussions.Discussion;
+import io.quarkiverse.ai.github.api.Issues.Issue;
+import io.quarkiverse.ai.github.api.Labels.Label;
+import io.quarkiverse.ai.github.db.InferredLabelsRepository;
+import io.quarkiverse.ai.github.util.AppLogger;
+
+/**
+ * Remembers the labels the LLM inferred for unlabelled discussions and issues, so an item whose title and body have not
+ * changed is not sent to the LLM again when it is pulled because of a new comment.
+ *
+ * Entries are keyed by a hash of the title, the body and the label names and descriptions they were inferred from, so
+ * a changed label set never reuses an old answer. {@code GithubLabelRepository.syncLabels} drops the stale entries.
+ */
+@ApplicationScoped
+public class LabelCacheService {
+    static AppLogger log = AppLogger.getLogger(LabelCacheService.class);
+
+    @Inject
+    PromptWrapper promptWrapper;
+
+    @Inject
+    InferredLabelsRepository inferredLabels;
+
+    @ConfigProperty(name = "ai.scanner.pull.label-batch-size", defaultValue = "10")
+    int batchSize;
+
+    /**
+     * How many unlabelled items go into one labeling prompt.
+     */
+    public int batchSize() {
+        return Math.max(batchSize, 1);
+    }
+
+    /**
+     * Labels several discussions, sending the ones that are not cached to the LLM together in one prompt.
+     *
+     * @return the labels by discussion number
+     */
+    public Map<Integer, Set<String>> labelDiscussions(String repoName, Collection<Label> labels,
+            List<Discussion> discussions) {
+        return label(repoName, labels, discussions, Discussion::number, LabelBatch::item,
+                discussion -> promptWrapper.labelDiscussion(labels, discussion));
+    }
+
+    /**
+     * Labels several issues, sending the ones that are not cached to the LLM together in one prompt.
+     *
+     * @return the labels by issue number
+     */
+    public Map<Integer, Set<String>> labelIssues(String repoName, Collection<Label> labels, List<Issue> issues) {
+        return label(repoName, labels, issues, Issue::number, LabelBatch::item,
+                issue -> promptWrapper.labelIssue(labels, issue));
+    }
+
+    private record Uncached<T>(T value, LabelBatch.Item item, String key) {
+    }
+
+    private <T> Map<Integer, Set<String>> label(String repoName, Collection<Label> labels, List<T> values,
+            ToIntFunction<T> number, Function<T, LabelBatch.Item> toItem, Function<T, Set<String>> prompt) {
+        String version = labelSetVersion(labels);
+        Map<Integer, Set<String>> result = new HashMap<>();
+        List<Uncached<T>> uncached = new ArrayList<>();
+        for (T value : values) {
+            LabelBatch.Item item = toItem.apply(value);
+            String key = sha256(version + "\n" + item.kind() + "\n" + item.title() + "\n"
+                    + (item.body() == null ? "" : item.body()));
+            Set<String> cached = inferredLabels.find(repoName, key);
+            if (cached != null) {
+                log.thinking("\treusing labels inferred earlier for " + item.kind() + " " + item.id());
+                result.put(number.applyAsInt(value), cached);
+            } else {
+                uncached.add(new Uncached<>(value, item, key));
+            }
+        }
+        Map<String, Set<String>> batched = new HashMap<>();
+        for (int i = 0; i < uncached.size() && batchSize > 1; i += batchSize) {
+            List<Uncached<T>> chunk = uncached.subList(i, Math.min(i + batchSize, uncached.size()));
+            if (chunk.size() > 1) {
+                batched.putAll(labelBatch(labels, chunk.stream().map(Uncached::item).toList()));
+            }
+        }
+        for (Uncached<T> entry : uncached) {
+            Set<String> inferred = batched.get(entry.item().id());
+            if (inferred == null) {
+                inferred = prompt.apply(entry.value());
+            }
+            inferredLabels.store(repoName, entry.key(), inferred);
+            result.put(number.applyAsInt(entry.value()), inferred);
+        }
+        return result;
+    }
+
+    /**
+     * One prompt for all items, which saves sending the category list once per item. Items missing from the answer
+     * are left out of the result so the caller labels them one at a time.
+     */
+    private Map<String, Set<String>> labelBatch(Collection<Label> labels, List<LabelBatch.Item> items) {
+        log.thinking("\tlabeling " + items.size() + " items in one prompt");
+        Map<String, Set<String>> parsed;
+        try {
+            parsed = LabelBatch.parse(promptWrapper.labelBatch(labels, items),
+                    items.stream().map(LabelBatch.Item::id).toList(), labels.stream().map(Label::name).toList());
+        } catch (RuntimeException e) {
+            log.warnv("Batch labeling failed, labeling one at a time: {0}", e.getMessage());
+            return Map.of();
+        }
+        if (parsed.size() < items.size()) {
+            log.thinking("\t" + (items.size() - parsed.size())
+                    + " items missing from the answer, labeling them one at a time");
+        }
+        return parsed;
+    }
+
+    static String labelSetVersion(Collection<Label> labels) {
+        StringBuilder builder = new StringBuilder();
+        labels.stream().sorted(Comparator.comparing(Label::name)).forEach(label -> builder.append(label.name())
+                .append('\t').append(label.description() == null ? "" : label.description()).append('\n'));
+        return sha256(builder.toString());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
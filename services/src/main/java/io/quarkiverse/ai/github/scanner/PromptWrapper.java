@@ -0,0 +1,36 @@
+package io.quarkiverse.ai.github.scanner;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.control.ActivateRequestContext;
+import jakarta.inject.Inject;
+
+import io.quarkiverse.ai.github.api.Discussions.Discussion;
+import io.quarkiverse.ai.github.api.Issues.Issue;
+import io.quarkiverse.ai.github.api.Labels.Label;
+
+/**
+ * Activates a request context around each prompt call so the AI services can be invoked from worker threads.
+ */
+@ApplicationScoped
+@ActivateRequestContext
+public class PromptWrapper {
+
+    @Inject
+    DetermineLabelsPrompt determineLabelsPrompt;
+
+    public Set<String> labelDiscussion(Collection<Label> labels, Discussion discussion) {
+        return determineLabelsPrompt.labelDiscussion(labels, discussion);
+    }
+
+    public Set<String> labelIssue(Collection<Label> labels, Issue issue) {
+        return determineLabelsPrompt.labelIssue(labels, issue);
+    }
+
+    public String labelBatch(Collection<Label> labels, List<LabelBatch.Item> items) {
+        return determineLabelsPrompt.labelBatch(labels, items);
+    }
+}
@@ -2,42 +2,70 @@ package io.quarkiverse.ai.github.scanner;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.context.control.ActivateRequestContext;
 import jakarta.inject.Inject;
 import jakarta.transaction.*;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import io.quarkiverse.ai.github.api.Discussions.Discussion;
 import io.quarkiverse.ai.github.api.Github;
 import io.quarkiverse.ai.github.api.GithubAPI.Repository;
+import io.quarkiverse.ai.github.api.GithubConnection.PrefetchingConnection;
 import io.quarkiverse.ai.github.api.Issues.Issue;
 import io.quarkiverse.ai.github.api.Labels.Label;
+import io.quarkiverse.ai.github.api.Labels.LabelConnectionNameOnly;
 import io.quarkiverse.ai.github.api.Labels.LabelNameOnly;
 import io.quarkiverse.ai.github.db.EmbeddingsRepository;
 import io.quarkiverse.ai.github.db.GithubEntry;
 import io.quarkiverse.ai.github.db.GithubEntryRepository;
 import io.quarkiverse.ai.github.scanner.model.*;
 import io.quarkiverse.ai.github.util.AppLogger;
+import io.quarkiverse.ai.github.util.EmbeddingBatcher;
+import io.quarkiverse.ai.github.util.OrderedPipeline;
 import io.quarkiverse.graphql.client.QueryError;
+import io.quarkiverse.graphql.client.RateLimiter;
 import io.quarkus.narayana.jta.QuarkusTransaction;
 
 @ApplicationScoped
 public class PullCacheService {
     static AppLogger log = AppLogger.getLogger(PullCacheService.class);
 
+    @ConfigProperty(name = "ai.scanner.pull.read-ahead", defaultValue = "2")
+    int readAhead;
+
+    @ConfigProperty(name = "ai.scanner.pull.label-concurrency", defaultValue = "4")
+    int labelConcurrency;
+
+    // the provider's limits per request, tokens being estimated from the length of the text
+    @ConfigProperty(name = "ai.scanner.embeddings.batch.max-tokens", defaultValue = "100000")
+    int embeddingBatchMaxTokens;
+
+    @ConfigProperty(name = "ai.scanner.embeddings.batch.max-segments", defaultValue = "256")
+    int embeddingBatchMaxSegments;
+
+    // embedding requests in flight at once, over all pulls
+    @ConfigProperty(name = "ai.scanner.embeddings.concurrency", defaultValue = "4")
+    int embeddingConcurrency;
+
     @Inject
     Github github;
 
     @Inject
-    DetermineLabelsPrompt determineLabels;
+    LabelCacheService labelCache;
 
     @Inject
     RenderService renderService;
@@ -56,6 +84,14 @@ public class PullCacheService {
 
     private static final int MAX_PRUNE_BATCH_SIZE = 20;
 
+    EmbeddingBatcher embeddingBatcher;
+
+    @PostConstruct
+    void init() {
+        embeddingBatcher = new EmbeddingBatcher(embeddingModel, embeddingBatchMaxTokens, embeddingBatchMaxSegments,
+                embeddingConcurrency);
+    }
+
     long lastPulled(String repoName) {
         return embeddingsDb.lastPulled(repoName);
     }
@@ -64,7 +100,7 @@ public class PullCacheService {
     public void pull(String repoName, TimePeriod range) {
         try {
             Repository repository = github.repository(repoName);
-            Map<String, Label> labels = repository.labels();
+            CompletableFuture<Map<String, Label>> labelsRequest = repository.labelsAsync().toCompletableFuture();
 
             long since;
             long lastPulled = lastPulled(repoName);
@@ -76,49 +112,73 @@ public class PullCacheService {
             } else {
                 since = lastPulled > range.fromMillis() ? lastPulled : range.fromMillis();
             }
-            EmbeddingStoreIngestor ingester = EmbeddingStoreIngestor.builder()
-                    .embeddingModel(embeddingModel)
-                    .embeddingStore(embeddingsStore)
-                    .build();
             log.thinking("Pulling since: " + Instant.ofEpochMilli(since).toString());
-            log.thinking("Pulling discussions from github...");
-            Iterable<Discussion> discussions = repository.discussions().full(20);
             List<Document> docs = new ArrayList<>();
             List<GithubEntry> entries = new ArrayList<>();
-            for (Discussion discussion : discussions) {
-                DiscussionModel discussionModel = discussionToDiscussionModel(repoName, discussion, since, labels);
-                if (discussionModel == null) {
-                    break;
+            // embeddings of the items pulled again, by text hash, taken before they are pruned
+            Map<String, Embedding> known = new HashMap<>();
+            String sinceDate = Instant.ofEpochMilli(since).toString();
+            // labeling is an LLM call per item, so it runs on a worker pool while fetching carries on. Pruning,
+            // persisting and rendering stay on this thread, in the order the items were fetched.
+            try (PrefetchingConnection<Discussion> discussions = repository.discussions().prefetch(20, readAhead);
+                    PrefetchingConnection<Issue> issues = repository.issues().prefetch(20, sinceDate, readAhead);
+                    OrderedPipeline labeling = new OrderedPipeline(labelConcurrency)) {
+                // get the first discussion and issue pages in flight before waiting on the labels
+                Iterator<Discussion> discussionIterator = discussions.iterator();
+                Iterator<Issue> issueIterator = issues.iterator();
+                Map<String, Label> labels = await(labelsRequest);
+
+                log.thinking("Pulling discussions from github...");
+                List<Discussion> discussionGroup = new ArrayList<>();
+                while (discussionIterator.hasNext()) {
+                    Discussion discussion = discussionIterator.next();
+                    if (Instant.parse(discussion.updatedAt()).toEpochMilli() < since) {
+                        break;
+                    }
+                    log.thinking("Discussion: " + discussion.title());
+                    if (unlabelled(discussion)) {
+                        log.thinking("\tlabeling unlabelled");
+                    }
+                    // unlabelled discussions are labeled in batches, and the labelled ones in between wait with them
+                    discussionGroup.add(discussion);
+                    long unlabelledCount = discussionGroup.stream().filter(PullCacheService::unlabelled).count();
+                    if (unlabelledCount == 0 || unlabelledCount >= labelCache.batchSize()) {
+                        submitDiscussions(labeling, repoName, labels, discussionGroup, entries, docs, known);
+                        discussionGroup = new ArrayList<>();
+                    }
                 }
-                prune(discussionModel);
-                GithubEntry entry = persist(discussionModel);
-                entries.add(entry);
-                createDoc(docs, discussionModel, entry.metadata);
-            }
-            int numDiscussions = entries.size();
-
-            log.thinking("\n\nPulling issues...");
-            Iterable<Issue> issues = github.repository(repoName).issues().full(20,
-                    Instant.ofEpochMilli(since).toString());
-            for (Issue issue : issues) {
-                IssueModel issueModel = issueToIssueModel(repoName, issue, labels);
-                if (issueModel == null) {
-                    continue;
+                if (!discussionGroup.isEmpty()) {
+                    submitDiscussions(labeling, repoName, labels, discussionGroup, entries, docs, known);
+                }
+
+                log.thinking("\n\nPulling issues...");
+                List<Issue> issueGroup = new ArrayList<>();
+                while (issueIterator.hasNext()) {
+                    Issue issue = issueIterator.next();
+                    log.thinking("Issue: " + issue.title());
+                    if (unlabelled(issue)) {
+                        log.thinking("\tlabeling unlabelled");
+                    }
+                    issueGroup.add(issue);
+                    long unlabelledCount = issueGroup.stream().filter(PullCacheService::unlabelled).count();
+                    if (unlabelledCount == 0 || unlabelledCount >= labelCache.batchSize()) {
+                        submitIssues(labeling, repoName, labels, issueGroup, entries, docs, known);
+                        issueGroup = new ArrayList<>();
+                    }
+                }
+                if (!issueGroup.isEmpty()) {
+                    submitIssues(labeling, repoName, labels, issueGroup, entries, docs, known);
                 }
-                prune(issueModel);
-                GithubEntry entry = persist(issueModel);
-                entries.add(entry);
-                createDoc(docs, issueModel, entry.metadata);
+                labeling.finish();
             }
-            int numIssues = entries.size() - numDiscussions;
+            long numDiscussions = entries.stream().filter(entry -> entry.type == GitType.DISCUSSION).count();
+            long numIssues = entries.size() - numDiscussions;
             log.thinking("\nPulled " + numDiscussions + " discussions and " + numIssues + " issues");
+            logRateLimit();
             if (docs.size() > 0) {
                 log.thinking("\n\nIngesting " + docs.size() + " items");
-
-                for (List<Document> batch : partition(docs, 20)) {
-                    log.thinking("\tingesting batch of " + batch.size() + " items");
-                    ingester.ingest(batch);
-                }
+                List<TextSegment> segments = docs.stream().map(Document::toTextSegment).toList();
+                embeddingsStore.addAll(embeddingBatcher.embedAll(segments, known), segments);
             }
         } catch (QueryError error) {
             if (error.errorNode().toString().contains("NOT_FOUND")) {
@@ -128,32 +188,104 @@ public class PullCacheService {
         }
     }
 
-    private List<List<Document>> partition(List<Document> inputList, int size) {
-        List<List<Document>> result = new ArrayList<>();
-        for (int i = 0; i < inputList.size(); i += size) {
-            int fromIndex = i;
-            int toIndex = Math.min(i + size, inputList.size());
-            result.add(inputList.subList(fromIndex, toIndex));
+    private void logRateLimit() {
+        RateLimiter.Budget budget = github.rateLimit();
+        if (budget.limit() >= 0) {
+            log.thinking("Github rate limit: " + budget);
+        }
+    }
+
+    /**
+     * Waits for an asynchronous query, rethrowing its failure as is so callers can still catch {@link QueryError}.
+     */
+    private static <T> T await(CompletableFuture<T> request) {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
-        return result;
     }
 
-    public DiscussionModel discussionToDiscussionModel(String repoName, Discussion discussion, long since,
-            Map<String, Label> labels) {
-        String updatedAt = discussion.updatedAt();
-        Instant instant = Instant.parse(updatedAt);
-        // log.thinking(instant.toString());
-        if (instant.toEpochMilli() < since) {
-            return null;
+    private static boolean unlabelled(Discussion discussion) {
+        return discussion.labels().nodes().isEmpty();
+    }
+
+    private static boolean unlabelled(Issue issue) {
+        return issue.labels().nodes().isEmpty();
+    }
+
+    private static Set<String> labelNames(LabelConnectionNameOnly labels) {
+        return labels.nodes().stream().map(LabelNameOnly::name).collect(Collectors.toSet());
+    }
+
+    /**
+     * Queues a run of discussions on the labeling pipeline. The unlabelled ones are labeled with one prompt, the
+     * others keep their labels.
+     */
+    private void submitDiscussions(OrderedPipeline labeling, String repoName, Map<String, Label> labels,
+            List<Discussion> group, List<GithubEntry> entries, List<Document> docs, Map<String, Embedding> known) {
+        List<Discussion> unlabelled = group.stream().filter(PullCacheService::unlabelled).toList();
+        Function<Map<Integer, Set<String>>, Runnable> commit = inferred -> {
+            List<DiscussionModel> models = group.stream()
+                    .map(discussion -> discussionToDiscussionModel(repoName, discussion, unlabelled(discussion)
+                            ? inferred.get(discussion.number())
+                            : labelNames(discussion.labels())))
+                    .toList();
+            return () -> models.forEach(discussionModel -> store(discussionModel, entries, docs, known));
+        };
+        if (unlabelled.isEmpty()) {
+            labeling.submitCompleted(commit.apply(Map.of()));
+        } else {
+            labeling.submit(() -> commit.apply(labelCache.labelDiscussions(repoName, labels.values(), unlabelled)));
         }
-        log.thinking("Discussion: " + discussion.title());
-        Set<String> discussionLabels = discussion.labels().nodes().stream().map(LabelNameOnly::name)
-                .collect(Collectors.toSet());
-        if (discussionLabels.isEmpty()) {
-            log.thinking("\tlabeling unlabelled");
-            discussionLabels = determineLabels.labelDiscussion(labels.values(), discussion);
-            log.thinking("\t" + discussionLabels.size() + " new labels");
+    }
+
+    /**
+     * Queues a run of issues on the labeling pipeline. The unlabelled ones are labeled with one prompt, the others
+     * keep their labels.
+     */
+    private void submitIssues(OrderedPipeline labeling, String repoName, Map<String, Label> labels,
+            List<Issue> group, List<GithubEntry> entries, List<Document> docs, Map<String, Embedding> known) {
+        List<Issue> unlabelled = group.stream().filter(PullCacheService::unlabelled).toList();
+        Function<Map<Integer, Set<String>>, Runnable> commit = inferred -> {
+            List<IssueModel> models = group.stream()
+                    .map(issue -> issueToIssueModel(repoName, issue, unlabelled(issue)
+                            ? inferred.get(issue.number())
+                            : labelNames(issue.labels())))
+                    .toList();
+            return () -> models.forEach(issueModel -> store(issueModel, entries, docs, known));
+        };
+        if (unlabelled.isEmpty()) {
+            labeling.submitCompleted(commit.apply(Map.of()));
+        } else {
+            labeling.submit(() -> commit.apply(labelCache.labelIssues(repoName, labels.values(), unlabelled)));
         }
+    }
+
+    private void store(DiscussionModel discussionModel, List<GithubEntry> entries, List<Document> docs,
+            Map<String, Embedding> known) {
+        known.putAll(embeddingsDb.embeddings(discussionModel.repo(), discussionModel.number(),
+                GitType.DISCUSSION.name()));
+        prune(discussionModel);
+        GithubEntry entry = persist(discussionModel);
+        entries.add(entry);
+        createDoc(docs, discussionModel, entry.metadata);
+    }
+
+    private void store(IssueModel issueModel, List<GithubEntry> entries, List<Document> docs,
+            Map<String, Embedding> known) {
+        known.putAll(embeddingsDb.embeddings(issueModel.repo(), issueModel.number(), GitType.ISSUE.name()));
+        prune(issueModel);
+        GithubEntry entry = persist(issueModel);
+        entries.add(entry);
+        createDoc(docs, issueModel, entry.metadata);
+    }
+
+    public DiscussionModel discussionToDiscussionModel(String repoName, Discussion discussion,
+            Set<String> discussionLabels) {
         List<DiscussionCommentModel> comments = discussion.comments().nodes().stream()
                 .map(comment -> new DiscussionCommentModel(
                         comment.author() == null ? "unknown" : comment.author().login(), comment.body(),
@@ -172,15 +304,7 @@ public class PullCacheService {
         return discussionModel;
     }
 
-    public IssueModel issueToIssueModel(String repoName, Issue issue, Map<String, Label> labels) {
-        Set<String> issueLabels = issue.labels().nodes().stream().map(LabelNameOnly::name)
-                .collect(Collectors.toSet());
-        log.thinking("Issue: " + issue.title());
-        if (issueLabels.isEmpty()) {
-            log.thinking("\tlabeling unlabelled");
-            issueLabels = determineLabels.labelIssue(labels.values(), issue);
-            log.thinking("\t" + issueLabels.size() + " new labels");
-        }
+    public IssueModel issueToIssueModel(String repoName, Issue issue, Set<String> issueLabels) {
         List<CommentModel> comments = issue.comments().nodes().stream()
                 .map(comment -> new CommentModel(comment.author() == null ? "unknown" : comment.author().login(),
                         comment.body()))
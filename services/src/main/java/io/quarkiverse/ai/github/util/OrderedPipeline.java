@@ -0,0 +1,105 @@
+package io.quarkiverse.ai.github.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs slow per-item work (i.e. LLM labeling calls) on virtual threads, at most {@code maxInFlight} at a time, while
+ * still committing the items one at a time, on the submitting thread, in the order they were submitted.
+ *
+ * Each piece of work returns the commit step to run for its item. Items that need no work are queued with
+ * {@link #submitCompleted(Runnable)} so that they keep their place. Commits happen as soon as everything submitted
+ * before them is done, and {@link #finish()} waits for the rest. A failed item fails the commit, and so the caller,
+ * with the same exception.
+ *
+ * Not thread safe: submit, finish and close from one thread.
+ */
+public class OrderedPipeline implements AutoCloseable {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore inFlight;
+    private final Deque<Future<Runnable>> pending = new ArrayDeque<>();
+    // bounds how many finished items may queue up behind a slow one
+    private final int window;
+
+    public OrderedPipeline(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+        }
+        this.inFlight = new Semaphore(maxInFlight);
+        this.window = maxInFlight * 4;
+    }
+
+    public void submit(Callable<Runnable> work) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a worker", e);
+        }
+        try {
+            pending.add(executor.submit(() -> {
+                try {
+                    return work.call();
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        commitReady();
+    }
+
+    public void submitCompleted(Runnable commit) {
+        pending.add(CompletableFuture.completedFuture(commit));
+        commitReady();
+    }
+
+    /**
+     * Waits for all submitted work and commits it.
+     */
+    public void finish() {
+        while (!pending.isEmpty()) {
+            commitHead();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Future<Runnable> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        executor.shutdownNow();
+    }
+
+    private void commitReady() {
+        while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() > window)) {
+            commitHead();
+        }
+    }
+
+    private void commitHead() {
+        Runnable commit;
+        try {
+            commit = pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a worker", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        commit.run();
+    }
+}
@@ -0,0 +1,179 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.WebTarget;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.quarkiverse.ai.github.api.HttpCache;
+import io.quarkiverse.ai.github.api.HttpCache.CachedResponse;
+
+public class HttpCacheTest {
+
+    // serves the body with its ETag or Last-Modified, and answers 304 to a request that has them already
+    HttpServer server;
+    volatile String body = "[\"bug\"]";
+    volatile String etag = "\"v1\"";
+    volatile String lastModified;
+    volatile int status = 200;
+    // the conditional header of each request
+    final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    Client client;
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterEach
+    public void stop() {
+        client.close();
+        server.stop(0);
+    }
+
+    void handle(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        requests.add(ifNoneMatch != null ? "If-None-Match " + ifNoneMatch
+                : ifModifiedSince != null ? "If-Modified-Since " + ifModifiedSince : "GET");
+        if (etag != null) {
+            exchange.getResponseHeaders().add("ETag", etag);
+        }
+        if (lastModified != null) {
+            exchange.getResponseHeaders().add("Last-Modified", lastModified);
+        }
+        exchange.getResponseHeaders().add("Link", "<" + url("?page=2") + ">; rel=\"next\"");
+        boolean unchanged = (etag != null && etag.equals(ifNoneMatch))
+                || (etag == null && lastModified != null && lastModified.equals(ifModifiedSince));
+        if (status == 200 && unchanged) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + "/repos/o/r/labels" + path;
+    }
+
+    CachedResponse get(HttpCache cache) {
+        WebTarget target = client.target(url(""));
+        return cache.get(target, UnaryOperator.identity());
+    }
+
+    static List<Path> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    public void testRevalidatesWithTheETag(@TempDir Path directory) throws IOException {
+        HttpCache cache = new HttpCache(directory, "token", objectMapper);
+        CachedResponse first = get(cache);
+        assertEquals("[\"bug\"]", first.body());
+        assertFalse(first.notModified());
+
+        CachedResponse second = get(cache);
+        assertEquals("[\"bug\"]", second.body());
+        assertEquals(first.link(), second.link());
+        assertTrue(second.notModified());
+
+        body = "[\"bug\",\"docs\"]";
+        etag = "\"v2\"";
+        CachedResponse changed = get(cache);
+        assertEquals(body, changed.body());
+        assertFalse(changed.notModified());
+        assertTrue(get(cache).notModified());
+
+        assertEquals(List.of("GET", "If-None-Match \"v1\"", "If-None-Match \"v1\"", "If-None-Match \"v2\""), requests);
+        // one entry, and nothing left of the writes
+        assertEquals(1, files(directory).size());
+        assertTrue(files(directory).get(0).toString().endsWith(".json"));
+    }
+
+    @Test
+    public void testRevalidatesWithLastModifiedWithoutAnETag(@TempDir Path directory) {
+        etag = null;
+        lastModified = "Wed, 01 Jan 2025 00:00:00 GMT";
+        HttpCache cache = new HttpCache(directory, "token", objectMapper);
+        assertFalse(get(cache).notModified());
+        CachedResponse second = get(cache);
+        assertTrue(second.notModified());
+        assertEquals("[\"bug\"]", second.body());
+        assertEquals(List.of("GET", "If-Modified-Since " + lastModified), requests);
+    }
+
+    @Test
+    public void testKeepsEntriesOfOtherCredentialsApart(@TempDir Path directory) {
+        get(new HttpCache(directory, "token", objectMapper));
+        assertFalse(get(new HttpCache(directory, "other token", objectMapper)).notModified());
+        assertTrue(get(new HttpCache(directory, "token", objectMapper)).notModified());
+        assertEquals(List.of("GET", "GET", "If-None-Match \"v1\""), requests);
+    }
+
+    @Test
+    public void testDiscardsAnUnreadableEntry(@TempDir Path directory) throws IOException {
+        HttpCache cache = new HttpCache(directory, "token", objectMapper);
+        get(cache);
+        Path entry = files(directory).get(0);
+        Files.writeString(entry, "{\"url\":\"" + url(""));
+
+        CachedResponse response = get(cache);
+        assertFalse(response.notModified());
+        assertEquals("[\"bug\"]", response.body());
+        assertTrue(get(cache).notModified());
+        assertEquals(List.of("GET", "GET", "If-None-Match \"v1\""), requests);
+    }
+
+    @Test
+    public void testFailsOnAnError(@TempDir Path directory) throws IOException {
+        HttpCache cache = new HttpCache(directory, "token", objectMapper);
+        status = 404;
+        assertThrows(RuntimeException.class, () -> get(cache));
+        assertEquals(List.of(), files(directory));
+
+        // a response without validators is not kept
+        status = 200;
+        etag = null;
+        assertFalse(get(cache).notModified());
+        assertFalse(get(cache).notModified());
+        assertEquals(List.of(), files(directory));
+        assertEquals(List.of("GET", "GET", "GET"), requests);
+    }
+}
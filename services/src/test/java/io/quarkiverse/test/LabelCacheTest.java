@@ -0,0 +1,124 @@
+package io.quarkiverse.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+import jakarta.inject.Inject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.quarkiverse.ai.github.api.Actor;
+import io.quarkiverse.ai.github.api.Issues.Issue;
+import io.quarkiverse.ai.github.api.Issues.IssueComment;
+import io.quarkiverse.ai.github.api.Issues.IssueCommentConnection;
+import io.quarkiverse.ai.github.api.Labels.Label;
+import io.quarkiverse.ai.github.api.Labels.LabelConnectionNameOnly;
+import io.quarkiverse.ai.github.api.Labels.LabelNameOnly;
+import io.quarkiverse.ai.github.api.PageInfo;
+import io.quarkiverse.ai.github.db.InferredLabelsRepository;
+import io.quarkiverse.ai.github.scanner.LabelBatch;
+import io.quarkiverse.ai.github.scanner.LabelCacheService;
+import io.quarkiverse.ai.github.scanner.PromptWrapper;
+import io.quarkiverse.ai.github.util.OrderedPipeline;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+
+@QuarkusTest
+@TestProfile(LabelCacheTest.FakePrompts.class)
+public class LabelCacheTest {
+
+    public static class FakePrompts implements QuarkusTestProfile {
+        @Override
+        public Set<Class<?>> getEnabledAlternatives() {
+            return Set.of(FakePromptWrapper.class);
+        }
+    }
+
+    /**
+     * Labels every issue as a bug, one at a time, and counts the calls.
+     */
+    @Alternative
+    @Priority(1)
+    @ApplicationScoped
+    public static class FakePromptWrapper extends PromptWrapper {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Set<String> labelIssue(Collection<Label> labels, Issue issue) {
+            calls.incrementAndGet();
+            return Set.of("bug");
+        }
+
+        @Override
+        public String labelBatch(Collection<Label> labels, List<LabelBatch.Item> items) {
+            throw new IllegalStateException("no batch answers here");
+        }
+    }
+
+    @Inject
+    LabelCacheService labelCache;
+
+    @Inject
+    InferredLabelsRepository inferredLabels;
+
+    @Inject
+    PromptWrapper prompts;
+
+    final String repo = "test/label-cache-" + UUID.randomUUID();
+
+    @AfterEach
+    public void cleanup() {
+        inferredLabels.invalidate(repo);
+    }
+
+    static Issue issue(int number, String title) {
+        return new Issue(number, title, new Actor("someone"), null, "body of " + title, false, null,
+                "2024-01-01T00:00:00Z", "2024-01-01T00:00:00Z",
+                new LabelConnectionNameOnly(new PageInfo(false, null), List.<LabelNameOnly> of()),
+                new IssueCommentConnection(new PageInfo(false, null), List.<IssueComment> of()));
+    }
+
+    /**
+     * Labels on the pipeline's worker threads, as pulls do, which have neither a request context nor a transaction.
+     */
+    Map<Integer, Set<String>> labelOnPipeline(List<Issue> issues, Collection<Label> labels) {
+        Map<Integer, Set<String>> result = new HashMap<>();
+        try (OrderedPipeline labeling = new OrderedPipeline(2)) {
+            labeling.submit(() -> {
+                Map<Integer, Set<String>> labelled = labelCache.labelIssues(repo, labels, issues);
+                return () -> result.putAll(labelled);
+            });
+            labeling.finish();
+        }
+        return result;
+    }
+
+    @Test
+    public void testLabelsThroughThePipeline() {
+        AtomicInteger calls = ((FakePromptWrapper) prompts).calls;
+        calls.set(0);
+        List<Label> labels = List.of(new Label("bug", "Something is broken"), new Label("docs", null));
+        List<Issue> issues = List.of(issue(1, "Crash on startup"), issue(2, "NPE in the parser"));
+
+        Map<Integer, Set<String>> first = labelOnPipeline(issues, labels);
+        assertEquals(Map.of(1, Set.of("bug"), 2, Set.of("bug")), first);
+        assertEquals(2, calls.get());
+
+        // found in the cache this time, still from a worker thread
+        Map<Integer, Set<String>> second = labelOnPipeline(issues, labels);
+        assertEquals(first, second);
+        assertEquals(2, calls.get());
+    }
+}